@@ -25,8 +25,9 @@ import org.apache.log4j.Logger;
  */
 public class GAFParser {
 
-	private static final String GAF_COMMENT = "!";
+	static final String GAF_COMMENT = "!";
 	private static final String GAF_VERSION = GAF_COMMENT + "gaf-version:";
+	private static final Pattern GAF_VERSION_PATTERN = Pattern.compile(GAF_VERSION + "\\s*(\\d+\\.*\\d+)");
 	protected static Logger LOG = Logger.getLogger(GAFParser.class);
 	private static boolean DEBUG = LOG.isDebugEnabled();
 
@@ -107,33 +108,8 @@ public class GAFParser {
 				
 				fireParsing();
 				
-				this.currentCols = this.currentRow.split("\\t", -1);
-				if (expectedNumCols == 17 && currentCols.length == 16) {
-					LOG.warn("Fix missing tab for GAF 2.0 format in line: "+lineNumber);
-					// repair
-					// add an empty "" to the array
-					this.currentCols = Arrays.copyOf(currentCols, 17);
-					this.currentCols[16] = "";
-					fireParsingWarning("Fix missing tab for GAF 2.0 format, expected 17 columns but found only 16.");
-				}
-				if (currentCols.length != expectedNumCols) {
-
-					String error = "Got invalid number of columns for row (expected "
-						+ expectedNumCols
-						+ ", got "
-						+ currentCols.length
-						+ "). The '"+lineNumber+"' row is ignored.";
-	
-					if(currentCols.length<expectedNumCols){
-						String v =error;
-						voilations.add(v);
-						fireParsingError(error);
-						LOG.error(error + " : " + this.currentRow);
-						return next();
-					}else{
-						fireParsingWarning(error);
-						LOG.warn(error + " : " + this.currentRow);
-					}
+				if (!parseColumns()) {
+					return next();
 				}
 				return true;
 			}
@@ -144,6 +120,84 @@ public class GAFParser {
 			
 	}
 	
+	/**
+	 * Splits the current row and checks the number of columns.
+	 * 
+	 * @return false, if the row has too few columns and has to be skipped
+	 */
+	private boolean parseColumns() {
+		this.currentCols = splitColumns(this.currentRow);
+		if (expectedNumCols == 17 && currentCols.length == 16) {
+			LOG.warn("Fix missing tab for GAF 2.0 format in line: "+lineNumber);
+			// repair
+			// add an empty "" to the array
+			this.currentCols = Arrays.copyOf(currentCols, 17);
+			this.currentCols[16] = "";
+			fireParsingWarning("Fix missing tab for GAF 2.0 format, expected 17 columns but found only 16.");
+		}
+		if (currentCols.length != expectedNumCols) {
+
+			String error = "Got invalid number of columns for row (expected "
+				+ expectedNumCols
+				+ ", got "
+				+ currentCols.length
+				+ "). The '"+lineNumber+"' row is ignored.";
+	
+			if(currentCols.length<expectedNumCols){
+				String v =error;
+				voilations.add(v);
+				fireParsingError(error);
+				LOG.error(error + " : " + this.currentRow);
+				return false;
+			}else{
+				fireParsingWarning(error);
+				LOG.warn(error + " : " + this.currentRow);
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Sets the current row, as if it had been read by {@link #next()}.
+	 * Used by {@link StreamingGafParser}, which reads the lines in
+	 * a different thread.
+	 * 
+	 * @param row
+	 * @param lineNumber
+	 * @param expectedNumCols
+	 * @return false, if the row has too few columns and has to be skipped
+	 */
+	boolean setCurrentRow(String row, int lineNumber, int expectedNumCols) {
+		this.currentRow = row;
+		this.lineNumber = lineNumber;
+		this.expectedNumCols = expectedNumCols;
+		fireParsing();
+		return parseColumns();
+	}
+	
+	/**
+	 * Splits a row at tabs, keeping trailing empty columns. Equivalent to
+	 * row.split("\\t", -1), without the regular expression.
+	 * 
+	 * @param row
+	 * @return columns
+	 */
+	public static String[] splitColumns(String row) {
+		int n = 1;
+		for (int i = row.indexOf('\t'); i >= 0; i = row.indexOf('\t', i + 1)) {
+			n++;
+		}
+		String[] cols = new String[n];
+		int start = 0;
+		for (int c = 0; c < n - 1; c++) {
+			int end = row.indexOf('\t', start);
+			cols[c] = row.substring(start, end);
+			start = end + 1;
+		}
+		cols[n - 1] = row.substring(start);
+		return cols;
+	}
+	
 	private void fireParsing(){
 		for(GafParserListener listner: parserListeners){
 			listner.parsing(this.currentRow, lineNumber);
@@ -221,6 +275,17 @@ public class GAFParser {
 			throw new IOException("File '" + file + "' file not found");
 		}
 		
+		parse(new InputStreamReader(open(file)));
+		
+	}
+	
+	/**
+	 * @param file location of a gaf file, see {@link #parse(String)}
+	 * @return stream, uncompressed if the file name ends with .gz
+	 * @throws IOException
+	 * @throws URISyntaxException
+	 */
+	static InputStream open(String file) throws IOException, URISyntaxException {
 		InputStream is = null;
 		
 		if(file.startsWith("http://")){
@@ -237,8 +302,7 @@ public class GAFParser {
 			is = new GZIPInputStream(is);
 		}
 		
-		parse(new InputStreamReader(is));
-		
+		return is;
 	}
 
 	
@@ -377,13 +441,12 @@ public class GAFParser {
 	}
 	
 
-	private boolean isFormatDeclaration(String line) {
+	static boolean isFormatDeclaration(String line) {
 		return line.startsWith(GAF_VERSION);
 	}
 
-	private double parseGafVersion(String line) {
-		Pattern p = Pattern.compile(GAF_VERSION + "\\s*(\\d+\\.*\\d+)");
-		Matcher m = p.matcher(line);
+	static double parseGafVersion(String line) {
+		Matcher m = GAF_VERSION_PATTERN.matcher(line);
 		if (m.matches()) {
 			return Double.parseDouble(m.group(1));
 		}
@@ -172,6 +172,23 @@ public class GafObjectsBuilder {
 	 * @return bioentity, never null
 	 */
 	private Bioentity addBioEntity(GAFParser parser){
+		Bioentity entity = createBioentity(parser, gafDocument.getId());
+		
+		gafDocument.addBioentity(entity);
+		
+
+		return entity;
+	}
+	
+	/**
+	 * Builds a {@link Bioentity} from the current position (row) of the GafParser,
+	 * without adding it to a document.
+	 * 
+	 * @param parser
+	 * @param docId
+	 * @return bioentity, never null
+	 */
+	static Bioentity createBioentity(GAFParser parser, String docId){
 		String id = parser.getDb() + ":" + parser.getDbObjectId();
 		String symbol = parser.getDbObjectSymbol();
 		String fullName = parser.getDbObjectName();
@@ -188,37 +205,44 @@ public class GafObjectsBuilder {
 		//String db = parser.getDbObjectSynonym();
 		String db = parser.getDb();
 		
-		Bioentity entity = new Bioentity(id, symbol, fullName, typeCls, "NCBITaxon:" + ncbiTaxonId, db, gafDocument.getId());
-		
-		gafDocument.addBioentity(entity);
-		
-
-		return entity;
+		return new Bioentity(id, symbol, fullName, typeCls, "NCBITaxon:" + ncbiTaxonId, db, docId);
 	}
 	
 	
 	private void addWithInfo(GAFParser parser){
-		if(parser.getWith().length()>0){
-			String tokens[] = parser.getWith().split("[\\||,]");
+		addWithInfo(gafDocument, parser.getWith());
+	}
+	
+	private static void addWithInfo(GafDocument gafDocument, String with){
+		if(with.length()>0){
+			String tokens[] = with.split("[\\||,]");
 			for(String token: tokens){
-				gafDocument.addWithInfo(new WithInfo(parser.getWith(), token));
+				gafDocument.addWithInfo(new WithInfo(with, token));
 			}
 		}
 	}
 	
 	private void addCompositeQualifier(GAFParser parser){
-		if(parser.getQualifier().length()>0){
-			String tokens[] = parser.getQualifier().split("[\\||,]");
+		addCompositeQualifier(gafDocument, parser.getQualifier());
+	}
+
+	private static void addCompositeQualifier(GafDocument gafDocument, String qualifier){
+		if(qualifier.length()>0){
+			String tokens[] = qualifier.split("[\\||,]");
 			for(String token: tokens){
-				gafDocument.addCompositeQualifier(new CompositeQualifier(parser.getQualifier(), token));
+				gafDocument.addCompositeQualifier(new CompositeQualifier(qualifier, token));
 			}
 		}
 	}
 
 	private void addExtensionExpression(GAFParser parser){
-		if(parser.getAnnotationExtension() != null){
-			if(parser.getAnnotationExtension().length()>0){
-				String tokens[] = parser.getAnnotationExtension().split("[\\||,]");
+		addExtensionExpression(gafDocument, parser.getAnnotationExtension());
+	}
+
+	private static void addExtensionExpression(GafDocument gafDocument, String extension){
+		if(extension != null){
+			if(extension.length()>0){
+				String tokens[] = extension.split("[\\||,]");
 				for(String token: tokens){
 					
 					int index = token.indexOf("(");
@@ -226,7 +250,7 @@ public class GafObjectsBuilder {
 					if(index>0){
 						String relation = token.substring(0, index);
 						String cls = token.substring(index+1, token.length()-1);
-						gafDocument.addExtensionExpression(new ExtensionExpression(parser.getAnnotationExtension(), relation, cls));
+						gafDocument.addExtensionExpression(new ExtensionExpression(extension, relation, cls));
 					}
 					
 				}
@@ -235,12 +259,40 @@ public class GafObjectsBuilder {
 		}
 	}
 	
+	/**
+	 * Add an annotation, which has been built with
+	 * {@link #createGeneAnnotation(GAFParser, Bioentity, String)}, to the document.
+	 * Same as reading its row in {@link #getNextSplitDocument()}.
+	 * 
+	 * @param gafDocument
+	 * @param ga
+	 */
+	static void addToDocument(GafDocument gafDocument, GeneAnnotation ga){
+		gafDocument.addBioentity(ga.getBioentityObject());
+		gafDocument.addGeneAnnotation(ga);
+		addWithInfo(gafDocument, ga.getWithExpression());
+		addCompositeQualifier(gafDocument, ga.getCompositeQualifier());
+		addExtensionExpression(gafDocument, ga.getExtensionExpression());
+	}
+	
 	/**
 	 * Build GeneAnnotation object from current position/row of the GafParser.
 	 * @param parser
 	 * @param entity
 	 */
 	private void addGeneAnnotation(GAFParser parser, Bioentity entity){
+		gafDocument.addGeneAnnotation(createGeneAnnotation(parser, entity, gafDocument.getId()));
+	}
+	
+	/**
+	 * Build GeneAnnotation object from current position/row of the GafParser,
+	 * without adding it to a document.
+	 * @param parser
+	 * @param entity
+	 * @param docId
+	 * @return annotation, never null
+	 */
+	static GeneAnnotation createGeneAnnotation(GAFParser parser, Bioentity entity, String docId){
 		String compositeQualifier = parser.getQualifier();
 	
 		
@@ -283,12 +335,12 @@ public class GafObjectsBuilder {
 		
 		GeneAnnotation ga = new GeneAnnotation(entity.getId(),
 				isContributesTo, isIntegeralTo, compositeQualifier, clsId, referenceId, evidenceCls, 
-				withExpression, actsOnTaxonId, lastUpdateDate, assignedBy,extensionExpression, geneProductForm, gafDocument.getId());
+				withExpression, actsOnTaxonId, lastUpdateDate, assignedBy,extensionExpression, geneProductForm, docId);
 		ga.setBioentityObject(entity);
 		ga.setRelation(relation);
-		AnnotationSource source = new AnnotationSource(parser.getCurrentRow(), parser.getLineNumber(), gafDocument.getId());
+		AnnotationSource source = new AnnotationSource(parser.getCurrentRow(), parser.getLineNumber(), docId);
 		ga.setSource(source);
-		gafDocument.addGeneAnnotation(ga);
+		return ga;
 		
 	}
 	
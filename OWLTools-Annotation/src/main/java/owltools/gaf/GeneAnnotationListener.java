@@ -0,0 +1,15 @@
+package owltools.gaf;
+
+/**
+ * Receives the annotations of a gaf file as they are parsed, see {@link StreamingGafParser}.
+ */
+public interface GeneAnnotationListener {
+
+	/**
+	 * Called once for each annotation. If the parser uses more than one
+	 * thread, this method is called concurrently from the worker threads.
+	 * 
+	 * @param annotation
+	 */
+	public void annotation(GeneAnnotation annotation);
+}
@@ -0,0 +1,316 @@
+package owltools.gaf;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Parses a gaf file without building a {@link GafDocument}. Each annotation is
+ * passed to the registered {@link GeneAnnotationListener}s as soon as its row
+ * has been parsed, so memory use does not depend on the size of the file.
+ * <br>
+ * The calling thread reads the file and hands batches of rows to a pool of
+ * worker threads, which split the rows and build the annotations. If the workers
+ * fall behind, the reading thread parses the next batch itself. With more than one
+ * thread, annotations from different batches arrive in no particular order and
+ * the listeners are called concurrently. {@link GafParserListener}s are called
+ * from one thread at a time.
+ * <br>
+ * Unlike {@link GafObjectsBuilder}, each annotation has its own {@link Bioentity}
+ * object and with infos, qualifiers and extension expressions are not indexed.
+ */
+public class StreamingGafParser {
+
+	private final static Logger LOG = Logger.getLogger(StreamingGafParser.class);
+
+	private final int numThreads;
+	private int batchSize = 1000;
+
+	private final List<GafParserListener> parserListeners = new Vector<GafParserListener>();
+	private final List<GeneAnnotationListener> annotationListeners = new Vector<GeneAnnotationListener>();
+
+	private int lineCount = 0;
+	private final AtomicInteger annotationCount = new AtomicInteger();
+	private final AtomicInteger errorCount = new AtomicInteger();
+
+	/**
+	 * @param numThreads number of worker threads
+	 */
+	public StreamingGafParser(int numThreads) {
+		this.numThreads = Math.max(1, numThreads);
+	}
+
+	public StreamingGafParser() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * @param batchSize number of rows handed to a worker at once
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = Math.max(1, batchSize);
+	}
+
+	public void addParserListener(GafParserListener listener) {
+		if (listener != null && !parserListeners.contains(listener))
+			parserListeners.add(listener);
+	}
+
+	public void removeParserListener(GafParserListener listener) {
+		parserListeners.remove(listener);
+	}
+
+	public void addAnnotationListener(GeneAnnotationListener listener) {
+		if (listener != null && !annotationListeners.contains(listener))
+			annotationListeners.add(listener);
+	}
+
+	public void removeAnnotationListener(GeneAnnotationListener listener) {
+		annotationListeners.remove(listener);
+	}
+
+	/**
+	 * @param file location of a gaf file, see {@link GAFParser#parse(String)}
+	 * @return number of annotations
+	 * @throws IOException
+	 * @throws URISyntaxException
+	 */
+	public int parse(String file) throws IOException, URISyntaxException {
+		if (file == null) {
+			throw new IOException("File '" + file + "' file not found");
+		}
+		return parse(new InputStreamReader(GAFParser.open(file)), new File(file).getName());
+	}
+
+	/**
+	 * Parses all rows, and returns when all annotations have been passed to the listeners.
+	 * The reader is closed afterwards.
+	 *
+	 * @param reader
+	 * @param docId used as the gaf document of the annotations and bioentities
+	 * @return number of annotations
+	 * @throws IOException
+	 */
+	public int parse(Reader reader, final String docId) throws IOException {
+		lineCount = 0;
+		annotationCount.set(0);
+		errorCount.set(0);
+		long t1 = System.currentTimeMillis();
+
+		final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+		final GafParserListener listener = new SynchronizedParserListener();
+		// bounded queue; when it is full the reading thread runs the batch itself
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(numThreads, numThreads, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(numThreads * 2), new ThreadPoolExecutor.CallerRunsPolicy());
+		BufferedReader br = new BufferedReader(reader);
+		try {
+			int expectedNumCols = 15;
+			List<String> rows = new ArrayList<String>(batchSize);
+			List<Integer> lineNumbers = new ArrayList<Integer>(batchSize);
+			String row;
+			while ((row = br.readLine()) != null && error.get() == null) {
+				lineCount++;
+				if (row.trim().length() == 0) {
+					LOG.warn("Blank Line");
+				}
+				else if (row.startsWith(GAFParser.GAF_COMMENT)) {
+					if (GAFParser.isFormatDeclaration(row) && GAFParser.parseGafVersion(row) == 2.0) {
+						expectedNumCols = 17;
+					}
+				}
+				else {
+					rows.add(row);
+					lineNumbers.add(lineCount);
+					if (rows.size() >= batchSize) {
+						executor.execute(new Batch(rows, lineNumbers, expectedNumCols, docId, listener, error));
+						rows = new ArrayList<String>(batchSize);
+						lineNumbers = new ArrayList<Integer>(batchSize);
+					}
+				}
+			}
+			if (!rows.isEmpty()) {
+				executor.execute(new Batch(rows, lineNumbers, expectedNumCols, docId, listener, error));
+			}
+		}
+		finally {
+			executor.shutdown();
+			br.close();
+		}
+		try {
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while parsing gaf "+docId);
+		}
+		if (error.get() != null) {
+			throw new RuntimeException("Could not parse gaf "+docId, error.get());
+		}
+		long t2 = System.currentTimeMillis();
+		LOG.info("Parsed gaf "+docId+": lines="+lineCount+" annotations="+annotationCount.get()+
+				" errors="+errorCount.get()+" threads="+numThreads+" time="+(t2-t1)+"ms");
+		return annotationCount.get();
+	}
+
+	/**
+	 * Parses the rows on the worker threads and collects the annotations into a
+	 * {@link GafDocument}. The document is the same as the one of
+	 * {@link GafObjectsBuilder#buildDocument(String)}: the annotations are added
+	 * in the order of the file, with their with infos, qualifiers and extension
+	 * expressions. Unlike {@link #parse(String)}, all annotations are kept in memory.
+	 *
+	 * @param file location of a gaf file, see {@link GAFParser#parse(String)}
+	 * @return gafDocument or null, if the file has no annotations
+	 * @throws IOException
+	 * @throws URISyntaxException
+	 */
+	public GafDocument buildDocument(String file) throws IOException, URISyntaxException {
+		if (file == null) {
+			throw new IOException("File '" + file + "' file not found");
+		}
+		File gafFile = new File(file);
+		final List<GeneAnnotation> annotations = new ArrayList<GeneAnnotation>();
+		GeneAnnotationListener collector = new GeneAnnotationListener() {
+
+			public void annotation(GeneAnnotation annotation) {
+				synchronized (annotations) {
+					annotations.add(annotation);
+				}
+			}
+		};
+		addAnnotationListener(collector);
+		try {
+			parse(new InputStreamReader(GAFParser.open(file)), gafFile.getName());
+		}
+		finally {
+			removeAnnotationListener(collector);
+		}
+		// batches finish in no particular order, restore the order of the rows
+		Collections.sort(annotations, new Comparator<GeneAnnotation>() {
+
+			public int compare(GeneAnnotation a1, GeneAnnotation a2) {
+				int l1 = a1.getSource().getLineNumber();
+				int l2 = a2.getSource().getLineNumber();
+				return l1 < l2 ? -1 : (l1 == l2 ? 0 : 1);
+			}
+		});
+		GafDocument gafDocument = new GafDocument(gafFile.getName(), gafFile.getCanonicalPath());
+		for (GeneAnnotation ga : annotations) {
+			GafObjectsBuilder.addToDocument(gafDocument, ga);
+		}
+		return gafDocument.getBioentities().isEmpty() ? null : gafDocument;
+	}
+
+	/**
+	 * @return number of lines read in the last call to parse
+	 */
+	public int getLineCount() {
+		return lineCount;
+	}
+
+	/**
+	 * @return number of annotations passed to the listeners in the last call to parse
+	 */
+	public int getAnnotationCount() {
+		return annotationCount.get();
+	}
+
+	/**
+	 * @return number of rows skipped in the last call to parse, because of too few columns
+	 */
+	public int getErrorCount() {
+		return errorCount.get();
+	}
+
+	private class Batch implements Runnable {
+
+		private final List<String> rows;
+		private final List<Integer> lineNumbers;
+		private final int expectedNumCols;
+		private final String docId;
+		private final GafParserListener listener;
+		private final AtomicReference<Throwable> error;
+
+		Batch(List<String> rows, List<Integer> lineNumbers, int expectedNumCols, String docId,
+				GafParserListener listener, AtomicReference<Throwable> error) {
+			this.rows = rows;
+			this.lineNumbers = lineNumbers;
+			this.expectedNumCols = expectedNumCols;
+			this.docId = docId;
+			this.listener = listener;
+			this.error = error;
+		}
+
+		public void run() {
+			if (error.get() != null)
+				return;
+			try {
+				GAFParser parser = new GAFParser();
+				parser.addParserListener(listener);
+				for (int i = 0; i < rows.size(); i++) {
+					if (!parser.setCurrentRow(rows.get(i), lineNumbers.get(i), expectedNumCols)) {
+						errorCount.incrementAndGet();
+						continue;
+					}
+					Bioentity entity = GafObjectsBuilder.createBioentity(parser, docId);
+					GeneAnnotation ga = GafObjectsBuilder.createGeneAnnotation(parser, entity, docId);
+					for (GeneAnnotationListener l : annotationListeners) {
+						l.annotation(ga);
+					}
+					annotationCount.incrementAndGet();
+				}
+			}
+			catch (Throwable t) {
+				error.compareAndSet(null, t);
+			}
+		}
+	}
+
+	/**
+	 * Forwards to the registered parser listeners, one thread at a time.
+	 */
+	private class SynchronizedParserListener implements GafParserListener {
+
+		public synchronized void parsing(String line, int lineNumber) {
+			for (GafParserListener l : parserListeners) {
+				l.parsing(line, lineNumber);
+			}
+		}
+
+		public synchronized void parserError(String errorMessage, String line, int lineNumber) {
+			for (GafParserListener l : parserListeners) {
+				l.parserError(errorMessage, line, lineNumber);
+			}
+		}
+
+		public synchronized void parserWarning(String message, String line, int lineNumber) {
+			for (GafParserListener l : parserListeners) {
+				if (l.reportWarnings()) {
+					l.parserWarning(message, line, lineNumber);
+				}
+			}
+		}
+
+		public boolean reportWarnings() {
+			return true;
+		}
+	}
+}
@@ -14,6 +14,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import org.apache.log4j.Logger;
 import org.semanticweb.owlapi.model.OWLOntology;
@@ -32,11 +39,27 @@ public class AnnotationRulesEngine {
 	
 	private final AnnotationRulesFactory rulesFactory;
 	
+	private final int numThreads;
+	
 	public AnnotationRulesEngine(AnnotationRulesFactory rulesFactory){
+		this(rulesFactory, 1);
+	}
+	
+	/**
+	 * @param rulesFactory
+	 * @param numThreads number of threads for the annotation level rules, 
+	 * the rules must be safe for use by multiple threads if this is greater than one.
+	 */
+	public AnnotationRulesEngine(AnnotationRulesFactory rulesFactory, int numThreads){
 		this.rulesFactory = rulesFactory;
+		this.numThreads = Math.max(1, numThreads);
 		rulesFactory.init();
 	}
 	
+	public int getNumThreads() {
+		return numThreads;
+	}
+	
 	
 	/**
 	 * Retrieve the corresponding rule for a given rule id.
@@ -93,30 +116,16 @@ public class AnnotationRulesEngine {
 		
 		AnnotationRulesEngineResult result = new AnnotationRulesEngineResult();
 		
-		LOG.info("Start validation on annotation level with "+annotationRules.size()+" rules.");
+		LOG.info("Start validation on annotation level with "+annotationRules.size()+" rules and "+numThreads+" threads.");
 		try{
-			final List<GeneAnnotation> geneAnnotations = doc.getGeneAnnotations();
-			int count = 0;
-			double size = geneAnnotations.size(); // store as double to avoid repeated conversion
-			double last = 0.0d;
-			for(GeneAnnotation annotation : geneAnnotations){
-				for(AnnotationRule rule : annotationRules){
-					if (!isGrandFatheredAnnotation(annotation, rule)) {
-						result.addViolations(rule.getRuleViolations(annotation));
-					}
-				}
-				count += 1;
-				double current = count / size;
-				if (Math.abs(current - last) > 0.05d) {
-					NumberFormat percentInstance = DecimalFormat.getPercentInstance();
-					LOG.info("Progress: "+percentInstance.format(current));
-					last = current;
-				}
-			}
+			validateAnnotations(doc.getGeneAnnotations(), annotationRules, result);
 			if (documentRules != null && !documentRules.isEmpty()) {
 				LOG.info("Start validation on document level with "+documentRules.size()+" rules.");
 				for (AnnotationRule rule : documentRules) {
-					result.addViolations(rule.getRuleViolations(doc));
+					long t = System.nanoTime();
+					Set<AnnotationRuleViolation> violations = rule.getRuleViolations(doc);
+					result.getRuleStatistics(rule.getRuleId()).add(System.nanoTime() - t, 1, violations);
+					result.addViolations(violations);
 				}
 			}
 			OWLGraphWrapper graph = rulesFactory.getGraph();
@@ -128,7 +137,10 @@ public class AnnotationRulesEngine {
 				OWLOntology translated = bridge.translate(doc);
 				OWLGraphWrapper translatedGraph = new OWLGraphWrapper(translated);
 				for(AnnotationRule rule : owlRules) {
-					result.addViolations(rule.getRuleViolations(translatedGraph));
+					long t = System.nanoTime();
+					Set<AnnotationRuleViolation> violations = rule.getRuleViolations(translatedGraph);
+					result.getRuleStatistics(rule.getRuleId()).add(System.nanoTime() - t, 1, violations);
+					result.addViolations(violations);
 				}
 			}
 			
@@ -137,26 +149,191 @@ public class AnnotationRulesEngine {
 			throw new RuntimeException(ex);
 		}
 		LOG.info("Finished validation of annotations.");
+		for (RuleStatistics stats : result.getRuleStatistics()) {
+			LOG.info(stats);
+		}
 		return result;
 	}
 	
-	private boolean isGrandFatheredAnnotation(GeneAnnotation annotation, AnnotationRule rule) {
-		if (rule.hasGrandFathering()) {
-			String dateString = annotation.getLastUpdateDate();
+	/**
+	 * Applies the annotation level rules. The annotations are split into chunks,
+	 * which are checked in parallel. The violations of each chunk are collected
+	 * separately and added to the result in the order of the chunks, so the
+	 * result is the same as for a single thread.
+	 */
+	private void validateAnnotations(final List<GeneAnnotation> geneAnnotations,
+			final List<AnnotationRule> annotationRules,
+			AnnotationRulesEngineResult result) throws InterruptedException, ExecutionException {
+		
+		boolean hasGrandFathering = false;
+		for (AnnotationRule rule : annotationRules) {
+			hasGrandFathering |= rule.hasGrandFathering();
+		}
+		final boolean parseDates = hasGrandFathering;
+		final int size = geneAnnotations.size();
+		final AtomicInteger count = new AtomicInteger();
+		final AtomicInteger lastPercent = new AtomicInteger();
+		final int numRules = annotationRules.size();
+		// per rule: time in ns and violation count, indexed by position in annotationRules
+		final AtomicLongArray ruleTimes = new AtomicLongArray(numRules);
+		final AtomicLongArray ruleViolations = new AtomicLongArray(numRules);
+		
+		int chunkSize = numThreads == 1 ? Math.max(1, size) : Math.max(100, size / (numThreads * 16));
+		List<Callable<List<Set<AnnotationRuleViolation>>>> tasks = new ArrayList<Callable<List<Set<AnnotationRuleViolation>>>>();
+		for (int i = 0; i < size; i += chunkSize) {
+			final List<GeneAnnotation> chunk = geneAnnotations.subList(i, Math.min(size, i + chunkSize));
+			tasks.add(new Callable<List<Set<AnnotationRuleViolation>>>() {
+
+				@Override
+				public List<Set<AnnotationRuleViolation>> call() throws Exception {
+					List<Set<AnnotationRuleViolation>> chunkViolations = new ArrayList<Set<AnnotationRuleViolation>>();
+					long[] times = new long[numRules];
+					long[] violationCounts = new long[numRules];
+					for (GeneAnnotation annotation : chunk) {
+						// parse the date once for all rules
+						Date date = parseDates ? parseDate(annotation) : null;
+						for (int r = 0; r < numRules; r++) {
+							AnnotationRule rule = annotationRules.get(r);
+							if (!isGrandFatheredAnnotation(date, rule)) {
+								long t = System.nanoTime();
+								Set<AnnotationRuleViolation> violations = rule.getRuleViolations(annotation);
+								times[r] += System.nanoTime() - t;
+								if (violations != null && !violations.isEmpty()) {
+									violationCounts[r] += violations.size();
+									chunkViolations.add(violations);
+								}
+							}
+						}
+						logProgress(count.incrementAndGet(), size, lastPercent);
+					}
+					for (int r = 0; r < numRules; r++) {
+						ruleTimes.addAndGet(r, times[r]);
+						ruleViolations.addAndGet(r, violationCounts[r]);
+					}
+					return chunkViolations;
+				}
+			});
+		}
+		
+		if (numThreads == 1) {
+			for (Callable<List<Set<AnnotationRuleViolation>>> task : tasks) {
+				try {
+					addAll(result, task.call());
+				} catch (Exception e) {
+					throw new ExecutionException(e);
+				}
+			}
+		}
+		else {
+			ExecutorService executor = Executors.newFixedThreadPool(numThreads);
 			try {
-				Date date = BasicChecksRule.dtFormat.get().parse(dateString);
-				if (date.before(rule.getGrandFatheringDate())) {
-					// is grand fathered
-					return true;
+				for (Future<List<Set<AnnotationRuleViolation>>> future : executor.invokeAll(tasks)) {
+					addAll(result, future.get());
 				}
-			} catch (ParseException e) {
-				// ignore
+			}
+			finally {
+				executor.shutdownNow();
+			}
+		}
+		for (int r = 0; r < numRules; r++) {
+			result.getRuleStatistics(annotationRules.get(r).getRuleId()).add(ruleTimes.get(r), size, (int) ruleViolations.get(r));
+		}
+	}
+	
+	private static void addAll(AnnotationRulesEngineResult result, List<Set<AnnotationRuleViolation>> violations) {
+		for (Set<AnnotationRuleViolation> set : violations) {
+			result.addViolations(set);
+		}
+	}
+	
+	private static void logProgress(int count, int size, AtomicInteger lastPercent) {
+		int percent = (int) ((100L * count) / size);
+		int last = lastPercent.get();
+		if (percent - last > 5 && lastPercent.compareAndSet(last, percent)) {
+			NumberFormat percentInstance = DecimalFormat.getPercentInstance();
+			LOG.info("Progress: "+percentInstance.format(count / (double) size));
+		}
+	}
+	
+	private static Date parseDate(GeneAnnotation annotation) {
+		String dateString = annotation.getLastUpdateDate();
+		if (dateString == null) {
+			return null;
+		}
+		try {
+			return BasicChecksRule.dtFormat.get().parse(dateString);
+		} catch (ParseException e) {
+			// ignore
+			return null;
+		}
+	}
+	
+	private static boolean isGrandFatheredAnnotation(Date date, AnnotationRule rule) {
+		if (date != null && rule.hasGrandFathering()) {
+			if (date.before(rule.getGrandFatheringDate())) {
+				// is grand fathered
+				return true;
 			}
 		}
 		
 		return false;
 	}
 	
+	/**
+	 * Time spent and violations found by one rule during a run of the {@link AnnotationRulesEngine}.
+	 */
+	public static class RuleStatistics {
+		
+		private final String ruleId;
+		private long nanos = 0;
+		private int checked = 0;
+		private int violations = 0;
+		
+		RuleStatistics(String ruleId) {
+			this.ruleId = ruleId;
+		}
+		
+		synchronized void add(long nanos, int checked, Set<AnnotationRuleViolation> violations) {
+			add(nanos, checked, violations == null ? 0 : violations.size());
+		}
+		
+		synchronized void add(long nanos, int checked, int violations) {
+			this.nanos += nanos;
+			this.checked += checked;
+			this.violations += violations;
+		}
+		
+		public String getRuleId() {
+			return ruleId;
+		}
+		
+		/**
+		 * @return time spent in the rule, summed over all threads
+		 */
+		public synchronized long getMillis() {
+			return nanos / 1000000L;
+		}
+		
+		/**
+		 * @return number of annotations or documents the rule was applied to
+		 */
+		public synchronized int getChecked() {
+			return checked;
+		}
+		
+		/**
+		 * @return number of violations found by the rule
+		 */
+		public synchronized int getViolations() {
+			return violations;
+		}
+		
+		@Override
+		public synchronized String toString() {
+			return "Rule "+ruleId+": time="+getMillis()+"ms checked="+checked+" violations="+violations;
+		}
+	}
+	
 	
 	/**
 	 * Results for a run of the {@link AnnotationRulesEngine}.
@@ -164,13 +341,41 @@ public class AnnotationRulesEngine {
 	public static class AnnotationRulesEngineResult {
 		
 		private final Map<ViolationType, Map<String, List<AnnotationRuleViolation>>> typedViolations;
+		private final Map<String, RuleStatistics> ruleStatistics;
 		
 		AnnotationRulesEngineResult() {
 			super();
 			typedViolations = new HashMap<ViolationType, Map<String,List<AnnotationRuleViolation>>>();
+			ruleStatistics = new HashMap<String, RuleStatistics>();
+		}
+		
+		synchronized RuleStatistics getRuleStatistics(String ruleId) {
+			RuleStatistics stats = ruleStatistics.get(ruleId);
+			if (stats == null) {
+				stats = new RuleStatistics(ruleId);
+				ruleStatistics.put(ruleId, stats);
+			}
+			return stats;
+		}
+		
+		/**
+		 * @return time and violation count for each rule, the slowest rule first
+		 */
+		public synchronized List<RuleStatistics> getRuleStatistics() {
+			List<RuleStatistics> list = new ArrayList<RuleStatistics>(ruleStatistics.values());
+			Collections.sort(list, new Comparator<RuleStatistics>() {
+
+				@Override
+				public int compare(RuleStatistics o1, RuleStatistics o2) {
+					long t1 = o1.getMillis();
+					long t2 = o2.getMillis();
+					return (t1 > t2 ? -1 : (t1 == t2 ? 0 : 1));
+				}
+			});
+			return list;
 		}
 		
-		void addViolations(Iterable<AnnotationRuleViolation> violations) {
+		synchronized void addViolations(Iterable<AnnotationRuleViolation> violations) {
 			if (violations != null) {
 				for (AnnotationRuleViolation violation : violations) {
 					ViolationType type = violation.getType();
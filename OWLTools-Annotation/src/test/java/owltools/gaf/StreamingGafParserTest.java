@@ -0,0 +1,97 @@
+package owltools.gaf;
+
+import static junit.framework.Assert.*;
+
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import owltools.OWLToolsTestBasics;
+
+public class StreamingGafParserTest extends OWLToolsTestBasics {
+
+	@Test
+	public void testParse() throws Exception {
+		GafObjectsBuilder builder = new GafObjectsBuilder();
+		GafDocument doc = builder.buildDocument(getResource("test_gene_association_mgi.gaf"));
+		List<String> expected = new ArrayList<String>();
+		for (GeneAnnotation ga : doc.getGeneAnnotations()) {
+			expected.add(render(ga));
+		}
+		Collections.sort(expected);
+
+		final List<String> actual = Collections.synchronizedList(new ArrayList<String>());
+		StreamingGafParser parser = new StreamingGafParser(4);
+		parser.setBatchSize(7);
+		parser.addAnnotationListener(new GeneAnnotationListener() {
+
+			public void annotation(GeneAnnotation annotation) {
+				actual.add(render(annotation));
+			}
+		});
+		int n = parser.parse(new FileReader(getResource("test_gene_association_mgi.gaf")), doc.getId());
+		Collections.sort(actual);
+
+		assertEquals(expected.size(), n);
+		assertEquals(expected, actual);
+	}
+
+	@Test
+	public void testBuildDocument() throws Exception {
+		String file = getResource("test_gene_association_mgi.gaf").getAbsolutePath();
+		GafDocument expected = new GafObjectsBuilder().buildDocument(file);
+		StreamingGafParser parser = new StreamingGafParser(4);
+		parser.setBatchSize(7);
+		GafDocument actual = parser.buildDocument(file);
+
+		assertEquals(expected.getId(), actual.getId());
+		assertEquals(expected.getDocumentPath(), actual.getDocumentPath());
+		assertEquals(expected.getBioentities().size(), actual.getBioentities().size());
+		for (Bioentity e : expected.getBioentities()) {
+			Bioentity a = actual.getBioentity(e.getId());
+			assertNotNull(e.getId(), a);
+			assertEquals(e.getSymbol(), a.getSymbol());
+			assertEquals(e.getNcbiTaxonId(), a.getNcbiTaxonId());
+			assertEquals(e.getGafDocument(), a.getGafDocument());
+		}
+		// same annotations in the same order
+		List<GeneAnnotation> expectedAnnotations = expected.getGeneAnnotations();
+		List<GeneAnnotation> actualAnnotations = actual.getGeneAnnotations();
+		assertEquals(expectedAnnotations.size(), actualAnnotations.size());
+		for (int i = 0; i < expectedAnnotations.size(); i++) {
+			GeneAnnotation e = expectedAnnotations.get(i);
+			GeneAnnotation a = actualAnnotations.get(i);
+			assertEquals(render(e), render(a));
+			assertEquals(e.getWithInfos().size(), a.getWithInfos().size());
+			assertEquals(e.getCompositeQualifiers().size(), a.getCompositeQualifiers().size());
+			assertEquals(e.getExtensionExpressions().size(), a.getExtensionExpressions().size());
+		}
+		assertEquals(expected.getWithInfosIds(), actual.getWithInfosIds());
+		assertEquals(expected.getCompositeQualifiersIds(), actual.getCompositeQualifiersIds());
+		assertEquals(expected.getExtensionExpressionIds(), actual.getExtensionExpressionIds());
+
+		// as used by the loaders
+		expected.index();
+		actual.index();
+		for (Bioentity e : expected.getBioentities()) {
+			assertEquals(expected.getGeneAnnotations(e.getId()).size(), actual.getGeneAnnotations(e.getId()).size());
+		}
+	}
+
+	@Test
+	public void testSplitColumns() {
+		String[] rows = {"", "a", "a\tb", "\t", "a\t\tb\t", "\t\ta"};
+		for (String row : rows) {
+			assertTrue(row, Arrays.equals(row.split("\\t", -1), GAFParser.splitColumns(row)));
+		}
+	}
+
+	private static String render(GeneAnnotation ga) {
+		return ga.getSource().getLineNumber()+" "+ga.getBioentity()+" "+ga.getCls()+" "+
+			ga.getEvidenceCls()+" "+ga.getRelation()+" "+ga.getGafDocument();
+	}
+}
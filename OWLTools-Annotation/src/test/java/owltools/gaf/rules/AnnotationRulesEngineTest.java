@@ -31,6 +31,7 @@ public class AnnotationRulesEngineTest extends OWLToolsTestBasics {
 
 	private static boolean renderViolations = false;
 	private static final String LOCATION = "src/test/resources/rules/";
+	private static AnnotationRulesFactory rulesFactory = null;
 	private static AnnotationRulesEngine engine = null;
 
 	@BeforeClass
@@ -45,7 +46,7 @@ public class AnnotationRulesEngineTest extends OWLToolsTestBasics {
 		OWLOntology goTaxon = p.parse("http://purl.obolibrary.org/obo/go/extensions/x-taxon-importer.owl");
 		OWLOntology eco = p.parseOBOFiles(Arrays.asList(getResource("eco.obo").getAbsolutePath()));
 		
-		AnnotationRulesFactory rulesFactory = new GoAnnotationRulesFactoryImpl(
+		rulesFactory = new GoAnnotationRulesFactoryImpl(
 				qcfile, xrfabbslocation, new OWLGraphWrapper(goTaxon), new OWLGraphWrapper(eco));
 		engine = new AnnotationRulesEngine(rulesFactory);
 	}
@@ -81,6 +82,40 @@ public class AnnotationRulesEngineTest extends OWLToolsTestBasics {
 		assertEquals(1, errors.get("GO_AR:0000014").size());
 	}
 
+	@Test
+	public void testValidateAnnotationsParallel() throws Exception {
+		GafObjectsBuilder builder = new GafObjectsBuilder();
+		GafDocument gafdoc = builder.buildDocument(getResource("test_gene_association_mgi.gaf"));
+		AnnotationRulesEngineResult expected = engine.validateAnnotations(gafdoc);
+		AnnotationRulesEngineResult result = new AnnotationRulesEngine(rulesFactory, 4).validateAnnotations(gafdoc);
+		
+		assertEquals(expected.getTypes(), result.getTypes());
+		for (ViolationType type : expected.getTypes()) {
+			Map<String, List<AnnotationRuleViolation>> expectedViolations = expected.getViolations(type);
+			Map<String, List<AnnotationRuleViolation>> violations = result.getViolations(type);
+			assertEquals(expectedViolations.keySet(), violations.keySet());
+			for (String ruleId : expectedViolations.keySet()) {
+				List<AnnotationRuleViolation> list = violations.get(ruleId);
+				assertEquals(expectedViolations.get(ruleId).size(), list.size());
+				for (int i = 0; i < list.size(); i++) {
+					assertEquals(expectedViolations.get(ruleId).get(i).getLineNumber(), list.get(i).getLineNumber());
+				}
+			}
+		}
+		
+		// every annotation level rule has statistics
+		for (AnnotationRule rule : rulesFactory.getGeneAnnotationRules()) {
+			boolean found = false;
+			for (AnnotationRulesEngine.RuleStatistics stats : result.getRuleStatistics()) {
+				if (rule.getRuleId().equals(stats.getRuleId())) {
+					assertEquals(gafdoc.getGeneAnnotations().size(), stats.getChecked());
+					found = true;
+				}
+			}
+			assertTrue(rule.getRuleId(), found);
+		}
+	}
+
 	private static void renderViolations(AnnotationRulesEngineResult result) {
 		final PrintWriter writer = new PrintWriter(System.out);
 		AnnotationRulesEngineResult.renderViolations(result, engine, writer);
@@ -0,0 +1,122 @@
+package owltools.benchmark;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.AxiomType;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+
+import owltools.graph.OWLGraphWrapper;
+import owltools.io.ParserWrapper;
+import owltools.io.TableToAxiomConverter;
+
+/**
+ * Test data for the benchmarks.
+ * <br>
+ * Ontologies are named either by a file in the test resources of OWLTools-Core and
+ * OWLTools-Annotation, like caro.obo or go-subset-t1.obo, or as synthetic:N for an
+ * ontology of N classes made by {@link SyntheticOntologyGenerator}, with N/10 individuals.
+ * <br>
+ * The resource directories are found relative to the working directory, which works
+ * when running from the benchmark module or from the project root. Set the system property
+ * owltools.benchmark.resources to a list of directories, separated by the path separator,
+ * to use other files.
+ */
+public class BenchmarkData {
+
+	public static final String SYNTHETIC = "synthetic:";
+
+	/**
+	 * The go subset with the simplegaf annotations as class assertions,
+	 * as in the enrichment test.
+	 */
+	public static final String GO_SIMPLEGAF = "go-subset-t1.obo+simplegaf-t1.txt";
+
+	private static final String[] DEFAULT_RESOURCE_DIRS = {
+		"../OWLTools-Core/src/test/resources",
+		"../OWLTools-Annotation/src/test/resources",
+		"OWLTools-Core/src/test/resources",
+		"OWLTools-Annotation/src/test/resources"
+	};
+
+	private BenchmarkData() {
+		// static methods only
+	}
+
+	/**
+	 * @param name
+	 * @return file for the resource
+	 * @throws FileNotFoundException if the resource is not in any of the resource directories
+	 */
+	public static File getResource(String name) throws FileNotFoundException {
+		String dirs = System.getProperty("owltools.benchmark.resources");
+		String[] dirList = dirs == null ? DEFAULT_RESOURCE_DIRS : dirs.split(File.pathSeparator);
+		for (String dir : dirList) {
+			File file = new File(dir, name);
+			if (file.exists())
+				return file;
+		}
+		throw new FileNotFoundException("Benchmark resource "+name+" not found in: "+Arrays.toString(dirList));
+	}
+
+	/**
+	 * @param name resource name, synthetic:N or {@link #GO_SIMPLEGAF}
+	 * @return graph for the ontology
+	 * @throws OWLOntologyCreationException
+	 * @throws IOException
+	 */
+	public static OWLGraphWrapper loadGraph(String name) throws OWLOntologyCreationException, IOException {
+		if (name.startsWith(SYNTHETIC)) {
+			int numClasses = Integer.parseInt(name.substring(SYNTHETIC.length()));
+			SyntheticOntologyGenerator gen = new SyntheticOntologyGenerator(numClasses, Math.max(10, numClasses / 10));
+			return new OWLGraphWrapper(gen.generate(OWLManager.createOWLOntologyManager()));
+		}
+		if (name.equals(GO_SIMPLEGAF)) {
+			ParserWrapper pw = new ParserWrapper();
+			OWLOntology ont = pw.parse(getResource("go-subset-t1.obo").getAbsolutePath());
+			OWLGraphWrapper g = new OWLGraphWrapper(ont);
+			IRI vpIRI = g.getOWLObjectPropertyByIdentifier("GOTESTREL:0000001").getIRI();
+			TableToAxiomConverter ttac = new TableToAxiomConverter(g);
+			ttac.config.axiomType = AxiomType.CLASS_ASSERTION;
+			ttac.config.property = vpIRI;
+			ttac.config.isSwitchSubjectObject = true;
+			ttac.parse(getResource("simplegaf-t1.txt").getAbsolutePath());
+			return g;
+		}
+		ParserWrapper pw = new ParserWrapper();
+		return new OWLGraphWrapper(pw.parse(getResource(name).getAbsolutePath()));
+	}
+
+	/**
+	 * @param objects
+	 * @param n
+	 * @param seed
+	 * @return up to n objects, picked at random but reproducibly
+	 */
+	public static <T> List<T> sample(Iterable<? extends T> objects, int n, long seed) {
+		List<T> all = new ArrayList<T>();
+		for (T t : objects) {
+			all.add(t);
+		}
+		// sort first, so the sample does not depend on hash order
+		Collections.sort(all, new Comparator<T>() {
+
+			@Override
+			public int compare(T a, T b) {
+				return a.toString().compareTo(b.toString());
+			}
+		});
+		Collections.shuffle(all, new Random(seed));
+		return all.size() > n ? new ArrayList<T>(all.subList(0, n)) : all;
+	}
+}
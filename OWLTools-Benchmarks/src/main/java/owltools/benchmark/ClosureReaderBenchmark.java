@@ -0,0 +1,111 @@
+package owltools.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.semanticweb.owlapi.model.OWLObject;
+
+import owltools.graph.OWLGraphClosureCache;
+import owltools.graph.OWLGraphWrapper;
+import owltools.io.BinaryGraphClosureReader;
+import owltools.io.BinaryGraphClosureRenderer;
+import owltools.io.CompactGraphClosureReader;
+import owltools.io.CompactGraphClosureRenderer;
+
+/**
+ * Loading a precomputed closure, in the compact text format and in the
+ * binary format, followed by closure lookups for a sample of the objects.
+ * <br>
+ * Both closures are rendered once in the setup. The compact closure is kept
+ * in memory, so the text benchmark does not measure disk access; the binary
+ * closure is written to a temporary file, as it is memory-mapped on reading.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClosureReaderBenchmark {
+
+	static final int SAMPLE_SIZE = 100;
+
+	@Param({"caro.obo", "go-subset-t1.obo", "synthetic:10000"})
+	public String ontology;
+
+	private OWLGraphWrapper graph;
+	private OWLGraphClosureCache closureCache;
+	private List<OWLObject> sample;
+	private byte[] compactClosure;
+	private File binaryClosure;
+
+	@Setup
+	public void setup() throws Exception {
+		graph = BenchmarkData.loadGraph(ontology);
+		closureCache = graph.getOutgoingClosureCache();
+		sample = BenchmarkData.sample(graph.getAllOWLObjects(), SAMPLE_SIZE, 1);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		new CompactGraphClosureRenderer(new PrintStream(bytes)).render(graph);
+		compactClosure = bytes.toByteArray();
+
+		binaryClosure = File.createTempFile("owltools-benchmark-closure", ".bin");
+		binaryClosure.deleteOnExit();
+		new BinaryGraphClosureRenderer(binaryClosure.getAbsolutePath()).render(graph);
+	}
+
+	@TearDown
+	public void tearDown() {
+		binaryClosure.delete();
+	}
+
+	@Benchmark
+	public void compactRead(Blackhole bh) throws Exception {
+		reset();
+		CompactGraphClosureReader reader = new CompactGraphClosureReader(graph);
+		reader.setStream(new ByteArrayInputStream(compactClosure));
+		reader.read();
+		lookup(bh);
+	}
+
+	@Benchmark
+	public void binaryRead(Blackhole bh) throws Exception {
+		reset();
+		BinaryGraphClosureReader reader = new BinaryGraphClosureReader(graph);
+		reader.read(binaryClosure.getAbsolutePath());
+		bh.consume(reader.getNumberOfSources());
+		lookup(bh);
+	}
+
+	/**
+	 * Restores the original, empty, cache: the binary reader wraps the cache
+	 * of the graph, so the wrappers would otherwise nest across invocations.
+	 */
+	private void reset() {
+		closureCache.clear();
+		graph.setOutgoingClosureCache(closureCache);
+	}
+
+	private void lookup(Blackhole bh) {
+		for (OWLObject x : sample) {
+			bh.consume(graph.getOutgoingEdgesClosure(x));
+		}
+	}
+}
@@ -0,0 +1,130 @@
+package owltools.benchmark;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import owltools.gaf.GAFParser;
+import owltools.gaf.GafDocument;
+import owltools.gaf.GafObjectsBuilder;
+import owltools.gaf.GeneAnnotation;
+import owltools.gaf.GeneAnnotationListener;
+import owltools.gaf.StreamingGafParser;
+
+/**
+ * GAF parsing throughput, as time per line.
+ * <br>
+ * The rows of a test gaf file are repeated in memory up to a fixed number of
+ * lines, so the benchmark measures parsing and not disk reads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GAFParserBenchmark {
+
+	static final int NUM_LINES = 100000;
+
+	@Param({"test_gene_association_mgi.gaf"})
+	public String gaf;
+
+	/**
+	 * Parameter for the streaming parser only.
+	 */
+	@State(Scope.Benchmark)
+	public static class Threads {
+
+		@Param({"1", "4"})
+		public int threads;
+	}
+
+	private String content;
+
+	@Setup
+	public void setup() throws Exception {
+		// blank and malformed lines are logged
+		Logger.getLogger(GAFParser.class).setLevel(Level.ERROR);
+		Logger.getLogger(StreamingGafParser.class).setLevel(Level.ERROR);
+		List<String> header = new ArrayList<String>();
+		List<String> rows = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new FileInputStream(BenchmarkData.getResource(gaf)), "UTF-8"));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.startsWith("!"))
+					header.add(line);
+				else if (line.trim().length() > 0)
+					rows.add(line);
+			}
+		}
+		finally {
+			reader.close();
+		}
+		StringBuilder sb = new StringBuilder();
+		for (String line : header) {
+			sb.append(line).append('\n');
+		}
+		for (int i = 0; i < NUM_LINES; i++) {
+			sb.append(rows.get(i % rows.size())).append('\n');
+		}
+		content = sb.toString();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_LINES)
+	public void gafParser(Blackhole bh) throws Exception {
+		GAFParser parser = new GAFParser();
+		parser.parse(new StringReader(content));
+		while (parser.next()) {
+			bh.consume(parser.getGOId());
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_LINES)
+	public void gafObjectsBuilder(Blackhole bh) throws Exception {
+		GafObjectsBuilder builder = new GafObjectsBuilder();
+		GafDocument doc = builder.buildDocument(new StringReader(content), "benchmark", gaf);
+		bh.consume(doc.getGeneAnnotations().size());
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_LINES)
+	public void streamingGafParser(Threads t, Blackhole bh) throws Exception {
+		final AtomicInteger n = new AtomicInteger();
+		StreamingGafParser parser = new StreamingGafParser(t.threads);
+		parser.addAnnotationListener(new GeneAnnotationListener() {
+
+			@Override
+			public void annotation(GeneAnnotation annotation) {
+				n.incrementAndGet();
+			}
+		});
+		bh.consume(parser.parse(new StringReader(content), "benchmark"));
+		bh.consume(n.get());
+	}
+}
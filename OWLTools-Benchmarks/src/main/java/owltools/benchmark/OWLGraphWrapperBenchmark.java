@@ -0,0 +1,86 @@
+package owltools.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.semanticweb.owlapi.model.OWLObject;
+
+import owltools.graph.OWLGraphWrapper;
+
+/**
+ * Closure, ancestor and label lookups on OWLGraphWrapper, for a sample of
+ * the objects in the graph.
+ * <br>
+ * The closure benchmarks come in two variants: cold clears the closure cache
+ * before each pass over the sample, so every closure is computed, and warm
+ * measures the lookups when all closures are cached.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OWLGraphWrapperBenchmark {
+
+	static final int SAMPLE_SIZE = 100;
+
+	@Param({"caro.obo", "go-subset-t1.obo", "synthetic:1000", "synthetic:10000", "synthetic:100000"})
+	public String ontology;
+
+	private OWLGraphWrapper graph;
+	private List<OWLObject> sample;
+
+	@Setup
+	public void setup() throws Exception {
+		graph = BenchmarkData.loadGraph(ontology);
+		sample = BenchmarkData.sample(graph.getAllOWLObjects(), SAMPLE_SIZE, 1);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SAMPLE_SIZE)
+	public void getOutgoingEdgesClosureCold(Blackhole bh) {
+		graph.getOutgoingClosureCache().clear();
+		for (OWLObject x : sample) {
+			bh.consume(graph.getOutgoingEdgesClosure(x));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SAMPLE_SIZE)
+	public void getOutgoingEdgesClosureWarm(Blackhole bh) {
+		for (OWLObject x : sample) {
+			bh.consume(graph.getOutgoingEdgesClosure(x));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SAMPLE_SIZE)
+	public void getAncestorsCold(Blackhole bh) {
+		graph.getOutgoingClosureCache().clear();
+		for (OWLObject x : sample) {
+			bh.consume(graph.getAncestors(x));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SAMPLE_SIZE)
+	public void getLabel(Blackhole bh) {
+		for (OWLObject x : sample) {
+			bh.consume(graph.getLabel(x));
+		}
+	}
+}
@@ -0,0 +1,107 @@
+package owltools.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.semanticweb.elk.owlapi.ElkReasonerFactory;
+import org.semanticweb.owlapi.model.OWLNamedIndividual;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+
+import owltools.graph.OWLGraphWrapper;
+import owltools.sim.SimpleOwlSim;
+import owltools.sim.preprocessor.NullSimPreProcessor;
+
+/**
+ * Pairwise scores of SimpleOwlSim, with and without the attribute bitset index,
+ * for pairs from a sample of the individuals.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SimBenchmark {
+
+	static final int NUM_PAIRS = 100;
+
+	@Param({BenchmarkData.GO_SIMPLEGAF, "synthetic:1000", "synthetic:10000"})
+	public String ontology;
+
+	@Param({"false", "true"})
+	public boolean indexed;
+
+	private OWLReasoner reasoner;
+	private SimpleOwlSim sos;
+	private final List<OWLNamedIndividual[]> pairs = new ArrayList<OWLNamedIndividual[]>();
+
+	@Setup
+	public void setup() throws Exception {
+		OWLGraphWrapper g = BenchmarkData.loadGraph(ontology);
+		OWLOntology ont = g.getSourceOntology();
+		reasoner = new ElkReasonerFactory().createReasoner(ont);
+
+		NullSimPreProcessor pproc = new NullSimPreProcessor();
+		pproc.setInputOntology(ont);
+		pproc.setOutputOntology(ont);
+		pproc.setReasoner(reasoner);
+		sos = new SimpleOwlSim(ont);
+		sos.setSimPreProcessor(pproc);
+		sos.createElementAttributeMapFromOntology();
+		if (indexed) {
+			sos.buildAttributeIndex();
+		}
+
+		List<OWLNamedIndividual> elements = BenchmarkData.sample(sos.getAllElements(), 2 * NUM_PAIRS, 1);
+		for (int k = 0; k < NUM_PAIRS; k++) {
+			OWLNamedIndividual i = elements.get(k % elements.size());
+			OWLNamedIndividual j = elements.get((k * 7 + 1) % elements.size());
+			pairs.add(new OWLNamedIndividual[] { i, j });
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		reasoner.dispose();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_PAIRS)
+	public void elementJaccardSimilarity(Blackhole bh) {
+		for (OWLNamedIndividual[] p : pairs) {
+			bh.consume(sos.getElementJaccardSimilarity(p[0], p[1]));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_PAIRS)
+	public void similarityMaxIC(Blackhole bh) {
+		for (OWLNamedIndividual[] p : pairs) {
+			bh.consume(sos.getSimilarityMaxIC(p[0], p[1]));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_PAIRS)
+	public void similarityBestMatchAverageAsym(Blackhole bh) {
+		for (OWLNamedIndividual[] p : pairs) {
+			bh.consume(sos.getSimilarityBestMatchAverageAsym(p[0], p[1]));
+		}
+	}
+}
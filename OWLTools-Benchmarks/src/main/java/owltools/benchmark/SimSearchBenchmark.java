@@ -0,0 +1,64 @@
+package owltools.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.semanticweb.owlapi.model.OWLObject;
+
+import owltools.graph.OWLGraphWrapper;
+import owltools.sim.SimEngine;
+import owltools.sim.SimSearch;
+
+/**
+ * SimSearch queries for a sample of the individuals, against all individuals.
+ * The candidate index is built in the setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SimSearchBenchmark {
+
+	static final int NUM_QUERIES = 10;
+
+	@Param({BenchmarkData.GO_SIMPLEGAF, "synthetic:1000", "synthetic:10000"})
+	public String ontology;
+
+	private SimSearch search;
+	private List<OWLObject> queries;
+
+	@Setup
+	public void setup() throws Exception {
+		// search logs every query
+		Logger.getLogger(SimSearch.class).setLevel(Level.WARN);
+		OWLGraphWrapper g = BenchmarkData.loadGraph(ontology);
+		search = new SimSearch(new SimEngine(g));
+		search.getIndex();
+		queries = BenchmarkData.<OWLObject>sample(g.getSourceOntology().getIndividualsInSignature(), NUM_QUERIES, 2);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_QUERIES)
+	public void search(Blackhole bh) {
+		for (OWLObject q : queries) {
+			bh.consume(search.search(q));
+		}
+	}
+}
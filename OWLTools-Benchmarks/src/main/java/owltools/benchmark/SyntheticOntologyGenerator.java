@@ -0,0 +1,134 @@
+package owltools.benchmark;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLNamedIndividual;
+import org.semanticweb.owlapi.model.OWLObjectProperty;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.vocab.OWLRDFVocabulary;
+
+/**
+ * Generates an ontology of a given size, shaped roughly like GO, for scaling curves.
+ * <br>
+ * Class n gets between 1 and maxParents superclasses picked at random from the
+ * classes before it, so the graph is a DAG with a depth that grows with the log
+ * of the size. A fraction of these links are part_of restrictions instead of
+ * subclass axioms. Each individual is an instance of typesPerIndividual random
+ * classes, which gives SimpleOwlSim and SimEngine something to compare. All
+ * classes and individuals have a label.
+ * <br>
+ * The same seed gives the same ontology.
+ */
+public class SyntheticOntologyGenerator {
+
+	public static final String PREFIX = "http://purl.obolibrary.org/obo/";
+	public static final String PART_OF = PREFIX + "BFO_0000050";
+
+	private final int numClasses;
+	private final int numIndividuals;
+	private int maxParents = 3;
+	private double partOfRatio = 0.2;
+	private int typesPerIndividual = 10;
+	private long seed = 42;
+
+	/**
+	 * @param numClasses
+	 * @param numIndividuals
+	 */
+	public SyntheticOntologyGenerator(int numClasses, int numIndividuals) {
+		this.numClasses = numClasses;
+		this.numIndividuals = numIndividuals;
+	}
+
+	public void setMaxParents(int maxParents) {
+		this.maxParents = maxParents;
+	}
+
+	public void setPartOfRatio(double partOfRatio) {
+		this.partOfRatio = partOfRatio;
+	}
+
+	public void setTypesPerIndividual(int typesPerIndividual) {
+		this.typesPerIndividual = typesPerIndividual;
+	}
+
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * @param idSpace
+	 * @param n
+	 * @return IRI for a synthetic class or individual, e.g. SYN_0000001
+	 */
+	public static IRI createIRI(String idSpace, int n) {
+		return IRI.create(PREFIX + idSpace + "_" + String.format("%07d", n));
+	}
+
+	/**
+	 * @param manager
+	 * @return new ontology in the manager
+	 * @throws OWLOntologyCreationException
+	 */
+	public OWLOntology generate(OWLOntologyManager manager) throws OWLOntologyCreationException {
+		OWLDataFactory df = manager.getOWLDataFactory();
+		OWLOntology ont = manager.createOntology(IRI.create(PREFIX + "synthetic-" + numClasses + "-" + seed + ".owl"));
+		Random random = new Random(seed);
+		List<OWLAxiom> axioms = new ArrayList<OWLAxiom>();
+
+		OWLObjectProperty partOf = df.getOWLObjectProperty(IRI.create(PART_OF));
+		axioms.add(df.getOWLDeclarationAxiom(partOf));
+		axioms.add(df.getOWLTransitiveObjectPropertyAxiom(partOf));
+		axioms.add(label(df, partOf.getIRI(), "part_of"));
+
+		OWLClass[] classes = new OWLClass[numClasses];
+		for (int i = 0; i < numClasses; i++) {
+			OWLClass c = df.getOWLClass(createIRI("SYN", i + 1));
+			classes[i] = c;
+			axioms.add(df.getOWLDeclarationAxiom(c));
+			axioms.add(label(df, c.getIRI(), "synthetic class " + (i + 1)));
+			if (i == 0)
+				continue;
+			Set<Integer> parents = new HashSet<Integer>();
+			int numParents = 1 + random.nextInt(Math.min(maxParents, i));
+			while (parents.size() < numParents) {
+				parents.add(random.nextInt(i));
+			}
+			for (int p : parents) {
+				if (random.nextDouble() < partOfRatio) {
+					axioms.add(df.getOWLSubClassOfAxiom(c, df.getOWLObjectSomeValuesFrom(partOf, classes[p])));
+				}
+				else {
+					axioms.add(df.getOWLSubClassOfAxiom(c, classes[p]));
+				}
+			}
+		}
+
+		for (int i = 0; i < numIndividuals; i++) {
+			OWLNamedIndividual ind = df.getOWLNamedIndividual(createIRI("SYNI", i + 1));
+			axioms.add(df.getOWLDeclarationAxiom(ind));
+			axioms.add(label(df, ind.getIRI(), "synthetic individual " + (i + 1)));
+			for (int t = 0; t < typesPerIndividual; t++) {
+				axioms.add(df.getOWLClassAssertionAxiom(classes[random.nextInt(numClasses)], ind));
+			}
+		}
+
+		manager.addAxioms(ont, new HashSet<OWLAxiom>(axioms));
+		return ont;
+	}
+
+	private static OWLAxiom label(OWLDataFactory df, IRI iri, String label) {
+		return df.getOWLAnnotationAssertionAxiom(df.getOWLAnnotationProperty(OWLRDFVocabulary.RDFS_LABEL.getIRI()),
+				iri, df.getOWLLiteral(label));
+	}
+}
@@ -2,8 +2,11 @@ package owltools;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.log4j.Logger;
@@ -47,11 +50,18 @@ public class InferenceBuilder{
 	public static final String REASONER_JCEL = "jcel";
 	public static final String REASONER_ELK = "elk";
 
+	public static final String PHASE_ASSERTED_EQUIVALENCIES = "asserted equivalencies";
+	public static final String PHASE_INFERRED_SUPERCLASSES = "inferred superclasses";
+	public static final String PHASE_REDUNDANT_AXIOMS = "redundant axioms";
+
 	private final OWLReasonerFactory reasonerFactory;
 	private volatile OWLReasoner reasoner = null;
 	private OWLGraphWrapper graph;
+	// wrapper of the EL ontology created by this builder, see enforceEL
+	private OWLGraphWrapper elGraph = null;
 	Set<OWLAxiom> redundantAxioms = new HashSet<OWLAxiom>();
 	List<OWLEquivalentClassesAxiom> equivalentNamedClassPairs = new ArrayList<OWLEquivalentClassesAxiom>();
+	Map<String, Long> phaseTimings = new LinkedHashMap<String, Long>();
 
 	public InferenceBuilder(OWLGraphWrapper graph){
 		this(graph, new Reasoner.ReasonerFactory(), false);
@@ -70,6 +80,9 @@ public class InferenceBuilder{
 		this.reasonerFactory = factory;
 		if (enforceEL) {
 			this.graph = enforceEL(graph);
+			if (this.graph != graph) {
+				elGraph = this.graph;
+			}
 		}
 	}
 	
@@ -194,6 +207,14 @@ public class InferenceBuilder{
 		return equivalentNamedClassPairs;
 	}
 
+	/**
+	 * @return time in milliseconds for each phase of the last {@link #buildInferences(boolean)},
+	 * in the order of the phases
+	 */
+	public Map<String, Long> getPhaseTimings() {
+		return phaseTimings;
+	}
+
 	public List<OWLAxiom> buildInferences() {
 		return buildInferences(true);
 	}
@@ -221,6 +242,7 @@ public class InferenceBuilder{
 		
 		equivalentNamedClassPairs = inferences.equivalentNamedClassPairs;
 		redundantAxioms = inferences.redundantAxioms;
+		phaseTimings = inferences.phaseTimings;
 		
 		return inferences.axiomsToAdd;
 		
@@ -234,6 +256,21 @@ public class InferenceBuilder{
 		List<OWLAxiom> axiomsToAdd = new ArrayList<OWLAxiom>();
 		List<OWLEquivalentClassesAxiom> equivalentNamedClassPairs = new ArrayList<OWLEquivalentClassesAxiom>();
 		Set<OWLAxiom> redundantAxioms = new HashSet<OWLAxiom>();
+		Map<String, Long> phaseTimings = new LinkedHashMap<String, Long>();
+		
+		/**
+		 * Record and log the time of a phase.
+		 * 
+		 * @param phase
+		 * @param start time the phase started, in milliseconds
+		 * @return current time, as start of the next phase
+		 */
+		long addPhaseTiming(String phase, long start) {
+			long now = System.currentTimeMillis();
+			phaseTimings.put(phase, now - start);
+			logger.info("Finished "+phase+" in "+(now - start)+" ms");
+			return now;
+		}
 	}
 	
 	/**
@@ -248,118 +285,169 @@ public class InferenceBuilder{
 		List<OWLAxiom> equivAxiomsToAdd = new ArrayList<OWLAxiom>();
 		OWLDataFactory dataFactory = ontology.getOWLOntologyManager().getOWLDataFactory();
 		Inferences inferences = new Inferences();
+		List<OWLClass> classes = getSortedClasses(ontology);
 		
 		logger.info("Finding asserted equivalencies...");
-		for (OWLClass cls : ontology.getClassesInSignature()) {
+		long t = System.currentTimeMillis();
+		for (OWLClass cls : classes) {
+			findAssertedEquivalencies(cls, ontology, dataFactory, alwaysAssertSuperClasses, equivAxiomsToAdd);
+		}
+		t = inferences.addPhaseTiming(PHASE_ASSERTED_EQUIVALENCIES, t);
 
-			for (OWLClassExpression ec : cls.getEquivalentClasses(ontology)) {
-				//System.out.println(cls+"=EC="+ec);
-				if (alwaysAssertSuperClasses) {
-					if (ec instanceof OWLObjectIntersectionOf) {
-						for (OWLClassExpression x : ((OWLObjectIntersectionOf)ec).getOperands()) {
-							// Translate equivalence axioms into weaker subClassOf axioms.
-							if (x instanceof OWLRestriction) {
-								// we only include restrictions - note that if the operand is
-								// an OWLClass it will be inferred as a superclass (see below)
-								OWLSubClassOfAxiom sca = dataFactory.getOWLSubClassOfAxiom(cls, x);
-								if (!ontology.containsAxiom(sca))
-									equivAxiomsToAdd.add(sca);
-							}
+		logger.info("Finding inferred superclasses...");
+		for (OWLClass cls : classes) {
+			findInferredSuperClasses(cls, ontology, reasoner, dataFactory, alwaysAssertSuperClasses, inferences, equivAxiomsToAdd);
+		}
+		t = inferences.addPhaseTiming(PHASE_INFERRED_SUPERCLASSES, t);
+
+		// CHECK FOR REDUNDANCY
+		logger.info("Checking for redundant assertions caused by inferences");
+		inferences.redundantAxioms = getRedundantAxioms(ontology, reasoner, dataFactory);
+		inferences.addPhaseTiming(PHASE_REDUNDANT_AXIOMS, t);
+
+		inferences.axiomsToAdd.addAll(equivAxiomsToAdd);
+
+		logger.info("Done building inferences");
+		
+		return inferences;
+	}
+
+	/**
+	 * @param ontology
+	 * @return classes in the signature of the ontology, sorted so that
+	 * the inferences are always reported in the same order
+	 */
+	protected static List<OWLClass> getSortedClasses(OWLOntology ontology) {
+		List<OWLClass> classes = new ArrayList<OWLClass>(ontology.getClassesInSignature());
+		Collections.sort(classes);
+		return classes;
+	}
+
+	/**
+	 * Translate the asserted equivalence axioms of cls into weaker subClassOf axioms,
+	 * if alwaysAssertSuperClasses is set.
+	 * 
+	 * @param cls
+	 * @param ontology
+	 * @param dataFactory
+	 * @param alwaysAssertSuperClasses
+	 * @param equivAxiomsToAdd
+	 */
+	protected static void findAssertedEquivalencies(OWLClass cls, OWLOntology ontology, OWLDataFactory dataFactory,
+			boolean alwaysAssertSuperClasses, List<OWLAxiom> equivAxiomsToAdd)
+	{
+		for (OWLClassExpression ec : cls.getEquivalentClasses(ontology)) {
+			//System.out.println(cls+"=EC="+ec);
+			if (alwaysAssertSuperClasses) {
+				if (ec instanceof OWLObjectIntersectionOf) {
+					for (OWLClassExpression x : ((OWLObjectIntersectionOf)ec).getOperands()) {
+						// Translate equivalence axioms into weaker subClassOf axioms.
+						if (x instanceof OWLRestriction) {
+							// we only include restrictions - note that if the operand is
+							// an OWLClass it will be inferred as a superclass (see below)
+							OWLSubClassOfAxiom sca = dataFactory.getOWLSubClassOfAxiom(cls, x);
+							if (!ontology.containsAxiom(sca))
+								equivAxiomsToAdd.add(sca);
 						}
 					}
 				}
 			}
+		}
+	}
 
+	/**
+	 * Find the inferred equivalent classes and the inferred direct super classes of cls,
+	 * which are not already asserted. Only reads from the reasoner, so it can be called
+	 * from several threads once the reasoner has classified the ontology.
+	 * 
+	 * @param cls
+	 * @param ontology
+	 * @param reasoner
+	 * @param dataFactory
+	 * @param alwaysAssertSuperClasses
+	 * @param inferences receives the subClassOf axioms and equivalent named class pairs
+	 * @param equivAxiomsToAdd receives the equivalence axioms
+	 */
+	protected static void findInferredSuperClasses(OWLClass cls, OWLOntology ontology, OWLReasoner reasoner,
+			OWLDataFactory dataFactory, boolean alwaysAssertSuperClasses, Inferences inferences,
+			List<OWLAxiom> equivAxiomsToAdd)
+	{
+		if (cls.isOWLNothing() || cls.isBottomEntity() || cls.isOWLThing()) {
+			return; // do not report these
 		}
-		logger.info("Finding inferred superclasses...");
-		for (OWLClass cls : ontology.getClassesInSignature()) {
-			if (cls.isOWLNothing() || cls.isBottomEntity() || cls.isOWLThing()) {
-				continue; // do not report these
-			}
 
-			// REPORT INFERRED EQUIVALENCE BETWEEN NAMED CLASSES
-			for (OWLClass ec : reasoner.getEquivalentClasses(cls)) {
-				if (cls.equals(ec))
-					continue;
-				
+		// REPORT INFERRED EQUIVALENCE BETWEEN NAMED CLASSES
+		for (OWLClass ec : reasoner.getEquivalentClasses(cls)) {
+			if (cls.equals(ec))
+				continue;
+			
+			if (logger.isDebugEnabled()) {
+				logger.debug("Inferred Equiv: " + cls + " == " + ec);
+			}
+			if (ec instanceof OWLClass && !ec.equals(cls)) {
+				OWLEquivalentClassesAxiom eca = dataFactory.getOWLEquivalentClassesAxiom(cls, ec);
 				if (logger.isDebugEnabled()) {
-					logger.debug("Inferred Equiv: " + cls + " == " + ec);
-				}
-				if (ec instanceof OWLClass && !ec.equals(cls)) {
-					OWLEquivalentClassesAxiom eca = dataFactory.getOWLEquivalentClassesAxiom(cls, ec);
-					if (logger.isDebugEnabled()) {
-						logger.info("Equivalent Named Class Pair: "+eca);
-					}
-					inferences.equivalentNamedClassPairs.add(eca);
+					logger.info("Equivalent Named Class Pair: "+eca);
 				}
+				inferences.equivalentNamedClassPairs.add(eca);
+			}
 
 
 
-				if (cls.toString().compareTo(ec.toString()) > 0) // equivalence
-					// is
-					// symmetric:
-					// report
-					// each pair
-					// once
+			if (cls.toString().compareTo(ec.toString()) > 0) // equivalence
+				// is
+				// symmetric:
+				// report
+				// each pair
+				// once
 
 
-					equivAxiomsToAdd.add(dataFactory.getOWLEquivalentClassesAxiom(cls, ec));
-			}
+				equivAxiomsToAdd.add(dataFactory.getOWLEquivalentClassesAxiom(cls, ec));
+		}
 
-			// REPORT INFERRED SUBCLASSES NOT ALREADY ASSERTED
+		// REPORT INFERRED SUBCLASSES NOT ALREADY ASSERTED
 
-			NodeSet<OWLClass> scs = reasoner.getSuperClasses(cls, true);
-			for (Node<OWLClass> scSet : scs) {
-				for (OWLClass sc : scSet) {
-					if (sc.isOWLThing()) {
-						continue; // do not report subclasses of owl:Thing
-					}
+		NodeSet<OWLClass> scs = reasoner.getSuperClasses(cls, true);
+		for (Node<OWLClass> scSet : scs) {
+			for (OWLClass sc : scSet) {
+				if (sc.isOWLThing()) {
+					continue; // do not report subclasses of owl:Thing
+				}
 
-					// we do not want to report inferred subclass links
-					// if they are already asserted in the ontology
-					boolean isAsserted = false;
-					for (OWLClassExpression asc : cls.getSuperClasses(ontology)) {
-						if (asc.equals(sc)) {
-							// we don't want to report this
-							isAsserted = true;
-						}
+				// we do not want to report inferred subclass links
+				// if they are already asserted in the ontology
+				boolean isAsserted = false;
+				for (OWLClassExpression asc : cls.getSuperClasses(ontology)) {
+					if (asc.equals(sc)) {
+						// we don't want to report this
+						isAsserted = true;
 					}
+				}
 
-					if (!alwaysAssertSuperClasses) {
-						// when generating obo, we do NOT want equivalence axioms treated as
-						// assertions
-						for (OWLClassExpression ec : cls
-								.getEquivalentClasses(ontology)) {
-
-							if (ec instanceof OWLObjectIntersectionOf) {
-								OWLObjectIntersectionOf io = (OWLObjectIntersectionOf) ec;
-								for (OWLClassExpression op : io.getOperands()) {
-									if (op.equals(sc)) {
-										isAsserted = true;
-									}
+				if (!alwaysAssertSuperClasses) {
+					// when generating obo, we do NOT want equivalence axioms treated as
+					// assertions
+					for (OWLClassExpression ec : cls
+							.getEquivalentClasses(ontology)) {
+
+						if (ec instanceof OWLObjectIntersectionOf) {
+							OWLObjectIntersectionOf io = (OWLObjectIntersectionOf) ec;
+							for (OWLClassExpression op : io.getOperands()) {
+								if (op.equals(sc)) {
+									isAsserted = true;
 								}
 							}
 						}
 					}
-					
-					// include any inferred axiom that is NOT already asserted in the ontology
-					if (!isAsserted) {						
-						inferences.axiomsToAdd.add(dataFactory.getOWLSubClassOfAxiom(cls, sc));
-					}
-
 				}
+				
+				// include any inferred axiom that is NOT already asserted in the ontology
+				if (!isAsserted) {						
+					inferences.axiomsToAdd.add(dataFactory.getOWLSubClassOfAxiom(cls, sc));
+				}
+
 			}
 		}
-
-		// CHECK FOR REDUNDANCY
-		logger.info("Checking for redundant assertions caused by inferences");
-		inferences.redundantAxioms = getRedundantAxioms(ontology, reasoner, dataFactory);
-
-		inferences.axiomsToAdd.addAll(equivAxiomsToAdd);
-
-		logger.info("Done building inferences");
-		
-		return inferences;
 	}
 	
 
@@ -498,6 +586,10 @@ public class InferenceBuilder{
 			reasoner.dispose();
 			reasoner = null;
 		}
+		if (elGraph != null) {
+			elGraph.dispose();
+			elGraph = null;
+		}
 	}
 
 }
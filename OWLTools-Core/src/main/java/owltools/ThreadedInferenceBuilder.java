@@ -9,20 +9,28 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.log4j.Logger;
 import org.semanticweb.owlapi.model.OWLAxiom;
 import org.semanticweb.owlapi.model.OWLClass;
 import org.semanticweb.owlapi.model.OWLDataFactory;
 import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.reasoner.InferenceType;
 import org.semanticweb.owlapi.reasoner.OWLReasoner;
 import org.semanticweb.owlapi.reasoner.OWLReasonerFactory;
 
 import owltools.graph.OWLGraphWrapper;
 
 /**
- * Partial parallel implementation of {@link InferenceBuilder}. 
- * Uses threads to parallelize the task of finding redundant axioms.
+ * Parallel implementation of {@link InferenceBuilder}.
+ * Classifies the ontology once and then uses threads for all phases of
+ * building the inferences: asserted equivalencies, inferred super classes
+ * and redundant axioms. The results are merged in class order, so they are
+ * the same as for the {@link InferenceBuilder}.
+ * <br>
+ * The reasoner is queried from several threads at once, so this is only safe
+ * for reasoners supporting concurrent queries, like ELK.
  * 
  * TODO Use thread count also as limit for ELK.
  */
@@ -30,6 +38,13 @@ public class ThreadedInferenceBuilder extends InferenceBuilder {
 	
 	private static final Logger LOG = Logger.getLogger(ThreadedInferenceBuilder.class);
 
+	/**
+	 * Name of the phase, in which the reasoner computes the class hierarchy.
+	 */
+	public static final String PHASE_CLASSIFICATION = "classification";
+
+	private static final int MAX_BATCH_SIZE = 64;
+
 	private final int threads;
 	private final ExecutorService executor;
 
@@ -87,87 +102,183 @@ public class ThreadedInferenceBuilder extends InferenceBuilder {
 		return Executors.newFixedThreadPool(threads);
 	}
 
+	@Override
+	Inferences buildInferences(final OWLOntology ontology, final OWLReasoner reasoner,
+			final boolean alwaysAssertSuperClasses)
+	{
+		final OWLDataFactory dataFactory = ontology.getOWLOntologyManager().getOWLDataFactory();
+		Inferences inferences = new Inferences();
+		List<OWLClass> classes = getSortedClasses(ontology);
+
+		// the queries below are read-only, once the class hierarchy is computed
+		long t = System.currentTimeMillis();
+		reasoner.precomputeInferences(InferenceType.CLASS_HIERARCHY);
+		t = inferences.addPhaseTiming(PHASE_CLASSIFICATION, t);
+
+		LOG.info("Finding asserted equivalencies...");
+		List<List<OWLAxiom>> assertedEquivs = execute(classes, new ClassTask<List<OWLAxiom>>() {
+
+			@Override
+			public List<OWLAxiom> run(OWLClass cls) {
+				List<OWLAxiom> equivAxiomsToAdd = new ArrayList<OWLAxiom>();
+				findAssertedEquivalencies(cls, ontology, dataFactory, alwaysAssertSuperClasses, equivAxiomsToAdd);
+				return equivAxiomsToAdd;
+			}
+		});
+		t = inferences.addPhaseTiming(PHASE_ASSERTED_EQUIVALENCIES, t);
+
+		LOG.info("Finding inferred superclasses...");
+		List<ClassInferences> inferred = execute(classes, new ClassTask<ClassInferences>() {
+
+			@Override
+			public ClassInferences run(OWLClass cls) {
+				ClassInferences result = new ClassInferences();
+				findInferredSuperClasses(cls, ontology, reasoner, dataFactory, alwaysAssertSuperClasses,
+						result.inferences, result.equivAxiomsToAdd);
+				return result;
+			}
+		});
+		t = inferences.addPhaseTiming(PHASE_INFERRED_SUPERCLASSES, t);
+
+		LOG.info("Checking for redundant assertions caused by inferences");
+		inferences.redundantAxioms = getRedundantAxioms(classes, ontology, reasoner, dataFactory);
+		inferences.addPhaseTiming(PHASE_REDUNDANT_AXIOMS, t);
+
+		// merge in class order, the same order as the single threaded implementation
+		for (ClassInferences result : inferred) {
+			inferences.axiomsToAdd.addAll(result.inferences.axiomsToAdd);
+			inferences.equivalentNamedClassPairs.addAll(result.inferences.equivalentNamedClassPairs);
+		}
+		for (List<OWLAxiom> equivs : assertedEquivs) {
+			inferences.axiomsToAdd.addAll(equivs);
+		}
+		for (ClassInferences result : inferred) {
+			inferences.axiomsToAdd.addAll(result.equivAxiomsToAdd);
+		}
+
+		LOG.info("Done building inferences");
+		return inferences;
+	}
+
 	@Override
 	protected Set<OWLAxiom> getRedundantAxioms(OWLOntology ontology,
 			OWLReasoner reasoner, OWLDataFactory dataFactory)
 	{
-		LOG.info("Start parallel execution.");
-		List<Future<Set<OWLAxiom>>> futures = new ArrayList<Future<Set<OWLAxiom>>>();
-		List<OWLClass> workSet = new ArrayList<OWLClass>();
-		final Set<OWLClass> allClasses = ontology.getClassesInSignature();
-		int chunkSize = allClasses.size() / threads;
-		int threadCount = 1;
-		for (OWLClass cls : allClasses) {
-			workSet.add(cls);
-			if (workSet.size() == chunkSize) {
-				GetRedundantAxiomsTask task = new GetRedundantAxiomsTask(workSet, ontology, reasoner, dataFactory, Integer.toString(threadCount));
-				threadCount += 1;
-				futures.add(executor.submit(task));
-				workSet = new ArrayList<OWLClass>();
+		return getRedundantAxioms(getSortedClasses(ontology), ontology, reasoner, dataFactory);
+	}
+
+	private Set<OWLAxiom> getRedundantAxioms(List<OWLClass> classes, final OWLOntology ontology,
+			final OWLReasoner reasoner, final OWLDataFactory dataFactory)
+	{
+		List<Set<OWLAxiom>> results = execute(classes, new ClassTask<Set<OWLAxiom>>() {
+
+			@Override
+			public Set<OWLAxiom> run(OWLClass cls) {
+				Set<OWLAxiom> redundantAxioms = new HashSet<OWLAxiom>();
+				updateRedundant(cls, ontology, redundantAxioms, reasoner, dataFactory);
+				return redundantAxioms;
 			}
-			
+		});
+		Set<OWLAxiom> redundantAxioms = new HashSet<OWLAxiom>();
+		for (Set<OWLAxiom> set : results) {
+			redundantAxioms.addAll(set);
 		}
-		if (!workSet.isEmpty()) {
-			GetRedundantAxiomsTask task = new GetRedundantAxiomsTask(workSet, ontology, reasoner, dataFactory, Integer.toString(threadCount));
-			futures.add(executor.submit(task));
+		return redundantAxioms;
+	}
+
+	/**
+	 * Work for a single class.
+	 *
+	 * @param <T> result type
+	 */
+	private static interface ClassTask<T> {
+
+		T run(OWLClass cls);
+	}
+
+	/**
+	 * Results of {@link InferenceBuilder#findInferredSuperClasses} for a single class.
+	 */
+	private static class ClassInferences {
+		final Inferences inferences = new Inferences();
+		final List<OWLAxiom> equivAxiomsToAdd = new ArrayList<OWLAxiom>();
+	}
+
+	/**
+	 * Run the task for all classes on the thread pool. Instead of a fixed chunk
+	 * per thread, the workers take small batches of classes from a shared counter
+	 * until all classes are done, so a thread that gets the expensive classes
+	 * does not hold up the others.
+	 *
+	 * @param classes
+	 * @param task
+	 * @return results, in the order of the classes
+	 */
+	private <T> List<T> execute(final List<OWLClass> classes, final ClassTask<T> task) {
+		final int size = classes.size();
+		final int batchSize = Math.max(1, Math.min(MAX_BATCH_SIZE, size / (threads * 16)));
+		final Object[] results = new Object[size];
+		final AtomicInteger next = new AtomicInteger();
+		final int steps = (size / 10) + 1;
+		final AtomicInteger done = new AtomicInteger();
+
+		List<Future<Integer>> futures = new ArrayList<Future<Integer>>(threads);
+		for (int i = 0; i < threads; i++) {
+			futures.add(executor.submit(new Callable<Integer>() {
+
+				@Override
+				public Integer call() throws Exception {
+					int count = 0;
+					int start;
+					while ((start = next.getAndAdd(batchSize)) < size) {
+						// stop between batches, if the future was cancelled
+						if (Thread.interrupted()) {
+							throw new InterruptedException();
+						}
+						int end = Math.min(start + batchSize, size);
+						for (int j = start; j < end; j++) {
+							results[j] = task.run(classes.get(j));
+						}
+						count += end - start;
+						int total = done.addAndGet(end - start);
+						if ((total - (end - start)) / steps != total / steps) {
+							LOG.info("Progress: "+total+"/"+size);
+						}
+					}
+					return count;
+				}
+			}));
 		}
 		try {
-			Set<OWLAxiom> result = null;
-			for(Future<Set<OWLAxiom>> future : futures) {
-				Set<OWLAxiom> set = future.get();
-				if (result == null) {
-					result = set;
-				}
-				else {
-					result.addAll(set);
+			for (int i = 0; i < futures.size(); i++) {
+				int count = futures.get(i).get();
+				if (LOG.isDebugEnabled()) {
+					LOG.debug("Thread "+(i + 1)+" processed classes: "+count);
 				}
 			}
-			LOG.info("Finished parallel execution.");
-			return result;
 		} catch (InterruptedException exception) {
+			cancel(futures);
 			throw new RuntimeException(exception);
 		} catch (ExecutionException exception) {
-			throw new RuntimeException(exception);
+			cancel(futures);
+			throw new RuntimeException(exception.getCause());
 		}
-	}
-
-	private static class GetRedundantAxiomsTask implements Callable<Set<OWLAxiom>> {
-		
-		private final String id;
-		private final List<OWLClass> workSet;
-		private final OWLOntology ontology;
-		private final OWLReasoner reasoner;
-		private final OWLDataFactory dataFactory;
-
-		GetRedundantAxiomsTask(List<OWLClass> workSet, OWLOntology ontology, OWLReasoner reasoner, OWLDataFactory dataFactory, String id) {
-			super();
-			this.id = id;
-			this.workSet = workSet;
-			this.ontology = ontology;
-			this.reasoner = reasoner;
-			this.dataFactory = dataFactory;
+		// the results were written before the futures completed, so they are visible here
+		List<T> list = new ArrayList<T>(size);
+		for (Object result : results) {
+			@SuppressWarnings("unchecked")
+			T t = (T) result;
+			list.add(t);
 		}
+		return list;
+	}
 
-		@Override
-		public Set<OWLAxiom> call() throws Exception {
-			int size = workSet.size();
-			int steps = (size / 10) + 1;
-			LOG.info("Start thread "+id+" with classes count: "+size);
-			Set<OWLAxiom> redundantAxioms = new HashSet<OWLAxiom>();
-			int count = 0;
-			for (OWLClass cls : workSet) {
-				updateRedundant(cls, ontology, redundantAxioms, reasoner, dataFactory);
-				count += 1;
-				if (count % steps == 0) {
-					LOG.info("Thread "+id+" Progress: "+count+"/"+size);
-				}
-			}
-			LOG.info("Done thread "+id);
-			return redundantAxioms;
+	private static void cancel(List<? extends Future<?>> futures) {
+		for (Future<?> future : futures) {
+			future.cancel(true);
 		}
-		
 	}
-	
+
 	@Override
 	public synchronized void dispose() {
 		disposeThreadPool();
@@ -0,0 +1,215 @@
+package owltools.graph;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.semanticweb.owlapi.model.OWLObject;
+
+import owltools.profile.Profiler;
+
+/**
+ * {@link OWLGraphClosureCache} holding at most a fixed number of edges.
+ * When the bound is exceeded, entries are evicted using the configured
+ * {@link EvictionPolicy}. The weight of an entry is the size of its
+ * closure, so a single large closure counts for more than many small ones.
+ * 
+ * Hits, misses and evictions are recorded as counters in the {@link Profiler},
+ * using the name of the cache as prefix.
+ */
+public class BoundedOWLGraphClosureCache implements OWLGraphClosureCache {
+
+	public enum EvictionPolicy {
+		/**
+		 * evict the least recently used entry
+		 */
+		LRU, 
+		/**
+		 * evict the least frequently used entry, ties are broken by age
+		 */
+		LFU
+	}
+
+	private final String name;
+	private final long maxWeight;
+	private final EvictionPolicy policy;
+	private volatile Profiler profiler;
+
+	// access ordered for LRU
+	private final LinkedHashMap<OWLObject, Entry> entries;
+
+	// frequency -> keys with that frequency, in insertion order; only used for LFU
+	private final TreeMap<Integer, LinkedHashSet<OWLObject>> frequencies;
+
+	private long weight = 0;
+
+	private static class Entry {
+		final Set<OWLGraphEdge> edges;
+		final int weight;
+		int frequency = 1;
+
+		Entry(Set<OWLGraphEdge> edges) {
+			this.edges = edges;
+			this.weight = Math.max(1, edges.size());
+		}
+	}
+
+	/**
+	 * @param name prefix for the profiler counters
+	 * @param maxWeight maximum number of edges held; zero or less means unbounded
+	 * @param policy
+	 * @param profiler may be null
+	 */
+	public BoundedOWLGraphClosureCache(String name, long maxWeight, EvictionPolicy policy, Profiler profiler) {
+		super();
+		this.name = name;
+		this.maxWeight = maxWeight;
+		this.policy = policy;
+		this.profiler = profiler;
+		this.entries = new LinkedHashMap<OWLObject, Entry>(16, 0.75f, policy == EvictionPolicy.LRU);
+		if (policy == EvictionPolicy.LFU) {
+			frequencies = new TreeMap<Integer, LinkedHashSet<OWLObject>>();
+		}
+		else {
+			frequencies = null;
+		}
+	}
+
+	/**
+	 * Create an unbounded cache
+	 * 
+	 * @param name
+	 * @param profiler
+	 */
+	public BoundedOWLGraphClosureCache(String name, Profiler profiler) {
+		this(name, 0, EvictionPolicy.LRU, profiler);
+	}
+
+	public Set<OWLGraphEdge> get(OWLObject x) {
+		Set<OWLGraphEdge> edges = null;
+		synchronized (this) {
+			Entry e = entries.get(x);
+			if (e != null) {
+				if (frequencies != null) {
+					removeFrequency(x, e.frequency);
+					e.frequency++;
+					addFrequency(x, e.frequency);
+				}
+				edges = e.edges;
+			}
+		}
+		count(edges == null ? "misses" : "hits", 1);
+		return edges;
+	}
+
+	public Set<OWLGraphEdge> put(OWLObject x, Set<OWLGraphEdge> edges) {
+		Set<OWLGraphEdge> view = Collections.unmodifiableSet(edges);
+		int evicted = 0;
+		synchronized (this) {
+			Entry e = new Entry(view);
+			Entry prev = entries.put(x, e);
+			if (prev != null) {
+				weight -= prev.weight;
+				if (frequencies != null)
+					removeFrequency(x, prev.frequency);
+			}
+			weight += e.weight;
+			if (frequencies != null)
+				addFrequency(x, e.frequency);
+			if (maxWeight > 0) {
+				// never evict the entry just added
+				while (weight > maxWeight && entries.size() > 1) {
+					evict(x);
+					evicted++;
+				}
+			}
+		}
+		if (evicted > 0)
+			count("evictions", evicted);
+		return view;
+	}
+
+	private void evict(OWLObject keep) {
+		OWLObject victim = null;
+		if (frequencies == null) {
+			Iterator<OWLObject> it = entries.keySet().iterator();
+			victim = it.next();
+			if (victim.equals(keep))
+				victim = it.next();
+		}
+		else {
+			for (LinkedHashSet<OWLObject> keys : frequencies.values()) {
+				for (OWLObject k : keys) {
+					if (!k.equals(keep)) {
+						victim = k;
+						break;
+					}
+				}
+				if (victim != null)
+					break;
+			}
+		}
+		Entry e = entries.remove(victim);
+		weight -= e.weight;
+		if (frequencies != null)
+			removeFrequency(victim, e.frequency);
+	}
+
+	private void addFrequency(OWLObject x, int f) {
+		LinkedHashSet<OWLObject> keys = frequencies.get(f);
+		if (keys == null) {
+			keys = new LinkedHashSet<OWLObject>();
+			frequencies.put(f, keys);
+		}
+		keys.add(x);
+	}
+
+	private void removeFrequency(OWLObject x, int f) {
+		LinkedHashSet<OWLObject> keys = frequencies.get(f);
+		if (keys != null) {
+			keys.remove(x);
+			if (keys.isEmpty())
+				frequencies.remove(f);
+		}
+	}
+
+	private void count(String counter, long n) {
+		Profiler p = profiler;
+		if (p != null)
+			p.incrementCounter(name+" "+counter, n);
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+		if (frequencies != null)
+			frequencies.clear();
+		weight = 0;
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized long getWeight() {
+		return weight;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long getMaxWeight() {
+		return maxWeight;
+	}
+
+	public EvictionPolicy getEvictionPolicy() {
+		return policy;
+	}
+
+	public void setProfiler(Profiler profiler) {
+		this.profiler = profiler;
+	}
+}
@@ -0,0 +1,652 @@
+package owltools.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Vector;
+
+import org.apache.log4j.Logger;
+import org.semanticweb.owlapi.model.OWLNamedObject;
+import org.semanticweb.owlapi.model.OWLObject;
+
+/**
+ * An integer-indexed, compiled snapshot of the primitive edges of an {@link OWLGraphWrapper}.
+ *
+ * Every node (named objects plus the class expressions reachable from them) and every
+ * {@link OWLQuantifiedProperty} is interned to an int. Primitive edges are stored in
+ * compressed sparse row form, i.e. for a node n the outgoing edges are in the range
+ * [outOffsets[n], outOffsets[n+1]) of the outTargets and outQps arrays (and likewise
+ * for incoming edges).
+ *
+ * Closures are computed using the same traversal and composition rules as
+ * {@link OWLGraphWrapper#getOutgoingEdgesClosure(OWLObject)} and
+ * {@link OWLGraphWrapper#getIncomingEdgesClosure(OWLObject)}, but paths are kept as
+ * int-linked lists in per-thread scratch arrays, so a closure query does not
+ * allocate any {@link OWLGraphEdge} until the result is materialized.
+ * The edges of each node are stored in the iteration order of
+ * {@link OWLGraphWrapper#getPrimitiveOutgoingEdges(OWLObject)} and
+ * {@link OWLGraphWrapper#getPrimitiveIncomingEdges(OWLObject)}, so the same
+ * paths are found and the closures contain the same edges. Properties of
+ * inferred primitive edges keep their inferred flag.
+ *
+ * The compiled graph is a snapshot: it reflects the ontologies at the time it
+ * was built. Use {@link OWLGraphWrapper#compileGraph()} to rebuild it.
+ * {@link OWLGraphWrapper} rebuilds it automatically, if the edge
+ * inclusion/exclusion configuration has changed, see {@link #isCurrent(OWLGraphWrapper.Config)}.
+ *
+ * @see OWLGraphWrapper.Config#isUseCompiledGraph
+ */
+public class OWLCompiledGraph {
+
+	private static Logger LOG = Logger.getLogger(OWLCompiledGraph.class);
+
+	/**
+	 * Marker for the absence of a node, property or list
+	 */
+	public static final int NONE = -1;
+
+	private final OWLGraphWrapper graph;
+
+	// nodes
+	private final Map<OWLObject,Integer> nodeIndex;
+	private final OWLObject[] nodes;
+	private final boolean[] isNamed;
+
+	// quantified properties are interned by the composition table
+	private final QuantifiedPropertyCompositionTable table;
+	private final boolean[] isExcluded;
+	private final Map<Integer,Boolean> extraExcluded = new HashMap<Integer,Boolean>();
+	private final Set<OWLQuantifiedProperty> graphEdgeIncludeSet;
+	private final Set<OWLQuantifiedProperty> graphEdgeExcludeSet;
+
+	// primitive edges, CSR
+	private final int[] outOffsets;
+	private final int[] outTargets;
+	private final int[] outQps;
+	private final boolean[] outInferred;
+	private final int[] inOffsets;
+	private final int[] inSources;
+	private final int[] inQps;
+	private final boolean[] inInferred;
+
+	private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+
+		@Override
+		protected Scratch initialValue() {
+			return new Scratch(nodes.length);
+		}
+	};
+
+	/**
+	 * Compile the primitive edge index of a graph.
+	 *
+	 * @param graph
+	 * @param edgeBySource primitive outgoing edges for every node, see {@link OWLGraphWrapper#cacheEdges()}
+	 */
+	OWLCompiledGraph(OWLGraphWrapper graph, Map<OWLObject,Set<OWLGraphEdge>> edgeBySource) {
+		this.graph = graph;
+		this.table = graph.getCompositionTable();
+		OWLGraphWrapper.Config config = graph.getConfig();
+		graphEdgeIncludeSet = copy(config.graphEdgeIncludeSet);
+		graphEdgeExcludeSet = copy(config.graphEdgeExcludeSet);
+		isExcluded = new boolean[table.size()];
+		for (int i=0; i<isExcluded.length; i++) {
+			isExcluded[i] = graph.isExcluded(table.getQuantifiedProperty(i));
+		}
+
+		// intern nodes: all sources plus any target not seen as a source
+		nodeIndex = new HashMap<OWLObject,Integer>();
+		List<OWLObject> nodeList = new ArrayList<OWLObject>();
+		for (OWLObject s : edgeBySource.keySet()) {
+			internNode(s, nodeList);
+		}
+		int numEdges = 0;
+		for (Set<OWLGraphEdge> edges : edgeBySource.values()) {
+			for (OWLGraphEdge e : edges) {
+				internNode(e.getTarget(), nodeList);
+				numEdges++;
+			}
+		}
+		int n = nodeList.size();
+		nodes = nodeList.toArray(new OWLObject[n]);
+		isNamed = new boolean[n];
+		for (int i=0; i<n; i++) {
+			isNamed[i] = nodes[i] instanceof OWLNamedObject;
+		}
+
+		// outgoing edges in the order of the edge sets
+		outOffsets = new int[n+1];
+		outTargets = new int[numEdges];
+		outQps = new int[numEdges];
+		outInferred = new boolean[numEdges];
+		int k = 0;
+		for (int i=0; i<n; i++) {
+			outOffsets[i] = k;
+			Set<OWLGraphEdge> edges = edgeBySource.get(nodes[i]);
+			if (edges != null) {
+				for (OWLGraphEdge e : edges) {
+					OWLQuantifiedProperty qp = e.getSingleQuantifiedProperty();
+					outTargets[k] = nodeIndex.get(e.getTarget());
+					outQps[k] = table.getId(qp);
+					outInferred[k] = qp.isInferred();
+					k++;
+				}
+			}
+		}
+		outOffsets[n] = k;
+
+		// incoming edges in the order used by the closure traversal
+		List<Set<OWLGraphEdge>> incoming = new ArrayList<Set<OWLGraphEdge>>(n);
+		int numIncoming = 0;
+		for (int i=0; i<n; i++) {
+			Set<OWLGraphEdge> edges = graph.getPrimitiveIncomingEdges(nodes[i]);
+			incoming.add(edges);
+			numIncoming += edges.size();
+		}
+		if (numIncoming != numEdges) {
+			throw new IllegalStateException("The incoming edges do not match the outgoing edges: "
+					+numIncoming+" incoming, "+numEdges+" outgoing");
+		}
+		inOffsets = new int[n+1];
+		inSources = new int[numIncoming];
+		inQps = new int[numIncoming];
+		inInferred = new boolean[numIncoming];
+		k = 0;
+		for (int i=0; i<n; i++) {
+			inOffsets[i] = k;
+			for (OWLGraphEdge e : incoming.get(i)) {
+				Integer s = nodeIndex.get(e.getSource());
+				if (s == null) {
+					throw new IllegalStateException("The source of an incoming edge is not a node: "+e);
+				}
+				OWLQuantifiedProperty qp = e.getSingleQuantifiedProperty();
+				inSources[k] = s;
+				inQps[k] = table.getId(qp);
+				inInferred[k] = qp.isInferred();
+				k++;
+			}
+		}
+		inOffsets[n] = k;
+		LOG.info("Compiled graph: nodes: "+n+" edges: "+numEdges);
+	}
+
+	private void internNode(OWLObject x, List<OWLObject> nodeList) {
+		if (!nodeIndex.containsKey(x)) {
+			nodeIndex.put(x, nodeList.size());
+			nodeList.add(x);
+		}
+	}
+
+	private static Set<OWLQuantifiedProperty> copy(Set<OWLQuantifiedProperty> set) {
+		if (set == null)
+			return null;
+		return new HashSet<OWLQuantifiedProperty>(set);
+	}
+
+	/**
+	 * @param config
+	 * @return true, if the edge inclusion/exclusion sets of the config are
+	 * the same as when this graph was compiled
+	 */
+	public boolean isCurrent(OWLGraphWrapper.Config config) {
+		return isEq(graphEdgeIncludeSet, config.graphEdgeIncludeSet)
+			&& isEq(graphEdgeExcludeSet, config.graphEdgeExcludeSet);
+	}
+
+	private static boolean isEq(Set<OWLQuantifiedProperty> a, Set<OWLQuantifiedProperty> b) {
+		if (a == null)
+			return b == null;
+		return a.equals(b);
+	}
+
+	/**
+	 * @return number of nodes
+	 */
+	public int getNumberOfNodes() {
+		return nodes.length;
+	}
+
+	/**
+	 * @return number of primitive edges
+	 */
+	public int getNumberOfEdges() {
+		return outTargets.length;
+	}
+
+	/**
+	 * @param x
+	 * @return true if x is a node in the compiled graph
+	 */
+	public boolean contains(OWLObject x) {
+		return nodeIndex.containsKey(x);
+	}
+
+	/**
+	 * @param x
+	 * @return int id for x or {@link #NONE}
+	 */
+	public int getNodeId(OWLObject x) {
+		Integer id = nodeIndex.get(x);
+		if (id == null)
+			return NONE;
+		return id;
+	}
+
+	/**
+	 * @param id
+	 * @return node with the given id
+	 */
+	public OWLObject getNode(int id) {
+		return nodes[id];
+	}
+
+	/**
+	 * @return the composition table used for interning quantified properties
+	 */
+	public QuantifiedPropertyCompositionTable getCompositionTable() {
+		return table;
+	}
+
+	private boolean isExcluded(int qp) {
+		if (qp < isExcluded.length)
+			return isExcluded[qp];
+		synchronized (extraExcluded) {
+			Boolean b = extraExcluded.get(qp);
+			if (b == null) {
+				b = graph.isExcluded(table.getQuantifiedProperty(qp));
+				extraExcluded.put(qp, b);
+			}
+			return b;
+		}
+	}
+
+	// ----------------------------------------
+	// CLOSURE
+	// ----------------------------------------
+
+	/**
+	 * @param s source, must be a node in this graph
+	 * @return closure of edges originating from s
+	 * @see OWLGraphWrapper#getOutgoingEdgesClosure(OWLObject)
+	 */
+	public Set<OWLGraphEdge> getOutgoingEdgesClosure(OWLObject s) {
+		Scratch sc = scratch.get();
+		traverseUp(getNodeId(s), sc);
+		Set<OWLGraphEdge> edges = new HashSet<OWLGraphEdge>();
+		for (int e=0; e<sc.numEntries; e++) {
+			if (sc.eInClosure[e]) {
+				List<OWLQuantifiedProperty> qpl = new Vector<OWLQuantifiedProperty>(sc.lLen(sc.eList[e]));
+				for (int l = sc.eList[e]; l != NONE; l = sc.lLink[l]) {
+					qpl.add(0, getQuantifiedProperty(sc, l));
+				}
+				OWLGraphEdge edge = new OWLGraphEdge(s, nodes[sc.eNode[e]], qpl, graph.getSourceOntology());
+				edge.setDistance(sc.eDist[e]);
+				edges.add(edge);
+			}
+		}
+		return edges;
+	}
+
+	/**
+	 * @param t target, must be a node in this graph
+	 * @return all edges connecting descendants of t to t
+	 * @see OWLGraphWrapper#getIncomingEdgesClosure(OWLObject)
+	 */
+	public Set<OWLGraphEdge> getIncomingEdgesClosure(OWLObject t) {
+		Scratch sc = scratch.get();
+		traverseDown(getNodeId(t), sc);
+		Set<OWLGraphEdge> edges = new HashSet<OWLGraphEdge>();
+		for (int e=0; e<sc.numEntries; e++) {
+			if (sc.eInClosure[e]) {
+				List<OWLQuantifiedProperty> qpl = new Vector<OWLQuantifiedProperty>(sc.lLen(sc.eList[e]));
+				for (int l = sc.eList[e]; l != NONE; l = sc.lLink[l]) {
+					qpl.add(getQuantifiedProperty(sc, l));
+				}
+				OWLGraphEdge edge = new OWLGraphEdge(nodes[sc.eNode[e]], t, qpl, graph.getSourceOntology());
+				edge.setDistance(sc.eDist[e]);
+				edges.add(edge);
+			}
+		}
+		return edges;
+	}
+
+	/*
+	 * The interned property of a path element, or a copy with the
+	 * inferred flag, if the element is an uncomposed inferred edge.
+	 */
+	private OWLQuantifiedProperty getQuantifiedProperty(Scratch sc, int l) {
+		OWLQuantifiedProperty qp = table.getQuantifiedProperty(sc.lQp[l]);
+		if (sc.lInferred[l]) {
+			OWLQuantifiedProperty inferred = new OWLQuantifiedProperty(qp.getQuantifier());
+			inferred.setProperty(qp.getProperty());
+			inferred.setInverseOf(qp.isInverseOf());
+			inferred.setMinCardinality(qp.getMinCardinality());
+			inferred.setMaxCardinality(qp.getMaxCardinality());
+			inferred.setInferred(true);
+			return inferred;
+		}
+		return qp;
+	}
+
+	/**
+	 * @param s source, must be a node in this graph
+	 * @return targets of all edges in the outgoing closure of s
+	 * @see OWLGraphWrapper#getAncestors(OWLObject)
+	 */
+	public Set<OWLObject> getAncestors(OWLObject s) {
+		Scratch sc = scratch.get();
+		traverseUp(getNodeId(s), sc);
+		return collectNodes(sc);
+	}
+
+	/**
+	 * @param t target, must be a node in this graph
+	 * @return sources of all edges in the incoming closure of t
+	 * @see OWLGraphWrapper#getDescendants(OWLObject)
+	 */
+	public Set<OWLObject> getDescendants(OWLObject t) {
+		Scratch sc = scratch.get();
+		traverseDown(getNodeId(t), sc);
+		return collectNodes(sc);
+	}
+
+	private Set<OWLObject> collectNodes(Scratch sc) {
+		Set<OWLObject> objs = new HashSet<OWLObject>();
+		sc.nextGeneration();
+		for (int e=0; e<sc.numEntries; e++) {
+			int n = sc.eNode[e];
+			if (sc.eInClosure[e] && sc.stamp[n] != sc.generation) {
+				sc.stamp[n] = sc.generation;
+				objs.add(nodes[n]);
+			}
+		}
+		return objs;
+	}
+
+	/*
+	 * Mirrors OWLGraphWrapper.getOutgoingEdgesClosure: lists are stored
+	 * last-property-first, i.e. the link points to the prefix of the path.
+	 * Visited paths are keyed by (target, final property).
+	 */
+	private void traverseUp(int src, Scratch sc) {
+		sc.reset();
+		boolean isIncludeClassExpressions = graph.getConfig().isIncludeClassExpressionsInClosure;
+		sc.visitNode(src);
+		for (int k = outOffsets[src]; k < outOffsets[src+1]; k++) {
+			int e = sc.addEntry(outTargets[k], sc.addList(outQps[k], NONE, outInferred[k]), 1, true);
+			sc.push(e);
+		}
+		while (sc.sp > 0) {
+			int ne = sc.pop();
+			int t = sc.eNode[ne];
+			int l = sc.eList[ne];
+			int nextDist = sc.eDist[ne] + 1;
+			for (int k = outOffsets[t]; k < outOffsets[t+1]; k++) {
+				int xt = outTargets[k];
+				int xq = outQps[k];
+				int nl;
+				if (l == NONE) {
+					nl = sc.addList(xq, NONE, outInferred[k]);
+				}
+				else {
+					int c = table.compose(sc.lQp[l], xq);
+					int prefix = sc.lLink[l];
+					if (c == NONE && table.hasLongChains()) {
+						// chains ending in xq, where the path ends with the remainder of the chain
+						for (int occ : table.getChainOccurrences(xq)) {
+							if (table.getOccurrencePosition(occ) != table.getChainLength(occ) - 1)
+								continue;
+							int m = l;
+							for (int i = table.getOccurrencePosition(occ) - 1; i >= 0 && m != NONE; i--) {
+								if (sc.lQp[m] != table.getChainElement(occ, i))
+									break;
+								m = sc.lLink[m];
+								if (i == 0) {
+									c = table.getChainResult(occ);
+									prefix = m;
+								}
+							}
+							if (c != NONE)
+								break;
+						}
+					}
+					if (c == NONE) {
+						nl = sc.addList(xq, l, outInferred[k]);
+					}
+					else if (isExcluded(c)) {
+						continue;
+					}
+					else if (table.isIdentity(c)) {
+						nl = prefix;
+					}
+					else {
+						nl = sc.addList(c, prefix, false);
+					}
+				}
+				int finalQp = nl == NONE ? NONE : sc.lQp[nl];
+				if (!sc.isVisited(xt, finalQp, Integer.MAX_VALUE)) {
+					sc.addVisit(xt, finalQp, 0);
+					int nu = sc.addEntry(xt, nl, nextDist, isNamed[xt] || isIncludeClassExpressions);
+					sc.push(nu);
+				}
+			}
+		}
+	}
+
+	/*
+	 * Mirrors OWLGraphWrapper.getIncomingEdgesClosure: lists are stored
+	 * first-property-first, i.e. the link points to the suffix of the path.
+	 * Visited paths are keyed by (source, first property), favoring shorter paths.
+	 */
+	private void traverseDown(int tgt, Scratch sc) {
+		sc.reset();
+		boolean isIncludeClassExpressions = graph.getConfig().isIncludeClassExpressionsInClosure;
+		sc.visitNode(tgt);
+		for (int k = inOffsets[tgt]; k < inOffsets[tgt+1]; k++) {
+			int e = sc.addEntry(inSources[k], sc.addList(inQps[k], NONE, inInferred[k]), 1, true);
+			sc.push(e);
+		}
+		while (sc.sp > 0) {
+			int ne = sc.pop();
+			int s = sc.eNode[ne];
+			int l = sc.eList[ne];
+			int nextDist = sc.eDist[ne] + 1;
+			for (int k = inOffsets[s]; k < inOffsets[s+1]; k++) {
+				int xs = inSources[k];
+				// prepend the incoming property, folding it into the path as far as possible
+				int x = inQps[k];
+				boolean xInferred = inInferred[k];
+				int rest = l;
+				boolean isDropped = false;
+				boolean isExcludedPath = false;
+				while (rest != NONE) {
+					int c = table.compose(x, sc.lQp[rest]);
+					int suffix = sc.lLink[rest];
+					if (c == NONE && table.hasLongChains()) {
+						// chains starting with x, where the path starts with the remainder of the chain
+						for (int occ : table.getChainOccurrences(sc.lQp[rest])) {
+							if (table.getOccurrencePosition(occ) != 1 || table.getChainElement(occ, 0) != x)
+								continue;
+							int m = rest;
+							int len = table.getChainLength(occ);
+							for (int i = 1; i < len && m != NONE; i++) {
+								if (sc.lQp[m] != table.getChainElement(occ, i))
+									break;
+								m = sc.lLink[m];
+								if (i == len - 1) {
+									c = table.getChainResult(occ);
+									suffix = m;
+								}
+							}
+							if (c != NONE)
+								break;
+						}
+					}
+					if (c == NONE)
+						break;
+					if (isExcluded(c)) {
+						isExcludedPath = true;
+						break;
+					}
+					rest = suffix;
+					if (table.isIdentity(c)) {
+						isDropped = true;
+						break;
+					}
+					x = c;
+					xInferred = false;
+				}
+				if (isExcludedPath)
+					continue;
+				int nl = isDropped ? rest : sc.addList(x, rest, xInferred);
+				int firstQp = nl == NONE ? NONE : sc.lQp[nl];
+				int len = sc.lLen(nl);
+				if (!sc.isVisited(xs, firstQp, len)) {
+					sc.addVisit(xs, firstQp, len);
+					int nu = sc.addEntry(xs, nl, nextDist, isNamed[xs] || isIncludeClassExpressions);
+					sc.push(nu);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reusable per-thread working memory for a closure traversal.
+	 *
+	 * All arrays grow on demand and are never shrunk; the per-node visited
+	 * markers are reset in constant time by incrementing the generation.
+	 */
+	private static class Scratch {
+
+		// path lists
+		int[] lQp = new int[256];
+		int[] lLink = new int[256];
+		int[] lLength = new int[256];
+		boolean[] lInferred = new boolean[256];
+		int numLists = 0;
+
+		// closure entries
+		int[] eNode = new int[256];
+		int[] eList = new int[256];
+		int[] eDist = new int[256];
+		boolean[] eInClosure = new boolean[256];
+		int numEntries = 0;
+
+		// stack of entries
+		int[] stack = new int[256];
+		int sp = 0;
+
+		// visited (node, property, length) triples, as linked lists per node
+		final int[] stamp;
+		final int[] head;
+		int generation = 0;
+		int[] vQp = new int[256];
+		int[] vLen = new int[256];
+		int[] vNext = new int[256];
+		int numVisits = 0;
+
+		Scratch(int numNodes) {
+			stamp = new int[numNodes];
+			head = new int[numNodes];
+		}
+
+		void nextGeneration() {
+			generation++;
+			if (generation == Integer.MAX_VALUE) {
+				Arrays.fill(stamp, 0);
+				generation = 1;
+			}
+		}
+
+		void reset() {
+			numLists = 0;
+			numEntries = 0;
+			sp = 0;
+			numVisits = 0;
+			nextGeneration();
+		}
+
+		int addList(int qp, int link, boolean isInferred) {
+			if (numLists == lQp.length) {
+				int len = lQp.length * 2;
+				lQp = Arrays.copyOf(lQp, len);
+				lLink = Arrays.copyOf(lLink, len);
+				lLength = Arrays.copyOf(lLength, len);
+				lInferred = Arrays.copyOf(lInferred, len);
+			}
+			lQp[numLists] = qp;
+			lLink[numLists] = link;
+			lLength[numLists] = lLen(link) + 1;
+			lInferred[numLists] = isInferred;
+			return numLists++;
+		}
+
+		int lLen(int l) {
+			return l == NONE ? 0 : lLength[l];
+		}
+
+		int addEntry(int node, int list, int dist, boolean isInClosure) {
+			if (numEntries == eNode.length) {
+				int len = eNode.length * 2;
+				eNode = Arrays.copyOf(eNode, len);
+				eList = Arrays.copyOf(eList, len);
+				eDist = Arrays.copyOf(eDist, len);
+				eInClosure = Arrays.copyOf(eInClosure, len);
+			}
+			eNode[numEntries] = node;
+			eList[numEntries] = list;
+			eDist[numEntries] = dist;
+			eInClosure[numEntries] = isInClosure;
+			return numEntries++;
+		}
+
+		void push(int e) {
+			if (sp == stack.length) {
+				stack = Arrays.copyOf(stack, sp * 2);
+			}
+			stack[sp++] = e;
+		}
+
+		int pop() {
+			return stack[--sp];
+		}
+
+		void visitNode(int n) {
+			if (stamp[n] != generation) {
+				stamp[n] = generation;
+				head[n] = NONE;
+			}
+		}
+
+		/**
+		 * @return true if there is a visit for (n, qp) with a length not exceeding len
+		 */
+		boolean isVisited(int n, int qp, int len) {
+			if (stamp[n] != generation)
+				return false;
+			for (int v = head[n]; v != NONE; v = vNext[v]) {
+				if (vQp[v] == qp && vLen[v] <= len)
+					return true;
+			}
+			return false;
+		}
+
+		void addVisit(int n, int qp, int len) {
+			visitNode(n);
+			if (numVisits == vQp.length) {
+				int size = vQp.length * 2;
+				vQp = Arrays.copyOf(vQp, size);
+				vLen = Arrays.copyOf(vLen, size);
+				vNext = Arrays.copyOf(vNext, size);
+			}
+			vQp[numVisits] = qp;
+			vLen[numVisits] = len;
+			vNext[numVisits] = head[n];
+			head[n] = numVisits++;
+		}
+	}
+}
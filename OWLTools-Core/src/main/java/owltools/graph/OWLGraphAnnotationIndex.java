@@ -0,0 +1,149 @@
+package owltools.graph;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.obolibrary.oboformat.parser.OBOFormatConstants.OboFormatTag;
+import org.semanticweb.owlapi.model.AxiomType;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotationAssertionAxiom;
+import org.semanticweb.owlapi.model.OWLAnnotationProperty;
+import org.semanticweb.owlapi.model.OWLAnnotationSubject;
+import org.semanticweb.owlapi.model.OWLAnnotationValue;
+import org.semanticweb.owlapi.model.OWLLiteral;
+import org.semanticweb.owlapi.model.OWLOntology;
+
+/**
+ * Index of the annotation assertion axioms in all ontologies of an
+ * {@link OWLGraphWrapper}, by subject and property, plus reverse indexes
+ * for labels and OBO alternate identifiers.
+ *
+ * The index is a snapshot; the wrapper discards it when annotation assertions
+ * are added or removed, see {@link OWLGraphWrapper#getAnnotationIndex()}.
+ */
+public class OWLGraphAnnotationIndex {
+
+	private static Logger LOG = Logger.getLogger(OWLGraphAnnotationIndex.class);
+
+	private final Map<IRI, Map<OWLAnnotationProperty, Set<OWLAnnotationAssertionAxiom>>> axiomsBySubject =
+		new HashMap<IRI, Map<OWLAnnotationProperty, Set<OWLAnnotationAssertionAxiom>>>();
+	private final Map<String, Set<IRI>> subjectsByLabel = new HashMap<String, Set<IRI>>();
+	private final Map<String, IRI> subjectByAltId = new HashMap<String, IRI>();
+	private final Set<IRI> deprecated = new HashSet<IRI>();
+
+	/**
+	 * @param graph
+	 */
+	public OWLGraphAnnotationIndex(OWLGraphWrapper graph) {
+		OWLAnnotationProperty altIdProperty = graph.getAnnotationProperty(OboFormatTag.TAG_ALT_ID.getTag());
+		int n = 0;
+		for (OWLOntology o : graph.getAllOntologies()) {
+			for (OWLAnnotationAssertionAxiom aa : o.getAxioms(AxiomType.ANNOTATION_ASSERTION)) {
+				OWLAnnotationSubject s = aa.getSubject();
+				if (!(s instanceof IRI))
+					continue;
+				IRI subject = (IRI) s;
+				OWLAnnotationProperty property = aa.getProperty();
+				Map<OWLAnnotationProperty, Set<OWLAnnotationAssertionAxiom>> m = axiomsBySubject.get(subject);
+				if (m == null) {
+					m = new HashMap<OWLAnnotationProperty, Set<OWLAnnotationAssertionAxiom>>(4);
+					axiomsBySubject.put(subject, m);
+				}
+				Set<OWLAnnotationAssertionAxiom> axioms = m.get(property);
+				if (axioms == null) {
+					axioms = new LinkedHashSet<OWLAnnotationAssertionAxiom>(2);
+					m.put(property, axioms);
+				}
+				axioms.add(aa);
+				n++;
+
+				OWLAnnotationValue v = aa.getValue();
+				if (property.isLabel() && v instanceof OWLLiteral) {
+					String label = ((OWLLiteral) v).getLiteral();
+					Set<IRI> subjects = subjectsByLabel.get(label);
+					if (subjects == null) {
+						subjects = new LinkedHashSet<IRI>(2);
+						subjectsByLabel.put(label, subjects);
+					}
+					subjects.add(subject);
+				}
+				else if (property.equals(altIdProperty) && v instanceof OWLLiteral) {
+					subjectByAltId.put(((OWLLiteral) v).getLiteral(), subject);
+				}
+				else if (aa.getAnnotation().isDeprecatedIRIAnnotation()) {
+					deprecated.add(subject);
+				}
+			}
+		}
+		LOG.info("Annotation index: subjects="+axiomsBySubject.size()+" axioms="+n);
+	}
+
+	/**
+	 * @param subject
+	 * @param property
+	 * @return all annotation assertions for subject and property, never null
+	 */
+	public Set<OWLAnnotationAssertionAxiom> getAnnotationAssertionAxioms(IRI subject, OWLAnnotationProperty property) {
+		Map<OWLAnnotationProperty, Set<OWLAnnotationAssertionAxiom>> m = axiomsBySubject.get(subject);
+		if (m == null)
+			return Collections.emptySet();
+		Set<OWLAnnotationAssertionAxiom> axioms = m.get(property);
+		if (axioms == null)
+			return Collections.emptySet();
+		return Collections.unmodifiableSet(axioms);
+	}
+
+	/**
+	 * @param subject
+	 * @param property
+	 * @return first literal value, or null
+	 */
+	public String getLiteralValue(IRI subject, OWLAnnotationProperty property) {
+		for (OWLAnnotationAssertionAxiom aa : getAnnotationAssertionAxioms(subject, property)) {
+			if (aa.getValue() instanceof OWLLiteral)
+				return ((OWLLiteral) aa.getValue()).getLiteral();
+		}
+		return null;
+	}
+
+	/**
+	 * @param label
+	 * @return subjects with this rdfs:label, in the order the assertions were found, never null
+	 */
+	public List<IRI> getSubjectsByLabel(String label) {
+		Set<IRI> subjects = subjectsByLabel.get(label);
+		if (subjects == null)
+			return Collections.emptyList();
+		return new ArrayList<IRI>(subjects);
+	}
+
+	/**
+	 * @param altId
+	 * @return subject with this OBO alt_id, or null
+	 */
+	public IRI getSubjectByAltId(String altId) {
+		return subjectByAltId.get(altId);
+	}
+
+	/**
+	 * @return map of all OBO alt_ids to their subject
+	 */
+	public Map<String, IRI> getSubjectsByAltId() {
+		return Collections.unmodifiableMap(subjectByAltId);
+	}
+
+	/**
+	 * @param subject
+	 * @return true if there is an owl:deprecated true annotation for subject
+	 */
+	public boolean isDeprecated(IRI subject) {
+		return deprecated.contains(subject);
+	}
+}
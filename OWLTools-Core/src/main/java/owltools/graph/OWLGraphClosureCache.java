@@ -0,0 +1,50 @@
+package owltools.graph;
+
+import java.util.Set;
+
+import org.semanticweb.owlapi.model.OWLObject;
+
+/**
+ * Stores the edge closure computed for an object, e.g. the results of
+ * {@link OWLGraphWrapper#getOutgoingEdgesClosure(OWLObject)}.
+ * 
+ * Implementations must be safe for use by multiple threads. Sets returned
+ * by {@link #get(OWLObject)} and {@link #put(OWLObject, Set)} are
+ * unmodifiable views; callers that need to change them must make a copy.
+ * 
+ * @see OWLGraphWrapper#setOutgoingClosureCache(OWLGraphClosureCache)
+ * @see BoundedOWLGraphClosureCache
+ */
+public interface OWLGraphClosureCache {
+
+	/**
+	 * @param x
+	 * @return unmodifiable view of the cached closure for x, or null if not cached
+	 */
+	public Set<OWLGraphEdge> get(OWLObject x);
+
+	/**
+	 * Adds the closure for x. The cache takes ownership of the set,
+	 * it must not be modified by the caller afterwards.
+	 * 
+	 * @param x
+	 * @param edges
+	 * @return unmodifiable view of edges
+	 */
+	public Set<OWLGraphEdge> put(OWLObject x, Set<OWLGraphEdge> edges);
+
+	/**
+	 * Removes all entries.
+	 */
+	public void clear();
+
+	/**
+	 * @return number of objects with a cached closure
+	 */
+	public int size();
+
+	/**
+	 * @return total number of edges held in the cache
+	 */
+	public long getWeight();
+}
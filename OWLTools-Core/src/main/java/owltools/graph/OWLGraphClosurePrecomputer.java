@@ -0,0 +1,305 @@
+package owltools.graph;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.log4j.Logger;
+import org.semanticweb.owlapi.model.OWLObject;
+
+/**
+ * Computes the outgoing edge closure for all objects in a graph, using
+ * multiple threads.
+ *
+ * Objects are processed in topological order: an object is scheduled as soon as
+ * the closures of all its direct targets are done, and its closure is built by
+ * composing its direct edges with these closures, rather than walking the graph
+ * again. This is only done if edge composition is associative
+ * (see {@link QuantifiedPropertyCompositionTable#isAssociative()}) and there are
+ * no include or exclude sets in the config. Otherwise, and for objects in cycles,
+ * the closure is computed with the {@link OWLCompiledGraph}.
+ *
+ * In both cases the result contains the same targets and final quantified properties
+ * as {@link OWLGraphWrapper#getOutgoingEdgesClosure(OWLObject)}, although where
+ * there are multiple paths a different one may be chosen.
+ */
+public class OWLGraphClosurePrecomputer {
+
+	private static Logger LOG = Logger.getLogger(OWLGraphClosurePrecomputer.class);
+
+	private final OWLGraphWrapper graph;
+	private final int numThreads;
+
+	private int numberOfNodes = 0;
+	private final AtomicInteger numberOfReused = new AtomicInteger();
+	private long elapsedMillis = 0;
+	private long peakHeapBytes = 0;
+
+	/**
+	 * @param graph
+	 * @param numThreads
+	 */
+	public OWLGraphClosurePrecomputer(OWLGraphWrapper graph, int numThreads) {
+		super();
+		this.graph = graph;
+		this.numThreads = Math.max(1, numThreads);
+	}
+
+	/**
+	 * @return closure for every object with outgoing edges, keyed by source
+	 * @throws InterruptedException
+	 */
+	public Map<OWLObject, Set<OWLGraphEdge>> precompute() throws InterruptedException {
+		resetPeakHeap();
+		long t1 = System.currentTimeMillis();
+
+		final Map<OWLObject, Set<OWLGraphEdge>> edgeBySource = graph.getPrimitiveOutgoingEdgeIndex();
+		final Map<OWLObject, Set<OWLGraphEdge>> closures =
+			new ConcurrentHashMap<OWLObject, Set<OWLGraphEdge>>(edgeBySource.size() * 2);
+		numberOfNodes = edgeBySource.size();
+		numberOfReused.set(0);
+
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		try {
+			List<OWLObject> remaining;
+			if (isReuseClosures()) {
+				remaining = precomputeInTopologicalOrder(edgeBySource, closures, executor);
+			}
+			else {
+				remaining = new ArrayList<OWLObject>(edgeBySource.keySet());
+			}
+			if (!remaining.isEmpty()) {
+				LOG.info("Computing "+remaining.size()+" closures with compiled graph");
+				precomputeWithCompiledGraph(remaining, closures, executor);
+			}
+		}
+		finally {
+			executor.shutdown();
+		}
+
+		elapsedMillis = System.currentTimeMillis() - t1;
+		peakHeapBytes = getPeakHeap();
+		LOG.info(getReport());
+		return closures;
+	}
+
+	private boolean isReuseClosures() {
+		OWLGraphWrapper.Config config = graph.getConfig();
+		return graph.getCompositionTable().isAssociative() &&
+			config.graphEdgeIncludeSet == null &&
+			config.graphEdgeExcludeSet == null &&
+			config.isIncludeClassExpressionsInClosure;
+	}
+
+	/**
+	 * @return objects that could not be scheduled, because they are in, or lead to, a cycle
+	 */
+	private List<OWLObject> precomputeInTopologicalOrder(final Map<OWLObject, Set<OWLGraphEdge>> edgeBySource,
+			final Map<OWLObject, Set<OWLGraphEdge>> closures,
+			final ExecutorService executor) throws InterruptedException {
+
+		// number of direct targets with outstanding closures, and the reverse of this
+		final Map<OWLObject, AtomicInteger> pending = new HashMap<OWLObject, AtomicInteger>();
+		final Map<OWLObject, List<OWLObject>> dependents = new HashMap<OWLObject, List<OWLObject>>();
+		List<OWLObject> ready = new ArrayList<OWLObject>();
+		for (OWLObject s : edgeBySource.keySet()) {
+			Set<OWLObject> targets = new HashSet<OWLObject>();
+			for (OWLGraphEdge e : edgeBySource.get(s)) {
+				// targets without outgoing edges have an empty closure
+				if (edgeBySource.containsKey(e.getTarget()))
+					targets.add(e.getTarget());
+			}
+			pending.put(s, new AtomicInteger(targets.size()));
+			for (OWLObject t : targets) {
+				List<OWLObject> ds = dependents.get(t);
+				if (ds == null) {
+					ds = new ArrayList<OWLObject>();
+					dependents.put(t, ds);
+				}
+				ds.add(s);
+			}
+			if (targets.isEmpty())
+				ready.add(s);
+		}
+
+		final AtomicInteger inFlight = new AtomicInteger(ready.size());
+		final CountDownLatch done = new CountDownLatch(1);
+		final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+		if (ready.isEmpty())
+			done.countDown();
+
+		class Task implements Runnable {
+			private final OWLObject s;
+
+			Task(OWLObject s) {
+				this.s = s;
+			}
+
+			public void run() {
+				try {
+					if (error.get() == null) {
+						closures.put(s, composeClosure(s, edgeBySource.get(s), closures));
+						numberOfReused.incrementAndGet();
+						List<OWLObject> ds = dependents.get(s);
+						if (ds != null) {
+							for (OWLObject d : ds) {
+								if (pending.get(d).decrementAndGet() == 0) {
+									inFlight.incrementAndGet();
+									executor.execute(new Task(d));
+								}
+							}
+						}
+					}
+				}
+				catch (Throwable t) {
+					error.compareAndSet(null, t);
+				}
+				finally {
+					if (inFlight.decrementAndGet() == 0)
+						done.countDown();
+				}
+			}
+		}
+
+		for (OWLObject s : ready) {
+			executor.execute(new Task(s));
+		}
+		done.await();
+		if (error.get() != null)
+			throw new RuntimeException("Could not precompute closures", error.get());
+
+		List<OWLObject> remaining = new ArrayList<OWLObject>();
+		for (OWLObject s : edgeBySource.keySet()) {
+			if (!closures.containsKey(s))
+				remaining.add(s);
+		}
+		return remaining;
+	}
+
+	/**
+	 * Composes the direct edges of s with the closures of their targets. As in
+	 * {@link OWLGraphWrapper#getOutgoingEdgesClosure(OWLObject)}, all direct edges
+	 * are included, plus one inferred edge for each combination of target
+	 * and final quantified property.
+	 */
+	private Set<OWLGraphEdge> composeClosure(OWLObject s, Set<OWLGraphEdge> primitiveEdges,
+			Map<OWLObject, Set<OWLGraphEdge>> closures) {
+		QuantifiedPropertyCompositionTable table = graph.getCompositionTable();
+		Set<OWLGraphEdge> closure = new HashSet<OWLGraphEdge>(primitiveEdges);
+		Map<OWLObject, Set<Integer>> visited = new HashMap<OWLObject, Set<Integer>>();
+		for (OWLGraphEdge e : primitiveEdges) {
+			Set<OWLGraphEdge> targetClosure = closures.get(e.getTarget());
+			if (targetClosure == null)
+				continue;
+			for (OWLGraphEdge te : targetClosure) {
+				OWLGraphEdge nu = graph.combineEdgePair(s, e, te, te.getDistance() + 1);
+				if (nu == null)
+					continue;
+				Set<Integer> qps = visited.get(nu.getTarget());
+				if (qps == null) {
+					qps = new HashSet<Integer>();
+					visited.put(nu.getTarget(), qps);
+				}
+				if (qps.add(table.getId(nu.getFinalQuantifiedProperty())))
+					closure.add(nu);
+			}
+		}
+		return closure;
+	}
+
+	private void precomputeWithCompiledGraph(List<OWLObject> objs,
+			final Map<OWLObject, Set<OWLGraphEdge>> closures,
+			ExecutorService executor) throws InterruptedException {
+		final OWLCompiledGraph cg = graph.getCompiledGraph();
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		int chunkSize = Math.max(1, objs.size() / (numThreads * 4));
+		for (int i=0; i<objs.size(); i+=chunkSize) {
+			final List<OWLObject> chunk = objs.subList(i, Math.min(objs.size(), i + chunkSize));
+			tasks.add(new Callable<Void>() {
+
+				public Void call() throws Exception {
+					for (OWLObject s : chunk) {
+						closures.put(s, cg.getOutgoingEdgesClosure(s));
+					}
+					return null;
+				}
+			});
+		}
+		for (Future<Void> f : executor.invokeAll(tasks)) {
+			try {
+				f.get();
+			} catch (ExecutionException e) {
+				throw new RuntimeException("Could not precompute closures", e.getCause());
+			}
+		}
+	}
+
+	private static void resetPeakHeap() {
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP && pool.isValid())
+				pool.resetPeakUsage();
+		}
+	}
+
+	private static long getPeakHeap() {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP && pool.isValid())
+				peak += pool.getPeakUsage().getUsed();
+		}
+		return peak;
+	}
+
+	/**
+	 * @return number of objects for which a closure was computed in the last run
+	 */
+	public int getNumberOfNodes() {
+		return numberOfNodes;
+	}
+
+	/**
+	 * @return number of closures built from the closures of their direct targets
+	 */
+	public int getNumberOfReused() {
+		return numberOfReused.get();
+	}
+
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	public double getNodesPerSecond() {
+		return elapsedMillis == 0 ? numberOfNodes * 1000.0 : numberOfNodes * 1000.0 / elapsedMillis;
+	}
+
+	/**
+	 * @return peak heap usage during the last run, summed over memory pools
+	 */
+	public long getPeakHeapBytes() {
+		return peakHeapBytes;
+	}
+
+	public String getReport() {
+		return "Precomputed closures: nodes="+numberOfNodes+
+			" reused="+numberOfReused.get()+
+			" threads="+numThreads+
+			" time="+elapsedMillis+"ms"+
+			" nodes/sec="+Math.round(getNodesPerSecond())+
+			" peakHeap="+(peakHeapBytes / (1024 * 1024))+"MB";
+	}
+}
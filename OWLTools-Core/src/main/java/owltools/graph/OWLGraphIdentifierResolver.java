@@ -0,0 +1,186 @@
+package owltools.graph;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.log4j.Logger;
+import org.obolibrary.obo2owl.Obo2Owl;
+import org.obolibrary.obo2owl.Owl2Obo;
+import org.obolibrary.oboformat.model.OBODoc;
+import org.semanticweb.owlapi.model.AxiomType;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotationProperty;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDeclarationAxiom;
+import org.semanticweb.owlapi.model.OWLEntity;
+import org.semanticweb.owlapi.model.OWLNamedIndividual;
+import org.semanticweb.owlapi.model.OWLObject;
+import org.semanticweb.owlapi.model.OWLObjectProperty;
+import org.semanticweb.owlapi.model.OWLOntology;
+
+/**
+ * Resolves OBO-style identifiers (e.g. GO:0008150) and IRIs to the entities
+ * declared in the ontologies of an {@link OWLGraphWrapper}.
+ *
+ * The maps are built once from the declarations, so a lookup is a hash lookup.
+ * Identifiers that are not found in the map, e.g. because their IRI does not
+ * follow the obo2owl conventions, are translated with {@link Obo2Owl}.
+ * Identifiers resolved this way are remembered; identifiers that can not be
+ * resolved are not, so that the memory used is bounded by the number of
+ * declared entities and not by the number of distinct queries.
+ *
+ * If an IRI is declared as more than one type of entity, classes are preferred
+ * over individuals, individuals over object properties and object properties
+ * over annotation properties, as in {@link OWLGraphWrapper#getOWLObject(IRI)}.
+ *
+ * Instances are safe for use by multiple threads.
+ */
+public class OWLGraphIdentifierResolver {
+
+	private static Logger LOG = Logger.getLogger(OWLGraphIdentifierResolver.class);
+
+	private final Map<IRI, OWLObject> objectByIRI = new HashMap<IRI, OWLObject>();
+	private final Map<String, OWLObject> objectById = new HashMap<String, OWLObject>();
+	private final Map<String, OWLObject> resolvedIds = new ConcurrentHashMap<String, OWLObject>();
+
+	// only used to translate identifiers, with an empty OBODoc
+	private final Obo2Owl obo2owl;
+
+	/**
+	 * @param graph
+	 */
+	public OWLGraphIdentifierResolver(OWLGraphWrapper graph) {
+		Map<IRI, OWLEntity> classes = new HashMap<IRI, OWLEntity>();
+		Map<IRI, OWLEntity> individuals = new HashMap<IRI, OWLEntity>();
+		Map<IRI, OWLEntity> objectProperties = new HashMap<IRI, OWLEntity>();
+		Map<IRI, OWLEntity> annotationProperties = new HashMap<IRI, OWLEntity>();
+		for (OWLOntology o : graph.getAllOntologies()) {
+			for (OWLDeclarationAxiom da : o.getAxioms(AxiomType.DECLARATION)) {
+				OWLEntity e = da.getEntity();
+				if (e instanceof OWLClass)
+					classes.put(e.getIRI(), e);
+				else if (e instanceof OWLNamedIndividual)
+					individuals.put(e.getIRI(), e);
+				else if (e instanceof OWLObjectProperty)
+					objectProperties.put(e.getIRI(), e);
+				else if (e instanceof OWLAnnotationProperty)
+					annotationProperties.put(e.getIRI(), e);
+			}
+		}
+		// lowest priority first, so that preferred types overwrite
+		objectByIRI.putAll(annotationProperties);
+		objectByIRI.putAll(objectProperties);
+		objectByIRI.putAll(individuals);
+		objectByIRI.putAll(classes);
+
+		// only use identifiers that map back to the same IRI
+		obo2owl = new Obo2Owl();
+		obo2owl.setObodoc(new OBODoc());
+		for (Map.Entry<IRI, OWLObject> e : objectByIRI.entrySet()) {
+			OWLObject obj = e.getValue();
+			if (obj instanceof OWLAnnotationProperty)
+				continue;
+			String id = Owl2Obo.getIdentifier(e.getKey());
+			if (id != null && !objectById.containsKey(id) && e.getKey().equals(obo2owl.oboIdToIRI(id))) {
+				objectById.put(id, obj);
+			}
+		}
+		LOG.info("Identifier resolver: iris="+objectByIRI.size()+" ids="+objectById.size());
+	}
+
+	/**
+	 * Translate an identifier, regardless of whether the IRI is declared.
+	 * 
+	 * @param id OBO-style identifier, e.g. GO:0008150
+	 * @return IRI
+	 * @see Obo2Owl#oboIdToIRI(String)
+	 */
+	public IRI getIRI(String id) {
+		return obo2owl.oboIdToIRI(id);
+	}
+
+	/**
+	 * @param iri
+	 * @return declared class, individual, object property or annotation property, or null
+	 */
+	public OWLObject getOWLObject(IRI iri) {
+		return objectByIRI.get(iri);
+	}
+
+	/**
+	 * @param id OBO-style identifier, e.g. GO:0008150
+	 * @return declared class, individual or object property, or null
+	 */
+	public OWLObject resolve(String id) {
+		OWLObject obj = objectById.get(id);
+		if (obj != null)
+			return obj;
+		obj = resolvedIds.get(id);
+		if (obj == null) {
+			IRI iri = getIRI(id);
+			obj = iri == null ? null : objectByIRI.get(iri);
+			if (obj instanceof OWLAnnotationProperty)
+				obj = null;
+			if (obj != null)
+				resolvedIds.put(id, obj);
+		}
+		return obj;
+	}
+
+	// number of remembered identifiers, which were resolved by translation
+	int getNumberOfResolvedIds() {
+		return resolvedIds.size();
+	}
+
+	/**
+	 * @param id OBO-style identifier, e.g. GO:0008150
+	 * @return declared class or null
+	 */
+	public OWLClass resolveClass(String id) {
+		OWLObject obj = resolve(id);
+		if (obj instanceof OWLClass)
+			return (OWLClass) obj;
+		return null;
+	}
+
+	/**
+	 * Resolves a batch of identifiers.
+	 *
+	 * @param ids
+	 * @param unresolved if not null, identifiers that can not be resolved are added to this collection
+	 * @return map of identifier to object, in the order of ids
+	 */
+	public Map<String, OWLObject> resolve(Collection<String> ids, Collection<String> unresolved) {
+		Map<String, OWLObject> results = new LinkedHashMap<String, OWLObject>();
+		for (String id : ids) {
+			OWLObject obj = resolve(id);
+			if (obj != null)
+				results.put(id, obj);
+			else if (unresolved != null)
+				unresolved.add(id);
+		}
+		return results;
+	}
+
+	/**
+	 * Resolves a batch of class identifiers.
+	 *
+	 * @param ids
+	 * @param unresolved if not null, identifiers that can not be resolved to a class are added to this collection
+	 * @return map of identifier to class, in the order of ids
+	 */
+	public Map<String, OWLClass> resolveClasses(Collection<String> ids, Collection<String> unresolved) {
+		Map<String, OWLClass> results = new LinkedHashMap<String, OWLClass>();
+		for (String id : ids) {
+			OWLClass c = resolveClass(id);
+			if (c != null)
+				results.put(id, c);
+			else if (unresolved != null)
+				unresolved.add(id);
+		}
+		return results;
+	}
+}
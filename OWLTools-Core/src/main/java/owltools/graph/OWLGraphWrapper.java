@@ -1,5 +1,6 @@
 package owltools.graph;
 
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -7,6 +8,7 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -18,17 +20,16 @@ import org.obolibrary.obo2owl.Obo2OWLConstants.Obo2OWLVocabulary;
 import org.obolibrary.obo2owl.Obo2OWLConstants;
 import org.obolibrary.obo2owl.Obo2Owl;
 import org.obolibrary.obo2owl.Owl2Obo;
-import org.obolibrary.oboformat.model.OBODoc;
 import org.obolibrary.oboformat.parser.OBOFormatConstants.OboFormatTag;
 import org.semanticweb.owlapi.apibinding.OWLManager;
 import org.semanticweb.owlapi.model.AddAxiom;
 import org.semanticweb.owlapi.model.AddImport;
 import org.semanticweb.owlapi.model.AxiomType;
 import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.ImportChange;
 import org.semanticweb.owlapi.model.OWLAnnotation;
 import org.semanticweb.owlapi.model.OWLAnnotationAssertionAxiom;
 import org.semanticweb.owlapi.model.OWLAnnotationProperty;
-import org.semanticweb.owlapi.model.OWLAnnotationSubject;
 import org.semanticweb.owlapi.model.OWLAnnotationValue;
 import org.semanticweb.owlapi.model.OWLAxiom;
 import org.semanticweb.owlapi.model.OWLClass;
@@ -38,6 +39,7 @@ import org.semanticweb.owlapi.model.OWLDataFactory;
 import org.semanticweb.owlapi.model.OWLDeclarationAxiom;
 import org.semanticweb.owlapi.model.OWLEntity;
 import org.semanticweb.owlapi.model.OWLEquivalentClassesAxiom;
+import org.semanticweb.owlapi.model.OWLException;
 import org.semanticweb.owlapi.model.OWLFunctionalObjectPropertyAxiom;
 import org.semanticweb.owlapi.model.OWLImportsDeclaration;
 import org.semanticweb.owlapi.model.OWLIndividual;
@@ -58,6 +60,8 @@ import org.semanticweb.owlapi.model.OWLObjectPropertyExpression;
 import org.semanticweb.owlapi.model.OWLObjectSomeValuesFrom;
 import org.semanticweb.owlapi.model.OWLObjectUnionOf;
 import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyChange;
+import org.semanticweb.owlapi.model.OWLOntologyChangeListener;
 import org.semanticweb.owlapi.model.OWLOntologyCreationException;
 import org.semanticweb.owlapi.model.OWLOntologyID;
 import org.semanticweb.owlapi.model.OWLOntologyManager;
@@ -75,6 +79,7 @@ import org.semanticweb.owlapi.reasoner.Node;
 import org.semanticweb.owlapi.reasoner.OWLReasoner;
 import org.semanticweb.owlapi.vocab.OWLRDFVocabulary;
 
+import owltools.graph.BoundedOWLGraphClosureCache.EvictionPolicy;
 import owltools.graph.OWLGraphWrapper.ISynonym;
 import owltools.graph.OWLQuantifiedProperty.Quantifier;
 import owltools.graph.shunt.OWLShuntEdge;
@@ -155,13 +160,36 @@ public class OWLGraphWrapper {
 
 	private Map<OWLObject,Set<OWLGraphEdge>> edgeBySource;
 	private Map<OWLObject,Set<OWLGraphEdge>> edgeByTarget;
-	public Map<OWLObject,Set<OWLGraphEdge>> inferredEdgeBySource = null; // public to serialize
-	private Map<OWLObject,Set<OWLGraphEdge>> inferredEdgeByTarget = null;
 
 	// used to store mappings child->parent, where
 	// parent = UnionOf( ..., child, ...)
 	private Map<OWLObject,Set<OWLObject>> extraSubClassOfEdges = null;
 
+	private volatile OWLCompiledGraph compiledGraph = null;
+
+	// see freeze()
+	private volatile boolean isFrozen = false;
+
+	private volatile QuantifiedPropertyCompositionTable compositionTable = null;
+	private volatile OWLGraphAnnotationIndex annotationIndex = null;
+	private volatile OWLGraphIdentifierResolver identifierResolver = null;
+
+	// discards the composition table and other indexes when the ontologies change,
+	// see IndexChangeListener
+	private OWLOntologyChangeListener changeListener = null;
+	// closure caches are per wrapper, the config may be shared. see getOutgoingClosureCache()
+	private volatile OWLGraphClosureCache outgoingClosureCache = null;
+	private volatile OWLGraphClosureCache incomingClosureCache = null;
+	private OWLOntologyManager changeListenerManager = null;
+
+	// changes to axioms of these types invalidate the composition table
+	private static final Set<AxiomType<?>> COMPOSITION_AXIOM_TYPES = new HashSet<AxiomType<?>>();
+	static {
+		COMPOSITION_AXIOM_TYPES.add(AxiomType.TRANSITIVE_OBJECT_PROPERTY);
+		COMPOSITION_AXIOM_TYPES.add(AxiomType.SUB_PROPERTY_CHAIN_OF);
+		COMPOSITION_AXIOM_TYPES.add(AxiomType.INVERSE_OBJECT_PROPERTIES);
+	}
+
 	private Profiler profiler = new Profiler();
 
 
@@ -180,6 +208,15 @@ public class OWLGraphWrapper {
 		public boolean isCacheClosure = true;
 		public boolean isMonitorMemory = false;
 
+		// upper bound on the number of edges held by each of the default
+		// closure caches; zero or less means unbounded
+		public long closureCacheMaxWeight = 0;
+		public EvictionPolicy closureCacheEvictionPolicy = EvictionPolicy.LRU;
+
+		// if true, closure queries are answered from an integer-indexed
+		// snapshot of the graph, see OWLCompiledGraph
+		public boolean isUseCompiledGraph = false;
+
 		// if set to non-null, this constrains graph traversal. TODO
 		public Set<OWLQuantifiedProperty> graphEdgeIncludeSet = null;
 		public Set<OWLQuantifiedProperty> graphEdgeExcludeSet = null;
@@ -302,6 +339,7 @@ public class OWLGraphWrapper {
 	 * @param extOnt
 	 */
 	public void addImport(OWLOntology extOnt) {
+		checkNotFrozen();
 		AddImport ai = new AddImport(getSourceOntology(), getDataFactory().getOWLImportsDeclaration(extOnt.getOntologyID().getOntologyIRI()));
 		getManager().applyChange(ai);
 	}
@@ -314,12 +352,14 @@ public class OWLGraphWrapper {
 	 */
 	@Deprecated
 	public void useImportClosureForQueries() throws UnknownOWLOntologyException, OWLOntologyCreationException {
+		checkNotFrozen();
 		this.ontology = 
 			OWLManager.createOWLOntologyManager().createOntology(sourceOntology.getOntologyID().getOntologyIRI(), sourceOntology.getImportsClosure());
 	}
 
 	@Deprecated
 	public void addQueryOntology(OWLOntology extOnt) throws OWLOntologyCreationException {
+		checkNotFrozen();
 		Set<OWLAxiom> axioms = ontology.getAxioms();
 		axioms.addAll(extOnt.getAxioms());
 		this.ontology = 
@@ -333,6 +373,7 @@ public class OWLGraphWrapper {
 	 * @throws OWLOntologyCreationException
 	 */
 	public void mergeOntology(OWLOntology extOnt) throws OWLOntologyCreationException {
+		checkNotFrozen();
 		OWLOntologyManager manager = getManager();
 		for (OWLAxiom axiom : extOnt.getAxioms()) {
 			manager.applyChange(new AddAxiom(sourceOntology, axiom));
@@ -343,6 +384,7 @@ public class OWLGraphWrapper {
 	}
 
 	public void mergeOntology(OWLOntology extOnt, boolean isRemoveFromSupportList) throws OWLOntologyCreationException {
+		checkNotFrozen();
 		mergeOntology(extOnt);
 		if (isRemoveFromSupportList) {
 			this.supportOntologySet.remove(extOnt);
@@ -350,6 +392,7 @@ public class OWLGraphWrapper {
 	}
 
 	public void mergeSupportOntology(String ontologyIRI, boolean isRemoveFromSupportList) throws OWLOntologyCreationException {
+		checkNotFrozen();
 		OWLOntology extOnt = null;
 		for (OWLOntology ont : this.supportOntologySet) {
 			if (ont.getOntologyID().getOntologyIRI().toString().equals(ontologyIRI)) {
@@ -389,7 +432,9 @@ public class OWLGraphWrapper {
 	}
 
 	public void setSourceOntology(OWLOntology sourceOntology) {
+		checkNotFrozen();
 		this.sourceOntology = sourceOntology;
+		resetIndexes();
 	}
 
 	public Profiler getProfiler() {
@@ -398,6 +443,71 @@ public class OWLGraphWrapper {
 
 	public void setProfiler(Profiler profiler) {
 		this.profiler = profiler;
+		if (outgoingClosureCache instanceof BoundedOWLGraphClosureCache)
+			((BoundedOWLGraphClosureCache) outgoingClosureCache).setProfiler(profiler);
+		if (incomingClosureCache instanceof BoundedOWLGraphClosureCache)
+			((BoundedOWLGraphClosureCache) incomingClosureCache).setProfiler(profiler);
+	}
+
+	/**
+	 * Cache for {@link #getOutgoingEdgesClosure(OWLObject)}, keyed by source.
+	 * If none is set, a {@link BoundedOWLGraphClosureCache} is created
+	 * using {@link Config#closureCacheMaxWeight} and {@link Config#closureCacheEvictionPolicy}.
+	 * 
+	 * @return cache
+	 */
+	public OWLGraphClosureCache getOutgoingClosureCache() {
+		OWLGraphClosureCache cache = outgoingClosureCache;
+		if (cache == null) {
+			synchronized (this) {
+				if (outgoingClosureCache == null) {
+					outgoingClosureCache = new BoundedOWLGraphClosureCache("outgoingClosureCache",
+							config.closureCacheMaxWeight, config.closureCacheEvictionPolicy, profiler);
+				}
+				cache = outgoingClosureCache;
+			}
+		}
+		return cache;
+	}
+
+	/**
+	 * Use a different cache for {@link #getOutgoingEdgesClosure(OWLObject)}.
+	 * 
+	 * @param cache the new cache or null, to create a default cache on next use
+	 * @see #getOutgoingClosureCache()
+	 */
+	public synchronized void setOutgoingClosureCache(OWLGraphClosureCache cache) {
+		outgoingClosureCache = cache;
+	}
+
+	/**
+	 * Cache for {@link #getIncomingEdgesClosure(OWLObject)}, keyed by target.
+	 * 
+	 * @see #getOutgoingClosureCache()
+	 * @return cache
+	 */
+	public OWLGraphClosureCache getIncomingClosureCache() {
+		OWLGraphClosureCache cache = incomingClosureCache;
+		if (cache == null) {
+			synchronized (this) {
+				if (incomingClosureCache == null) {
+					incomingClosureCache = new BoundedOWLGraphClosureCache("incomingClosureCache",
+							config.closureCacheMaxWeight, config.closureCacheEvictionPolicy, profiler);
+				}
+				cache = incomingClosureCache;
+			}
+		}
+		return cache;
+	}
+
+	/**
+	 * Use a different cache for {@link #getIncomingEdgesClosure(OWLObject)}.
+	 * 
+	 * @param cache the new cache or null, to create a default cache on next use
+	 * @see #getIncomingClosureCache()
+	 */
+	public synchronized void setIncomingClosureCache(OWLGraphClosureCache cache) {
+		incomingClosureCache = cache;
 	}
 
 
@@ -410,6 +520,7 @@ public class OWLGraphWrapper {
 	 * @param reasoner
 	 */
 	public void setReasoner(OWLReasoner reasoner) {
+		checkNotFrozen();
 		this.reasoner = reasoner;
 	}
 
@@ -421,18 +532,26 @@ public class OWLGraphWrapper {
 	 * @return set of support ontologies
 	 */
 	public Set<OWLOntology> getSupportOntologySet() {
+		if (isFrozen)
+			return Collections.unmodifiableSet(supportOntologySet);
 		return supportOntologySet;
 	}
 
 	public void setSupportOntologySet(Set<OWLOntology> supportOntologySet) {
+		checkNotFrozen();
 		this.supportOntologySet = supportOntologySet;
+		resetIndexes();
 	}
 
 	public void addSupportOntology(OWLOntology o) {
+		checkNotFrozen();
 		this.supportOntologySet.add(o);
+		resetIndexes();
 	}
 	public void removeSupportOntology(OWLOntology o) {
+		checkNotFrozen();
 		this.supportOntologySet.remove(o);
+		resetIndexes();
 	}
 
 	/**
@@ -453,6 +572,7 @@ public class OWLGraphWrapper {
 	 * @param doForAllSupportOntologies
 	 */
 	public void addSupportOntologiesFromImportsClosure(boolean doForAllSupportOntologies) {
+		checkNotFrozen();
 		Set<OWLOntology> ios = new HashSet<OWLOntology>();
 		ios.add(sourceOntology);
 		
@@ -469,6 +589,7 @@ public class OWLGraphWrapper {
 	}
 	
 	public void addImportsFromSupportOntologies() {
+		checkNotFrozen();
 		OWLOntology sourceOntology = getSourceOntology();
 		OWLOntologyManager manager = getManager();
 		OWLDataFactory factory = getDataFactory();
@@ -486,9 +607,11 @@ public class OWLGraphWrapper {
 	}
 
 	public void remakeOntologiesFromImportsClosure(IRI ontologyIRI) throws OWLOntologyCreationException {
+		checkNotFrozen();
 		addSupportOntologiesFromImportsClosure();
 		OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
 		sourceOntology = manager.createOntology(sourceOntology.getAxioms(), ontologyIRI);
+		resetIndexes();
 	}
 
 	/**
@@ -499,6 +622,7 @@ public class OWLGraphWrapper {
 		mergeImportClosure(false);
 	}
 	public void mergeImportClosure(boolean isRemovedImportsDeclarations) throws OWLOntologyCreationException {
+		checkNotFrozen();
 		OWLOntologyManager manager = getManager();
 		//OWLOntologyID oid = sourceOntology.getOntologyID();
 		Set<OWLOntology> imports = sourceOntology.getImportsClosure();
@@ -545,8 +669,66 @@ public class OWLGraphWrapper {
 		return config;
 	}
 
-	public void setConfig(Config config) {
+	/**
+	 * Closures cached for the previous config are discarded.
+	 * 
+	 * @param config
+	 */
+	public synchronized void setConfig(Config config) {
+		checkNotFrozen();
 		this.config = config;
+		outgoingClosureCache = null;
+		incomingClosureCache = null;
+	}
+
+	/**
+	 * Eagerly builds all lazily initialized indexes (primitive edges,
+	 * reverse union map, composition table, annotation index, identifier resolver,
+	 * closure caches and, if enabled, the compiled graph), after which this wrapper
+	 * can be shared by any number of threads for read-only queries.
+	 * 
+	 * While frozen, methods that change the wrapped ontologies or the
+	 * configuration throw an {@link IllegalStateException}. Changes made to the
+	 * ontologies directly through the manager are not detected; callers must
+	 * not modify the ontologies until {@link #unfreeze()} is called.
+	 */
+	public synchronized void freeze() {
+		if (isFrozen)
+			return;
+		profiler.startTaskNotify("freeze");
+		cacheReverseUnionMap();
+		cacheEdges();
+		getCompositionTable();
+		getAnnotationIndex();
+		getIdentifierResolver();
+		getOutgoingClosureCache();
+		getIncomingClosureCache();
+		if (config.isUseCompiledGraph) {
+			compiledGraph = new OWLCompiledGraph(this, edgeBySource);
+		}
+		profiler.endTaskNotify("freeze");
+		isFrozen = true;
+	}
+
+	/**
+	 * Allows changes again. Indexes built by {@link #freeze()} are kept,
+	 * they are rebuilt as usual when the ontologies change.
+	 */
+	public synchronized void unfreeze() {
+		isFrozen = false;
+	}
+
+	/**
+	 * @return true if this wrapper is in read-only mode
+	 * @see #freeze()
+	 */
+	public boolean isFrozen() {
+		return isFrozen;
+	}
+
+	private void checkNotFrozen() {
+		if (isFrozen)
+			throw new IllegalStateException("OWLGraphWrapper is frozen, call unfreeze() before making changes");
 	}
 
 
@@ -696,7 +878,7 @@ public class OWLGraphWrapper {
 	}
 
 	// TODO - DRY
-	private boolean isExcluded(OWLQuantifiedProperty qp) {
+	boolean isExcluded(OWLQuantifiedProperty qp) {
 		if (config.graphEdgeIncludeSet != null) {
 			LOG.debug("includes:"+config.graphEdgeIncludeSet);
 			if (qp.getProperty() == null)
@@ -865,6 +1047,7 @@ public class OWLGraphWrapper {
 	 * used internally by this class.
 	 */
 	public void cacheEdges() {
+		checkNotFrozen();
 		edgeBySource = new HashMap<OWLObject,Set<OWLGraphEdge>>();
 		edgeByTarget = new HashMap<OWLObject,Set<OWLGraphEdge>>();
 
@@ -879,10 +1062,11 @@ public class OWLGraphWrapper {
 			if (visisted.contains(s))
 				continue;
 			visisted.add(s);
-			if (!edgeBySource.containsKey(s))
-				edgeBySource.put(s, new HashSet<OWLGraphEdge>());
-			for (OWLGraphEdge edge : getPrimitiveOutgoingEdges(s)) {
-				edgeBySource.get(s).add(edge);
+			// keep the set as returned, so that the iteration order is the
+			// same as for getPrimitiveOutgoingEdges, see OWLCompiledGraph
+			Set<OWLGraphEdge> outgoing = getPrimitiveOutgoingEdges(s);
+			edgeBySource.put(s, outgoing);
+			for (OWLGraphEdge edge : outgoing) {
 				OWLObject t = edge.getTarget();
 				if (!edgeByTarget.containsKey(t))
 					edgeByTarget.put(t, new HashSet<OWLGraphEdge>());
@@ -930,6 +1114,98 @@ public class OWLGraphWrapper {
 
 	}
 
+	/**
+	 * @return primitive edges by source, built on demand. Must not be modified
+	 */
+	Map<OWLObject,Set<OWLGraphEdge>> getPrimitiveOutgoingEdgeIndex() {
+		ensureEdgesCached();
+		return edgeBySource;
+	}
+
+	/**
+	 * Computes the outgoing closure of every object in the graph using multiple threads
+	 * and adds them to the outgoing closure cache, so that subsequent calls to
+	 * {@link #getOutgoingEdgesClosure(OWLObject)} are answered from the cache.
+	 * 
+	 * Note that a bounded cache (see {@link Config#closureCacheMaxWeight}) may
+	 * not be able to hold all closures.
+	 * 
+	 * @param numThreads
+	 * @return precomputer, with statistics on the run
+	 * @throws InterruptedException
+	 * @see OWLGraphClosurePrecomputer
+	 */
+	public OWLGraphClosurePrecomputer precomputeOutgoingEdgesClosures(int numThreads) throws InterruptedException {
+		if (!config.isCacheClosure)
+			LOG.warn("closure caching is disabled, precomputed closures will not be used");
+		OWLGraphClosurePrecomputer precomputer = new OWLGraphClosurePrecomputer(this, numThreads);
+		Map<OWLObject, Set<OWLGraphEdge>> closures = precomputer.precompute();
+		OWLGraphClosureCache cache = getOutgoingClosureCache();
+		for (Map.Entry<OWLObject, Set<OWLGraphEdge>> e : closures.entrySet()) {
+			cache.put(e.getKey(), e.getValue());
+		}
+		return precomputer;
+	}
+
+	/**
+	 * (re)builds the integer-indexed snapshot of the primitive edges.
+	 * 
+	 * This is called automatically the first time a closure is requested with
+	 * {@link Config#isUseCompiledGraph} set. Call this directly if the
+	 * ontologies have changed since.
+	 * 
+	 * @return compiled graph
+	 */
+	public synchronized OWLCompiledGraph compileGraph() {
+		profiler.startTaskNotify("compileGraph");
+		cacheEdges();
+		compiledGraph = new OWLCompiledGraph(this, edgeBySource);
+		profiler.endTaskNotify("compileGraph");
+		return compiledGraph;
+	}
+
+	/**
+	 * @return compiled graph, built on demand
+	 * @see #compileGraph()
+	 */
+	public OWLCompiledGraph getCompiledGraph() {
+		OWLCompiledGraph cg = compiledGraph;
+		if (cg == null) {
+			synchronized (this) {
+				if (compiledGraph == null) {
+					if (isFrozen)
+						compiledGraph = new OWLCompiledGraph(this, edgeBySource);
+					else
+						compileGraph();
+				}
+				cg = compiledGraph;
+			}
+		}
+		return cg;
+	}
+
+	/**
+	 * The compiled graph is rebuilt, if the edge inclusion/exclusion
+	 * configuration has changed since it was compiled. For a frozen graph,
+	 * the compiled graph is not rebuilt and null is returned instead.
+	 * 
+	 * @param x
+	 * @return compiled graph, if enabled in the config and x is one of its nodes - otherwise null
+	 */
+	private OWLCompiledGraph getCompiledGraphFor(OWLObject x) {
+		if (config.isUseCompiledGraph) {
+			OWLCompiledGraph cg = getCompiledGraph();
+			if (!cg.isCurrent(config)) {
+				if (isFrozen)
+					return null;
+				cg = compileGraph();
+			}
+			if (cg.contains(x))
+				return cg;
+		}
+		return null;
+	}
+
 
 	/**
 	 * pack/translate an edge (either asserted or a graph closure edge) into
@@ -1032,13 +1308,38 @@ public class OWLGraphWrapper {
 	 * @return closure of edges originating from source
 	 */
 	public Set<OWLGraphEdge> getOutgoingEdgesClosure(OWLObject s) {
+		if (config.isCacheClosure) {
+			return new HashSet<OWLGraphEdge>(getOutgoingEdgesClosureView(s));
+		}
+		return computeOutgoingEdgesClosure(s);
+	}
 
+	/**
+	 * As {@link #getOutgoingEdgesClosure(OWLObject)}, but returns an unmodifiable
+	 * view. If the closure is cached, no copy is made.
+	 * 
+	 * @param s source
+	 * @return unmodifiable closure of edges originating from source
+	 */
+	public Set<OWLGraphEdge> getOutgoingEdgesClosureView(OWLObject s) {
 		if (config.isCacheClosure) {
-			if (inferredEdgeBySource == null)
-				inferredEdgeBySource = new HashMap<OWLObject,Set<OWLGraphEdge>>();
-			if (inferredEdgeBySource.containsKey(s)) {
-				return new HashSet<OWLGraphEdge>(inferredEdgeBySource.get(s));
+			OWLGraphClosureCache cache = getOutgoingClosureCache();
+			Set<OWLGraphEdge> edges = cache.get(s);
+			if (edges != null) {
+				return edges;
 			}
+			return cache.put(s, computeOutgoingEdgesClosure(s));
+		}
+		return Collections.unmodifiableSet(computeOutgoingEdgesClosure(s));
+	}
+
+	private Set<OWLGraphEdge> computeOutgoingEdgesClosure(OWLObject s) {
+		OWLCompiledGraph cg = getCompiledGraphFor(s);
+		if (cg != null) {
+			profiler.startTaskNotify("getOutgoingEdgesClosure");
+			Set<OWLGraphEdge> closureSet = cg.getOutgoingEdgesClosure(s);
+			profiler.endTaskNotify("getOutgoingEdgesClosure");
+			return closureSet;
 		}
 		profiler.startTaskNotify("getOutgoingEdgesClosure");
 
@@ -1120,9 +1421,6 @@ public class OWLGraphWrapper {
 			}
 		}
 
-		if (config.isCacheClosure) {
-			inferredEdgeBySource.put(s, new HashSet<OWLGraphEdge>(closureSet));
-		}
 		profiler.endTaskNotify("getOutgoingEdgesClosure");
 		return closureSet;
 	}
@@ -1155,7 +1453,7 @@ public class OWLGraphWrapper {
 	 */
 	public Set<OWLObject> getSubsumersFromClosure(OWLObject s) {
 		Set<OWLObject> ts = new HashSet<OWLObject>();
-		for (OWLGraphEdge e : getOutgoingEdgesClosure(s)) {
+		for (OWLGraphEdge e : getOutgoingEdgesClosureView(s)) {
 			for (OWLGraphEdge se : getOWLGraphEdgeSubsumers(e)) {
 				ts.add(edgeToTargetExpression(se));
 			}
@@ -1174,7 +1472,7 @@ public class OWLGraphWrapper {
 	public Set<OWLGraphEdge> getOutgoingEdgesClosure(OWLObject s, boolean isComplete) {
 		if (isComplete) {
 			Set<OWLGraphEdge> edges = new HashSet<OWLGraphEdge>();
-			for (OWLGraphEdge e : getOutgoingEdgesClosure(s)) {
+			for (OWLGraphEdge e : getOutgoingEdgesClosureView(s)) {
 				edges.addAll(getOWLGraphEdgeSubsumers(e));
 			}
 			return edges;
@@ -1192,7 +1490,7 @@ public class OWLGraphWrapper {
 	 */
 	public Set<OWLGraphEdge> getCompleteOutgoingEdgesClosure(OWLObject s) {
 		Set<OWLGraphEdge> edges = new HashSet<OWLGraphEdge>();
-		for (OWLGraphEdge e : getOutgoingEdgesClosure(s)) {
+		for (OWLGraphEdge e : getOutgoingEdgesClosureView(s)) {
 			edges.addAll(getOWLGraphEdgeSubsumers(e));
 		}
 		return edges;
@@ -1333,12 +1631,13 @@ public class OWLGraphWrapper {
 	 */
 
 	public Set<OWLGraphEdge> getEdgesBetween(OWLObject s, OWLObject t) {
-		Set<OWLGraphEdge> allEdges = getOutgoingEdgesClosureReflexive(s);
 		Set<OWLGraphEdge> edges = new HashSet<OWLGraphEdge>();
-		for (OWLGraphEdge e : allEdges) {
+		for (OWLGraphEdge e : getOutgoingEdgesClosureView(s)) {
 			if (e.getTarget().equals(t))
 				edges.add(e);
 		}
+		if (s.equals(t))
+			edges.add(new OWLGraphEdge(s,s,null,Quantifier.IDENTITY,getSourceOntology()));
 		return edges;
 	}
 
@@ -1361,8 +1660,12 @@ public class OWLGraphWrapper {
 	 * @return all reachable target nodes, regardless of edges
 	 */
 	public Set<OWLObject> getAncestors(OWLObject x) {
+		OWLCompiledGraph cg = getCompiledGraphFor(x);
+		if (cg != null) {
+			return cg.getAncestors(x);
+		}
 		Set<OWLObject> ancs = new HashSet<OWLObject>();
-		for (OWLGraphEdge e : getOutgoingEdgesClosure(x)) {
+		for (OWLGraphEdge e : getOutgoingEdgesClosureView(x)) {
 			ancs.add(e.getTarget());
 		}
 		return ancs;
@@ -1378,7 +1681,7 @@ public class OWLGraphWrapper {
 	 */
 	public Set<OWLObject> getAncestors(OWLObject x, Set<OWLPropertyExpression> overProps) {
 		Set<OWLObject> ancs = new HashSet<OWLObject>();
-		for (OWLGraphEdge e : getOutgoingEdgesClosure(x)) {
+		for (OWLGraphEdge e : getOutgoingEdgesClosureView(x)) {
 			boolean isAddMe = false;
 			if (overProps != null) {
 				List<OWLQuantifiedProperty> qps = e.getQuantifiedPropertyList();
@@ -1431,7 +1734,7 @@ public class OWLGraphWrapper {
 	 */
 	public Set<OWLObject> getNamedAncestors(OWLObject x) {
 		Set<OWLObject> ancs = new HashSet<OWLObject>();
-		for (OWLGraphEdge e : getOutgoingEdgesClosure(x)) {
+		for (OWLGraphEdge e : getOutgoingEdgesClosureView(x)) {
 			if (e.getTarget() instanceof OWLNamedObject)
 				ancs.add(e.getTarget());
 		}
@@ -1540,7 +1843,7 @@ public class OWLGraphWrapper {
 
 		// Next, get all of the named ancestors and add them to our shunt graph.
 		// We need some traversal code going up!
-		for (OWLGraphEdge e : getOutgoingEdgesClosure(x)) {
+		for (OWLGraphEdge e : getOutgoingEdgesClosureView(x)) {
 			OWLObject t = e.getTarget();
 			if (t instanceof OWLNamedObject){				
 
@@ -1725,8 +2028,12 @@ public class OWLGraphWrapper {
 	 * @return descendant objects
 	 */
 	public Set<OWLObject> getDescendants(OWLObject x) {
+		OWLCompiledGraph cg = getCompiledGraphFor(x);
+		if (cg != null) {
+			return cg.getDescendants(x);
+		}
 		Set<OWLObject> descs = new HashSet<OWLObject>();
-		for (OWLGraphEdge e : getIncomingEdgesClosure(x)) {
+		for (OWLGraphEdge e : getIncomingEdgesClosureView(x)) {
 			descs.add(e.getSource());
 		}
 		return descs;
@@ -1752,7 +2059,7 @@ public class OWLGraphWrapper {
 	 */
 	public Set<OWLObject> getIndividualDescendants(OWLObject x) {
 		Set<OWLObject> descs = new HashSet<OWLObject>();
-		for (OWLGraphEdge e : getIncomingEdgesClosure(x)) {
+		for (OWLGraphEdge e : getIncomingEdgesClosureView(x)) {
 			OWLObject s = e.getSource();
 			if (s instanceof OWLIndividual)
 				descs.add(s);
@@ -1780,7 +2087,7 @@ public class OWLGraphWrapper {
 	public Set<OWLGraphEdge> getIncomingEdgesClosure(OWLObject t, boolean isComplete) {
 		if (isComplete) {
 			Set<OWLGraphEdge> ccs = new HashSet<OWLGraphEdge>();
-			for (OWLGraphEdge e : getIncomingEdgesClosure(t)) {
+			for (OWLGraphEdge e : getIncomingEdgesClosureView(t)) {
 				ccs.addAll(getOWLGraphEdgeSubsumers(e));
 			}
 			return ccs;
@@ -1800,13 +2107,38 @@ public class OWLGraphWrapper {
 	 * @return all edges connecting all descendants of target to target
 	 */
 	public Set<OWLGraphEdge> getIncomingEdgesClosure(OWLObject t) {
+		if (config.isCacheClosure) {
+			return new HashSet<OWLGraphEdge>(getIncomingEdgesClosureView(t));
+		}
+		return computeIncomingEdgesClosure(t);
+	}
 
+	/**
+	 * As {@link #getIncomingEdgesClosure(OWLObject)}, but returns an unmodifiable
+	 * view. If the closure is cached, no copy is made.
+	 * 
+	 * @param t target
+	 * @return unmodifiable set of all edges connecting all descendants of target to target
+	 */
+	public Set<OWLGraphEdge> getIncomingEdgesClosureView(OWLObject t) {
 		if (config.isCacheClosure) {
-			if (inferredEdgeByTarget == null)
-				inferredEdgeByTarget = new HashMap<OWLObject,Set<OWLGraphEdge>>();
-			if (inferredEdgeByTarget.containsKey(t)) {
-				return new HashSet<OWLGraphEdge>(inferredEdgeByTarget.get(t));
+			OWLGraphClosureCache cache = getIncomingClosureCache();
+			Set<OWLGraphEdge> edges = cache.get(t);
+			if (edges != null) {
+				return edges;
 			}
+			return cache.put(t, computeIncomingEdgesClosure(t));
+		}
+		return Collections.unmodifiableSet(computeIncomingEdgesClosure(t));
+	}
+
+	private Set<OWLGraphEdge> computeIncomingEdgesClosure(OWLObject t) {
+		OWLCompiledGraph cg = getCompiledGraphFor(t);
+		if (cg != null) {
+			profiler.startTaskNotify("getIncomingEdgesClosure");
+			Set<OWLGraphEdge> closureSet = cg.getIncomingEdgesClosure(t);
+			profiler.endTaskNotify("getIncomingEdgesClosure");
+			return closureSet;
 		}
 		profiler.startTaskNotify("getIncomingEdgesClosure");
 
@@ -1883,12 +2215,6 @@ public class OWLGraphWrapper {
 			}
 		}
 
-		if (config.isCacheClosure) {
-			inferredEdgeByTarget.put(t, new HashSet<OWLGraphEdge>(closureSet));
-		}
-
-
-
 		profiler.endTaskNotify("getIncomingEdgesClosure");
 		return closureSet;
 	}
@@ -1898,7 +2224,8 @@ public class OWLGraphWrapper {
 	 * 
 	 * For example,  Edge(x,SUBCLASS_OF,y) * Edge(y,SUBCLASS_OF,z) yields Edge(x,SUBCLASS_OF,z)
 	 * 
-	 * Note that property chains of length>2 are currently ignored
+	 * Property chains of length>2 are applied if the chain spans the end of the first
+	 * edge and the start of the second edge
 	 * 
 	 * @param s - source node
 	 * @param ne - edge 1
@@ -1908,22 +2235,35 @@ public class OWLGraphWrapper {
 	 */
 	public OWLGraphEdge combineEdgePair(OWLObject s, OWLGraphEdge ne, OWLGraphEdge extEdge, int nextDist) {
 		//System.out.println("combing edges: "+s+" // "+ne+ " * "+extEdge);
+		QuantifiedPropertyCompositionTable table = getCompositionTable();
 		// Create an edge with no edge labels; we will fill the label in later
 		OWLGraphEdge nu = new OWLGraphEdge(s, extEdge.getTarget());
-		List<OWLQuantifiedProperty> qpl1 = new Vector<OWLQuantifiedProperty>(ne.getQuantifiedPropertyList());
-		List<OWLQuantifiedProperty> qpl2 = new Vector<OWLQuantifiedProperty>(extEdge.getQuantifiedPropertyList());
+		// note: both lists are copies
+		List<OWLQuantifiedProperty> qpl1 = ne.getQuantifiedPropertyList();
+		List<OWLQuantifiedProperty> qpl2 = extEdge.getQuantifiedPropertyList();
 
 		while (qpl1.size() > 0 && qpl2.size() > 0) {
-			OWLQuantifiedProperty combinedQP = combinedQuantifiedPropertyPair(qpl1.get(qpl1.size()-1),qpl2.get(0));
+			OWLQuantifiedProperty combinedQP = table.compose(qpl1.get(qpl1.size()-1),qpl2.get(0));
+			int numCombined1 = 1;
+			int numCombined2 = 1;
+			if (combinedQP == null && table.hasLongChains()) {
+				int occ = table.findChain(qpl1, qpl2);
+				if (occ != QuantifiedPropertyCompositionTable.NONE) {
+					combinedQP = table.getQuantifiedProperty(table.getChainResult(occ));
+					numCombined1 = table.getOccurrencePosition(occ);
+					numCombined2 = table.getChainLength(occ) - numCombined1;
+				}
+			}
 			if (combinedQP == null)
 				break;
 			if (isExcluded(combinedQP)) {
 				return null;
 			}
+			qpl1.subList(qpl1.size()-numCombined1, qpl1.size()-1).clear();
 			qpl1.set(qpl1.size()-1, combinedQP);
 			if (combinedQP.isIdentity())
 				qpl1.subList(qpl1.size()-1,qpl1.size()).clear();
-			qpl2.subList(0, 1).clear();
+			qpl2.subList(0, numCombined2).clear();
 		}
 		qpl1.addAll(qpl2);
 		nu.setQuantifiedPropertyList(qpl1);
@@ -1979,116 +2319,154 @@ public class OWLGraphWrapper {
 	/**
 	 * Edge composition rules
 	 * 
-	 * TODO - property chains of length > 2
+	 * @see QuantifiedPropertyCompositionTable
 	 * @param x 
 	 * @param y 
 	 * @return property or null
 	 */
-	private OWLQuantifiedProperty combinedQuantifiedPropertyPair(OWLQuantifiedProperty x, OWLQuantifiedProperty y) {
+	OWLQuantifiedProperty combinedQuantifiedPropertyPair(OWLQuantifiedProperty x, OWLQuantifiedProperty y) {
+		return getCompositionTable().compose(x, y);
+	}
 
-		if (x.isSubClassOf() && y.isSubClassOf()) { // TRANSITIVITY OF SUBCLASS
-			return new OWLQuantifiedProperty(Quantifier.SUBCLASS_OF);
-		}
-		else if (x.isInstanceOf() && y.isSubClassOf()) { // INSTANCE OF CLASS IS INSTANCE OF SUPERCLASS
-			return new OWLQuantifiedProperty(Quantifier.INSTANCE_OF);
-		}
-		else if (x.isSubClassOf() && y.isSomeValuesFrom()) { // TRANSITIVITY OF SUBCLASS: existentials
-			return new OWLQuantifiedProperty(y.getProperty(),Quantifier.SOME);
-		}
-		else if (x.isSomeValuesFrom() && y.isSubClassOf()) { // TRANSITIVITY OF SUBCLASS: existentials
-			return new OWLQuantifiedProperty(x.getProperty(),Quantifier.SOME);
-		}
-		else if (x.isSubClassOf() && y.isAllValuesFrom()) {
-			return new OWLQuantifiedProperty(y.getProperty(),Quantifier.ONLY);
-		}
-		else if (x.isAllValuesFrom() && y.isSubClassOf()) {
-			return new OWLQuantifiedProperty(x.getProperty(),Quantifier.ONLY);
-		}
-		else if (x.isSomeValuesFrom() &&
-				y.isSomeValuesFrom() &&
-				x.getProperty() != null && 
-				x.getProperty().equals(y.getProperty()) && 
-				x.getProperty().isTransitive(sourceOntology)) { // todo
-			return new OWLQuantifiedProperty(x.getProperty(),Quantifier.SOME);
-		}
-		else if (x.isSomeValuesFrom() &&
-				y.isSomeValuesFrom() &&
-				chain(x.getProperty(), y.getProperty()) != null) { // TODO: length>2
-			return new OWLQuantifiedProperty(chain(x.getProperty(), y.getProperty()),Quantifier.SOME);
-		}
-		else if (x.isPropertyAssertion() &&
-				y.isPropertyAssertion() &&
-				x.getProperty() != null && 
-				x.getProperty().equals(y.getProperty()) && 
-				x.getProperty().isTransitive(sourceOntology)) { // todo
-			return new OWLQuantifiedProperty(x.getProperty(),Quantifier.PROPERTY_ASSERTION);
-		}
-		else if (x.isPropertyAssertion() &&
-				y.isPropertyAssertion() &&
-				x.getProperty() != null && 
-				isInverseOfPair(x.getProperty(),y.getProperty())) {
-			return new OWLQuantifiedProperty(Quantifier.IDENTITY); // TODO - doesn't imply identity for classes
-		}
-		else {
-			// cannot combine - caller will add QP to sequence
-			return null;
+	/**
+	 * The table of edge composition rules, built from the transitivity, property chain
+	 * and inverse property axioms. The table is rebuilt on demand after any of these
+	 * axioms change, or after the set of ontologies changes.
+	 * 
+	 * @return composition table
+	 */
+	public QuantifiedPropertyCompositionTable getCompositionTable() {
+		QuantifiedPropertyCompositionTable table = compositionTable;
+		if (table == null) {
+			synchronized (this) {
+				if (compositionTable == null) {
+					registerChangeListener();
+					compositionTable = new QuantifiedPropertyCompositionTable(this);
+				}
+				table = compositionTable;
+			}
 		}
+		return table;
 	}
 
-	// true if there is a property chain such that p1 o p2 --> p3, where p3 is returned
-	private OWLObjectProperty chain(OWLObjectProperty p1, OWLObjectProperty p2) {
-		if (p1 == null || p2 == null)
-			return null;
-		if (getPropertyChainMap().containsKey(p1)) {
-
-			for (List<OWLObjectProperty> list : getPropertyChainMap().get(p1)) {
-				if (p2.equals(list.get(0))) {
-					return list.get(1);
+	/**
+	 * Index of annotation assertions in all ontologies, used for label, synonym,
+	 * xref, alt_id and similar lookups. The index is rebuilt on demand after any
+	 * annotation assertion changes, or after the set of ontologies changes.
+	 * 
+	 * @return annotation index
+	 */
+	public OWLGraphAnnotationIndex getAnnotationIndex() {
+		OWLGraphAnnotationIndex index = annotationIndex;
+		if (index == null) {
+			synchronized (this) {
+				if (annotationIndex == null) {
+					registerChangeListener();
+					annotationIndex = new OWLGraphAnnotationIndex(this);
 				}
+				index = annotationIndex;
 			}
 		}
-		return null;
+		return index;
 	}
 
-	// TODO - currently hardcoded for simple property chains
-	Map<OWLObjectProperty,Set<List<OWLObjectProperty>>> pcMap = null;
-	private Map<OWLObjectProperty,Set<List<OWLObjectProperty>>> getPropertyChainMap() {
-		if (pcMap == null) {
-			pcMap = new HashMap<OWLObjectProperty,Set<List<OWLObjectProperty>>>();
-			for (OWLSubPropertyChainOfAxiom a : sourceOntology.getAxioms(AxiomType.SUB_PROPERTY_CHAIN_OF)) {
-				//LOG.info("CHAIN:"+a+" // "+a.getPropertyChain().size());
-				if (a.getPropertyChain().size() == 2) {
-					OWLObjectPropertyExpression p1 = a.getPropertyChain().get(0);
-					OWLObjectPropertyExpression p2 = a.getPropertyChain().get(1);
-					//LOG.info("  xxCHAIN:"+p1+" o "+p2);
-					if (p1 instanceof OWLObjectProperty && p2 instanceof OWLObjectProperty) {
-						List<OWLObjectProperty> list = new Vector<OWLObjectProperty>();
-						list.add((OWLObjectProperty) p2);
-						list.add((OWLObjectProperty) a.getSuperProperty());
-						if (!pcMap.containsKey(p1)) 
-							pcMap.put((OWLObjectProperty) p1, new HashSet<List<OWLObjectProperty>>());
-						pcMap.get((OWLObjectProperty) p1).add(list);
-						//LOG.info("  xxxCHAIN:"+p1+" ... "+list);
-					}
-				}
-				else {
-					// TODO
+	/**
+	 * Maps OBO-style identifiers and IRIs to declared entities.
+	 * The resolver is rebuilt on demand after any declaration changes, or after
+	 * the set of ontologies changes.
+	 * 
+	 * @return identifier resolver
+	 */
+	public OWLGraphIdentifierResolver getIdentifierResolver() {
+		OWLGraphIdentifierResolver resolver = identifierResolver;
+		if (resolver == null) {
+			synchronized (this) {
+				if (identifierResolver == null) {
+					registerChangeListener();
+					identifierResolver = new OWLGraphIdentifierResolver(this);
 				}
+				resolver = identifierResolver;
 			}
 		}
-		return pcMap;
+		return resolver;
 	}
 
-	private boolean isInverseOfPair(OWLObjectProperty p1, OWLObjectProperty p2) {
-		for (OWLOntology ont : getAllOntologies()) {
-			for (OWLInverseObjectPropertiesAxiom a : ont.getInverseObjectPropertyAxioms(p1)) {
-				if (a.getFirstProperty().equals(p2) ||
-						a.getSecondProperty().equals(p2)) {
-					return true;
+	private void resetIndexes() {
+		compositionTable = null;
+		annotationIndex = null;
+		identifierResolver = null;
+	}
+
+	/**
+	 * Removes the listener, which this wrapper registers with the ontology
+	 * manager to keep its indexes up to date, and discards all indexes and
+	 * cached closures. Call this when the wrapper is no longer used, but the
+	 * manager is. A frozen wrapper is unfrozen.
+	 * The wrapper can still be used afterwards, it then
+	 * registers a new listener when the indexes are rebuilt.
+	 */
+	public synchronized void dispose() {
+		if (changeListenerManager != null) {
+			changeListenerManager.removeOntologyChangeListener(changeListener);
+			changeListenerManager = null;
+			changeListener = null;
+		}
+		isFrozen = false;
+		resetIndexes();
+		outgoingClosureCache = null;
+		incomingClosureCache = null;
+		compiledGraph = null;
+	}
+
+	// must be called while holding the lock on this
+	private void registerChangeListener() {
+		if (changeListenerManager != getManager()) {
+			if (changeListenerManager != null)
+				changeListenerManager.removeOntologyChangeListener(changeListener);
+			changeListenerManager = getManager();
+			changeListener = new IndexChangeListener(this, changeListenerManager);
+			changeListenerManager.addOntologyChangeListener(changeListener);
+		}
+	}
+
+	/**
+	 * Discards the indexes of a wrapper when the ontologies change. The manager
+	 * is often shared and outlives the wrapper, so the listener only holds a weak
+	 * reference to the wrapper, and removes itself once the wrapper is gone.
+	 */
+	private static class IndexChangeListener implements OWLOntologyChangeListener {
+
+		private final WeakReference<OWLGraphWrapper> wrapper;
+		private final OWLOntologyManager manager;
+
+		IndexChangeListener(OWLGraphWrapper wrapper, OWLOntologyManager manager) {
+			this.wrapper = new WeakReference<OWLGraphWrapper>(wrapper);
+			this.manager = manager;
+		}
+
+		@Override
+		public void ontologiesChanged(List<? extends OWLOntologyChange> changes) throws OWLException {
+			OWLGraphWrapper g = wrapper.get();
+			if (g == null) {
+				manager.removeOntologyChangeListener(this);
+				return;
+			}
+			for (OWLOntologyChange change : changes) {
+				if (change instanceof ImportChange) {
+					g.resetIndexes();
+					return;
+				}
+				if (change.isAxiomChange()) {
+					AxiomType<?> type = change.getAxiom().getAxiomType();
+					if (COMPOSITION_AXIOM_TYPES.contains(type))
+						g.compositionTable = null;
+					else if (type == AxiomType.ANNOTATION_ASSERTION)
+						g.annotationIndex = null;
+					else if (type == AxiomType.DECLARATION)
+						g.identifierResolver = null;
 				}
 			}
 		}
-		return false;
 	}
 
 	/**
@@ -2195,14 +2573,7 @@ public class OWLGraphWrapper {
 	 * @return boolean
 	 */
 	public boolean isObsolete(OWLObject c) {
-		for (OWLOntology ont : getAllOntologies()) {
-			for (OWLAnnotation ann : ((OWLEntity)c).getAnnotations(ont)) {
-				if (ann.isDeprecatedIRIAnnotation()) {
-					return true;
-				}
-			}
-		}
-		return false;
+		return getAnnotationIndex().isDeprecated(((OWLEntity)c).getIRI());
 	}
 
 
@@ -2229,21 +2600,9 @@ public class OWLGraphWrapper {
 	 * @return value
 	 */
 	public String getAnnotationValue(OWLObject c, OWLAnnotationProperty lap) {
-		Set<OWLAnnotation>anns = new HashSet<OWLAnnotation>();
 		if (c instanceof OWLEntity) {
-			for (OWLOntology ont : getAllOntologies()) {
-				// TODO : import closure
-				anns.addAll(((OWLEntity) c).getAnnotations(ont,lap));
-			}
-		}
-		else {
-			return null;
-		}
-		for (OWLAnnotation a : anns) {
-			if (a.getValue() instanceof OWLLiteral) {
-				OWLLiteral val = (OWLLiteral) a.getValue();
-				return val.getLiteral(); // return first - TODO - check zero or one
-			}
+			// return first - TODO - check zero or one
+			return getAnnotationIndex().getLiteralValue(((OWLEntity) c).getIRI(), lap);
 		}
 		return null;
 	}
@@ -2256,10 +2615,12 @@ public class OWLGraphWrapper {
 	 * @return list of values or null
 	 */
 	public List<String> getAnnotationValues(OWLObject c, OWLAnnotationProperty lap) {
-		Set<OWLAnnotation>anns = new HashSet<OWLAnnotation>();
+		// the same value may be asserted in several ontologies or
+		// in axioms with different axiom annotations
+		Set<OWLAnnotationValue> values = new LinkedHashSet<OWLAnnotationValue>();
 		if (c instanceof OWLEntity) {
-			for (OWLOntology ont : getAllOntologies()) {
-				anns.addAll(((OWLEntity) c).getAnnotations(ont,lap));
+			for (OWLAnnotationAssertionAxiom a : getAnnotationIndex().getAnnotationAssertionAxioms(((OWLEntity) c).getIRI(), lap)) {
+				values.add(a.getValue());
 			}
 		}
 		else {
@@ -2267,13 +2628,13 @@ public class OWLGraphWrapper {
 		}
 
 		ArrayList<String> list = new ArrayList<String>();
-		for (OWLAnnotation a : anns) {
-			if (a.getValue() instanceof OWLLiteral) {
-				OWLLiteral val = (OWLLiteral) a.getValue();
+		for (OWLAnnotationValue v : values) {
+			if (v instanceof OWLLiteral) {
+				OWLLiteral val = (OWLLiteral) v;
 				list.add( val.getLiteral()); 
 			}
-			else if (a.getValue() instanceof IRI) {
-				IRI val = (IRI)a.getValue();
+			else if (v instanceof IRI) {
+				IRI val = (IRI) v;
 				list.add( getIdentifier(val) ); 
 			}
 
@@ -2719,18 +3080,14 @@ public class OWLGraphWrapper {
 	public List<String> getXref(OWLObject c){
 		OWLAnnotationProperty lap = getAnnotationProperty(OboFormatTag.TAG_XREF.getTag());
 
-		Set<OWLAnnotation>anns = null;
-		if (c instanceof OWLEntity) {
-			anns = ((OWLEntity) c).getAnnotations(sourceOntology,lap);
-		}
-		else {
+		if (!(c instanceof OWLEntity)) {
 			return null;
 		}
 		List<String> list = new ArrayList<String>();
-		for (OWLAnnotation a : anns) {
+		for (OWLAnnotationValue v : getSourceAnnotationValues((OWLEntity) c, lap)) {
 
-			if (a.getValue() instanceof OWLLiteral) {
-				OWLLiteral val = (OWLLiteral) a.getValue();
+			if (v instanceof OWLLiteral) {
+				OWLLiteral val = (OWLLiteral) v;
 				list.add( val.getLiteral()) ;
 			}
 		}
@@ -2738,6 +3095,16 @@ public class OWLGraphWrapper {
 	}
 
 
+	// distinct annotation values in the source ontology only
+	private Set<OWLAnnotationValue> getSourceAnnotationValues(OWLEntity e, OWLAnnotationProperty lap) {
+		Set<OWLAnnotationValue> values = new LinkedHashSet<OWLAnnotationValue>();
+		for (OWLAnnotationAssertionAxiom a : getAnnotationIndex().getAnnotationAssertionAxioms(e.getIRI(), lap)) {
+			if (sourceOntology.containsAxiom(a))
+				values.add(a.getValue());
+		}
+		return values;
+	}
+
 	/**
 	 * Get the definition xrefs (IAO_0000115)
 	 * 
@@ -2867,18 +3234,14 @@ public class OWLGraphWrapper {
 	@Deprecated
 	public String[] getSynonymStrings(OWLObject c) {
 		OWLAnnotationProperty lap = getDataFactory().getOWLAnnotationProperty(IRI.create(DEFAULT_IRI_PREFIX + "IAO_0000118")); 
-		Set<OWLAnnotation>anns = null;
-		if (c instanceof OWLEntity) {
-			anns = ((OWLEntity) c).getAnnotations(sourceOntology,lap);
-		}
-		else {
+		if (!(c instanceof OWLEntity)) {
 			return null;
 		}
 
 		ArrayList<String> list = new ArrayList<String>();
-		for (OWLAnnotation a : anns) {
-			if (a.getValue() instanceof OWLLiteral) {
-				OWLLiteral val = (OWLLiteral) a.getValue();
+		for (OWLAnnotationValue v : getSourceAnnotationValues((OWLEntity) c, lap)) {
+			if (v instanceof OWLLiteral) {
+				OWLLiteral val = (OWLLiteral) v;
 				list.add(val.getLiteral()); // return first - todo - check zero or one
 			}
 		}
@@ -2951,21 +3314,9 @@ public class OWLGraphWrapper {
 	}
 
 	private List<ISynonym> getOBOSynonyms(OWLEntity e, Obo2OWLVocabulary vocabulary) {
-		// get all synonyms defined in the source ontology
-		Set<ISynonym> synonymSet = getOBOSynonyms(e, vocabulary, sourceOntology);
-		// iterate over import closure, as the OWL-API currently doesn't have a 
-		// method get annotations and its axioms from imported ontologies 
-		for(OWLOntology ont : sourceOntology.getImportsClosure()) {
-			synonymSet = merge(synonymSet, getOBOSynonyms(e, vocabulary, ont));
-		}
-		
-		// repeat for support ontologies
-		for(OWLOntology support : getSupportOntologySet()) {
-			synonymSet = merge(synonymSet, getOBOSynonyms(e, vocabulary, support));
-			for(OWLOntology ont : support.getImportsClosure()) {
-				synonymSet = merge(synonymSet, getOBOSynonyms(e, vocabulary, ont));
-			}
-		}
+		// get all synonyms defined in the source ontology, support ontologies
+		// and their import closures
+		Set<ISynonym> synonymSet = getIndexedOBOSynonyms(e, vocabulary);
 		if (synonymSet == null || synonymSet.isEmpty()) {
 			return null;
 		}
@@ -3005,25 +3356,12 @@ public class OWLGraphWrapper {
 		return synonyms ;
 	}
 	
-	private <T> Set<T> merge(Set<T> set1, Set<T> set2) {
-		if (set1 == null || set1.isEmpty()) {
-			return set2;
-		}
-		if (set2 == null || set2.isEmpty()) {
-			return set1;
-		}
-		Set<T> synonyms = new HashSet<T>(set1);
-		synonyms.addAll(set2);
-		return synonyms;
-	}
-
-	private Set<ISynonym> getOBOSynonyms(OWLEntity e, Obo2OWLVocabulary vocabulary, OWLOntology ont) {
+	private Set<ISynonym> getIndexedOBOSynonyms(OWLEntity e, Obo2OWLVocabulary vocabulary) {
 		OWLAnnotationProperty property = getDataFactory().getOWLAnnotationProperty(vocabulary.getIRI());
-		Set<OWLAnnotation> anns = e.getAnnotations(ont, property);
-		Set<OWLAnnotationAssertionAxiom> annotationAssertionAxioms = e.getAnnotationAssertionAxioms(ont);
-		if (anns != null && !anns.isEmpty()) {
+		Set<OWLAnnotationAssertionAxiom> annotationAssertionAxioms = getAnnotationIndex().getAnnotationAssertionAxioms(e.getIRI(), property);
+		if (!annotationAssertionAxioms.isEmpty()) {
 			Set<ISynonym> set = new HashSet<ISynonym>();
-			for (OWLAnnotation a : anns) {
+			for (OWLAnnotationAssertionAxiom a : annotationAssertionAxioms) {
 				if (a.getValue() instanceof OWLLiteral) {
 					OWLLiteral val = (OWLLiteral) a.getValue();
 					String label = val.getLiteral();
@@ -3240,12 +3578,16 @@ public class OWLGraphWrapper {
 		return Owl2Obo.getIdentifier(iriId);
 	}
 
-	// TODO - use Obo2Owl.oboIdToIRI()
+	/**
+	 * Translates an OBO-style ID into an IRI, using the obo2owl mapping.
+	 * The IRI does not need to be declared.
+	 * 
+	 * @param id e.g. GO:0008150
+	 * @return IRI
+	 * @see OWLGraphIdentifierResolver#getIRI(String)
+	 */
 	public IRI getIRIByIdentifier(String id) {
-		// TODO - provide a static method for doing this
-		Obo2Owl b = new Obo2Owl();
-		b.setObodoc(new OBODoc());
-		return b.oboIdToIRI(id);
+		return getIdentifierResolver().getIRI(id);
 		/*
 		new oboIdToIRI()
 		String[] parts = id.split(":", 2);
@@ -3269,17 +3611,7 @@ public class OWLGraphWrapper {
 	 * @return object with id or null
 	 */
 	public OWLObject getOWLObjectByIdentifier(String id) {
-		IRI iri = getIRIByIdentifier(id);
-		if (getOWLClass(iri) != null) {
-			return getOWLClass(iri);
-		}
-		else if (getOWLIndividual(iri) != null) {
-			return getOWLIndividual(iri);
-		}
-		else if (getOWLObjectProperty(iri) != null) {
-			return getOWLObjectProperty(iri);
-		}
-		return null;
+		return getIdentifierResolver().resolve(id);
 	}
 
 	/**
@@ -3309,10 +3641,7 @@ public class OWLGraphWrapper {
 	 * @return OWLClass with id or null
 	 */
 	public OWLClass getOWLClassByIdentifier(String id) {
-		IRI iri = getIRIByIdentifier(id);
-		if (iri != null)
-			return getOWLClass(iri);
-		return null;
+		return getIdentifierResolver().resolveClass(id);
 	}
 
 	/**
@@ -3349,54 +3678,27 @@ public class OWLGraphWrapper {
 
 	/**
 	 * fetches an OWL IRI by rdfs:label, optionally testing for uniqueness
-	 *
-	 * TODO: index labels. This currently scans all labels in the ontology, which is expensive
 	 * 
+	 * @see #getAnnotationIndex()
 	 * @param label
 	 * @param isEnforceUnivocal
 	 * @return IRI or null
 	 * @throws SharedLabelException if >1 IRI shares input label
 	 */
 	public IRI getIRIByLabel(String label, boolean isEnforceUnivocal) throws SharedLabelException {
-		IRI iri = null;
-		for (OWLOntology o : getAllOntologies()) {
-			Set<OWLAnnotationAssertionAxiom> aas = o.getAxioms(AxiomType.ANNOTATION_ASSERTION);
-			for (OWLAnnotationAssertionAxiom aa : aas) {
-				OWLAnnotationValue v = aa.getValue();
-				OWLAnnotationProperty property = aa.getProperty();
-				if (property.isLabel() && v instanceof OWLLiteral) {
-					if (label.equals( ((OWLLiteral)v).getLiteral())) {
-						OWLAnnotationSubject subject = aa.getSubject();
-						if (subject instanceof IRI) {
-							if (isEnforceUnivocal) {
-								if (iri != null && !iri.equals((IRI)subject)) {
-									throw new SharedLabelException(label,iri,(IRI)subject);
-								}
-								iri = (IRI)subject;
-							}
-							else {
-								return (IRI)subject;
-							}
-						}
-						else {
-							//return null;
-						}
-					}
-				}
-			}
+		List<IRI> iris = getAnnotationIndex().getSubjectsByLabel(label);
+		if (iris.isEmpty()) {
+			return null;
 		}
-		return iri;
+		if (isEnforceUnivocal && iris.size() > 1) {
+			throw new SharedLabelException(label,iris.get(0),iris.get(1));
+		}
+		return iris.get(0);
 	}
 
 	/**
 	 * Find the corresponding {@link OWLObject} for a given OBO-style alternate identifier.
 	 * 
-	 * WARNING: This methods scans all object annotations in all ontologies. 
-	 * This is an expensive method.
-	 * 
-	 * If there are multiple altIds use {@link #getOWLObjectsByAltId(Set)} for more efficient retrieval.
-	 * Also consider loading all altId-mappings using {@link #getAllOWLObjectsByAltId()}.
-	 * 
 	 * @param altIds
 	 * @return {@link OWLObject} or null
 	 * 
@@ -3404,44 +3706,29 @@ public class OWLGraphWrapper {
 	 * @see #getAllOWLObjectsByAltId()
 	 */
 	public OWLObject getOWLObjectByAltId(String altIds) {
-		Map<String, OWLObject> map = getOWLObjectsByAltId(Collections.singleton(altIds));
-		return map.get(altIds);
+		IRI iri = getAnnotationIndex().getSubjectByAltId(altIds);
+		if (iri != null) {
+			return getOWLObject(iri);
+		}
+		return null;
 	}
 
 	/**
 	 * Find the corresponding {@link OWLObject}s for a given set of OBO-style alternate identifiers.
 	 * 
-	 * WARNING: This methods scans all object annotations in all ontologies. 
-	 * This is an expensive method.
-	 * 
-	 * Consider loading all altId-mappings using {@link #getAllOWLObjectsByAltId()}.
-	 * 
 	 * @param altIds
 	 * @return map of altId to OWLObject (never null)
 	 * @see #getAllOWLObjectsByAltId()
 	 */
 	public Map<String, OWLObject> getOWLObjectsByAltId(Set<String> altIds) {
 		final Map<String, OWLObject> results = new HashMap<String, OWLObject>();
-		final OWLAnnotationProperty altIdProperty = getAnnotationProperty(OboFormatTag.TAG_ALT_ID.getTag());
-		if (altIdProperty == null) {
-			return Collections.emptyMap();
-		}
-		for (OWLOntology o : getAllOntologies()) {
-			Set<OWLAnnotationAssertionAxiom> aas = o.getAxioms(AxiomType.ANNOTATION_ASSERTION);
-			for (OWLAnnotationAssertionAxiom aa : aas) {
-				OWLAnnotationValue v = aa.getValue();
-				OWLAnnotationProperty property = aa.getProperty();
-				if (altIdProperty.equals(property) && v instanceof OWLLiteral) {
-					String altId = ((OWLLiteral)v).getLiteral();
-					if (altIds.contains(altId)) {
-						OWLAnnotationSubject subject = aa.getSubject();
-						if (subject instanceof IRI) {
-							OWLObject obj = getOWLObject((IRI) subject);
-							if (obj != null) {
-								results.put(altId, obj);
-							}
-						}
-					}
+		OWLGraphAnnotationIndex index = getAnnotationIndex();
+		for (String altId : altIds) {
+			IRI iri = index.getSubjectByAltId(altId);
+			if (iri != null) {
+				OWLObject obj = getOWLObject(iri);
+				if (obj != null) {
+					results.put(altId, obj);
 				}
 			}
 		}
@@ -3451,32 +3738,14 @@ public class OWLGraphWrapper {
 	/**
 	 * Find all corresponding {@link OWLObject}s with an OBO-style alternate identifier.
 	 * 
-	 * WARNING: This methods scans all object annotations in all ontologies. 
-	 * This is an expensive method.
-	 * 
 	 * @return map of altId to OWLObject (never null)
 	 */
 	public Map<String, OWLObject> getAllOWLObjectsByAltId() {
 		final Map<String, OWLObject> results = new HashMap<String, OWLObject>();
-		final OWLAnnotationProperty altIdProperty = getAnnotationProperty(OboFormatTag.TAG_ALT_ID.getTag());
-		if (altIdProperty == null) {
-			return Collections.emptyMap();
-		}
-		for (OWLOntology o : getAllOntologies()) {
-			Set<OWLAnnotationAssertionAxiom> aas = o.getAxioms(AxiomType.ANNOTATION_ASSERTION);
-			for (OWLAnnotationAssertionAxiom aa : aas) {
-				OWLAnnotationValue v = aa.getValue();
-				OWLAnnotationProperty property = aa.getProperty();
-				if (altIdProperty.equals(property) && v instanceof OWLLiteral) {
-					String altId = ((OWLLiteral)v).getLiteral();
-					OWLAnnotationSubject subject = aa.getSubject();
-					if (subject instanceof IRI) {
-						OWLObject obj = getOWLObject((IRI) subject);
-						if (obj != null) {
-							results.put(altId, obj);
-						}
-					}
-				}
+		for (Map.Entry<String, IRI> e : getAnnotationIndex().getSubjectsByAltId().entrySet()) {
+			OWLObject obj = getOWLObject(e.getValue());
+			if (obj != null) {
+				results.put(e.getKey(), obj);
 			}
 		}
 		return results;
@@ -3506,11 +3775,9 @@ public class OWLGraphWrapper {
 	 * @return {@link OWLClass}
 	 */
 	public OWLClass getOWLClass(IRI iri) {
-		OWLClass c = getDataFactory().getOWLClass(iri);
-		for (OWLOntology o : getAllOntologies()) {
-			if (o.getDeclarationAxioms(c).size() > 0) {
-				return c;
-			}
+		OWLObject c = getIdentifierResolver().getOWLObject(iri);
+		if (c instanceof OWLClass) {
+			return (OWLClass) c;
 		}
 		return null;
 	}
@@ -3622,18 +3889,7 @@ public class OWLGraphWrapper {
 	 * @return {@link OWLObject}
 	 */
 	public OWLObject getOWLObject(IRI s) {
-		OWLObject o;
-		o = getOWLClass(s);
-		if (o == null) {
-			o = getOWLIndividual(s);
-		}
-		if (o == null) {
-			o = getOWLObjectProperty(s);
-		}
-		if (o == null) {
-			o = getOWLAnnotationProperty(s);
-		}
-		return o;
+		return getIdentifierResolver().getOWLObject(s);
 	}
 
 
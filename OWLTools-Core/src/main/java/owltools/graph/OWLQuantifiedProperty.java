@@ -136,8 +136,18 @@ public class OWLQuantifiedProperty {
 		return quantifier != null && quantifier == Quantifier.VALUE;
 	}
 	
+	@Override
+	public int hashCode() {
+		// consistent with equals: only the quantifier and the property
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + ((quantifier == null) ? 0 : quantifier.ordinal() + 1);
+		result = prime * result + ((property == null) ? 0 : property.hashCode());
+		return result;
+	}
+	
+	@Override
 	public boolean equals(Object e) {
-		// TODO overwrite hashcode method, otherwise behavior for hashing is not predictable
 		if(e == null || !(e instanceof OWLQuantifiedProperty))
 			return false;
 		
@@ -0,0 +1,609 @@
+package owltools.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.log4j.Logger;
+import org.semanticweb.owlapi.model.AxiomType;
+import org.semanticweb.owlapi.model.OWLInverseObjectPropertiesAxiom;
+import org.semanticweb.owlapi.model.OWLObjectProperty;
+import org.semanticweb.owlapi.model.OWLObjectPropertyExpression;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLSubPropertyChainOfAxiom;
+import org.semanticweb.owlapi.model.OWLTransitiveObjectPropertyAxiom;
+
+import owltools.graph.OWLQuantifiedProperty.Quantifier;
+
+/**
+ * Precomputed edge composition rules for the graph closure.
+ *
+ * Every {@link OWLQuantifiedProperty} that can occur on a graph edge is interned to an int id,
+ * and the composition x o y of every pair of ids that can be combined is computed once.
+ * Only few pairs can be combined, so the table is sparse: for every x there is a
+ * sorted array of the ids y with a composition. Composing two edges during a closure walk
+ * is a binary search in a short array without any object allocation.
+ *
+ * The interned (canonical) properties are shared by all edges built from this table,
+ * they are immutable. Their setters throw an {@link UnsupportedOperationException},
+ * create a new {@link OWLQuantifiedProperty} to modify a copy.
+ *
+ * The composition rules are:
+ * <ul>
+ *  <li>SubClassOf and InstanceOf are propagated over SubClassOf
+ *  <li>SubClassOf is absorbed by existential and universal quantifiers
+ *  <li>R some o R some = R some, if R is transitive in the source ontology
+ *  <li>P some o Q some = R some, if SubPropertyChainOf(P Q, R) is in the source ontology
+ *  <li>R assertions are composed as for existentials, and an assertion composed with
+ *      an assertion over the inverse property yields identity
+ * </ul>
+ *
+ * Property chains with more than two elements can not be represented as a pair-wise
+ * composition, these are indexed separately by their elements (see {@link #getChainOccurrences(int)}).
+ *
+ * The table is a snapshot of the ontologies at creation time; {@link OWLGraphWrapper} discards
+ * and rebuilds it when relevant axioms are added or removed.
+ *
+ * @see OWLGraphWrapper#getCompositionTable()
+ */
+public class QuantifiedPropertyCompositionTable {
+
+	private static Logger LOG = Logger.getLogger(QuantifiedPropertyCompositionTable.class);
+
+	/**
+	 * Marker for the absence of a property, or of a composition
+	 */
+	public static final int NONE = -1;
+
+	// quantifiers that are instantiated for every object property
+	private static final Quantifier[] PROPERTY_QUANTIFIERS = {
+		Quantifier.SOME, Quantifier.ONLY, Quantifier.PROPERTY_ASSERTION, Quantifier.VALUE
+	};
+
+	// quantifiers that are instantiated without a property
+	private static final Quantifier[] NULL_PROPERTY_QUANTIFIERS = {
+		Quantifier.SUBCLASS_OF, Quantifier.INSTANCE_OF, Quantifier.IDENTITY
+	};
+
+	private static final int NUM_QUANTIFIERS = Quantifier.values().length;
+
+	private static final int[] NO_OCCURRENCES = new int[0];
+
+	// ontology derived rules
+	private final Set<OWLObjectProperty> transitiveProperties = new HashSet<OWLObjectProperty>();
+	private final Map<OWLObjectProperty,Map<OWLObjectProperty,OWLObjectProperty>> binaryChains =
+		new HashMap<OWLObjectProperty, Map<OWLObjectProperty,OWLObjectProperty>>();
+	private final Map<OWLObjectProperty,Set<OWLObjectProperty>> inverses =
+		new HashMap<OWLObjectProperty, Set<OWLObjectProperty>>();
+
+	// interned quantified properties
+	private final OWLQuantifiedProperty[] qps;
+	private final List<OWLQuantifiedProperty> extraQps = new ArrayList<OWLQuantifiedProperty>();
+	private final int[] nullPropertyIds = new int[NUM_QUANTIFIERS];
+	private final Map<OWLObjectProperty,int[]> propertyIds = new HashMap<OWLObjectProperty, int[]>();
+	private final int size;
+
+	// the precomputed sparse table: for every x the sorted ids y and the ids of x o y
+	private final int[][] compositionKeys;
+	private final int[][] compositionValues;
+
+	// compositions involving properties interned after construction
+	private final Map<Long,Integer> extraCompositions = new HashMap<Long, Integer>();
+
+	// long property chains
+	private final List<int[]> chains = new ArrayList<int[]>();
+	private final List<Integer> chainResults = new ArrayList<Integer>();
+	private final int[][] chainOccurrencesByQP;
+	private int[] occurrenceChain = new int[0];
+	private int[] occurrencePosition = new int[0];
+
+	/**
+	 * Builds the composition table for the ontologies of the graph.
+	 *
+	 * @param graph
+	 */
+	public QuantifiedPropertyCompositionTable(OWLGraphWrapper graph) {
+		OWLOntology sourceOntology = graph.getSourceOntology();
+		Set<OWLOntology> allOntologies = graph.getAllOntologies();
+
+		for (OWLTransitiveObjectPropertyAxiom a : sourceOntology.getAxioms(AxiomType.TRANSITIVE_OBJECT_PROPERTY)) {
+			if (!a.getProperty().isAnonymous())
+				transitiveProperties.add(a.getProperty().asOWLObjectProperty());
+		}
+		for (OWLOntology ont : allOntologies) {
+			for (OWLInverseObjectPropertiesAxiom a : ont.getAxioms(AxiomType.INVERSE_OBJECT_PROPERTIES)) {
+				if (!a.getFirstProperty().isAnonymous() && !a.getSecondProperty().isAnonymous()) {
+					addInverse(a.getFirstProperty().asOWLObjectProperty(), a.getSecondProperty().asOWLObjectProperty());
+					addInverse(a.getSecondProperty().asOWLObjectProperty(), a.getFirstProperty().asOWLObjectProperty());
+				}
+			}
+		}
+
+		// chains; only chains of named properties are used
+		List<OWLSubPropertyChainOfAxiom> longChains = new ArrayList<OWLSubPropertyChainOfAxiom>();
+		for (OWLSubPropertyChainOfAxiom a : sourceOntology.getAxioms(AxiomType.SUB_PROPERTY_CHAIN_OF)) {
+			if (!isNamed(a.getPropertyChain()) || a.getSuperProperty().isAnonymous())
+				continue;
+			List<OWLObjectPropertyExpression> chain = a.getPropertyChain();
+			OWLObjectProperty sup = a.getSuperProperty().asOWLObjectProperty();
+			if (chain.size() == 2) {
+				OWLObjectProperty p1 = chain.get(0).asOWLObjectProperty();
+				OWLObjectProperty p2 = chain.get(1).asOWLObjectProperty();
+				Map<OWLObjectProperty, OWLObjectProperty> m = binaryChains.get(p1);
+				if (m == null) {
+					m = new HashMap<OWLObjectProperty, OWLObjectProperty>();
+					binaryChains.put(p1, m);
+				}
+				m.put(p2, sup);
+			}
+			else if (chain.size() > 2) {
+				longChains.add(a);
+			}
+		}
+
+		// all properties that may appear in an edge
+		Set<OWLObjectProperty> props = new HashSet<OWLObjectProperty>();
+		for (OWLOntology ont : allOntologies) {
+			props.addAll(ont.getObjectPropertiesInSignature());
+		}
+		for (OWLSubPropertyChainOfAxiom a : longChains) {
+			props.addAll(a.getObjectPropertiesInSignature());
+		}
+
+		// intern
+		List<OWLQuantifiedProperty> qpList = new ArrayList<OWLQuantifiedProperty>();
+		for (int i=0; i<NUM_QUANTIFIERS; i++)
+			nullPropertyIds[i] = NONE;
+		for (Quantifier q : NULL_PROPERTY_QUANTIFIERS) {
+			nullPropertyIds[q.ordinal()] = addQP(null, q, qpList);
+		}
+		for (OWLObjectProperty p : props) {
+			int[] ids = new int[NUM_QUANTIFIERS];
+			for (int i=0; i<NUM_QUANTIFIERS; i++)
+				ids[i] = NONE;
+			propertyIds.put(p, ids);
+			for (Quantifier q : PROPERTY_QUANTIFIERS) {
+				ids[q.ordinal()] = addQP(p, q, qpList);
+			}
+		}
+		size = qpList.size();
+		qps = qpList.toArray(new OWLQuantifiedProperty[size]);
+		chainOccurrencesByQP = new int[size][];
+
+		for (OWLSubPropertyChainOfAxiom a : longChains) {
+			addLongChain(a.getPropertyChain(), a.getSuperProperty().asOWLObjectProperty());
+		}
+
+		// fill table, only pairs matching one of the rules are candidates
+		compositionKeys = new int[size][];
+		compositionValues = new int[size][];
+		int numCompositions = 0;
+		for (int x=0; x<size; x++) {
+			Set<Integer> candidates = getCandidates(qps[x]);
+			int[] keys = new int[candidates.size()];
+			int[] values = new int[candidates.size()];
+			int n = 0;
+			for (int y : candidates) {
+				int c = computeComposition(qps[x], qps[y]);
+				if (c != NONE) {
+					keys[n] = y;
+					values[n] = c;
+					n++;
+				}
+			}
+			// candidates are sorted
+			compositionKeys[x] = n == keys.length ? keys : Arrays.copyOf(keys, n);
+			compositionValues[x] = n == values.length ? values : Arrays.copyOf(values, n);
+			numCompositions += n;
+		}
+		LOG.info("Composition table: quantified properties: "+size+" compositions: "+numCompositions+" long chains: "+chains.size());
+	}
+
+	/*
+	 * All ids y, for which x o y may be defined by one of the rules in
+	 * computeComposition(), in ascending order.
+	 */
+	private Set<Integer> getCandidates(OWLQuantifiedProperty x) {
+		Set<Integer> candidates = new TreeSet<Integer>();
+		int subClassOf = nullPropertyId(Quantifier.SUBCLASS_OF);
+		OWLObjectProperty p = x.getProperty();
+		if (x.isSubClassOf()) {
+			candidates.add(subClassOf);
+			for (int[] ids : propertyIds.values()) {
+				candidates.add(ids[Quantifier.SOME.ordinal()]);
+				candidates.add(ids[Quantifier.ONLY.ordinal()]);
+			}
+		}
+		else if (x.isInstanceOf() || x.isAllValuesFrom()) {
+			candidates.add(subClassOf);
+		}
+		else if (x.isSomeValuesFrom()) {
+			candidates.add(subClassOf);
+			if (p != null) {
+				addCandidate(p, Quantifier.SOME, candidates);
+				Map<OWLObjectProperty, OWLObjectProperty> m = binaryChains.get(p);
+				if (m != null) {
+					for (OWLObjectProperty p2 : m.keySet()) {
+						addCandidate(p2, Quantifier.SOME, candidates);
+					}
+				}
+			}
+		}
+		else if (x.isPropertyAssertion() && p != null) {
+			addCandidate(p, Quantifier.PROPERTY_ASSERTION, candidates);
+			Set<OWLObjectProperty> invs = inverses.get(p);
+			if (invs != null) {
+				for (OWLObjectProperty inv : invs) {
+					addCandidate(inv, Quantifier.PROPERTY_ASSERTION, candidates);
+				}
+			}
+		}
+		candidates.remove(NONE);
+		return candidates;
+	}
+
+	private void addCandidate(OWLObjectProperty p, Quantifier q, Set<Integer> candidates) {
+		int[] ids = propertyIds.get(p);
+		if (ids != null)
+			candidates.add(ids[q.ordinal()]);
+	}
+
+	private static boolean isNamed(List<OWLObjectPropertyExpression> chain) {
+		for (OWLObjectPropertyExpression pe : chain) {
+			if (pe.isAnonymous())
+				return false;
+		}
+		return true;
+	}
+
+	private void addInverse(OWLObjectProperty p, OWLObjectProperty inv) {
+		Set<OWLObjectProperty> s = inverses.get(p);
+		if (s == null) {
+			s = new HashSet<OWLObjectProperty>();
+			inverses.put(p, s);
+		}
+		s.add(inv);
+	}
+
+	private void addLongChain(List<OWLObjectPropertyExpression> chain, OWLObjectProperty sup) {
+		int chainIndex = chains.size();
+		int[] elements = new int[chain.size()];
+		for (int i=0; i<elements.length; i++) {
+			elements[i] = getId(new OWLQuantifiedProperty(chain.get(i), Quantifier.SOME));
+		}
+		chains.add(elements);
+		chainResults.add(getId(new OWLQuantifiedProperty(sup, Quantifier.SOME)));
+
+		// index every occurrence after the first position
+		for (int i=1; i<elements.length; i++) {
+			int[] occs = chainOccurrencesByQP[elements[i]];
+			int[] nuOccs = occs == null ? new int[1] : new int[occs.length + 1];
+			if (occs != null)
+				System.arraycopy(occs, 0, nuOccs, 0, occs.length);
+			int occ = occurrenceChain.length;
+			nuOccs[nuOccs.length - 1] = occ;
+			chainOccurrencesByQP[elements[i]] = nuOccs;
+
+			int[] nuChain = new int[occ + 1];
+			int[] nuPos = new int[occ + 1];
+			System.arraycopy(occurrenceChain, 0, nuChain, 0, occ);
+			System.arraycopy(occurrencePosition, 0, nuPos, 0, occ);
+			nuChain[occ] = chainIndex;
+			nuPos[occ] = i;
+			occurrenceChain = nuChain;
+			occurrencePosition = nuPos;
+		}
+	}
+
+	private static int addQP(OWLObjectProperty p, Quantifier q, List<OWLQuantifiedProperty> qpList) {
+		int id = qpList.size();
+		qpList.add(new CanonicalQuantifiedProperty(p, q));
+		return id;
+	}
+
+	/**
+	 * @return number of quantified properties in the precomputed table
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Find the id of a quantified property. Properties that are equal according to
+	 * {@link OWLQuantifiedProperty#equals(Object)} have the same id.
+	 *
+	 * Properties that are not part of the precomputed table are interned on demand.
+	 *
+	 * @param qp
+	 * @return id
+	 */
+	public int getId(OWLQuantifiedProperty qp) {
+		Quantifier q = qp.getQuantifier();
+		if (q != null) {
+			OWLObjectProperty p = qp.getProperty();
+			int id;
+			if (p == null) {
+				id = nullPropertyIds[q.ordinal()];
+			}
+			else {
+				int[] ids = propertyIds.get(p);
+				id = ids == null ? NONE : ids[q.ordinal()];
+			}
+			if (id != NONE)
+				return id;
+		}
+		return getExtraId(qp);
+	}
+
+	private synchronized int getExtraId(OWLQuantifiedProperty qp) {
+		for (int i=0; i<extraQps.size(); i++) {
+			if (extraQps.get(i).equals(qp)) {
+				return size + i;
+			}
+		}
+		extraQps.add(new CanonicalQuantifiedProperty(qp.getProperty(), qp.getQuantifier()));
+		return size + extraQps.size() - 1;
+	}
+
+	/**
+	 * @param id
+	 * @return canonical quantified property for the id, immutable
+	 */
+	public OWLQuantifiedProperty getQuantifiedProperty(int id) {
+		if (id < size)
+			return qps[id];
+		synchronized (this) {
+			return extraQps.get(id - size);
+		}
+	}
+
+	/**
+	 * @param id
+	 * @return true if the property for id is the identity
+	 */
+	public boolean isIdentity(int id) {
+		return id == nullPropertyIds[Quantifier.IDENTITY.ordinal()];
+	}
+
+	/**
+	 * Edge composition
+	 *
+	 * @param x
+	 * @param y
+	 * @return id of x o y or {@link #NONE} if x and y can not be combined
+	 */
+	public int compose(int x, int y) {
+		if (x < size && y < size) {
+			int i = Arrays.binarySearch(compositionKeys[x], y);
+			return i < 0 ? NONE : compositionValues[x][i];
+		}
+		synchronized (this) {
+			Long key = (((long) x) << 32) | (y & 0xffffffffL);
+			Integer c = extraCompositions.get(key);
+			if (c == null) {
+				c = computeComposition(getQuantifiedProperty(x), getQuantifiedProperty(y));
+				extraCompositions.put(key, c);
+			}
+			return c;
+		}
+	}
+
+	/**
+	 * Edge composition
+	 *
+	 * @param x
+	 * @param y
+	 * @return canonical x o y (immutable) or null if x and y can not be combined
+	 */
+	public OWLQuantifiedProperty compose(OWLQuantifiedProperty x, OWLQuantifiedProperty y) {
+		int c = compose(getId(x), getId(y));
+		if (c == NONE)
+			return null;
+		return getQuantifiedProperty(c);
+	}
+
+	/**
+	 * @param qp
+	 * @return occurrences of qp at position >= 1 in property chains with more than two elements, never null
+	 */
+	public int[] getChainOccurrences(int qp) {
+		if (qp < 0 || qp >= size || chainOccurrencesByQP[qp] == null)
+			return NO_OCCURRENCES;
+		return chainOccurrencesByQP[qp];
+	}
+
+	/**
+	 * @return true if there are any property chains with more than two elements
+	 */
+	public boolean hasLongChains() {
+		return !chains.isEmpty();
+	}
+
+	/**
+	 * True if the only rules are transitivity of subclass and of transitive properties.
+	 * Composition is then associative, and the closure of an object can be built by
+	 * composing its direct edges with the closures of their targets.
+	 * Property chains and inverse properties do not have this property.
+	 * 
+	 * @return true if composition is known to be associative
+	 */
+	public boolean isAssociative() {
+		return binaryChains.isEmpty() && chains.isEmpty() && inverses.isEmpty();
+	}
+
+	/**
+	 * @param occ
+	 * @return position of the occurrence in its chain
+	 */
+	public int getOccurrencePosition(int occ) {
+		return occurrencePosition[occ];
+	}
+
+	/**
+	 * @param occ
+	 * @return id of the property at position i in the chain of the occurrence
+	 */
+	public int getChainElement(int occ, int i) {
+		return chains.get(occurrenceChain[occ])[i];
+	}
+
+	/**
+	 * @param occ
+	 * @return number of elements in the chain of the occurrence
+	 */
+	public int getChainLength(int occ) {
+		return chains.get(occurrenceChain[occ]).length;
+	}
+
+	/**
+	 * @param occ
+	 * @return id of the super property of the chain of the occurrence
+	 */
+	public int getChainResult(int occ) {
+		return chainResults.get(occurrenceChain[occ]);
+	}
+
+	/**
+	 * Finds a property chain with more than two elements spanning the end of qpl1 and the beginning of qpl2,
+	 * with at least one element from each list.
+	 *
+	 * @param qpl1
+	 * @param qpl2
+	 * @return occurrence of the first element of qpl2 in the matching chain or {@link #NONE}
+	 */
+	public int findChain(List<OWLQuantifiedProperty> qpl1, List<OWLQuantifiedProperty> qpl2) {
+		if (chains.isEmpty() || qpl1.isEmpty() || qpl2.isEmpty())
+			return NONE;
+		for (int occ : getChainOccurrences(getId(qpl2.get(0)))) {
+			int pos = occurrencePosition[occ];
+			int len = getChainLength(occ);
+			if (pos > qpl1.size() || len - pos > qpl2.size())
+				continue;
+			boolean isMatch = true;
+			for (int i=0; i<len && isMatch; i++) {
+				OWLQuantifiedProperty qp = i < pos ? qpl1.get(qpl1.size() - pos + i) : qpl2.get(i - pos);
+				isMatch = getId(qp) == getChainElement(occ, i);
+			}
+			if (isMatch)
+				return occ;
+		}
+		return NONE;
+	}
+
+	private int computeComposition(OWLQuantifiedProperty x, OWLQuantifiedProperty y) {
+		if (x.isSubClassOf() && y.isSubClassOf()) { // TRANSITIVITY OF SUBCLASS
+			return nullPropertyId(Quantifier.SUBCLASS_OF);
+		}
+		else if (x.isInstanceOf() && y.isSubClassOf()) { // INSTANCE OF CLASS IS INSTANCE OF SUPERCLASS
+			return nullPropertyId(Quantifier.INSTANCE_OF);
+		}
+		else if (x.isSubClassOf() && y.isSomeValuesFrom()) { // TRANSITIVITY OF SUBCLASS: existentials
+			return id(y.getProperty(),Quantifier.SOME);
+		}
+		else if (x.isSomeValuesFrom() && y.isSubClassOf()) { // TRANSITIVITY OF SUBCLASS: existentials
+			return id(x.getProperty(),Quantifier.SOME);
+		}
+		else if (x.isSubClassOf() && y.isAllValuesFrom()) {
+			return id(y.getProperty(),Quantifier.ONLY);
+		}
+		else if (x.isAllValuesFrom() && y.isSubClassOf()) {
+			return id(x.getProperty(),Quantifier.ONLY);
+		}
+		else if (x.isSomeValuesFrom() &&
+				y.isSomeValuesFrom() &&
+				x.getProperty() != null &&
+				x.getProperty().equals(y.getProperty()) &&
+				transitiveProperties.contains(x.getProperty())) {
+			return id(x.getProperty(),Quantifier.SOME);
+		}
+		else if (x.isSomeValuesFrom() &&
+				y.isSomeValuesFrom() &&
+				chain(x.getProperty(), y.getProperty()) != null) {
+			return id(chain(x.getProperty(), y.getProperty()),Quantifier.SOME);
+		}
+		else if (x.isPropertyAssertion() &&
+				y.isPropertyAssertion() &&
+				x.getProperty() != null &&
+				x.getProperty().equals(y.getProperty()) &&
+				transitiveProperties.contains(x.getProperty())) {
+			return id(x.getProperty(),Quantifier.PROPERTY_ASSERTION);
+		}
+		else if (x.isPropertyAssertion() &&
+				y.isPropertyAssertion() &&
+				x.getProperty() != null &&
+				inverses.containsKey(x.getProperty()) &&
+				inverses.get(x.getProperty()).contains(y.getProperty())) {
+			return nullPropertyId(Quantifier.IDENTITY); // TODO - doesn't imply identity for classes
+		}
+		else {
+			// cannot combine - caller will add QP to sequence
+			return NONE;
+		}
+	}
+
+	private OWLObjectProperty chain(OWLObjectProperty p1, OWLObjectProperty p2) {
+		if (p1 == null || p2 == null)
+			return null;
+		Map<OWLObjectProperty, OWLObjectProperty> m = binaryChains.get(p1);
+		if (m == null)
+			return null;
+		return m.get(p2);
+	}
+
+	private int nullPropertyId(Quantifier q) {
+		return nullPropertyIds[q.ordinal()];
+	}
+
+	private int id(OWLObjectProperty p, Quantifier q) {
+		return getId(new OWLQuantifiedProperty(p, q));
+	}
+
+	/**
+	 * Interned quantified property, shared between all edges using it.
+	 */
+	private static final class CanonicalQuantifiedProperty extends OWLQuantifiedProperty {
+
+		CanonicalQuantifiedProperty(OWLObjectProperty p, Quantifier q) {
+			super(p, q);
+		}
+
+		private UnsupportedOperationException immutable() {
+			return new UnsupportedOperationException("Canonical quantified property can not be modified: "+this);
+		}
+
+		@Override
+		public void setInverseOf(boolean isInverseOf) {
+			throw immutable();
+		}
+
+		@Override
+		public void setInferred(boolean isInferred) {
+			throw immutable();
+		}
+
+		@Override
+		public void setProperty(OWLObjectProperty property) {
+			throw immutable();
+		}
+
+		@Override
+		public void setQuantifier(Quantifier quantifier) {
+			throw immutable();
+		}
+
+		@Override
+		public void setMinCardinality(Integer minCardinality) {
+			throw immutable();
+		}
+
+		@Override
+		public void setMaxCardinality(Integer maxCardinality) {
+			throw immutable();
+		}
+	}
+}
@@ -0,0 +1,103 @@
+package owltools.io;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLOntology;
+
+import owltools.graph.OWLGraphWrapper;
+
+/**
+ * Constants and helpers for the binary closure format written by
+ * {@link BinaryGraphClosureRenderer} and read by {@link BinaryGraphClosureReader}.
+ *
+ * Layout, all numbers big-endian:
+ * <pre>
+ * int    MAGIC
+ * int    VERSION
+ * long   ontology checksum, see {@link #computeChecksum(OWLGraphWrapper)}
+ * int    number of IRIs, followed by each IRI as int length + UTF-8 bytes
+ * int    number of quantified properties, followed by each as:
+ *          int quantifier (index into Quantifier.values())
+ *          int property (index into IRI table, -1 for none)
+ *          byte flags (1 = inverse, 2 = inferred)
+ *          int min cardinality, int max cardinality (-1 for none)
+ * int    number of property lists, followed by each as int length + quantified property indexes
+ * int    number of sources, followed by each as int IRI index + int number of edges
+ * int    total number of edges, followed by one EDGE_RECORD_SIZE record per edge:
+ *          int target (IRI index), int property list index, int distance
+ * </pre>
+ * Edge records are stored in the same order as the sources, so the records for
+ * a source start at the sum of the edge counts of the sources before it.
+ */
+public class BinaryGraphClosureFormat {
+
+	public static final int MAGIC = 0x4F434C53; // "OCLS"
+	public static final int VERSION = 1;
+	public static final int EDGE_RECORD_SIZE = 12;
+
+	static final int FLAG_INVERSE = 1;
+	static final int FLAG_INFERRED = 2;
+
+	/**
+	 * Checksum over the ontology IDs (including version IRIs), the number of
+	 * axioms and the axiom hash codes of all ontologies in the graph.
+	 * The value does not depend on the order of axioms, so loading the same
+	 * ontologies again gives the same checksum. Axioms are not rendered, so
+	 * this is cheap enough to compute on every load.
+	 *
+	 * @param g
+	 * @return checksum
+	 */
+	public static long computeChecksum(OWLGraphWrapper g) {
+		List<String> ids = new ArrayList<String>();
+		long sum = 0;
+		long xor = 0;
+		int n = 0;
+		for (OWLOntology ont : g.getAllOntologies()) {
+			ids.add(ont.getOntologyID().toString());
+			for (OWLAxiom ax : ont.getAxioms()) {
+				int h = ax.hashCode();
+				sum += h;
+				xor ^= (long) h * 0x9E3779B97F4A7C15L;
+				n++;
+			}
+		}
+		Collections.sort(ids);
+		CRC32 crc = new CRC32();
+		try {
+			for (String id : ids) {
+				crc.update(id.getBytes("UTF-8"));
+			}
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+		return (crc.getValue() << 32) ^ sum ^ xor ^ n;
+	}
+
+	/**
+	 * @param file
+	 * @return true if file starts with the binary closure magic number
+	 * @throws IOException
+	 */
+	public static boolean isBinaryClosureFile(String file) throws IOException {
+		File f = new File(file);
+		if (f.length() < 4)
+			return false;
+		DataInputStream in = new DataInputStream(new FileInputStream(f));
+		try {
+			return in.readInt() == MAGIC;
+		}
+		finally {
+			in.close();
+		}
+	}
+}
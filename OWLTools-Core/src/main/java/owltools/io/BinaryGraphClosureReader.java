@@ -0,0 +1,252 @@
+package owltools.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.log4j.Logger;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLNamedObject;
+import org.semanticweb.owlapi.model.OWLObject;
+import org.semanticweb.owlapi.model.OWLOntology;
+
+import owltools.graph.OWLGraphClosureCache;
+import owltools.graph.OWLGraphEdge;
+import owltools.graph.OWLGraphWrapper;
+import owltools.graph.OWLQuantifiedProperty;
+import owltools.graph.OWLQuantifiedProperty.Quantifier;
+
+/**
+ * Reads a closure written by {@link BinaryGraphClosureRenderer}.
+ *
+ * The file is memory-mapped and only the header tables are decoded when it is read;
+ * the edges for an object are decoded when its closure is requested. After reading,
+ * the outgoing closure cache of the graph is replaced by one that serves closures
+ * from the file, and delegates objects not in the file to the previous cache.
+ *
+ * Note that the ontology must be loaded prior to reading; files written for
+ * a different version of the ontology are rejected, see
+ * {@link BinaryGraphClosureFormat#computeChecksum(OWLGraphWrapper)}.
+ */
+public class BinaryGraphClosureReader extends AbstractClosureReader {
+
+	private static Logger LOG = Logger.getLogger(BinaryGraphClosureReader.class);
+
+	private ByteBuffer edgeBuffer;
+	private IRI[] iris;
+	private AtomicReferenceArray<OWLObject> objects;
+	private OWLQuantifiedProperty[] qps;
+	private int[][] qpLists;
+	private Map<IRI, Integer> sourceIndex;
+	private int[] sourceStart;
+	private int[] sourceCount;
+
+	public BinaryGraphClosureReader(OWLGraphWrapper g) {
+		super(g);
+	}
+
+	/**
+	 * Memory-maps the file.
+	 */
+	@Override
+	public void read(String file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			if (channel.size() > Integer.MAX_VALUE)
+				throw new IOException("Closure file too large to map: "+file);
+			// the mapping stays valid after the channel is closed
+			read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+		finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Reads the whole stream into memory; use {@link #read(String)} to map a file instead.
+	 */
+	@Override
+	public void read() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buf = new byte[64 * 1024];
+		int len;
+		while ((len = stream.read(buf)) > 0) {
+			bytes.write(buf, 0, len);
+		}
+		stream.close();
+		read(ByteBuffer.wrap(bytes.toByteArray()));
+	}
+
+	private void read(ByteBuffer buffer) throws IOException {
+		if (buffer.remaining() < 16 || buffer.getInt() != BinaryGraphClosureFormat.MAGIC)
+			throw new IOException("Not a binary closure file");
+		int version = buffer.getInt();
+		if (version != BinaryGraphClosureFormat.VERSION)
+			throw new IOException("Unsupported closure file version: "+version);
+		long checksum = buffer.getLong();
+		long expected = BinaryGraphClosureFormat.computeChecksum(graph);
+		if (checksum != expected)
+			throw new IOException("Closure file is stale, it was written for a different version of the ontology"+
+					" (checksum "+Long.toHexString(checksum)+", expected "+Long.toHexString(expected)+")");
+
+		iris = new IRI[buffer.getInt()];
+		for (int i=0; i<iris.length; i++) {
+			byte[] bytes = new byte[buffer.getInt()];
+			buffer.get(bytes);
+			iris[i] = IRI.create(new String(bytes, "UTF-8"));
+		}
+		objects = new AtomicReferenceArray<OWLObject>(iris.length);
+
+		Quantifier[] quantifiers = Quantifier.values();
+		qps = new OWLQuantifiedProperty[buffer.getInt()];
+		for (int i=0; i<qps.length; i++) {
+			int q = buffer.getInt();
+			int p = buffer.getInt();
+			int flags = buffer.get();
+			int min = buffer.getInt();
+			int max = buffer.getInt();
+			OWLQuantifiedProperty qp = new OWLQuantifiedProperty(q < 0 ? null : quantifiers[q]);
+			if (p >= 0)
+				qp.setProperty(graph.getDataFactory().getOWLObjectProperty(iris[p]));
+			qp.setInverseOf((flags & BinaryGraphClosureFormat.FLAG_INVERSE) != 0);
+			qp.setInferred((flags & BinaryGraphClosureFormat.FLAG_INFERRED) != 0);
+			if (min >= 0)
+				qp.setMinCardinality(min);
+			if (max >= 0)
+				qp.setMaxCardinality(max);
+			qps[i] = qp;
+		}
+
+		qpLists = new int[buffer.getInt()][];
+		for (int i=0; i<qpLists.length; i++) {
+			int[] qpl = new int[buffer.getInt()];
+			for (int j=0; j<qpl.length; j++) {
+				qpl[j] = buffer.getInt();
+			}
+			qpLists[i] = qpl;
+		}
+
+		int numSources = buffer.getInt();
+		sourceIndex = new HashMap<IRI, Integer>(numSources * 2);
+		sourceStart = new int[numSources];
+		sourceCount = new int[numSources];
+		int start = 0;
+		for (int i=0; i<numSources; i++) {
+			sourceIndex.put(iris[buffer.getInt()], i);
+			sourceStart[i] = start;
+			sourceCount[i] = buffer.getInt();
+			start += sourceCount[i];
+		}
+		int numEdges = buffer.getInt();
+		if (numEdges != start || buffer.remaining() != (long) numEdges * BinaryGraphClosureFormat.EDGE_RECORD_SIZE)
+			throw new IOException("Closure file is truncated or corrupt");
+		edgeBuffer = buffer.slice();
+
+		OWLGraphClosureCache previous = graph.getOutgoingClosureCache();
+		graph.setOutgoingClosureCache(new ClosureCache(previous));
+		LOG.info("Mapped closure: sources="+numSources+" edges="+numEdges+" iris="+iris.length);
+	}
+
+	/**
+	 * @return number of objects with a closure in the file
+	 */
+	public int getNumberOfSources() {
+		return sourceIndex == null ? 0 : sourceIndex.size();
+	}
+
+	/**
+	 * Decodes the closure for s from the file. Safe for use by multiple threads.
+	 *
+	 * @param s
+	 * @return new set of edges, or null if s has no closure in the file
+	 */
+	public Set<OWLGraphEdge> getOutgoingEdgesClosure(OWLObject s) {
+		if (sourceIndex == null || !(s instanceof OWLNamedObject))
+			return null;
+		Integer i = sourceIndex.get(((OWLNamedObject) s).getIRI());
+		if (i == null)
+			return null;
+		OWLOntology ont = graph.getSourceOntology();
+		int n = sourceCount[i];
+		Set<OWLGraphEdge> edges = new HashSet<OWLGraphEdge>(n * 2);
+		int pos = sourceStart[i] * BinaryGraphClosureFormat.EDGE_RECORD_SIZE;
+		for (int j=0; j<n; j++) {
+			// absolute reads, the buffer position is never changed
+			OWLObject t = getObject(edgeBuffer.getInt(pos));
+			int[] qpl = qpLists[edgeBuffer.getInt(pos + 4)];
+			List<OWLQuantifiedProperty> qpList = new ArrayList<OWLQuantifiedProperty>(qpl.length);
+			for (int k : qpl) {
+				qpList.add(qps[k]);
+			}
+			OWLGraphEdge e = new OWLGraphEdge(s, t, qpList, ont);
+			e.setDistance(edgeBuffer.getInt(pos + 8));
+			edges.add(e);
+			pos += BinaryGraphClosureFormat.EDGE_RECORD_SIZE;
+		}
+		return edges;
+	}
+
+	private OWLObject getObject(int i) {
+		OWLObject obj = objects.get(i);
+		if (obj == null) {
+			obj = graph.getOWLObject(iris[i]);
+			if (obj == null)
+				obj = graph.getDataFactory().getOWLClass(iris[i]);
+			objects.set(i, obj);
+		}
+		return obj;
+	}
+
+	/**
+	 * Serves closures from the file; all other objects are delegated.
+	 */
+	private class ClosureCache implements OWLGraphClosureCache {
+
+		private final OWLGraphClosureCache delegate;
+		private volatile boolean useFile = true;
+
+		ClosureCache(OWLGraphClosureCache delegate) {
+			this.delegate = delegate;
+		}
+
+		public Set<OWLGraphEdge> get(OWLObject x) {
+			if (useFile) {
+				Set<OWLGraphEdge> edges = getOutgoingEdgesClosure(x);
+				if (edges != null)
+					return Collections.unmodifiableSet(edges);
+			}
+			return delegate.get(x);
+		}
+
+		public Set<OWLGraphEdge> put(OWLObject x, Set<OWLGraphEdge> edges) {
+			return delegate.put(x, edges);
+		}
+
+		/**
+		 * Also detaches the file, as its closures may no longer be valid.
+		 */
+		public void clear() {
+			useFile = false;
+			delegate.clear();
+		}
+
+		public int size() {
+			return (useFile ? getNumberOfSources() : 0) + delegate.size();
+		}
+
+		public long getWeight() {
+			return (useFile ? edgeBuffer.capacity() / BinaryGraphClosureFormat.EDGE_RECORD_SIZE : 0) + delegate.getWeight();
+		}
+	}
+}
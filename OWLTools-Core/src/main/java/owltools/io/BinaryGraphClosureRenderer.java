@@ -0,0 +1,217 @@
+package owltools.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLNamedObject;
+import org.semanticweb.owlapi.model.OWLObject;
+
+import owltools.graph.OWLGraphEdge;
+import owltools.graph.OWLGraphWrapper;
+import owltools.graph.OWLQuantifiedProperty;
+
+/**
+ * Writes the graph closure in the binary format described in
+ * {@link BinaryGraphClosureFormat}, for reading with {@link BinaryGraphClosureReader}.
+ *
+ * Unlike {@link CompactGraphClosureRenderer}, closures with edges to anonymous
+ * class expressions are not written at all, rather than without these edges,
+ * so that every closure served from the file is complete. The reader falls back
+ * to computing these closures.
+ */
+public class BinaryGraphClosureRenderer implements GraphRenderer {
+
+	private static Logger LOG = Logger.getLogger(BinaryGraphClosureRenderer.class);
+
+	private final String file;
+
+	private final Map<IRI, Integer> iriIndex = new HashMap<IRI, Integer>();
+	private final List<IRI> iris = new ArrayList<IRI>();
+	// OWLQuantifiedProperty.equals ignores the flags, so these are keyed by their serialized form
+	private final Map<String, Integer> qpIndex = new HashMap<String, Integer>();
+	private final List<int[]> qps = new ArrayList<int[]>();
+	private final Map<String, Integer> qpListIndex = new HashMap<String, Integer>();
+	private final List<int[]> qpLists = new ArrayList<int[]>();
+
+	public BinaryGraphClosureRenderer(String file) {
+		super();
+		this.file = file;
+	}
+
+	private static boolean isNamedTargets(Set<OWLGraphEdge> edges) {
+		for (OWLGraphEdge e : edges) {
+			if (!(e.getTarget() instanceof OWLNamedObject))
+				return false;
+		}
+		return true;
+	}
+
+	public void render(OWLGraphWrapper g) {
+		try {
+			write(g);
+		} catch (IOException e) {
+			throw new RuntimeException("Could not write closure to "+file, e);
+		}
+	}
+
+	/**
+	 * Edge records are written to a temporary file first, as the tables in the
+	 * header are only complete once all closures have been computed.
+	 *
+	 * @param g
+	 * @throws IOException
+	 */
+	public void write(OWLGraphWrapper g) throws IOException {
+		long checksum = BinaryGraphClosureFormat.computeChecksum(g);
+
+		Set<OWLObject> objs = new HashSet<OWLObject>(g.getSourceOntology().getClassesInSignature(false));
+		objs.addAll(g.getSourceOntology().getIndividualsInSignature(false));
+
+		File edgeFile = File.createTempFile("closure-edges", ".bin");
+		List<int[]> sources = new ArrayList<int[]>();
+		int numEdges = 0;
+		try {
+			DataOutputStream edgeOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(edgeFile)));
+			try {
+				for (OWLObject obj : objs) {
+					Set<OWLGraphEdge> closure = g.getOutgoingEdgesClosureView(obj);
+					if (!isNamedTargets(closure)) {
+						// can not be stored, the reader falls back to computing the closure
+						continue;
+					}
+					int n = 0;
+					for (OWLGraphEdge e : closure) {
+						edgeOut.writeInt(getIRIIndex(((OWLNamedObject) e.getTarget()).getIRI()));
+						edgeOut.writeInt(getQPListIndex(e.getQuantifiedPropertyList()));
+						edgeOut.writeInt(e.getDistance());
+						n++;
+					}
+					if (n > 0) {
+						sources.add(new int[]{getIRIIndex(((OWLNamedObject) obj).getIRI()), n});
+						numEdges += n;
+					}
+				}
+			}
+			finally {
+				edgeOut.close();
+			}
+
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+			try {
+				out.writeInt(BinaryGraphClosureFormat.MAGIC);
+				out.writeInt(BinaryGraphClosureFormat.VERSION);
+				out.writeLong(checksum);
+				out.writeInt(iris.size());
+				for (IRI iri : iris) {
+					byte[] bytes = iri.toString().getBytes("UTF-8");
+					out.writeInt(bytes.length);
+					out.write(bytes);
+				}
+				out.writeInt(qps.size());
+				for (int[] qp : qps) {
+					out.writeInt(qp[0]);
+					out.writeInt(qp[1]);
+					out.writeByte(qp[2]);
+					out.writeInt(qp[3]);
+					out.writeInt(qp[4]);
+				}
+				out.writeInt(qpLists.size());
+				for (int[] qpl : qpLists) {
+					out.writeInt(qpl.length);
+					for (int i : qpl) {
+						out.writeInt(i);
+					}
+				}
+				out.writeInt(sources.size());
+				for (int[] source : sources) {
+					out.writeInt(source[0]);
+					out.writeInt(source[1]);
+				}
+				out.writeInt(numEdges);
+				InputStream in = new BufferedInputStream(new FileInputStream(edgeFile));
+				try {
+					byte[] buf = new byte[64 * 1024];
+					int len;
+					while ((len = in.read(buf)) > 0) {
+						out.write(buf, 0, len);
+					}
+				}
+				finally {
+					in.close();
+				}
+			}
+			finally {
+				out.close();
+			}
+		}
+		finally {
+			edgeFile.delete();
+		}
+		LOG.info("Wrote closure: sources="+sources.size()+" edges="+numEdges+" iris="+iris.size()+" file="+file);
+	}
+
+	private int getIRIIndex(IRI iri) {
+		Integer i = iriIndex.get(iri);
+		if (i == null) {
+			i = iris.size();
+			iris.add(iri);
+			iriIndex.put(iri, i);
+		}
+		return i;
+	}
+
+	private int getQPIndex(OWLQuantifiedProperty qp) {
+		int[] rec = new int[5];
+		rec[0] = qp.getQuantifier() == null ? -1 : qp.getQuantifier().ordinal();
+		rec[1] = qp.hasProperty() ? getIRIIndex(qp.getProperty().getIRI()) : -1;
+		rec[2] = (qp.isInverseOf() ? BinaryGraphClosureFormat.FLAG_INVERSE : 0) |
+			(qp.isInferred() ? BinaryGraphClosureFormat.FLAG_INFERRED : 0);
+		rec[3] = qp.getMinCardinality() == null ? -1 : qp.getMinCardinality();
+		rec[4] = qp.getMaxCardinality() == null ? -1 : qp.getMaxCardinality();
+		String key = toKey(rec);
+		Integer i = qpIndex.get(key);
+		if (i == null) {
+			i = qps.size();
+			qps.add(rec);
+			qpIndex.put(key, i);
+		}
+		return i;
+	}
+
+	private int getQPListIndex(List<OWLQuantifiedProperty> qpl) {
+		int[] rec = new int[qpl.size()];
+		for (int j=0; j<rec.length; j++) {
+			rec[j] = getQPIndex(qpl.get(j));
+		}
+		String key = toKey(rec);
+		Integer i = qpListIndex.get(key);
+		if (i == null) {
+			i = qpLists.size();
+			qpLists.add(rec);
+			qpListIndex.put(key, i);
+		}
+		return i;
+	}
+
+	private static String toKey(int[] rec) {
+		StringBuilder sb = new StringBuilder();
+		for (int i : rec) {
+			sb.append(i).append(',');
+		}
+		return sb.toString();
+	}
+}
@@ -6,8 +6,6 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -18,6 +16,7 @@ import org.semanticweb.owlapi.model.OWLObject;
 import org.semanticweb.owlapi.model.OWLObjectProperty;
 import org.semanticweb.owlapi.model.OWLOntology;
 
+import owltools.graph.OWLGraphClosureCache;
 import owltools.graph.OWLGraphEdge;
 import owltools.graph.OWLGraphWrapper;
 import owltools.graph.OWLQuantifiedProperty;
@@ -41,9 +40,7 @@ public class CompactGraphClosureReader extends AbstractClosureReader {
 		BufferedReader reader = new BufferedReader(isr);
 		OWLOntology ont = graph.getSourceOntology();
 		String row;
-		if (graph.inferredEdgeBySource == null) {
-			graph.inferredEdgeBySource = new HashMap<OWLObject,Set<OWLGraphEdge>>();
-		}
+		OWLGraphClosureCache cache = graph.getOutgoingClosureCache();
 		while (true) {
 			row = reader.readLine();
 			if (row == null) {
@@ -52,12 +49,12 @@ public class CompactGraphClosureReader extends AbstractClosureReader {
 			String[] vals = row.split("\t");
 			int len = vals.length;
 			OWLObject src = getObject(vals[0]);
-			Collection<OWLGraphEdge> edges = new HashSet<OWLGraphEdge>();
+			Set<OWLGraphEdge> edges = new HashSet<OWLGraphEdge>();
 			for (int i=1; i<len; i++) {
 				OWLGraphEdge e = parseEdge(ont, src, vals[i]);
 				edges.add(e);
 			}
-			graph.inferredEdgeBySource.put(src, new HashSet<OWLGraphEdge>(edges));
+			cache.put(src, edges);
 		}
 	}
 
@@ -2,34 +2,114 @@ package owltools.profile;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class Profiler {
 	
-	Map<String,Long> taskTotalTimeMap = new HashMap<String,Long>();
-	Map<String,Long> taskInitTimeMap = new HashMap<String,Long>();
+	// totals are shared, start times are per thread, so that tasks
+	// running concurrently in several threads are timed correctly
+	ConcurrentMap<String,AtomicLong> taskTotalTimeMap = new ConcurrentHashMap<String,AtomicLong>();
+	ThreadLocal<Map<String,Long>> taskInitTimeMap = new ThreadLocal<Map<String,Long>>() {
+
+		@Override
+		protected Map<String, Long> initialValue() {
+			return new HashMap<String, Long>();
+		}
+	};
+	ConcurrentMap<String,AtomicLong> counterMap = new ConcurrentHashMap<String,AtomicLong>();
+	private volatile boolean isEnabled = true;
 
 	public Profiler() {
 		super();
 		// TODO Auto-generated constructor stub
 	}
+
+	/**
+	 * @return true if tasks are timed
+	 */
+	public boolean isEnabled() {
+		return isEnabled;
+	}
+
+	/**
+	 * If disabled, {@link #startTaskNotify(String)} and
+	 * {@link #endTaskNotify(String)} return immediately.
+	 * 
+	 * @param isEnabled
+	 */
+	public void setEnabled(boolean isEnabled) {
+		this.isEnabled = isEnabled;
+	}
 	
 	public void startTaskNotify(String task) {
-		taskInitTimeMap.put(task, System.nanoTime());
+		if (!isEnabled)
+			return;
+		taskInitTimeMap.get().put(task, System.nanoTime());
 	}
 
 	public void endTaskNotify(String task) {
-		long ct = 0;
-		if (taskTotalTimeMap.containsKey(task)) {
-			ct = taskTotalTimeMap.get(task);
+		if (!isEnabled)
+			return;
+		Long t1 = taskInitTimeMap.get().remove(task);
+		if (t1 == null) {
+			// enabled while the task was running
+			return;
 		}
-		long t1 = taskInitTimeMap.get(task);
 		long t2 = System.nanoTime();
-		taskTotalTimeMap.put(task, ct + (t2-t1));
+		getCounter(taskTotalTimeMap, task).addAndGet(t2-t1);
+	}
+
+	private static AtomicLong getCounter(ConcurrentMap<String,AtomicLong> map, String key) {
+		AtomicLong c = map.get(key);
+		if (c == null) {
+			AtomicLong prev = map.putIfAbsent(key, new AtomicLong());
+			c = prev == null ? map.get(key) : prev;
+		}
+		return c;
+	}
+
+	/**
+	 * Adds n to the named counter, e.g. the number of cache hits.
+	 * Safe to call from multiple threads.
+	 * 
+	 * @param counter
+	 * @param n
+	 */
+	public void incrementCounter(String counter, long n) {
+		getCounter(counterMap, counter).addAndGet(n);
+	}
+
+	public void incrementCounter(String counter) {
+		incrementCounter(counter, 1);
+	}
+
+	/**
+	 * @param counter
+	 * @return current value, 0 if the counter was never incremented
+	 */
+	public long getCounter(String counter) {
+		AtomicLong c = counterMap.get(counter);
+		return c == null ? 0 : c.get();
 	}
 	
+	/**
+	 * @param task
+	 * @return total time in nanoseconds spent in the task in all threads, 0 if the task never ran
+	 */
+	public long getTaskTime(String task) {
+		AtomicLong t = taskTotalTimeMap.get(task);
+		return t == null ? 0 : t.get();
+	}
+
 	public void report() {
-		for (String task : taskTotalTimeMap.keySet()) {
-			System.out.println("TASK:"+task+" TIME:"+((float)taskTotalTimeMap.get(task)) / 1000000000);
+		for (Map.Entry<String,AtomicLong> e : taskTotalTimeMap.entrySet()) {
+			System.out.println("TASK:"+e.getKey()+" TIME:"+((float)e.getValue().get()) / 1000000000);
+		}
+		for (Map.Entry<String,AtomicLong> e : new TreeMap<String,AtomicLong>(counterMap).entrySet()) {
+			System.out.println("COUNTER:"+e.getKey()+" VALUE:"+e.getValue().get());
 		}
 	}
 	
@@ -0,0 +1,351 @@
+package owltools.sim;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLNamedIndividual;
+import org.semanticweb.owlapi.reasoner.Node;
+
+import owltools.sim.SimpleOwlSim.ScoreAttributesPair;
+
+/**
+ * Index for fast all-by-all comparison of elements in a {@link SimpleOwlSim}.
+ *
+ * Each attribute node (a class plus its equivalents) used by any element is
+ * assigned an int, and the inferred attributes of each element, as well as the
+ * reflexive subsumers of each direct attribute class, are stored as bitsets.
+ * Nodes are numbered by decreasing information content, and for equal information
+ * content subclasses come before their superclasses. The common subsumer with the
+ * highest information content of two sets is therefore the first bit of their
+ * intersection, and it is always a lowest common subsumer.
+ *
+ * The scores are the same as those of the set based methods in {@link SimpleOwlSim}.
+ * Where several attributes tie for the best score, the set based methods depend
+ * on the iteration order of hash sets; here attributes are considered in the
+ * order of the index.
+ *
+ * If a table of LCSs is loaded (see {@link SimpleOwlSim#setLowestCommonSubsumerTable(LCSTable)}),
+ * BMA uses the LCS from the table for pairs of attributes in the table. The LCSs
+ * computed here are part of {@link SimpleOwlSim#getLowestCommonSubsumerTable()}.
+ *
+ * The index is a snapshot, it is not updated when elements are added.
+ * Instances are safe for use by multiple threads.
+ */
+public class AttributeBitSetIndex {
+
+	private static Logger LOG = Logger.getLogger(AttributeBitSetIndex.class);
+
+	private final SimpleOwlSim sos;
+	private final int numWords;
+
+	private final OWLClass[] nodeClasses; // representative element of each node
+	private final double[] nodeIC;
+	// all classes of each node
+	private final Map<OWLClass, Integer> classNodeIndex = new HashMap<OWLClass, Integer>();
+
+	private final Map<OWLNamedIndividual, Integer> elementIndex = new HashMap<OWLNamedIndividual, Integer>();
+	private final long[][] elementBits;
+	private final int[] elementCardinality;
+	// direct attributes of each element, as index into attributeBits
+	private final int[][] elementAttributes;
+
+	private final Map<OWLClass, Integer> attributeIndex = new HashMap<OWLClass, Integer>();
+	private final List<OWLClass> attributes = new ArrayList<OWLClass>();
+	private final List<long[]> attributeBits = new ArrayList<long[]>();
+
+	private final AtomicLong lcsTableHits = new AtomicLong();
+
+	/**
+	 * @param sos with element attribute map, see {@link SimpleOwlSim#createElementAttributeMapFromOntology()}
+	 */
+	AttributeBitSetIndex(SimpleOwlSim sos) {
+		this.sos = sos;
+		long t1 = System.currentTimeMillis();
+		Set<OWLNamedIndividual> elements = sos.getAllElements();
+
+		// collect and order the nodes
+		Set<Node<OWLClass>> allNodes = new HashSet<Node<OWLClass>>();
+		for (OWLNamedIndividual e : elements) {
+			allNodes.addAll(sos.getInferredAttributes(e));
+		}
+		final Map<Node<OWLClass>, Double> ic = new HashMap<Node<OWLClass>, Double>();
+		final Map<Node<OWLClass>, Integer> depth = new HashMap<Node<OWLClass>, Integer>();
+		for (Node<OWLClass> n : allNodes) {
+			OWLClass c = n.getRepresentativeElement();
+			ic.put(n, sos.getInformationContentForAttribute(c));
+			depth.put(n, sos.getNamedReflexiveSubsumers(c).size());
+		}
+		List<Node<OWLClass>> nodes = new ArrayList<Node<OWLClass>>(allNodes);
+		Collections.sort(nodes, new Comparator<Node<OWLClass>>() {
+
+			@Override
+			public int compare(Node<OWLClass> n1, Node<OWLClass> n2) {
+				int c = ic.get(n2).compareTo(ic.get(n1));
+				if (c == 0)
+					c = depth.get(n2).compareTo(depth.get(n1));
+				if (c == 0)
+					c = n1.getRepresentativeElement().compareTo(n2.getRepresentativeElement());
+				return c;
+			}
+		});
+		int numNodes = nodes.size();
+		numWords = (numNodes + 63) / 64;
+		nodeClasses = new OWLClass[numNodes];
+		nodeIC = new double[numNodes];
+		Map<Node<OWLClass>, Integer> nodeIndex = new HashMap<Node<OWLClass>, Integer>();
+		for (int k = 0; k < numNodes; k++) {
+			Node<OWLClass> n = nodes.get(k);
+			nodeIndex.put(n, k);
+			nodeClasses[k] = n.getRepresentativeElement();
+			nodeIC[k] = ic.get(n);
+			for (OWLClass c : n.getEntities()) {
+				classNodeIndex.put(c, k);
+			}
+		}
+
+		// bitsets for elements and their direct attributes
+		int numElements = elements.size();
+		elementBits = new long[numElements][];
+		elementCardinality = new int[numElements];
+		elementAttributes = new int[numElements][];
+		int ei = 0;
+		for (OWLNamedIndividual e : elements) {
+			elementIndex.put(e, ei);
+			elementBits[ei] = toBits(sos.getInferredAttributes(e), nodeIndex);
+			elementCardinality[ei] = cardinality(elementBits[ei]);
+			// same iteration order as the set based methods
+			Set<OWLClass> atts = sos.getAttributesForElement(e);
+			int[] ais = new int[atts.size()];
+			int k = 0;
+			for (OWLClass c : atts) {
+				Integer ai = attributeIndex.get(c);
+				if (ai == null) {
+					ai = attributes.size();
+					attributes.add(c);
+					attributeBits.add(toBits(sos.getNamedReflexiveSubsumers(c), nodeIndex));
+					attributeIndex.put(c, ai);
+				}
+				ais[k++] = ai;
+			}
+			elementAttributes[ei] = ais;
+			ei++;
+		}
+		LOG.info("Attribute index: nodes="+numNodes+" elements="+numElements+
+				" attributes="+attributes.size()+" time="+(System.currentTimeMillis()-t1)+"ms");
+	}
+
+	private long[] toBits(Set<Node<OWLClass>> nodes, Map<Node<OWLClass>, Integer> nodeIndex) {
+		long[] bits = new long[numWords];
+		for (Node<OWLClass> n : nodes) {
+			Integer k = nodeIndex.get(n);
+			if (k != null)
+				bits[k >> 6] |= 1L << (k & 63);
+		}
+		return bits;
+	}
+
+	private static int cardinality(long[] bits) {
+		int n = 0;
+		for (long w : bits) {
+			n += Long.bitCount(w);
+		}
+		return n;
+	}
+
+	private static int intersectionCardinality(long[] a, long[] b) {
+		int n = 0;
+		for (int w = 0; w < a.length; w++) {
+			n += Long.bitCount(a[w] & b[w]);
+		}
+		return n;
+	}
+
+	/**
+	 * @return index of the first node in both a and b, or -1
+	 */
+	private static int firstCommonBit(long[] a, long[] b) {
+		for (int w = 0; w < a.length; w++) {
+			long x = a[w] & b[w];
+			if (x != 0)
+				return (w << 6) + Long.numberOfTrailingZeros(x);
+		}
+		return -1;
+	}
+
+	/**
+	 * @param ai
+	 * @param aj
+	 * @param table
+	 * @return index of the node with the LCS of the two attributes in the table, or -1
+	 */
+	private int getTableNode(int ai, int aj, LCSTable table) {
+		OWLClass lcs = table.get(attributes.get(ai), attributes.get(aj));
+		if (lcs == null)
+			return -1;
+		Integer k = classNodeIndex.get(lcs);
+		if (k == null) {
+			// not a subsumer of any element, the table is for another ontology
+			return -1;
+		}
+		return k;
+	}
+
+	/**
+	 * @param e
+	 * @return true if e is in the index
+	 */
+	public boolean containsElement(OWLNamedIndividual e) {
+		return elementIndex.containsKey(e);
+	}
+
+	/**
+	 * @return number of attribute nodes
+	 */
+	public int getNumberOfNodes() {
+		return nodeClasses.length;
+	}
+
+	/**
+	 * @return number of attribute pairs for which BMA used the loaded LCS table
+	 */
+	public long getLowestCommonSubsumerTableHits() {
+		return lcsTableHits.get();
+	}
+
+	/**
+	 * Adds the LCS of each pair of direct attributes, as used by BMA, to the table.
+	 * Pairs without a common subsumer and those with owl:Thing as LCS are left out.
+	 * 
+	 * @param table
+	 */
+	void addLowestCommonSubsumers(LCSTable table) {
+		LCSTable loaded = sos.getLoadedLowestCommonSubsumerTable();
+		for (int ai = 0; ai < attributes.size(); ai++) {
+			for (int aj = ai; aj < attributes.size(); aj++) {
+				int k = loaded == null ? -1 : getTableNode(ai, aj, loaded);
+				if (k < 0)
+					k = firstCommonBit(attributeBits.get(ai), attributeBits.get(aj));
+				if (k >= 0 && !nodeClasses[k].isOWLThing()) {
+					table.put(attributes.get(ai), attributes.get(aj), nodeClasses[k]);
+				}
+			}
+		}
+	}
+
+	private int getElementIndex(OWLNamedIndividual e) {
+		Integer ei = elementIndex.get(e);
+		if (ei == null)
+			throw new IllegalArgumentException("Element not in index: "+e);
+		return ei;
+	}
+
+	/**
+	 * @param i
+	 * @param j
+	 * @return SimJ, see {@link SimpleOwlSim#getElementJaccardSimilarity(OWLNamedIndividual, OWLNamedIndividual)}
+	 */
+	public float getElementJaccardSimilarity(OWLNamedIndividual i, OWLNamedIndividual j) {
+		int ei = getElementIndex(i);
+		int ej = getElementIndex(j);
+		int ci = intersectionCardinality(elementBits[ei], elementBits[ej]);
+		int cu = elementCardinality[ei] + elementCardinality[ej] - ci;
+		return ci / (float) cu;
+	}
+
+	/**
+	 * @param i
+	 * @param j
+	 * @return MaxIC, see {@link SimpleOwlSim#getSimilarityMaxIC(OWLNamedIndividual, OWLNamedIndividual)}
+	 */
+	public ScoreAttributesPair getSimilarityMaxIC(OWLNamedIndividual i, OWLNamedIndividual j) {
+		long[] a = elementBits[getElementIndex(i)];
+		long[] b = elementBits[getElementIndex(j)];
+		ScoreAttributesPair best = sos.new ScoreAttributesPair(0.0);
+		for (int w = 0; w < a.length; w++) {
+			long x = a[w] & b[w];
+			while (x != 0) {
+				int k = (w << 6) + Long.numberOfTrailingZeros(x);
+				x &= x - 1;
+				double ic = nodeIC[k];
+				if (Math.abs(ic - best.score) < 0.001) {
+					// tie for best attribute
+					best.addAttributeClass(nodeClasses[k]);
+				}
+				else if (ic < best.score) {
+					// nodes are ordered by decreasing IC, no better match follows
+					return best;
+				}
+				if (ic > best.score) {
+					best = sos.new ScoreAttributesPair(ic, nodeClasses[k]);
+				}
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * @param i
+	 * @param j
+	 * @return BMA, see {@link SimpleOwlSim#getSimilarityBestMatchAverageAsym(OWLNamedIndividual, OWLNamedIndividual)}
+	 */
+	public ScoreAttributesPair getSimilarityBestMatchAverageAsym(OWLNamedIndividual i, OWLNamedIndividual j) {
+		int[] ais = elementAttributes[getElementIndex(i)];
+		int[] ajs = elementAttributes[getElementIndex(j)];
+		LCSTable table = sos.getLoadedLowestCommonSubsumerTable();
+		ScoreAttributesPair result = sos.new ScoreAttributesPair(0.0);
+		double total = 0.0;
+		int n = 0;
+		int hits = 0;
+		for (int ai : ais) {
+			long[] a = attributeBits.get(ai);
+			double bestScore = 0.0;
+			Set<OWLClass> bestAtts = new HashSet<OWLClass>();
+			for (int aj : ajs) {
+				int k = -1;
+				if (table != null) {
+					k = getTableNode(ai, aj, table);
+					if (k >= 0)
+						hits++;
+				}
+				if (k < 0)
+					k = firstCommonBit(a, attributeBits.get(aj));
+				double score;
+				OWLClass lcs;
+				if (k < 0) {
+					score = 0.0;
+					lcs = sos.getOWLThing();
+				}
+				else {
+					score = nodeIC[k];
+					lcs = nodeClasses[k];
+				}
+				if (Math.abs(score - bestScore) < 0.001) {
+					bestAtts.add(lcs);
+				}
+				if (score > bestScore) {
+					bestScore = score;
+					bestAtts.clear();
+					bestAtts.add(lcs);
+				}
+			}
+			for (OWLClass c : bestAtts) {
+				result.addAttributeClass(c);
+			}
+			total += bestScore;
+			n++;
+		}
+		if (hits > 0)
+			lcsTableHits.addAndGet(hits);
+		result.score = total/n;
+		return result;
+	}
+}
@@ -0,0 +1,203 @@
+package owltools.sim;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLIndividual;
+import org.semanticweb.owlapi.model.OWLNamedObject;
+import org.semanticweb.owlapi.model.OWLObject;
+
+import owltools.graph.OWLGraphEdge;
+import owltools.graph.OWLGraphWrapper;
+import owltools.io.BinaryGraphClosureFormat;
+
+/**
+ * Frequencies and corpus size for the information content calculated by {@link SimEngine}.
+ * <br>
+ * {@link #compute(SimEngine)} visits the closure of each individual once, and sets the
+ * bit of the individual for each of its ancestors. The frequency of an object is the number
+ * of bits set, i.e. the number of distinct individuals below it. This gives the same values
+ * as {@link SimEngine#getFrequency(OWLObject)} and {@link SimEngine#getCorpusSize()}, for all
+ * objects at once.
+ * <br>
+ * A table can be saved to a tab separated file, with a key made from the checksum of the
+ * ontologies (see {@link BinaryGraphClosureFormat#computeChecksum(OWLGraphWrapper)}) and the
+ * comparison settings of the engine. Only named objects are saved; the frequency of class
+ * expressions is not known for a table read from a file.
+ */
+public class InformationContentTable {
+
+	private static Logger LOG = Logger.getLogger(InformationContentTable.class);
+
+	static final String HEADER = "# owltools information content table";
+
+	private final String key;
+	private final int corpusSize;
+	private final Map<OWLObject, Integer> frequencies;
+	// true if frequencies contains every object with a non-zero frequency
+	private final boolean isComplete;
+
+	InformationContentTable(String key, int corpusSize, Map<OWLObject, Integer> frequencies, boolean isComplete) {
+		this.key = key;
+		this.corpusSize = corpusSize;
+		this.frequencies = frequencies;
+		this.isComplete = isComplete;
+	}
+
+	/**
+	 * @param se
+	 * @return table for the graph and comparison settings of se
+	 */
+	public static InformationContentTable compute(SimEngine se) {
+		long t1 = System.currentTimeMillis();
+		OWLGraphWrapper g = se.getGraph();
+		List<OWLObject> individuals = new ArrayList<OWLObject>();
+		for (OWLObject x : g.getAllOWLObjects()) {
+			if (x instanceof OWLIndividual) {
+				individuals.add(x);
+			}
+		}
+		int corpusSize = 0;
+		Map<OWLObject, BitSet> bits = new HashMap<OWLObject, BitSet>();
+		for (int i = 0; i < individuals.size(); i++) {
+			OWLObject x = individuals.get(i);
+			// exclude individuals that have no attributes from corpus, see SimEngine.getCorpusSize
+			if (!se.getAttributesForWithRedundant(x).isEmpty()) {
+				corpusSize++;
+			}
+			for (OWLGraphEdge e : g.getOutgoingEdgesClosureView(x)) {
+				OWLObject t = e.getTarget();
+				BitSet b = bits.get(t);
+				if (b == null) {
+					b = new BitSet();
+					bits.put(t, b);
+				}
+				b.set(i);
+			}
+		}
+		Map<OWLObject, Integer> frequencies = new HashMap<OWLObject, Integer>();
+		for (Map.Entry<OWLObject, BitSet> e : bits.entrySet()) {
+			frequencies.put(e.getKey(), e.getValue().cardinality());
+		}
+		LOG.info("IC table: individuals="+individuals.size()+" corpus size="+corpusSize+
+				" objects="+frequencies.size()+" time="+(System.currentTimeMillis()-t1)+"ms");
+		return new InformationContentTable(createKey(se), corpusSize, frequencies, true);
+	}
+
+	/**
+	 * @param se
+	 * @return key identifying the ontologies and comparison settings of se
+	 */
+	static String createKey(SimEngine se) {
+		return "checksum="+Long.toHexString(BinaryGraphClosureFormat.computeChecksum(se.getGraph()))+
+				" comparisonProperty="+(se.comparisonProperty == null ? "-" : se.comparisonProperty.getIRI())+
+				" comparisonClass="+(se.comparisonClass == null ? "-" : se.comparisonClass.getIRI());
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	public int getCorpusSize() {
+		return corpusSize;
+	}
+
+	/**
+	 * @param obj
+	 * @return number of individuals below obj, or null if not known
+	 */
+	public Integer getFrequency(OWLObject obj) {
+		Integer freq = frequencies.get(obj);
+		if (freq == null && (isComplete || obj instanceof OWLNamedObject)) {
+			return 0;
+		}
+		return freq;
+	}
+
+	/**
+	 * @return number of objects with a non-zero frequency
+	 */
+	public int size() {
+		return frequencies.size();
+	}
+
+	/**
+	 * @param file
+	 * @throws IOException
+	 */
+	public void save(File file) throws IOException {
+		Writer w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+		try {
+			w.write(HEADER+"\n");
+			w.write("key\t"+key+"\n");
+			w.write("corpusSize\t"+corpusSize+"\n");
+			for (Map.Entry<OWLObject, Integer> e : frequencies.entrySet()) {
+				if (e.getKey() instanceof OWLNamedObject) {
+					w.write(((OWLNamedObject) e.getKey()).getIRI()+"\t"+e.getValue()+"\n");
+				}
+			}
+		}
+		finally {
+			w.close();
+		}
+	}
+
+	/**
+	 * @param file
+	 * @param se
+	 * @return table
+	 * @throws IOException if the file is not an IC table, or was saved for other ontologies or settings
+	 */
+	public static InformationContentTable load(File file, SimEngine se) throws IOException {
+		OWLGraphWrapper g = se.getGraph();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+		try {
+			if (!HEADER.equals(reader.readLine())) {
+				throw new IOException("Not an information content table: "+file);
+			}
+			String key = getValue(reader.readLine(), "key", file);
+			String expectedKey = createKey(se);
+			if (!expectedKey.equals(key)) {
+				throw new IOException("Information content table "+file+" is stale: '"+key+"', expected '"+expectedKey+"'");
+			}
+			int corpusSize = Integer.parseInt(getValue(reader.readLine(), "corpusSize", file));
+			Map<OWLObject, Integer> frequencies = new HashMap<OWLObject, Integer>();
+			String line;
+			while ((line = reader.readLine()) != null) {
+				int tab = line.lastIndexOf('\t');
+				if (tab < 0)
+					continue;
+				OWLObject obj = g.getOWLObject(IRI.create(line.substring(0, tab)));
+				if (obj != null) {
+					frequencies.put(obj, Integer.valueOf(line.substring(tab+1)));
+				}
+			}
+			LOG.info("Loaded IC table "+file+": objects="+frequencies.size());
+			return new InformationContentTable(key, corpusSize, frequencies, false);
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	private static String getValue(String line, String name, File file) throws IOException {
+		if (line == null || !line.startsWith(name+"\t")) {
+			throw new IOException("Missing "+name+" in information content table: "+file);
+		}
+		return line.substring(name.length()+1);
+	}
+}
@@ -8,9 +8,15 @@ import org.semanticweb.owlapi.model.OWLNamedIndividual;
 import org.semanticweb.owlapi.model.OWLObject;
 
 import owltools.util.BloomFilter;
+import owltools.util.FastBloomFilter;
 
 public class JaccardBloomSimilarity extends Similarity {
 
+	/**
+	 * if true, use {@link FastBloomFilter}, otherwise the digest based {@link BloomFilter}
+	 */
+	public boolean isUseFastBloomFilter = true;
+
 	public JaccardBloomSimilarity() {
 		super();
 		minScore = 0.2; // default
@@ -21,6 +27,13 @@ public class JaccardBloomSimilarity extends Similarity {
 	public void calculate(SimEngine simEngine, OWLObject a, OWLObject b) {
 		this.simEngine = simEngine;
 		Set<OWLObject> ancs = simEngine.getGraph().getAncestorsReflexive(a);
+		if (isUseFastBloomFilter) {
+			FastBloomFilter<OWLObject> bloomFilter = new FastBloomFilter<OWLObject>(0.05, ancs.size());
+			bloomFilter.addAll(ancs);
+			Set<OWLObject> cu = simEngine.getGraph().getAncestorsReflexive(b);
+			setScore( ((double)bloomFilter.countContained(cu)) / ancs.size());
+			return;
+		}
 		BloomFilter bloomFilter = new BloomFilter<OWLObject>(0.05, ancs.size());
 		bloomFilter.addAll(ancs);
 
@@ -0,0 +1,173 @@
+package owltools.sim;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLClassExpression;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLOntology;
+
+/**
+ * Table of lowest common subsumers for pairs of named classes.
+ * The table is symmetric, and can be saved to and loaded from a binary file.
+ * <br>
+ * Layout, all numbers big-endian:
+ * <pre>
+ * int    MAGIC
+ * int    VERSION
+ * int    number of IRIs, followed by each IRI in modified UTF-8 (see {@link DataOutputStream#writeUTF(String)})
+ * int    number of pairs, followed by each pair as int a, int b, int lcs (indexes into the IRI table)
+ * </pre>
+ *
+ * @see SimpleOwlSim#getLowestCommonSubsumerTable()
+ * @see SimpleOwlSim#setLowestCommonSubsumerTable(LCSTable)
+ */
+public class LCSTable {
+
+	private static Logger LOG = Logger.getLogger(LCSTable.class);
+
+	public static final int MAGIC = 0x4C435354; // "LCST"
+	public static final int VERSION = 1;
+
+	private final Map<OWLClassExpressionPair, OWLClass> lcsMap = new HashMap<OWLClassExpressionPair, OWLClass>();
+
+	/**
+	 * @param a
+	 * @param b
+	 * @param lcs
+	 */
+	public void put(OWLClass a, OWLClass b, OWLClass lcs) {
+		lcsMap.put(createPair(a, b), lcs);
+	}
+
+	/**
+	 * @param a
+	 * @param b
+	 * @return LCS of a and b, or null if not in the table
+	 */
+	public OWLClass get(OWLClassExpression a, OWLClassExpression b) {
+		if (a.isAnonymous() || b.isAnonymous())
+			return null;
+		return lcsMap.get(createPair((OWLClass) a, (OWLClass) b));
+	}
+
+	private static OWLClassExpressionPair createPair(OWLClass a, OWLClass b) {
+		if (a.compareTo(b) > 0)
+			return new OWLClassExpressionPair(b, a);
+		return new OWLClassExpressionPair(a, b);
+	}
+
+	/**
+	 * @return number of pairs
+	 */
+	public int size() {
+		return lcsMap.size();
+	}
+
+	/**
+	 * @param file
+	 * @throws IOException
+	 */
+	public void save(File file) throws IOException {
+		Map<IRI, Integer> iriIndex = new HashMap<IRI, Integer>();
+		List<IRI> iris = new ArrayList<IRI>();
+		int[] records = new int[lcsMap.size() * 3];
+		int r = 0;
+		for (Map.Entry<OWLClassExpressionPair, OWLClass> e : lcsMap.entrySet()) {
+			records[r++] = getIndex(((OWLClass) e.getKey().c1).getIRI(), iriIndex, iris);
+			records[r++] = getIndex(((OWLClass) e.getKey().c2).getIRI(), iriIndex, iris);
+			records[r++] = getIndex(e.getValue().getIRI(), iriIndex, iris);
+		}
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(iris.size());
+			for (IRI iri : iris) {
+				out.writeUTF(iri.toString());
+			}
+			out.writeInt(lcsMap.size());
+			for (int v : records) {
+				out.writeInt(v);
+			}
+		}
+		finally {
+			out.close();
+		}
+		LOG.info("Saved LCS table "+file+": pairs="+lcsMap.size()+" classes="+iris.size());
+	}
+
+	private static int getIndex(IRI iri, Map<IRI, Integer> iriIndex, List<IRI> iris) {
+		Integer i = iriIndex.get(iri);
+		if (i == null) {
+			i = iris.size();
+			iris.add(iri);
+			iriIndex.put(iri, i);
+		}
+		return i;
+	}
+
+	/**
+	 * Pairs with a class that is not declared in the ontology, or its imports, are skipped.
+	 *
+	 * @param file
+	 * @param ontology
+	 * @return table
+	 * @throws IOException
+	 */
+	public static LCSTable load(File file, OWLOntology ontology) throws IOException {
+		OWLDataFactory df = ontology.getOWLOntologyManager().getOWLDataFactory();
+		LCSTable table = new LCSTable();
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if (in.readInt() != MAGIC) {
+				throw new IOException("Not an LCS table: "+file);
+			}
+			int version = in.readInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported LCS table version "+version+": "+file);
+			}
+			int numIRIs = in.readInt();
+			OWLClass[] classes = new OWLClass[numIRIs];
+			for (int i = 0; i < numIRIs; i++) {
+				IRI iri = IRI.create(in.readUTF());
+				if (ontology.containsClassInSignature(iri, true)) {
+					classes[i] = df.getOWLClass(iri);
+				}
+			}
+			int numPairs = in.readInt();
+			int skipped = 0;
+			for (int p = 0; p < numPairs; p++) {
+				OWLClass a = classes[in.readInt()];
+				OWLClass b = classes[in.readInt()];
+				OWLClass lcs = classes[in.readInt()];
+				if (a == null || b == null || lcs == null) {
+					skipped++;
+					continue;
+				}
+				table.put(a, b, lcs);
+			}
+			if (skipped > 0) {
+				LOG.warn("Skipped "+skipped+" pairs with classes that are not in the ontology: "+file);
+			}
+		}
+		finally {
+			in.close();
+		}
+		LOG.info("Loaded LCS table "+file+": pairs="+table.size());
+		return table;
+	}
+}
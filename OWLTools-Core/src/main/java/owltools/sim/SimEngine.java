@@ -1,5 +1,7 @@
 package owltools.sim;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -212,7 +214,7 @@ public class SimEngine {
 	}
 
 	// does not filter redundant
-	private Set<OWLObject> getAttributesForWithRedundant(OWLObject x) {
+	Set<OWLObject> getAttributesForWithRedundant(OWLObject x) {
 		OWLGraphWrapper g = getGraph();
 		Set<OWLObject> ancs = new HashSet<OWLObject>();
 		if (comparisonClass != null) {
@@ -266,9 +268,69 @@ public class SimEngine {
 	// -------------------------------------
 
 	private Integer corpusSize = null;
+	private InformationContentTable informationContentTable = null;
+	private String informationContentTableFile = null;
+
+	/**
+	 * Computes the frequency of all objects in one pass, see {@link InformationContentTable}.
+	 * Call this after setting the comparison property or class.
+	 * 
+	 * @return table used for the corpus size and frequencies
+	 */
+	public InformationContentTable computeInformationContentTable() {
+		setInformationContentTable(InformationContentTable.compute(this));
+		return informationContentTable;
+	}
+
+	public void setInformationContentTable(InformationContentTable table) {
+		informationContentTable = table;
+		corpusSize = table == null ? null : table.getCorpusSize();
+		cacheObjectIC.clear();
+		nonSignificantObjectSet = null;
+	}
+
+	/**
+	 * @return table, loaded or computed on first use if a file is set, or null
+	 * @see #setInformationContentTableFile(String)
+	 */
+	public InformationContentTable getInformationContentTable() {
+		if (informationContentTable == null && informationContentTableFile != null) {
+			File f = new File(informationContentTableFile);
+			if (f.exists()) {
+				try {
+					setInformationContentTable(InformationContentTable.load(f, this));
+				} catch (IOException e) {
+					LOG.warn("Recomputing information content: "+e.getMessage());
+				}
+			}
+			if (informationContentTable == null) {
+				computeInformationContentTable();
+				try {
+					informationContentTable.save(f);
+				} catch (IOException e) {
+					LOG.error("Could not save information content table to "+f, e);
+				}
+			}
+		}
+		return informationContentTable;
+	}
+
+	/**
+	 * The table in the file is used if it matches the ontologies and comparison settings,
+	 * otherwise it is computed and saved, when the information content is first needed.
+	 * 
+	 * @param file location of an information content table, or null
+	 */
+	public void setInformationContentTableFile(String file) {
+		informationContentTableFile = file;
+		setInformationContentTable(null);
+	}
+
 	public int getCorpusSize() {
 		if (corpusSize != null)
 			return corpusSize;
+		if (getInformationContentTable() != null)
+			return corpusSize;
 		// TODO - option for individuals; for now this is hardcoded
 		int n = 0;
 		LOG.info("calculating corpus size:");
@@ -289,6 +351,12 @@ public class SimEngine {
 	}
 
 	public int getFrequency(OWLObject obj) {
+		InformationContentTable table = getInformationContentTable();
+		if (table != null) {
+			Integer freq = table.getFrequency(obj);
+			if (freq != null)
+				return freq;
+		}
 		// TODO - option for individuals; for now this is hardcoded
 		int n = 0;
 		for (OWLObject x : graph.getDescendants(obj)) {
@@ -342,7 +410,8 @@ public class SimEngine {
 		Double ic = null;
 		int freq = getFrequency(obj);
 		if (freq > 0) {
-			LOG.info("freq of "+obj+" is: "+freq);
+			if (informationContentTable == null)
+				LOG.info("freq of "+obj+" is: "+freq);
 			ic = -Math.log(((double) (freq) / getCorpusSize())) / Math.log(2);
 		}
 		cacheObjectIC.put(obj, ic);
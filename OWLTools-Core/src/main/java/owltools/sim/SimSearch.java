@@ -1,14 +1,9 @@
 package owltools.sim;
 
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
-import java.util.SortedMap;
-import java.util.TreeMap;
 
 import org.apache.log4j.Logger;
 import org.semanticweb.owlapi.model.OWLObject;
@@ -32,6 +27,7 @@ public class SimSearch {
 	protected int maxHits = 300;
 	protected Set<OWLObject> candidates;
 	protected Reporter reporter;
+	protected SimSearchIndex index;
 	
 
 	public SimSearch(SimEngine simEngine) {
@@ -51,94 +47,53 @@ public class SimSearch {
 
 	/**
 	 * Given a query object (e.g. organism, disorder, gene), find candidate hit objects based
-	 * on simple attribute overlap
+	 * on attribute overlap, weighted by information content; see {@link SimSearchIndex}.
+	 * 
+	 * Only significant attributes of the query are compared, where non-significant attributes are:
+	 * (1) those explicitly designated as such (see {@link SimEngine#isExcludedFromAnalysis})
+	 * (2) those with IC equal to or below minIC
 	 * 
 	 * @param queryObj
-	 * @return
+	 * @return at most maxHits candidates, best first
 	 */
 	public List<OWLObject> search(OWLObject queryObj) {
 		List<OWLObject> hits = new ArrayList<OWLObject>(maxHits);
-		System.out.println("gettings atts for "+queryObj+" -- "+simEngine.comparisonProperty);
+		LOG.info("gettings atts for "+queryObj+" -- "+simEngine.comparisonProperty);
 		Set<OWLObject> atts = simEngine.getAttributeClosureFor(queryObj);
-		System.out.println("all atts: "+atts.size());
+		LOG.info("all atts: "+atts.size());
 		if (atts.size() == 0)
 			return hits;
-		
-		// only compare using significant atts;
-		// we don't do the same test on candidates as these will be removed by the
-		// intersection operation. they will have a small effect on the score, as
-		// we don't divide by the union, but instead the sum of sizes
-		atts = filterNonSignificantAttributes(atts);
-		System.out.println("filtered atts: "+atts.size());
-
-		//bloomFilter = new BloomFilter<OWLObject>(0.05, atts.size());
-		//bloomFilter.addAll(atts);
-				
-		SortedMap<Integer,Set<OWLObject>> scoreCandidateMap = new TreeMap<Integer,Set<OWLObject>>();
-		
-		for (OWLObject candidate : getCandidates()) {
-			if (candidate.equals(queryObj))
-				continue;
-			Set<OWLObject> iAtts = simEngine.getAttributeClosureFor(candidate);
-			//Set<OWLObject> iAtts = simEngine.getGraph().getAncestors(candidate);
-
-			if (iAtts.size() == 0)
-				continue;
-			int cAttsSize = iAtts.size();
-	
-			iAtts.retainAll(atts);
-			//Collection<OWLObject> iAtts = bloomFilter.intersection(cAtts);
-			
-			// simJ, one-sided, scaled by 1000
-			// negate to ensure largest first
-			//Integer score = - (iAtts.size() * 1000 / cAttsSize);
-			
-			// this biases us towards genes with large numbers of annotations,
-			// but it is better at finding the models that share all features
-			Integer score = - iAtts.size();
-			if (!scoreCandidateMap.containsKey(score)) 
-				scoreCandidateMap.put(score, new HashSet<OWLObject>());
-			scoreCandidateMap.get(score).add(candidate);
-			reporter.report(this,"query_candidate_overlap_total",queryObj,candidate,iAtts.size(),cAttsSize);
-		}
-		
+
+		long t1 = System.currentTimeMillis();
+		List<SimSearchIndex.Hit> indexHits = getIndex().search(atts, minIC, maxHits, queryObj);
+		LOG.info("hits: "+indexHits.size()+" time="+(System.currentTimeMillis()-t1)+"ms");
+
 		int n = 0;
-		for (Set<OWLObject> cs : scoreCandidateMap.values()) {
-			n += cs.size();
-			hits.addAll(cs);
-		}
-		
-		n = 0;
-		for (OWLObject hit : hits) {
+		for (SimSearchIndex.Hit hit : indexHits) {
 			n++;
-			reporter.report(this,"query_hit_rank_threshold",queryObj,hit,n,maxHits);
+			hits.add(hit.getCandidate());
+			if (reporter != null) {
+				reporter.report(this,"query_candidate_overlap_total",queryObj,hit.getCandidate(),
+						hit.getOverlap(),hit.getNumAttributes());
+				reporter.report(this,"query_hit_rank_threshold",queryObj,hit.getCandidate(),n,maxHits);
+			}
 		}
-		if (hits.size() > maxHits)
-			hits = hits.subList(0, maxHits);
-		
-
-
 		return hits;
 	}
-	
 
 	/**
-	 * Return the subset of attributes that are significant, where non-significant attributes are:
-	 * (1) those explicitly designated as such (see {@link SimEngine.isExcludedFromAnalysis})
-	 * (2) those with IC equal to or below minIC
-	 * @param atts
-	 * @return
+	 * The index is built from the candidates on first use, and kept until the
+	 * candidates are replaced with {@link #setCandidates(Set)}.
+	 * Use {@link SimSearchIndex#addCandidate(OWLObject)} and
+	 * {@link SimSearchIndex#removeCandidate(OWLObject)} for incremental changes.
+	 * 
+	 * @return index of the candidates
 	 */
-	private Set<OWLObject> filterNonSignificantAttributes(Set<OWLObject> atts) {
-		Set<OWLObject> fAtts = new HashSet<OWLObject>();
-		for (OWLObject att : atts) {
-			if (simEngine.isExcludedFromAnalysis(att))
-				continue;
-			Double ic = simEngine.getInformationContent(att);
-			if (ic != null && ic > minIC )
-				fAtts.add(att);
+	public SimSearchIndex getIndex() {
+		if (index == null) {
+			index = new SimSearchIndex(simEngine, getCandidates());
 		}
-		return fAtts;
+		return index;
 	}
 
 	private Set<OWLObject> getCandidates() {
@@ -151,6 +106,7 @@ public class SimSearch {
 	
 	public void setCandidates(Set<OWLObject> candidates) {
 		this.candidates = candidates;
+		this.index = null;
 	}
 
 
@@ -160,6 +116,7 @@ public class SimSearch {
 
 	public void setSimEngine(SimEngine simEngine) {
 		this.simEngine = simEngine;
+		this.index = null;
 	}
 
 	public int getMaxHits() {
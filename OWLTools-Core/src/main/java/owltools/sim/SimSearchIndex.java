@@ -0,0 +1,349 @@
+package owltools.sim;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.log4j.Logger;
+import org.semanticweb.owlapi.model.OWLObject;
+
+/**
+ * Inverted index from attributes to candidates, for {@link SimSearch}.
+ * <br>
+ * For each candidate the attribute closure (see {@link SimEngine#getAttributeClosureFor(OWLObject)})
+ * is computed once, when the candidate is added. A query only visits the posting lists
+ * of its own attributes, and the best hits are kept in a bounded heap.
+ * <br>
+ * The score of a candidate is the sum of the information content of the attributes
+ * it shares with the query. Ties are broken by the number of shared attributes, then
+ * by the order in which candidates were added.
+ * <br>
+ * Candidates can be added and removed at any time. Searches can run concurrently,
+ * adding and removing candidates blocks searches. Calls to the {@link SimEngine}
+ * are synchronized on the engine.
+ */
+public class SimSearchIndex {
+
+	private static Logger LOG = Logger.getLogger(SimSearchIndex.class);
+
+	private final SimEngine simEngine;
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	// candidate id -> candidate, null if removed
+	private final List<OWLObject> candidates = new ArrayList<OWLObject>();
+	// candidate id -> attribute ids
+	private final List<int[]> candidateAttributes = new ArrayList<int[]>();
+	private final Map<OWLObject, Integer> candidateIds = new HashMap<OWLObject, Integer>();
+	private final List<Integer> freeIds = new ArrayList<Integer>();
+	// candidate id -> order in which it was added
+	private final List<Long> candidateSeq = new ArrayList<Long>();
+	private long seq = 0;
+
+	private final Map<OWLObject, Integer> attributeIds = new HashMap<OWLObject, Integer>();
+	private final List<PostingList> postings = new ArrayList<PostingList>();
+
+	/**
+	 * A candidate with its score for a query.
+	 */
+	public static class Hit {
+		private final OWLObject candidate;
+		private final double score;
+		private final int overlap;
+		private final int numAttributes;
+		private final long seq;
+
+		Hit(OWLObject candidate, double score, int overlap, int numAttributes, long seq) {
+			this.candidate = candidate;
+			this.score = score;
+			this.overlap = overlap;
+			this.numAttributes = numAttributes;
+			this.seq = seq;
+		}
+
+		public OWLObject getCandidate() {
+			return candidate;
+		}
+
+		/**
+		 * @return sum of the IC of the attributes shared with the query
+		 */
+		public double getScore() {
+			return score;
+		}
+
+		/**
+		 * @return number of attributes shared with the query
+		 */
+		public int getOverlap() {
+			return overlap;
+		}
+
+		/**
+		 * @return size of the attribute closure of the candidate
+		 */
+		public int getNumAttributes() {
+			return numAttributes;
+		}
+
+		@Override
+		public String toString() {
+			return candidate+" score="+score+" overlap="+overlap;
+		}
+	}
+
+	private static int compareHits(Hit a, Hit b) {
+		int c = Double.compare(a.score, b.score);
+		if (c == 0)
+			c = a.overlap - b.overlap;
+		if (c == 0)
+			c = a.seq < b.seq ? 1 : (a.seq > b.seq ? -1 : 0);
+		return c;
+	}
+
+	/**
+	 * Growable array of candidate ids.
+	 */
+	private static class PostingList {
+		int[] ids = new int[4];
+		int size = 0;
+
+		void add(int id) {
+			if (size == ids.length) {
+				int[] a = new int[size * 2];
+				System.arraycopy(ids, 0, a, 0, size);
+				ids = a;
+			}
+			ids[size++] = id;
+		}
+
+		void remove(int id) {
+			for (int k = 0; k < size; k++) {
+				if (ids[k] == id) {
+					ids[k] = ids[--size];
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param simEngine used for attribute closures and information content
+	 */
+	public SimSearchIndex(SimEngine simEngine) {
+		this.simEngine = simEngine;
+	}
+
+	/**
+	 * @param simEngine
+	 * @param candidates initial candidates
+	 */
+	public SimSearchIndex(SimEngine simEngine, Collection<? extends OWLObject> candidates) {
+		this(simEngine);
+		long t1 = System.currentTimeMillis();
+		addCandidates(candidates);
+		LOG.info("Indexed "+size()+" candidates, attributes="+attributeIds.size()+
+				" time="+(System.currentTimeMillis()-t1)+"ms");
+	}
+
+	/**
+	 * @return number of candidates
+	 */
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return candidateIds.size();
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public boolean containsCandidate(OWLObject candidate) {
+		lock.readLock().lock();
+		try {
+			return candidateIds.containsKey(candidate);
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public void addCandidates(Collection<? extends OWLObject> cs) {
+		for (OWLObject c : cs) {
+			addCandidate(c);
+		}
+	}
+
+	/**
+	 * Adds or re-indexes a candidate.
+	 *
+	 * @param candidate
+	 */
+	public void addCandidate(OWLObject candidate) {
+		// compute outside the lock, this may be slow
+		Set<OWLObject> atts;
+		synchronized (simEngine) {
+			atts = simEngine.getAttributeClosureFor(candidate);
+		}
+		lock.writeLock().lock();
+		try {
+			removeCandidateInternal(candidate);
+			int id;
+			if (freeIds.isEmpty()) {
+				id = candidates.size();
+				candidates.add(candidate);
+				candidateAttributes.add(null);
+				candidateSeq.add(seq++);
+			}
+			else {
+				id = freeIds.remove(freeIds.size()-1);
+				candidates.set(id, candidate);
+				candidateSeq.set(id, seq++);
+			}
+			int[] aids = new int[atts.size()];
+			int k = 0;
+			for (OWLObject att : atts) {
+				Integer aid = attributeIds.get(att);
+				if (aid == null) {
+					aid = postings.size();
+					postings.add(new PostingList());
+					attributeIds.put(att, aid);
+				}
+				postings.get(aid).add(id);
+				aids[k++] = aid;
+			}
+			candidateAttributes.set(id, aids);
+			candidateIds.put(candidate, id);
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @param candidate
+	 * @return true if the candidate was in the index
+	 */
+	public boolean removeCandidate(OWLObject candidate) {
+		lock.writeLock().lock();
+		try {
+			return removeCandidateInternal(candidate);
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private boolean removeCandidateInternal(OWLObject candidate) {
+		Integer id = candidateIds.remove(candidate);
+		if (id == null)
+			return false;
+		for (int aid : candidateAttributes.get(id)) {
+			postings.get(aid).remove(id);
+		}
+		candidates.set(id, null);
+		candidateAttributes.set(id, null);
+		freeIds.add(id);
+		return true;
+	}
+
+	/**
+	 * @param queryObj
+	 * @param minIC attributes with IC equal to or below this value are ignored
+	 * @param maxHits
+	 * @return best hits, highest score first; the query itself is not included
+	 */
+	public List<Hit> search(OWLObject queryObj, double minIC, int maxHits) {
+		Set<OWLObject> atts;
+		synchronized (simEngine) {
+			atts = simEngine.getAttributeClosureFor(queryObj);
+		}
+		return search(atts, minIC, maxHits, queryObj);
+	}
+
+	/**
+	 * @param queryAtts attributes of the query, including inferred attributes
+	 * @param minIC attributes with IC equal to or below this value are ignored
+	 * @param maxHits
+	 * @param exclude candidate that is not returned, may be null
+	 * @return best hits, highest score first
+	 */
+	public List<Hit> search(Set<OWLObject> queryAtts, double minIC, int maxHits, OWLObject exclude) {
+		if (maxHits <= 0)
+			return Collections.emptyList();
+		// IC is cached in the sim engine, compute it outside the lock
+		Map<OWLObject, Double> weights = new HashMap<OWLObject, Double>();
+		synchronized (simEngine) {
+			for (OWLObject att : queryAtts) {
+				if (simEngine.isExcludedFromAnalysis(att))
+					continue;
+				Double ic = simEngine.getInformationContent(att);
+				if (ic != null && ic > minIC)
+					weights.put(att, ic);
+			}
+		}
+		lock.readLock().lock();
+		try {
+			int n = candidates.size();
+			double[] scores = new double[n];
+			int[] overlaps = new int[n];
+			int[] touched = new int[n];
+			int numTouched = 0;
+			for (Map.Entry<OWLObject, Double> e : weights.entrySet()) {
+				Integer aid = attributeIds.get(e.getKey());
+				if (aid == null)
+					continue;
+				double w = e.getValue();
+				PostingList pl = postings.get(aid);
+				for (int k = 0; k < pl.size; k++) {
+					int id = pl.ids[k];
+					if (overlaps[id] == 0)
+						touched[numTouched++] = id;
+					overlaps[id]++;
+					scores[id] += w;
+				}
+			}
+
+			// min-heap of the best hits so far
+			PriorityQueue<Hit> heap = new PriorityQueue<Hit>(Math.min(maxHits, Math.max(1, numTouched)) + 1,
+					new Comparator<Hit>() {
+
+						@Override
+						public int compare(Hit a, Hit b) {
+							return compareHits(a, b);
+						}
+					});
+			for (int k = 0; k < numTouched; k++) {
+				int id = touched[k];
+				OWLObject c = candidates.get(id);
+				if (c.equals(exclude))
+					continue;
+				Hit hit = new Hit(c, scores[id], overlaps[id], candidateAttributes.get(id).length, candidateSeq.get(id));
+				if (heap.size() < maxHits) {
+					heap.add(hit);
+				}
+				else if (compareHits(hit, heap.peek()) > 0) {
+					heap.poll();
+					heap.add(hit);
+				}
+			}
+			List<Hit> hits = new ArrayList<Hit>(heap.size());
+			while (!heap.isEmpty()) {
+				hits.add(heap.poll());
+			}
+			Collections.reverse(hits);
+			return hits;
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+}
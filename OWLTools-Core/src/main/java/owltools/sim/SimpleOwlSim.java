@@ -3,6 +3,7 @@ package owltools.sim;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -61,10 +62,12 @@ public class SimpleOwlSim {
 	private Map<OWLNamedIndividual,Set<Node<OWLClass>>> elementToInferredAttributesMap;
 	private Map<OWLClass,Set<OWLNamedIndividual>> attributeToElementsMap;
 	private Map<OWLClassExpressionPair, ScoreAttributePair> lcsICcache;
+	private LCSTable lcsTable = null;
 	private Map<OWLClassExpressionPair, Set<Node<OWLClass>>> csCache;
 	private Map<OWLClass,Double> icCache;
 	Map<OWLClass, Integer> attributeElementCount = null;
 	private Map<OWLClassExpression,OWLClass> lcsExpressionToClass = new HashMap<OWLClassExpression,OWLClass>();
+	private AttributeBitSetIndex attributeIndex = null;
 
 	private Properties simProperties;
 
@@ -377,6 +380,8 @@ public class SimpleOwlSim {
 	 * @return SimJ
 	 */
 	public float getElementJaccardSimilarity(OWLNamedIndividual i, OWLNamedIndividual j) {
+		if (isIndexed(i, j))
+			return attributeIndex.getElementJaccardSimilarity(i, j);
 		Set<Node<OWLClass>> ci = getNamedCommonSubsumers(i,j);
 		Set<Node<OWLClass>> cu = getInferredAttributes(i);
 		cu.addAll(getInferredAttributes(j));
@@ -400,6 +405,14 @@ public class SimpleOwlSim {
 		if (lcsICcache.containsKey(pair)) {
 			return lcsICcache.get(pair); // don't make a copy, assume unmodified
 		}
+		if (lcsTable != null) {
+			OWLClass lcs = lcsTable.get(a, b);
+			if (lcs != null) {
+				ScoreAttributePair sap = new ScoreAttributePair(getInformationContentForAttribute(lcs), lcs);
+				lcsICcache.put(pair, sap);
+				return sap;
+			}
+		}
 		// TODO: test whether it is more efficient to get redundant common subsumers too,
 		// then simply keep the ones with the highest.
 		// removing redundant may be better as those deeper in the hierarchy may have the same IC as a parent
@@ -435,12 +448,75 @@ public class SimpleOwlSim {
 		return sap;
 	}
 
+	/**
+	 * Use precomputed LCSs in {@link #getLowestCommonSubsumerIC(OWLClassExpression, OWLClassExpression)},
+	 * for pairs that are in the table. Pairs not in the table are computed with the reasoner.
+	 * 
+	 * @param lcsTable table of LCS classes, or null
+	 * @see #getLowestCommonSubsumerTable()
+	 */
+	public void setLowestCommonSubsumerTable(LCSTable lcsTable) {
+		this.lcsTable = lcsTable;
+		lcsICcache.clear();
+	}
+
+	/**
+	 * @return table set with {@link #setLowestCommonSubsumerTable(LCSTable)}, or null
+	 */
+	LCSTable getLoadedLowestCommonSubsumerTable() {
+		return lcsTable;
+	}
+
+	/**
+	 * @param file written by {@link LCSTable#save(File)}
+	 * @throws IOException
+	 */
+	public void loadLowestCommonSubsumerTable(String file) throws IOException {
+		setLowestCommonSubsumerTable(LCSTable.load(new File(file), sourceOntology));
+	}
+
+	/**
+	 * The LCS of each pair of named classes, as chosen by
+	 * {@link #getLowestCommonSubsumerIC(OWLClassExpression, OWLClassExpression)} so far:
+	 * the named LCS with the highest IC, and by the {@link AttributeBitSetIndex} if there is one.
+	 * With this table the same ontology gives the same scores.
+	 * 
+	 * @return table of LCS classes
+	 */
+	public LCSTable getLowestCommonSubsumerTable() {
+		LCSTable table = new LCSTable();
+		if (attributeIndex != null) {
+			attributeIndex.addLowestCommonSubsumers(table);
+		}
+		for (Map.Entry<OWLClassExpressionPair, ScoreAttributePair> e : lcsICcache.entrySet()) {
+			OWLClassExpression a = e.getKey().c1;
+			OWLClassExpression b = e.getKey().c2;
+			OWLClassExpression lcs = e.getValue().attributeClass;
+			// owl:Thing is also the fallback without any LCS, leave those to the reasoner
+			if (!a.isAnonymous() && !b.isAnonymous() && !lcs.isAnonymous() && !lcs.isOWLThing()) {
+				table.put((OWLClass) a, (OWLClass) b, (OWLClass) lcs);
+			}
+		}
+		return table;
+	}
+
+	/**
+	 * @param file
+	 * @throws IOException
+	 * @see #getLowestCommonSubsumerTable()
+	 */
+	public void saveLowestCommonSubsumerTable(String file) throws IOException {
+		getLowestCommonSubsumerTable().save(new File(file));
+	}
+
 	/**
 	 * @param i
 	 * @param j
 	 * @return MaxIC
 	 */
 	public ScoreAttributesPair getSimilarityMaxIC(OWLNamedIndividual i, OWLNamedIndividual j) {
+		if (isIndexed(i, j))
+			return attributeIndex.getSimilarityMaxIC(i, j);
 		Set<Node<OWLClass>> atts = getInferredAttributes(i);
 		atts.retainAll(getInferredAttributes(j));
 
@@ -474,6 +550,8 @@ public class SimpleOwlSim {
 	 * @return pair
 	 */
 	public ScoreAttributesPair getSimilarityBestMatchAverageAsym(OWLNamedIndividual i, OWLNamedIndividual j) {
+		if (isIndexed(i, j))
+			return attributeIndex.getSimilarityBestMatchAverageAsym(i, j);
 
 		// no cache - assume only called once for each pair
 		List<ScoreAttributesPair> bestMatches = new ArrayList<ScoreAttributesPair>();
@@ -501,6 +579,40 @@ public class SimpleOwlSim {
 		return sap;
 	}
 
+	// ----------- ----------- ----------- -----------
+	// BITSET INDEX
+	// ----------- ----------- ----------- -----------
+
+	/**
+	 * Builds an {@link AttributeBitSetIndex} for all elements. Afterwards
+	 * SimJ, MaxIC and BMA for these elements are computed from bitsets,
+	 * which is much faster for all-by-all comparisons.
+	 * 
+	 * Must be called after {@link #createElementAttributeMapFromOntology()};
+	 * the index is discarded when that method is called again.
+	 * 
+	 * @return index
+	 */
+	public AttributeBitSetIndex buildAttributeIndex() {
+		attributeIndex = new AttributeBitSetIndex(this);
+		return attributeIndex;
+	}
+
+	/**
+	 * @return index, or null if {@link #buildAttributeIndex()} has not been called
+	 */
+	public AttributeBitSetIndex getAttributeIndex() {
+		return attributeIndex;
+	}
+
+	private boolean isIndexed(OWLNamedIndividual i, OWLNamedIndividual j) {
+		return attributeIndex != null && attributeIndex.containsElement(i) && attributeIndex.containsElement(j);
+	}
+
+	OWLClass getOWLThing() {
+		return owlDataFactory.getOWLThing();
+	}
+
 	//
 	// ENRICHMENT
 	//
@@ -691,6 +803,7 @@ public class SimpleOwlSim {
 	 */
 	// TODO - make this private & call automatically
 	public void createElementAttributeMapFromOntology() {
+		attributeIndex = null;
 		Set<OWLClass> allTypes = new HashSet<OWLClass>();
 		for (OWLNamedIndividual e : sourceOntology.getIndividualsInSignature(true)) {
 
@@ -0,0 +1,406 @@
+package owltools.sim;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+import org.apache.log4j.Logger;
+import org.semanticweb.owlapi.model.OWLNamedIndividual;
+
+/**
+ * Performs an all by all comparison of elements, split into tiles.
+ * <br>
+ * The elements are sorted and the pairs (i,j) are split into square tiles of
+ * {@link #getTileSize()} by {@link #getTileSize()} elements. Tiles are processed on
+ * a pool of worker threads, and the output of each tile is written as a whole,
+ * so lines of different tiles are never interleaved.
+ * <br>
+ * If an output directory is set, the output of each tile is written to its own file
+ * and the tile is recorded in a checkpoint file once complete. Running again with the
+ * same directory, elements and tile size only processes the missing tiles, so an
+ * interrupted run continues where it stopped. Without an output directory the tiles
+ * are written to an output stream and no checkpoint is kept.
+ * <br>
+ * For a symmetric comparison, only the pairs (i,j) with i after j in the sorted
+ * order are compared, and the tiles above the diagonal, which contain no such
+ * pair, are not scheduled at all.
+ * <br>
+ * The tiles can be split into shards, to be run by separate processes; shard i of n
+ * processes every n-th scheduled tile, starting with the i-th. Shards can share an output
+ * directory, each has its own checkpoint file.
+ * <br>
+ * The {@link PairRenderer} is called concurrently by the worker threads, it must be
+ * thread safe; see {@link SimpleOwlSim#buildAttributeIndex()}.
+ */
+public class TiledAllByAllRunner {
+
+	private static Logger LOG = Logger.getLogger(TiledAllByAllRunner.class);
+
+	static final String CHECKPOINT_HEADER = "# owlsim all by all";
+	static final String TILE_PREFIX = "tile-";
+
+	/**
+	 * Decides which pairs are compared.
+	 */
+	public interface PairFilter {
+		public boolean isComparable(OWLNamedIndividual i, OWLNamedIndividual j);
+	}
+
+	/**
+	 * Writes the result of comparing a pair, zero or more lines.
+	 */
+	public interface PairRenderer {
+		public void render(OWLNamedIndividual i, OWLNamedIndividual j, PrintStream out);
+	}
+
+	private final List<OWLNamedIndividual> elements;
+	private final PairFilter filter;
+	private final PairRenderer renderer;
+
+	private boolean symmetric = false;
+	private int tileSize = 100;
+	private int numThreads = 1;
+	private int shard = 1;
+	private int numShards = 1;
+	private File outputDir = null;
+	private PrintStream out = System.out;
+
+	/**
+	 * @param elements
+	 * @param filter if null, all pairs are compared
+	 * @param renderer
+	 */
+	public TiledAllByAllRunner(Collection<OWLNamedIndividual> elements, PairFilter filter, PairRenderer renderer) {
+		this.elements = new ArrayList<OWLNamedIndividual>(elements);
+		Collections.sort(this.elements);
+		this.filter = filter;
+		this.renderer = renderer;
+	}
+
+	public boolean isSymmetric() {
+		return symmetric;
+	}
+
+	/**
+	 * @param symmetric if true, compare each pair of elements only once,
+	 * in addition to the filter
+	 */
+	public void setSymmetric(boolean symmetric) {
+		this.symmetric = symmetric;
+	}
+
+	public int getTileSize() {
+		return tileSize;
+	}
+
+	/**
+	 * @param tileSize number of elements along each side of a tile
+	 */
+	public void setTileSize(int tileSize) {
+		this.tileSize = Math.max(1, tileSize);
+	}
+
+	public int getNumThreads() {
+		return numThreads;
+	}
+
+	public void setNumThreads(int numThreads) {
+		this.numThreads = Math.max(1, numThreads);
+	}
+
+	/**
+	 * @param shard between 1 and numShards
+	 * @param numShards
+	 */
+	public void setShard(int shard, int numShards) {
+		if (numShards < 1 || shard < 1 || shard > numShards) {
+			throw new IllegalArgumentException("Invalid shard "+shard+" of "+numShards);
+		}
+		this.shard = shard;
+		this.numShards = numShards;
+	}
+
+	public File getOutputDir() {
+		return outputDir;
+	}
+
+	/**
+	 * @param outputDir directory for tile files and the checkpoint, or null
+	 */
+	public void setOutputDir(File outputDir) {
+		this.outputDir = outputDir;
+	}
+
+	/**
+	 * @param out stream for the tiles, if there is no output directory
+	 */
+	public void setOutputStream(PrintStream out) {
+		this.out = out;
+	}
+
+	/**
+	 * @return number of tiles along each side
+	 */
+	public int getNumberOfTilesPerSide() {
+		return (elements.size() + tileSize - 1) / tileSize;
+	}
+
+	/**
+	 * @return ids of the tiles in this shard
+	 */
+	public List<Integer> getShardTiles() {
+		int n = getNumberOfTilesPerSide();
+		List<Integer> tiles = new ArrayList<Integer>();
+		int k = 0;
+		for (int t = 0; t < n * n; t++) {
+			if (symmetric && t / n < t % n) {
+				// above the diagonal
+				continue;
+			}
+			if (k++ % numShards == shard - 1) {
+				tiles.add(t);
+			}
+		}
+		return tiles;
+	}
+
+	/**
+	 * @return checkpoint file of this shard, or null if there is no output directory
+	 */
+	public File getCheckpointFile() {
+		if (outputDir == null)
+			return null;
+		return new File(outputDir, "checkpoint-"+shard+"-of-"+numShards+".txt");
+	}
+
+	/**
+	 * @param tile
+	 * @return output file of the tile, or null if there is no output directory
+	 */
+	public File getTileFile(int tile) {
+		if (outputDir == null)
+			return null;
+		return new File(outputDir, TILE_PREFIX+tile+".txt");
+	}
+
+	/*
+	 * Identifies the elements and the tiling, a checkpoint can only be resumed
+	 * by a run with the same header. The hash is over the sorted element IRIs,
+	 * so a different set of elements of the same size is detected.
+	 */
+	String getCheckpointHeader() {
+		return CHECKPOINT_HEADER+" elements="+elements.size()+" hash="+getElementsHash()+" tileSize="+tileSize
+				+(symmetric ? " symmetric" : "");
+	}
+
+	private String getElementsHash() {
+		CRC32 crc = new CRC32();
+		try {
+			for (OWLNamedIndividual e : elements) {
+				crc.update(e.getIRI().toString().getBytes("UTF-8"));
+				crc.update('\n');
+			}
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+		return Long.toHexString(crc.getValue());
+	}
+
+	/**
+	 * Reads the tiles completed by a previous run.
+	 *
+	 * @return ids of completed tiles
+	 * @throws IOException if the checkpoint was written for different elements or tile size
+	 */
+	public Set<Integer> readCheckpoint() throws IOException {
+		Set<Integer> done = new HashSet<Integer>();
+		File f = getCheckpointFile();
+		if (f == null || !f.exists())
+			return done;
+		BufferedReader reader = new BufferedReader(new FileReader(f));
+		try {
+			String header = reader.readLine();
+			if (header != null && !header.equals(getCheckpointHeader())) {
+				throw new IOException("Checkpoint "+f+" does not match this run: '"+header+
+						"', expected '"+getCheckpointHeader()+"'");
+			}
+			String line;
+			while ((line = reader.readLine()) != null) {
+				line = line.trim();
+				// a partial last line is ignored, the tile is processed again
+				if (line.length() > 0 && line.endsWith(";")) {
+					done.add(Integer.valueOf(line.substring(0, line.length()-1)));
+				}
+			}
+		}
+		finally {
+			reader.close();
+		}
+		return done;
+	}
+
+	/**
+	 * Processes all tiles of this shard, that are not recorded in the checkpoint.
+	 *
+	 * @return number of tiles processed
+	 * @throws IOException
+	 */
+	public int run() throws IOException {
+		long t1 = System.currentTimeMillis();
+		List<Integer> tiles = getShardTiles();
+		Set<Integer> done = readCheckpoint();
+		final List<Integer> todo = new ArrayList<Integer>();
+		for (Integer t : tiles) {
+			if (!done.contains(t))
+				todo.add(t);
+		}
+		LOG.info("All by all for "+elements.size()+" elements: tiles="+tiles.size()+
+				" completed="+(tiles.size()-todo.size())+" shard="+shard+"/"+numShards+" threads="+numThreads);
+		if (todo.isEmpty())
+			return 0;
+
+		final Writer checkpoint = openCheckpoint(done.isEmpty());
+		final AtomicInteger count = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		try {
+			List<Future<Void>> futures = new ArrayList<Future<Void>>();
+			for (final Integer t : todo) {
+				futures.add(executor.submit(new Callable<Void>() {
+
+					@Override
+					public Void call() throws Exception {
+						processTile(t, checkpoint);
+						int n = count.incrementAndGet();
+						if (n % 100 == 0) {
+							LOG.info("Completed "+n+" of "+todo.size()+" tiles");
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> f : futures) {
+				f.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted all by all, completed tiles: "+count.get());
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			throw new RuntimeException(cause);
+		}
+		finally {
+			executor.shutdownNow();
+			if (checkpoint != null)
+				checkpoint.close();
+		}
+		LOG.info("FINISHED All by all for "+elements.size()+" elements: tiles="+count.get()+
+				" time="+(System.currentTimeMillis()-t1)+"ms");
+		return count.get();
+	}
+
+	private Writer openCheckpoint(boolean isNew) throws IOException {
+		File f = getCheckpointFile();
+		if (f == null)
+			return null;
+		outputDir.mkdirs();
+		boolean isPartialLine = !isNew && f.length() > 0 && !endsWithNewline(f);
+		Writer w = new FileWriter(f, !isNew);
+		if (isNew) {
+			w.write(getCheckpointHeader()+"\n");
+			w.flush();
+		}
+		else if (isPartialLine) {
+			// terminate the partial line of an interrupted run
+			w.write("\n");
+			w.flush();
+		}
+		return w;
+	}
+
+	private static boolean endsWithNewline(File f) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(f, "r");
+		try {
+			raf.seek(raf.length() - 1);
+			return raf.read() == '\n';
+		}
+		finally {
+			raf.close();
+		}
+	}
+
+	private void processTile(int tile, Writer checkpoint) throws IOException {
+		int n = getNumberOfTilesPerSide();
+		int iStart = (tile / n) * tileSize;
+		int jStart = (tile % n) * tileSize;
+		int iEnd = Math.min(iStart + tileSize, elements.size());
+		int jEnd = Math.min(jStart + tileSize, elements.size());
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		PrintStream tileOut = new PrintStream(bytes);
+		for (int ii = iStart; ii < iEnd; ii++) {
+			OWLNamedIndividual i = elements.get(ii);
+			// in a diagonal tile of a symmetric comparison, only up to the diagonal
+			int jLimit = symmetric ? Math.min(jEnd, ii) : jEnd;
+			for (int jj = jStart; jj < jLimit; jj++) {
+				OWLNamedIndividual j = elements.get(jj);
+				if (filter == null || filter.isComparable(i, j)) {
+					renderer.render(i, j, tileOut);
+				}
+			}
+		}
+		tileOut.flush();
+
+		if (outputDir == null) {
+			synchronized (out) {
+				bytes.writeTo(out);
+				out.flush();
+			}
+			return;
+		}
+		// write to a temporary file first, so that a tile file is always complete
+		File file = getTileFile(tile);
+		File tmp = new File(outputDir, file.getName()+".tmp");
+		FileOutputStream fos = new FileOutputStream(tmp);
+		try {
+			bytes.writeTo(fos);
+		}
+		finally {
+			fos.close();
+		}
+		if (file.exists() && !file.delete()) {
+			throw new IOException("Could not replace "+file);
+		}
+		if (!tmp.renameTo(file)) {
+			throw new IOException("Could not rename "+tmp+" to "+file);
+		}
+		synchronized (checkpoint) {
+			checkpoint.write(tile+";\n");
+			checkpoint.flush();
+		}
+	}
+}
@@ -1,9 +1,16 @@
 package owltools.sim.preprocessor;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.semanticweb.owlapi.model.IRI;
 import org.semanticweb.owlapi.model.OWLAxiom;
@@ -27,6 +34,13 @@ public abstract class LCSEnabledSimPreProcessor extends AbstractSimPreProcessor
 	public double defaultLCSElementFrequencyThreshold = 0.25;
 	//private Map<OWLClassExpression,OWLClass> 
 
+	// only set while generating LCSs, see generateLeastCommonSubsumers
+	private Map<OWLClassExpression, Set<Node<OWLClass>>> reflexiveSubsumerCache = null;
+	private NamedLCSBits namedLCSBits = null;
+	private int numThreads = Runtime.getRuntime().availableProcessors();
+
+	// rows of named LCSs computed per thread at once, see NamedLCSBits
+	private static final int ROWS_PER_THREAD = 16;
 
 	
 	protected void generateLeastCommonSubsumersForAttributeClasses() {
@@ -38,19 +52,237 @@ public abstract class LCSEnabledSimPreProcessor extends AbstractSimPreProcessor
 
 		LOG.info("Generating LCSs en masse; leaf classes "+leafClasses.size());
 		LOG.info("Num materialized class expressions (prior) "+materializedClassExpressionMap.size());
-		for (OWLClass a : leafClasses) {
-			LOG.info("  ALL vs: "+a+" '"+getAnyLabel(a)+"'");		
-			for (OWLClass b : leafClasses) {
-				// LCS operation is symmetric, only pre-compute one way
-				if (a.compareTo(b) > 0) {
-					OWLClass lcs = getLowestCommonSubsumerClass(a, b, leafClasses);
+		// the reasoner is not flushed until all LCSs are made, so subsumers can be cached for this run
+		reflexiveSubsumerCache = new HashMap<OWLClassExpression, Set<Node<OWLClass>>>();
+		try {
+			precomputeNamedLowestCommonSubsumers(leafClasses);
+			List<OWLClass> leaves = namedLCSBits.leaves;
+			int blockSize = numThreads * ROWS_PER_THREAD;
+			for (int start = 0; start < leaves.size(); start += blockSize) {
+				int end = Math.min(leaves.size(), start + blockSize);
+				namedLCSBits.computeRows(start, end);
+				for (int ai = start; ai < end; ai++) {
+					OWLClass a = leaves.get(ai);
+					LOG.info("  ALL vs: "+a+" '"+getAnyLabel(a)+"'");		
+					// LCS operation is symmetric, only pre-compute one way;
+					// the leaves are sorted, so these are all b with a.compareTo(b) > 0
+					for (int bi = 0; bi < ai; bi++) {
+						OWLClass lcs = getLowestCommonSubsumerClass(a, leaves.get(bi), leafClasses);
+					}
 				}
 			}
 		}
+		finally {
+			reflexiveSubsumerCache = null;
+			namedLCSBits = null;
+		}
 		LOG.info("DONE all x all");		
 		LOG.info("Num materialized class expressions (post) "+materializedClassExpressionMap.size());
 	}
 
+	public int getNumThreads() {
+		return numThreads;
+	}
+
+	/**
+	 * @param numThreads number of threads for computing named LCSs
+	 */
+	public void setNumThreads(int numThreads) {
+		this.numThreads = Math.max(1, numThreads);
+	}
+
+	/**
+	 * Prepares the bitsets for the named LCSs of all pairs of leaf classes, see {@link NamedLCSBits}.
+	 * Until the end of {@link #generateLeastCommonSubsumers(Set)} pairs of leaf classes are
+	 * computed from these, without using the reasoner.
+	 * 
+	 * @param leafClasses
+	 */
+	protected void precomputeNamedLowestCommonSubsumers(Set<OWLClass> leafClasses) {
+		namedLCSBits = new NamedLCSBits(leafClasses);
+	}
+
+	/**
+	 * Named LCSs of pairs of leaf classes, see {@link #getNamedLowestCommonSubsumers(OWLClassExpression, OWLClassExpression)},
+	 * used while generating LCSs.
+	 * 
+	 * The reflexive subsumers of each leaf class, and the strict subsumers of each of those,
+	 * are fetched from the reasoner once and stored as bitsets. The common subsumers of a pair
+	 * are the intersection of the two subsumer sets, minus all strict subsumers of any common subsumer.
+	 * 
+	 * The pairs are computed without the reasoner, in blocks of rows on {@link #getNumThreads()} threads.
+	 * Only the current block is kept, so memory does not grow with the square of the number of leaf classes.
+	 */
+	private class NamedLCSBits {
+
+		final List<OWLClass> leaves;
+		final Map<OWLClass, Integer> leafIndex = new HashMap<OWLClass, Integer>();
+		final List<Node<OWLClass>> nodes = new ArrayList<Node<OWLClass>>();
+		final int numWords;
+		final long[][] leafBits;
+		final long[][] strictSubsumerBits;
+
+		// named LCSs of the rows [blockStart, blockStart + block.length), as node indexes: block[ai - blockStart][bi]
+		private int blockStart = 0;
+		private int[][][] block = new int[0][][];
+
+		NamedLCSBits(Set<OWLClass> leafClasses) {
+			long t1 = System.currentTimeMillis();
+			leaves = new ArrayList<OWLClass>(leafClasses);
+			Collections.sort(leaves);
+
+			// subsumers from the reasoner, on this thread
+			Map<Node<OWLClass>, Integer> nodeIndex = new HashMap<Node<OWLClass>, Integer>();
+			List<Set<Node<OWLClass>>> leafSubsumers = new ArrayList<Set<Node<OWLClass>>>();
+			for (OWLClass c : leaves) {
+				leafIndex.put(c, leafIndex.size());
+				Set<Node<OWLClass>> s = getNamedReflexiveSubsumers(c);
+				for (Node<OWLClass> n : s) {
+					if (!nodeIndex.containsKey(n)) {
+						nodeIndex.put(n, nodes.size());
+						nodes.add(n);
+					}
+				}
+				leafSubsumers.add(s);
+			}
+			numWords = (nodes.size() + 63) / 64;
+			leafBits = new long[leaves.size()][];
+			for (int i = 0; i < leaves.size(); i++) {
+				leafBits[i] = toBits(leafSubsumers.get(i), nodeIndex, numWords);
+			}
+			strictSubsumerBits = new long[nodes.size()][];
+			for (int k = 0; k < nodes.size(); k++) {
+				OWLClass c = nodes.get(k).getRepresentativeElement();
+				strictSubsumerBits[k] = toBits(getReasoner().getSuperClasses(c, false).getNodes(), nodeIndex, numWords);
+			}
+			LOG.info("Named LCS bitsets: leaf classes="+leaves.size()+" nodes="+nodes.size()+
+					" time="+(System.currentTimeMillis()-t1)+"ms threads="+numThreads);
+		}
+
+		/**
+		 * Computes the named LCSs of all pairs (a, b) with a in the rows [start, end) and b before a,
+		 * replacing the previous block.
+		 * 
+		 * @param start
+		 * @param end
+		 */
+		void computeRows(final int start, int end) {
+			final int[][][] rows = new int[end - start][][];
+			ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+			try {
+				List<Future<?>> futures = new ArrayList<Future<?>>();
+				for (int i = start; i < end; i++) {
+					final int ai = i;
+					futures.add(executor.submit(new Runnable() {
+
+						@Override
+						public void run() {
+							long[] cs = new long[numWords];
+							long[] redundant = new long[numWords];
+							int[][] row = new int[ai][];
+							for (int bi = 0; bi < ai; bi++) {
+								row[bi] = compute(ai, bi, cs, redundant);
+							}
+							rows[ai - start] = row;
+						}
+					}));
+				}
+				for (Future<?> f : futures) {
+					f.get();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("Interrupted while computing LCSs", e);
+			} catch (ExecutionException e) {
+				throw new RuntimeException("Could not compute LCSs", e.getCause());
+			}
+			finally {
+				executor.shutdown();
+			}
+			blockStart = start;
+			block = rows;
+		}
+
+		/**
+		 * @param ai
+		 * @param bi
+		 * @param cs buffer
+		 * @param redundant buffer
+		 * @return node indexes of the named LCSs
+		 */
+		private int[] compute(int ai, int bi, long[] cs, long[] redundant) {
+			for (int w = 0; w < numWords; w++) {
+				cs[w] = leafBits[ai][w] & leafBits[bi][w];
+				redundant[w] = 0L;
+			}
+			for (int w = 0; w < numWords; w++) {
+				long x = cs[w];
+				while (x != 0) {
+					int k = (w << 6) + Long.numberOfTrailingZeros(x);
+					x &= x - 1;
+					long[] sup = strictSubsumerBits[k];
+					for (int w2 = 0; w2 < numWords; w2++) {
+						redundant[w2] |= sup[w2];
+					}
+				}
+			}
+			int n = 0;
+			for (int w = 0; w < numWords; w++) {
+				cs[w] &= ~redundant[w];
+				n += Long.bitCount(cs[w]);
+			}
+			int[] lcs = new int[n];
+			int i = 0;
+			for (int w = 0; w < numWords; w++) {
+				long x = cs[w];
+				while (x != 0) {
+					lcs[i++] = (w << 6) + Long.numberOfTrailingZeros(x);
+					x &= x - 1;
+				}
+			}
+			return lcs;
+		}
+
+		/**
+		 * @param a
+		 * @param b
+		 * @return named LCSs of a and b, or null if these are not two different leaf classes
+		 */
+		Set<Node<OWLClass>> get(OWLClassExpression a, OWLClassExpression b) {
+			Integer ai = leafIndex.get(a);
+			Integer bi = leafIndex.get(b);
+			if (ai == null || bi == null || ai.equals(bi))
+				return null;
+			if (ai < bi) {
+				Integer t = ai;
+				ai = bi;
+				bi = t;
+			}
+			int[] lcs;
+			if (ai >= blockStart && ai < blockStart + block.length) {
+				lcs = block[ai - blockStart][bi];
+			}
+			else {
+				lcs = compute(ai, bi, new long[numWords], new long[numWords]);
+			}
+			Set<Node<OWLClass>> result = new HashSet<Node<OWLClass>>();
+			for (int k : lcs) {
+				result.add(nodes.get(k));
+			}
+			return result;
+		}
+	}
+
+	private static long[] toBits(Set<Node<OWLClass>> nodes, Map<Node<OWLClass>, Integer> nodeIndex, int numWords) {
+		long[] bits = new long[numWords];
+		for (Node<OWLClass> n : nodes) {
+			Integer k = nodeIndex.get(n);
+			if (k != null)
+				bits[k >> 6] |= 1L << (k & 63);
+		}
+		return bits;
+	}
+
 	
 	// ----------- ----------- ----------- -----------
 	// SUBSUMERS AND LOWEST COMMON SUBSUMERS
@@ -65,9 +297,14 @@ public abstract class LCSEnabledSimPreProcessor extends AbstractSimPreProcessor
 	}
 
 	public Set<Node<OWLClass>> getNamedReflexiveSubsumers(OWLClassExpression a) {
-		// TODO: consider caching
+		if (reflexiveSubsumerCache != null && reflexiveSubsumerCache.containsKey(a)) {
+			return new HashSet<Node<OWLClass>>(reflexiveSubsumerCache.get(a));
+		}
 		Set<Node<OWLClass>> nodes =  new HashSet<Node<OWLClass>>(getReasoner().getSuperClasses(a, false).getNodes());
 		nodes.add(getReasoner().getEquivalentClasses(a));
+		if (reflexiveSubsumerCache != null) {
+			reflexiveSubsumerCache.put(a, new HashSet<Node<OWLClass>>(nodes));
+		}
 		return nodes;
 	}
 
@@ -82,8 +319,19 @@ public abstract class LCSEnabledSimPreProcessor extends AbstractSimPreProcessor
 		return nodes;
 	}
 
-	// TODO - cache this
+	/**
+	 * While generating LCSs, pairs of leaf classes are computed from bitsets, see {@link NamedLCSBits}.
+	 * 
+	 * @param a
+	 * @param b
+	 * @return named LCSs of a and b
+	 */
 	public Set<Node<OWLClass>> getNamedLowestCommonSubsumers(OWLClassExpression a, OWLClassExpression b) {
+		if (namedLCSBits != null) {
+			Set<Node<OWLClass>> nodes = namedLCSBits.get(a, b);
+			if (nodes != null)
+				return nodes;
+		}
 		Set<Node<OWLClass>> nodes = getNamedCommonSubsumers(a, b);
 		Set<Node<OWLClass>> rNodes = new HashSet<Node<OWLClass>>();
 		for (Node<OWLClass> node : nodes) {
@@ -0,0 +1,248 @@
+package owltools.util;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter with non-cryptographic hashing, as an alternative to {@link BloomFilter}.
+ * <br>
+ * An element is hashed by mixing its {@link Object#hashCode()} into two 64-bit values
+ * with the MurmurHash3 finalizer, and the k probes are derived from these by double
+ * hashing (Kirsch and Mitzenmacher). No objects are allocated and no locks are taken
+ * for adding or testing elements. The bits are stored in a long array that is updated
+ * with compare-and-set, so elements can be added from several threads.
+ * <br>
+ * Filters created with the same number of bits and hash functions can be combined to
+ * estimate the size of the union and intersection of the sets they represent.
+ *
+ * @param <E> element type, must have a hashCode that depends on the content
+ */
+public class FastBloomFilter<E> {
+
+	private static final long SEED = 0x9E3779B97F4A7C15L;
+
+	private final AtomicLongArray bits;
+	private final int numBits;
+	private final int k;
+	private final AtomicInteger numberOfAddedElements = new AtomicInteger();
+
+	/**
+	 * @param numBits total number of bits, rounded up to a multiple of 64
+	 * @param k number of hash functions
+	 */
+	public FastBloomFilter(int numBits, int k) {
+		if (numBits < 1 || k < 1)
+			throw new IllegalArgumentException("Invalid bloom filter size: bits="+numBits+" k="+k);
+		int numWords = (numBits + 63) / 64;
+		this.bits = new AtomicLongArray(numWords);
+		this.numBits = numWords * 64;
+		this.k = k;
+	}
+
+	/**
+	 * Constructs a filter sized for the given false positive probability.
+	 *
+	 * @param falsePositiveProbability
+	 * @param expectedNumberOfElements
+	 */
+	public FastBloomFilter(double falsePositiveProbability, int expectedNumberOfElements) {
+		this(optimalNumBits(falsePositiveProbability, expectedNumberOfElements),
+				optimalK(falsePositiveProbability));
+	}
+
+	/**
+	 * @param falsePositiveProbability
+	 * @param n expected number of elements
+	 * @return number of bits, m = -n ln(p) / ln(2)^2
+	 */
+	public static int optimalNumBits(double falsePositiveProbability, int n) {
+		double m = -Math.max(1, n) * Math.log(falsePositiveProbability) / (Math.log(2) * Math.log(2));
+		return (int) Math.min(Integer.MAX_VALUE - 64, Math.ceil(m));
+	}
+
+	/**
+	 * @param falsePositiveProbability
+	 * @return number of hash functions, k = -log2(p)
+	 */
+	public static int optimalK(double falsePositiveProbability) {
+		return Math.max(1, (int) Math.ceil(-Math.log(falsePositiveProbability) / Math.log(2)));
+	}
+
+	/**
+	 * MurmurHash3 64-bit finalizer.
+	 *
+	 * @param h
+	 * @return mixed value
+	 */
+	static long mix64(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	private int probe(long h1, long h2, int i) {
+		long h = h1 + i * h2;
+		return (int) ((h & Long.MAX_VALUE) % numBits);
+	}
+
+	/**
+	 * @param element
+	 * @return true if the filter changed
+	 */
+	public boolean add(E element) {
+		long h1 = mix64(element.hashCode());
+		long h2 = mix64(h1 ^ SEED) | 1L;
+		boolean changed = false;
+		for (int i = 0; i < k; i++) {
+			int bit = probe(h1, h2, i);
+			int w = bit >>> 6;
+			long mask = 1L << (bit & 63);
+			long old;
+			while (((old = bits.get(w)) & mask) == 0) {
+				if (bits.compareAndSet(w, old, old | mask)) {
+					changed = true;
+					break;
+				}
+			}
+		}
+		numberOfAddedElements.incrementAndGet();
+		return changed;
+	}
+
+	public void addAll(Collection<? extends E> c) {
+		for (E e : c) {
+			add(e);
+		}
+	}
+
+	/**
+	 * @param element
+	 * @return true if the element may have been added, false if it has certainly not been added
+	 */
+	public boolean contains(E element) {
+		long h1 = mix64(element.hashCode());
+		long h2 = mix64(h1 ^ SEED) | 1L;
+		for (int i = 0; i < k; i++) {
+			int bit = probe(h1, h2, i);
+			if ((bits.get(bit >>> 6) & (1L << (bit & 63))) == 0)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @param c
+	 * @return number of elements of c that may have been added
+	 */
+	public int countContained(Collection<? extends E> c) {
+		int n = 0;
+		for (E e : c) {
+			if (contains(e))
+				n++;
+		}
+		return n;
+	}
+
+	public void clear() {
+		for (int w = 0; w < bits.length(); w++) {
+			bits.set(w, 0L);
+		}
+		numberOfAddedElements.set(0);
+	}
+
+	/**
+	 * @return number of bits
+	 */
+	public int size() {
+		return numBits;
+	}
+
+	public int getK() {
+		return k;
+	}
+
+	/**
+	 * @return number of calls to add, including duplicates
+	 */
+	public int count() {
+		return numberOfAddedElements.get();
+	}
+
+	/**
+	 * @return number of bits set
+	 */
+	public int getNumberOfBitsSet() {
+		int n = 0;
+		for (int w = 0; w < bits.length(); w++) {
+			n += Long.bitCount(bits.get(w));
+		}
+		return n;
+	}
+
+	/**
+	 * @return probability of a false positive, from the number of bits set
+	 */
+	public double getFalsePositiveProbability() {
+		return Math.pow(getNumberOfBitsSet() / (double) numBits, k);
+	}
+
+	/**
+	 * Estimates the number of distinct elements from the number of bits set,
+	 * n = -(m/k) ln(1 - X/m) (Swamidass and Baldi).
+	 *
+	 * @return estimated number of distinct elements
+	 */
+	public double estimateCardinality() {
+		return estimateCardinality(getNumberOfBitsSet());
+	}
+
+	private double estimateCardinality(int numBitsSet) {
+		if (numBitsSet >= numBits)
+			return Double.POSITIVE_INFINITY;
+		return -((double) numBits / k) * Math.log(1.0 - numBitsSet / (double) numBits);
+	}
+
+	private void checkCompatible(FastBloomFilter<E> other) {
+		if (other.numBits != numBits || other.k != k) {
+			throw new IllegalArgumentException("Bloom filters differ in size: bits="+numBits+"/"+other.numBits+
+					" k="+k+"/"+other.k);
+		}
+	}
+
+	/**
+	 * @param other filter with the same size and number of hash functions
+	 * @return estimated number of distinct elements in either filter
+	 */
+	public double estimateUnionCardinality(FastBloomFilter<E> other) {
+		checkCompatible(other);
+		int n = 0;
+		for (int w = 0; w < bits.length(); w++) {
+			n += Long.bitCount(bits.get(w) | other.bits.get(w));
+		}
+		return estimateCardinality(n);
+	}
+
+	/**
+	 * @param other filter with the same size and number of hash functions
+	 * @return estimated number of distinct elements in both filters, never negative
+	 */
+	public double estimateIntersectionCardinality(FastBloomFilter<E> other) {
+		double i = estimateCardinality() + other.estimateCardinality() - estimateUnionCardinality(other);
+		return Math.max(0.0, i);
+	}
+
+	/**
+	 * @param other filter with the same size and number of hash functions
+	 * @return estimated Jaccard similarity of the two sets
+	 */
+	public double estimateJaccardSimilarity(FastBloomFilter<E> other) {
+		double u = estimateUnionCardinality(other);
+		if (u <= 0.0)
+			return 0.0;
+		return estimateIntersectionCardinality(other) / u;
+	}
+}
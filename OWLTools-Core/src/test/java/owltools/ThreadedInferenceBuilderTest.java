@@ -28,6 +28,27 @@ public class ThreadedInferenceBuilderTest extends OWLToolsTestBasics {
 
 		Collection<OWLAxiom> redundantAxioms = builder.getRedundantAxioms();
 		assertEquals(3, redundantAxioms.size());
+		builder.dispose();
+	}
+
+	@Test
+	public void testSameAsSingleThreaded() throws Exception {
+		ParserWrapper pw = new ParserWrapper();
+		OWLOntology ontology = pw.parseOWL(getResourceIRI("inference_builder_test.omn"));
+		OWLGraphWrapper graph  = new OWLGraphWrapper(ontology);
+
+		InferenceBuilder single = new InferenceBuilder(graph, InferenceBuilder.REASONER_ELK);
+		List<OWLAxiom> expected = single.buildInferences();
+		Collection<OWLAxiom> expectedRedundant = single.getRedundantAxioms();
+		single.dispose();
+
+		InferenceBuilder threaded = new ThreadedInferenceBuilder(graph, InferenceBuilder.REASONER_ELK, 4);
+		List<OWLAxiom> inferences = threaded.buildInferences();
+		// same axioms in the same order
+		assertEquals(expected, inferences);
+		assertEquals(expectedRedundant, threaded.getRedundantAxioms());
+		assertTrue(threaded.getPhaseTimings().containsKey(InferenceBuilder.PHASE_INFERRED_SUPERCLASSES));
+		threaded.dispose();
 	}
 
 }
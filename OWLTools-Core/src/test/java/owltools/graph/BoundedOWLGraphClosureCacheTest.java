@@ -0,0 +1,112 @@
+package owltools.graph;
+
+import static junit.framework.Assert.*;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+import org.semanticweb.owlapi.model.OWLObject;
+
+import owltools.OWLToolsTestBasics;
+import owltools.graph.BoundedOWLGraphClosureCache.EvictionPolicy;
+import owltools.profile.Profiler;
+
+public class BoundedOWLGraphClosureCacheTest extends OWLToolsTestBasics {
+
+	@Test
+	public void testCachedClosures() throws Exception {
+		OWLGraphWrapper g = getGraph("caro.obo");
+		Profiler profiler = new Profiler();
+		g.setProfiler(profiler);
+		int n = 0;
+		for (OWLObject x : g.getAllOWLObjects()) {
+			Set<OWLGraphEdge> edges = g.getOutgoingEdgesClosure(x);
+			assertEquals(edges, g.getOutgoingEdgesClosureView(x));
+			// callers may modify the returned set without affecting the cache
+			edges.clear();
+			assertEquals(g.getOutgoingEdgesClosure(x), g.getOutgoingEdgesClosureView(x));
+			n++;
+		}
+		assertTrue(n > 0);
+		assertEquals(n, profiler.getCounter("outgoingClosureCache misses"));
+		assertEquals(3 * n, profiler.getCounter("outgoingClosureCache hits"));
+		assertEquals(0, profiler.getCounter("outgoingClosureCache evictions"));
+	}
+
+	@Test
+	public void testBoundedClosures() throws Exception {
+		OWLGraphWrapper g = getGraph("caro.obo");
+		Set<Set<OWLObject>> expected = new HashSet<Set<OWLObject>>();
+		for (OWLObject x : g.getAllOWLObjects()) {
+			expected.add(g.getAncestors(x));
+		}
+
+		OWLGraphWrapper bg = getGraph("caro.obo");
+		bg.getConfig().closureCacheMaxWeight = 5;
+		Profiler profiler = new Profiler();
+		bg.setProfiler(profiler);
+		Set<Set<OWLObject>> actual = new HashSet<Set<OWLObject>>();
+		for (OWLObject x : bg.getAllOWLObjects()) {
+			actual.add(bg.getAncestors(x));
+			assertTrue(bg.getOutgoingClosureCache().size() == 1 || bg.getOutgoingClosureCache().getWeight() <= 5);
+		}
+		assertEquals(expected, actual);
+		assertTrue(profiler.getCounter("outgoingClosureCache evictions") > 0);
+	}
+
+	@Test
+	public void testLRU() throws Exception {
+		OWLGraphWrapper g = getGraph("caro.obo");
+		Object[] objs = g.getAllOWLObjects().toArray();
+		OWLObject a = (OWLObject) objs[0];
+		OWLObject b = (OWLObject) objs[1];
+		OWLObject c = (OWLObject) objs[2];
+		BoundedOWLGraphClosureCache cache = new BoundedOWLGraphClosureCache("test", 2, EvictionPolicy.LRU, null);
+		cache.put(a, new HashSet<OWLGraphEdge>());
+		cache.put(b, new HashSet<OWLGraphEdge>());
+		assertNotNull(cache.get(a));
+		cache.put(c, new HashSet<OWLGraphEdge>());
+		assertEquals(2, cache.size());
+		assertNotNull(cache.get(a));
+		assertNull(cache.get(b));
+		assertNotNull(cache.get(c));
+	}
+
+	@Test
+	public void testLFU() throws Exception {
+		OWLGraphWrapper g = getGraph("caro.obo");
+		Object[] objs = g.getAllOWLObjects().toArray();
+		OWLObject a = (OWLObject) objs[0];
+		OWLObject b = (OWLObject) objs[1];
+		OWLObject c = (OWLObject) objs[2];
+		BoundedOWLGraphClosureCache cache = new BoundedOWLGraphClosureCache("test", 2, EvictionPolicy.LFU, null);
+		cache.put(a, new HashSet<OWLGraphEdge>());
+		cache.put(b, new HashSet<OWLGraphEdge>());
+		cache.get(b);
+		cache.get(b);
+		cache.get(a);
+		cache.put(c, new HashSet<OWLGraphEdge>());
+		assertEquals(2, cache.size());
+		assertNull(cache.get(a));
+		assertNotNull(cache.get(b));
+		assertNotNull(cache.get(c));
+	}
+
+	@Test
+	public void testCachePerWrapper() throws Exception {
+		OWLGraphWrapper g1 = getGraph("caro.obo");
+		OWLGraphWrapper g2 = getGraph("caro.obo");
+		// wrappers may share a config, but not the cached closures
+		g2.setConfig(g1.getConfig());
+		assertNotSame(g1.getOutgoingClosureCache(), g2.getOutgoingClosureCache());
+		assertNotSame(g1.getIncomingClosureCache(), g2.getIncomingClosureCache());
+
+		OWLGraphClosureCache cache = g1.getOutgoingClosureCache();
+		g1.dispose();
+		assertNotSame(cache, g1.getOutgoingClosureCache());
+		for (OWLObject x : g1.getAllOWLObjects()) {
+			assertEquals(g2.getOutgoingEdgesClosure(x).size(), g1.getOutgoingEdgesClosure(x).size());
+		}
+	}
+}
@@ -0,0 +1,160 @@
+package owltools.graph;
+
+import static junit.framework.Assert.*;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+import org.semanticweb.elk.owlapi.ElkReasonerFactory;
+import org.semanticweb.owlapi.model.AddImport;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLObject;
+import org.semanticweb.owlapi.model.OWLObjectProperty;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+
+import owltools.OWLToolsTestBasics;
+
+/**
+ * Tests that closures computed from the {@link OWLCompiledGraph} match
+ * the closures computed by the default graph traversal.
+ */
+public class OWLCompiledGraphTest extends OWLToolsTestBasics {
+
+	@Test
+	public void testCaroClosure() throws Exception {
+		OWLGraphWrapper g = getGraph("caro.obo");
+		compareClosures(g);
+	}
+
+	@Test
+	public void testChainClosure() throws Exception {
+		OWLGraphWrapper g = getGraph("multipath.obo");
+		compareClosures(g);
+	}
+
+	@Test
+	public void testTransitiveClosure() throws Exception {
+		OWLGraphWrapper g = getGraph("transitive_property_test.owl");
+		compareClosures(g);
+	}
+
+	@Test
+	public void testImportsClosure() throws Exception {
+		OWLOntology caro = getGraph("caro.obo").getSourceOntology();
+		OWLOntologyManager manager = caro.getOWLOntologyManager();
+		OWLDataFactory f = manager.getOWLDataFactory();
+		OWLOntology ontology = manager.createOntology(IRI.create("http://example.org/import_test.owl"));
+		manager.applyChange(new AddImport(ontology, f.getOWLImportsDeclaration(caro.getOntologyID().getOntologyIRI())));
+		// new classes below the imported ones, so the edges cross the ontologies
+		OWLObjectProperty partOf = f.getOWLObjectProperty(IRI.create("http://example.org/part_of"));
+		OWLClass previous = null;
+		int i = 0;
+		for (OWLClass cls : caro.getClassesInSignature()) {
+			OWLClass sub = f.getOWLClass(IRI.create("http://example.org/foo"+i++));
+			manager.addAxiom(ontology, f.getOWLSubClassOfAxiom(sub, cls));
+			if (previous != null) {
+				manager.addAxiom(ontology, f.getOWLSubClassOfAxiom(sub, f.getOWLObjectSomeValuesFrom(partOf, previous)));
+			}
+			previous = cls;
+		}
+		assertTrue(i > 0);
+		OWLGraphWrapper g = new OWLGraphWrapper(ontology);
+		compareClosures(g);
+		OWLClass cls = caro.getClassesInSignature().iterator().next();
+		assertTrue(g.getDescendants(cls).contains(f.getOWLClass(IRI.create("http://example.org/foo0"))));
+	}
+
+	@Test
+	public void testInferredClosure() throws Exception {
+		OWLGraphWrapper g = getGraph("caro.obo");
+		OWLReasoner reasoner = new ElkReasonerFactory().createReasoner(g.getSourceOntology());
+		try {
+			g.setReasoner(reasoner);
+			int n = compareClosures(g);
+			assertTrue(n > 0);
+		}
+		finally {
+			reasoner.dispose();
+		}
+	}
+
+	@Test
+	public void testConfigChange() throws Exception {
+		OWLGraphWrapper g = getGraph("caro.obo");
+		OWLCompiledGraph cg = g.getCompiledGraph();
+		assertTrue(cg.isCurrent(g.getConfig()));
+
+		// exclude the first property used in any edge
+		OWLObjectProperty p = null;
+		for (OWLObject x : g.getAllOWLObjects()) {
+			for (OWLGraphEdge e : g.getPrimitiveOutgoingEdges(x)) {
+				if (e.getSingleQuantifiedProperty().getProperty() != null) {
+					p = e.getSingleQuantifiedProperty().getProperty();
+					break;
+				}
+			}
+			if (p != null)
+				break;
+		}
+		assertNotNull(p);
+		g.getConfig().excludeProperty(p);
+		assertFalse(cg.isCurrent(g.getConfig()));
+		compareClosures(g);
+		assertNotSame(cg, g.getCompiledGraph());
+		assertTrue(g.getCompiledGraph().isCurrent(g.getConfig()));
+	}
+
+	/*
+	 * Compare all closures with and without the compiled graph.
+	 * Returns the number of inferred properties found in the closures.
+	 */
+	private int compareClosures(OWLGraphWrapper g) throws Exception {
+		g.getConfig().isCacheClosure = false;
+		int n = 0;
+		int inferred = 0;
+		for (OWLObject x : g.getAllOWLObjects()) {
+			g.getConfig().isUseCompiledGraph = false;
+			Set<OWLObject> ancs = g.getAncestors(x);
+			Set<OWLObject> descs = g.getDescendants(x);
+			Set<OWLGraphEdge> outEdges = g.getOutgoingEdgesClosure(x);
+			Set<OWLGraphEdge> inEdges = g.getIncomingEdgesClosure(x);
+
+			g.getConfig().isUseCompiledGraph = true;
+			assertEquals(x.toString(), ancs, g.getAncestors(x));
+			assertEquals(x.toString(), descs, g.getDescendants(x));
+			Set<OWLGraphEdge> compiledOutEdges = g.getOutgoingEdgesClosure(x);
+			Set<OWLGraphEdge> compiledInEdges = g.getIncomingEdgesClosure(x);
+			assertEquals(x.toString(), outEdges, compiledOutEdges);
+			assertEquals(x.toString(), inEdges, compiledInEdges);
+			// equals ignores the inferred flag, compare it separately
+			assertEquals(x.toString(), render(outEdges), render(compiledOutEdges));
+			assertEquals(x.toString(), render(inEdges), render(compiledInEdges));
+			for (OWLGraphEdge e : outEdges) {
+				for (OWLQuantifiedProperty qp : e.getQuantifiedPropertyList()) {
+					if (qp.isInferred())
+						inferred++;
+				}
+			}
+			n++;
+		}
+		assertTrue(n > 0);
+		return inferred;
+	}
+
+	private Set<String> render(Set<OWLGraphEdge> edges) {
+		Set<String> strings = new HashSet<String>();
+		for (OWLGraphEdge e : edges) {
+			StringBuilder sb = new StringBuilder(e.toString());
+			for (OWLQuantifiedProperty qp : e.getQuantifiedPropertyList()) {
+				sb.append(qp.isInferred() ? " inferred" : " asserted");
+			}
+			strings.add(sb.toString());
+		}
+		return strings;
+	}
+}
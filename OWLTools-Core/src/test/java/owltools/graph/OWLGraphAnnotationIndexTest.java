@@ -0,0 +1,80 @@
+package owltools.graph;
+
+import static junit.framework.Assert.*;
+
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+
+import org.junit.Test;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotationAssertionAxiom;
+import org.semanticweb.owlapi.model.OWLAnnotationProperty;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLLiteral;
+
+import owltools.OWLToolsTestBasics;
+
+public class OWLGraphAnnotationIndexTest extends OWLToolsTestBasics {
+
+	@Test
+	public void testLabelChanges() throws Exception {
+		OWLGraphWrapper g = getGraph("caro.obo");
+		OWLClass c = g.getOWLClassByIdentifier("CARO:0000003");
+		String label = g.getLabel(c);
+		assertNotNull(label);
+		assertEquals(c, g.getOWLObjectByLabel(label));
+		OWLGraphAnnotationIndex index = g.getAnnotationIndex();
+		assertSame(index, g.getAnnotationIndex());
+
+		OWLDataFactory f = g.getDataFactory();
+		OWLAnnotationAssertionAxiom ax = f.getOWLAnnotationAssertionAxiom(f.getRDFSLabel(), 
+				c.getIRI(), f.getOWLLiteral("new label"));
+		g.getManager().addAxiom(g.getSourceOntology(), ax);
+		assertNotSame(index, g.getAnnotationIndex());
+		assertEquals(c, g.getOWLObjectByLabel("new label"));
+
+		g.getManager().removeAxiom(g.getSourceOntology(), ax);
+		assertNull(g.getOWLObjectByLabel("new label"));
+		assertEquals(c, g.getOWLObjectByLabel(label));
+	}
+
+	@Test
+	public void testWrapperNotRetained() throws Exception {
+		OWLGraphWrapper g = getGraph("caro.obo");
+		OWLClass c = g.getOWLClassByIdentifier("CARO:0000003");
+		assertNotNull(g.getLabel(c));
+		// a short-lived wrapper sharing the manager, with its own listener
+		OWLGraphWrapper temp = new OWLGraphWrapper(g.getSourceOntology());
+		assertNotNull(temp.getLabel(c));
+		WeakReference<OWLGraphWrapper> ref = new WeakReference<OWLGraphWrapper>(temp);
+		temp = null;
+		for (int i = 0; i < 20 && ref.get() != null; i++) {
+			System.gc();
+			Thread.sleep(50);
+		}
+		assertNull("the manager must not retain the wrapper", ref.get());
+
+		// the listener of the collected wrapper is removed, the other one still works
+		OWLDataFactory f = g.getDataFactory();
+		g.getManager().addAxiom(g.getSourceOntology(), f.getOWLAnnotationAssertionAxiom(f.getRDFSLabel(), 
+				c.getIRI(), f.getOWLLiteral("new label")));
+		assertEquals(c, g.getOWLObjectByLabel("new label"));
+	}
+
+	@Test
+	public void testDistinctValues() throws Exception {
+		OWLGraphWrapper g = getGraph("caro.obo");
+		OWLClass c = g.getOWLClassByIdentifier("CARO:0000003");
+		OWLDataFactory f = g.getDataFactory();
+		OWLAnnotationProperty p = f.getOWLAnnotationProperty(IRI.create("http://example.org/note"));
+		OWLLiteral value = f.getOWLLiteral("note");
+		// the same value, once with and once without an axiom annotation
+		OWLAnnotationAssertionAxiom ax1 = f.getOWLAnnotationAssertionAxiom(p, c.getIRI(), value);
+		OWLAnnotationAssertionAxiom ax2 = f.getOWLAnnotationAssertionAxiom(p, c.getIRI(), value,
+				Collections.singleton(f.getOWLAnnotation(f.getRDFSComment(), f.getOWLLiteral("source"))));
+		g.getManager().addAxiom(g.getSourceOntology(), ax1);
+		g.getManager().addAxiom(g.getSourceOntology(), ax2);
+		assertEquals(Collections.singletonList("note"), g.getAnnotationValues(c, p));
+	}
+}
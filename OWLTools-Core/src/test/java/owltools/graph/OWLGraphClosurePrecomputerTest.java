@@ -0,0 +1,94 @@
+package owltools.graph;
+
+import static junit.framework.Assert.*;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+import org.semanticweb.owlapi.model.OWLObject;
+
+import owltools.OWLToolsTestBasics;
+import owltools.profile.Profiler;
+
+public class OWLGraphClosurePrecomputerTest extends OWLToolsTestBasics {
+
+	/**
+	 * Associative composition: closures are built from the closures of the targets.
+	 */
+	@Test
+	public void testReuseClosures() throws Exception {
+		OWLGraphWrapper g = getGraph("caro.obo");
+		assertTrue(g.getCompositionTable().isAssociative());
+		g.getConfig().isCacheClosure = false;
+		OWLGraphClosurePrecomputer precomputer = new OWLGraphClosurePrecomputer(g, 4);
+		Map<OWLObject, Set<OWLGraphEdge>> closures = precomputer.precompute();
+		assertEquals(closures.size(), precomputer.getNumberOfNodes());
+		assertTrue(precomputer.getNumberOfReused() > 0);
+
+		// a different path may be chosen, but the targets and final properties are the same
+		int n = 0;
+		for (OWLObject x : g.getAllOWLObjects()) {
+			Set<OWLGraphEdge> expected = g.getOutgoingEdgesClosure(x);
+			Set<OWLGraphEdge> actual = closures.get(x);
+			if (actual == null) {
+				assertTrue(x.toString(), expected.isEmpty());
+				continue;
+			}
+			assertEquals(x.toString(), expected.size(), actual.size());
+			assertEquals(x.toString(), getFinalProperties(expected), getFinalProperties(actual));
+			n++;
+		}
+		assertTrue(n > 0);
+	}
+
+	/**
+	 * Property chains are not associative: all closures come from the compiled graph
+	 * and are identical to the default traversal.
+	 */
+	@Test
+	public void testChainClosures() throws Exception {
+		OWLGraphWrapper g = getGraph("multipath.obo");
+		assertFalse(g.getCompositionTable().isAssociative());
+		g.getConfig().isCacheClosure = false;
+		OWLGraphClosurePrecomputer precomputer = new OWLGraphClosurePrecomputer(g, 2);
+		Map<OWLObject, Set<OWLGraphEdge>> closures = precomputer.precompute();
+		assertEquals(0, precomputer.getNumberOfReused());
+		assertTrue(precomputer.getNumberOfNodes() > 0);
+		for (OWLObject x : closures.keySet()) {
+			assertEquals(x.toString(), g.getOutgoingEdgesClosure(x), closures.get(x));
+		}
+	}
+
+	/**
+	 * Precomputed closures are added to the cache of the wrapper.
+	 */
+	@Test
+	public void testPrecomputeIntoCache() throws Exception {
+		OWLGraphWrapper g = getGraph("transitive_property_test.owl");
+		Profiler profiler = new Profiler();
+		g.setProfiler(profiler);
+		OWLGraphClosurePrecomputer precomputer = g.precomputeOutgoingEdgesClosures(2);
+		assertTrue(precomputer.getNumberOfReused() > 0);
+		for (OWLObject x : g.getPrimitiveOutgoingEdgeIndex().keySet()) {
+			assertFalse(g.getOutgoingEdgesClosure(x).isEmpty());
+		}
+		assertEquals(0, profiler.getCounter("outgoingClosureCache misses"));
+		assertEquals(precomputer.getNumberOfNodes(), profiler.getCounter("outgoingClosureCache hits"));
+	}
+
+	private static Map<OWLObject, Set<OWLQuantifiedProperty>> getFinalProperties(Set<OWLGraphEdge> edges) {
+		Map<OWLObject, Set<OWLQuantifiedProperty>> m = new HashMap<OWLObject, Set<OWLQuantifiedProperty>>();
+		for (OWLGraphEdge e : edges) {
+			Set<OWLQuantifiedProperty> qps = m.get(e.getTarget());
+			if (qps == null) {
+				qps = new HashSet<OWLQuantifiedProperty>();
+				m.put(e.getTarget(), qps);
+			}
+			qps.add(e.getFinalQuantifiedProperty());
+		}
+		return m;
+	}
+}
@@ -0,0 +1,59 @@
+package owltools.graph;
+
+import static junit.framework.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLObject;
+
+import owltools.OWLToolsTestBasics;
+
+public class OWLGraphIdentifierResolverTest extends OWLToolsTestBasics {
+
+	@Test
+	public void testResolve() throws Exception {
+		OWLGraphWrapper g = getGraph("caro.obo");
+		OWLGraphIdentifierResolver resolver = g.getIdentifierResolver();
+		int n = 0;
+		for (OWLClass c : g.getSourceOntology().getClassesInSignature()) {
+			String id = g.getIdentifier(c);
+			OWLObject expected = g.getOWLClass(g.getIRIByIdentifier(id));
+			if (expected == null)
+				continue;
+			assertEquals(id, c, expected);
+			assertEquals(id, expected, resolver.resolve(id));
+			n++;
+		}
+		assertTrue(n > 0);
+		assertNull(resolver.resolve("CARO:9999999"));
+		assertNull(resolver.resolve("CARO:9999999"));
+	}
+
+	@Test
+	public void testUnresolvedNotRemembered() throws Exception {
+		OWLGraphWrapper g = getGraph("caro.obo");
+		OWLGraphIdentifierResolver resolver = g.getIdentifierResolver();
+		int resolved = resolver.getNumberOfResolvedIds();
+		for (int i = 0; i < 1000; i++) {
+			assertNull(resolver.resolve("CARO:X"+i));
+		}
+		assertEquals(resolved, resolver.getNumberOfResolvedIds());
+		assertEquals(g.getIRIByIdentifier("CARO:0000003"), resolver.getIRI("CARO:0000003"));
+	}
+
+	@Test
+	public void testBatch() throws Exception {
+		OWLGraphWrapper g = getGraph("caro.obo");
+		List<String> unresolved = new ArrayList<String>();
+		Map<String, OWLClass> classes = g.getIdentifierResolver().resolveClasses(
+				Arrays.asList("CARO:0000003", "CARO:9999999", "CARO:0000000"), unresolved);
+		assertEquals(2, classes.size());
+		assertEquals(g.getOWLClass(g.getIRIByIdentifier("CARO:0000003")), classes.get("CARO:0000003"));
+		assertEquals(Arrays.asList("CARO:9999999"), unresolved);
+	}
+}
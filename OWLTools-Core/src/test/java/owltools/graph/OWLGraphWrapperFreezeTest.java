@@ -0,0 +1,83 @@
+package owltools.graph;
+
+import static junit.framework.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+import org.semanticweb.owlapi.model.OWLObject;
+import org.semanticweb.owlapi.model.OWLOntology;
+
+import owltools.OWLToolsTestBasics;
+
+public class OWLGraphWrapperFreezeTest extends OWLToolsTestBasics {
+
+	@Test
+	public void testConcurrentReads() throws Exception {
+		OWLGraphWrapper expectedGraph = getGraph("caro.obo");
+		final Map<OWLObject, Set<OWLObject>> expected = new HashMap<OWLObject, Set<OWLObject>>();
+		for (OWLObject x : expectedGraph.getAllOWLObjects()) {
+			expected.put(x, expectedGraph.getAncestors(x));
+		}
+
+		final OWLGraphWrapper g = getGraph("caro.obo");
+		g.freeze();
+		assertTrue(g.isFrozen());
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+			for (int i=0; i<8; i++) {
+				results.add(executor.submit(new Callable<Boolean>() {
+
+					public Boolean call() throws Exception {
+						for (OWLObject x : expected.keySet()) {
+							if (!expected.get(x).equals(g.getAncestors(x)))
+								return false;
+							g.getDescendants(x);
+						}
+						return true;
+					}
+				}));
+			}
+			for (Future<Boolean> result : results) {
+				assertTrue(result.get());
+			}
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testRejectChanges() throws Exception {
+		OWLGraphWrapper g = getGraph("caro.obo");
+		OWLOntology support = g.getSourceOntology();
+		g.freeze();
+		try {
+			g.addSupportOntology(support);
+			fail("changes must be rejected while frozen");
+		}
+		catch (IllegalStateException e) {
+			// expected
+		}
+		try {
+			g.getSupportOntologySet().add(support);
+			fail("support set must be read-only while frozen");
+		}
+		catch (UnsupportedOperationException e) {
+			// expected
+		}
+		g.unfreeze();
+		g.addSupportOntology(support);
+		assertTrue(g.getSupportOntologySet().contains(support));
+	}
+}
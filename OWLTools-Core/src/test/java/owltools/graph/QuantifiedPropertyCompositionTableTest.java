@@ -0,0 +1,61 @@
+package owltools.graph;
+
+import static junit.framework.Assert.*;
+
+import org.junit.Test;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLObjectProperty;
+
+import owltools.OWLToolsTestBasics;
+import owltools.graph.OWLQuantifiedProperty.Quantifier;
+
+/**
+ * Tests for {@link QuantifiedPropertyCompositionTable}.
+ */
+public class QuantifiedPropertyCompositionTableTest extends OWLToolsTestBasics {
+
+	@Test
+	public void testCompose() throws Exception {
+		OWLGraphWrapper g = getGraph("transitive_property_test.owl");
+		QuantifiedPropertyCompositionTable table = g.getCompositionTable();
+		OWLObjectProperty partOf = g.getDataFactory().getOWLObjectProperty(
+				IRI.create("http://purl.obolibrary.org/obo/FOOpart_of"));
+
+		OWLQuantifiedProperty subClassOf = new OWLQuantifiedProperty(Quantifier.SUBCLASS_OF);
+		OWLQuantifiedProperty partOfSome = new OWLQuantifiedProperty(partOf, Quantifier.SOME);
+		OWLQuantifiedProperty partOfOnly = new OWLQuantifiedProperty(partOf, Quantifier.ONLY);
+		OWLQuantifiedProperty partOfValue = new OWLQuantifiedProperty(partOf, Quantifier.VALUE);
+
+		assertEquals(subClassOf, table.compose(subClassOf, subClassOf));
+		assertEquals(partOfSome, table.compose(subClassOf, partOfSome));
+		assertEquals(partOfSome, table.compose(partOfSome, subClassOf));
+		assertEquals(partOfOnly, table.compose(partOfOnly, subClassOf));
+		// transitive
+		assertEquals(partOfSome, table.compose(partOfSome, partOfSome));
+		assertNull(table.compose(partOfSome, partOfOnly));
+		assertNull(table.compose(partOfValue, subClassOf));
+		assertNull(table.compose(subClassOf, partOfValue));
+
+		// sparse lookups for ids without any composition
+		int value = table.getId(partOfValue);
+		for (int y = 0; y < table.size(); y++) {
+			assertEquals(QuantifiedPropertyCompositionTable.NONE, table.compose(value, y));
+		}
+	}
+
+	@Test
+	public void testCanonicalIsImmutable() throws Exception {
+		OWLGraphWrapper g = getGraph("transitive_property_test.owl");
+		QuantifiedPropertyCompositionTable table = g.getCompositionTable();
+		OWLQuantifiedProperty subClassOf = new OWLQuantifiedProperty(Quantifier.SUBCLASS_OF);
+		OWLQuantifiedProperty canonical = table.compose(subClassOf, subClassOf);
+		assertNotNull(canonical);
+		try {
+			canonical.setInferred(true);
+			fail("canonical properties must not be modified");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+		assertFalse(table.compose(subClassOf, subClassOf).isInferred());
+	}
+}
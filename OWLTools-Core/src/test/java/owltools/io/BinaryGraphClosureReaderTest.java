@@ -0,0 +1,110 @@
+package owltools.io;
+
+import static junit.framework.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLClassExpression;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLNamedObject;
+import org.semanticweb.owlapi.model.OWLObjectProperty;
+
+import owltools.OWLToolsTestBasics;
+import owltools.graph.OWLGraphEdge;
+import owltools.graph.OWLGraphWrapper;
+
+public class BinaryGraphClosureReaderTest extends OWLToolsTestBasics {
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		OWLGraphWrapper g = getGraph("caro.obo");
+		// one class with an edge to a class expression, one without any edges
+		OWLDataFactory df = g.getDataFactory();
+		OWLClass withExpression = df.getOWLClass(IRI.create("http://purl.obolibrary.org/obo/CARO_9999998"));
+		OWLClass noEdges = df.getOWLClass(IRI.create("http://purl.obolibrary.org/obo/CARO_9999999"));
+		OWLObjectProperty p = df.getOWLObjectProperty(IRI.create("http://purl.obolibrary.org/obo/caro#part_of"));
+		OWLClassExpression ce = df.getOWLObjectIntersectionOf(
+				df.getOWLClass(IRI.create("http://purl.obolibrary.org/obo/CARO_0000003")),
+				df.getOWLObjectSomeValuesFrom(p, df.getOWLClass(IRI.create("http://purl.obolibrary.org/obo/CARO_0000006"))));
+		addAxioms(g, withExpression, noEdges, ce);
+
+		File file = File.createTempFile("caro-closure", ".bin");
+		file.deleteOnExit();
+		new BinaryGraphClosureRenderer(file.getAbsolutePath()).render(g);
+		assertTrue(BinaryGraphClosureFormat.isBinaryClosureFile(file.getAbsolutePath()));
+
+		OWLGraphWrapper g2 = getGraph("caro.obo");
+		addAxioms(g2, withExpression, noEdges, ce);
+		BinaryGraphClosureReader reader = new BinaryGraphClosureReader(g2);
+		reader.read(file.getAbsolutePath());
+		assertTrue(reader.getNumberOfSources() > 0);
+
+		int n = 0;
+		int notInFile = 0;
+		for (OWLClass c : g.getSourceOntology().getClassesInSignature()) {
+			Set<OWLGraphEdge> expected = g.getOutgoingEdgesClosure(c);
+			Set<OWLGraphEdge> actual = reader.getOutgoingEdgesClosure(c);
+			if (expected.isEmpty() || !isNamedTargets(expected)) {
+				// not in the file
+				assertNull(c.toString(), actual);
+				notInFile++;
+			}
+			else {
+				assertNotNull(c.toString(), actual);
+				assertEquals(c.toString(), render(expected), render(actual));
+				n++;
+			}
+			// served through the cache of the graph, or computed if not in the file
+			assertEquals(c.toString(), render(expected), render(g2.getOutgoingEdgesClosure(c)));
+		}
+		assertTrue(n > 0);
+		assertTrue(notInFile >= 2);
+		assertTrue(g.getOutgoingEdgesClosure(noEdges).isEmpty());
+		assertFalse(g.getOutgoingEdgesClosure(withExpression).isEmpty());
+		assertNull(reader.getOutgoingEdgesClosure(noEdges));
+		assertNull(reader.getOutgoingEdgesClosure(withExpression));
+	}
+
+	@Test(expected=IOException.class)
+	public void testStaleFile() throws Exception {
+		OWLGraphWrapper g = getGraph("caro.obo");
+		File file = File.createTempFile("caro-closure", ".bin");
+		file.deleteOnExit();
+		new BinaryGraphClosureRenderer(file.getAbsolutePath()).render(g);
+
+		OWLGraphWrapper g2 = getGraph("caro.obo");
+		OWLDataFactory df = g2.getDataFactory();
+		OWLClass c = df.getOWLClass(IRI.create("http://purl.obolibrary.org/obo/CARO_9999999"));
+		g2.getManager().addAxiom(g2.getSourceOntology(), df.getOWLDeclarationAxiom(c));
+		new BinaryGraphClosureReader(g2).read(file.getAbsolutePath());
+	}
+
+	private static void addAxioms(OWLGraphWrapper g, OWLClass withExpression, OWLClass noEdges, OWLClassExpression ce) {
+		OWLDataFactory df = g.getDataFactory();
+		g.getManager().addAxiom(g.getSourceOntology(), df.getOWLDeclarationAxiom(withExpression));
+		g.getManager().addAxiom(g.getSourceOntology(), df.getOWLSubClassOfAxiom(withExpression, ce));
+		g.getManager().addAxiom(g.getSourceOntology(), df.getOWLDeclarationAxiom(noEdges));
+	}
+
+	private static boolean isNamedTargets(Set<OWLGraphEdge> edges) {
+		for (OWLGraphEdge e : edges) {
+			if (!(e.getTarget() instanceof OWLNamedObject))
+				return false;
+		}
+		return true;
+	}
+
+	private static Set<String> render(Set<OWLGraphEdge> edges) {
+		Set<String> s = new HashSet<String>();
+		for (OWLGraphEdge e : edges) {
+			s.add(e.toString()+" "+e.getDistance());
+		}
+		return s;
+	}
+}
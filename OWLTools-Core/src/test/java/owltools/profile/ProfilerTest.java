@@ -0,0 +1,59 @@
+package owltools.profile;
+
+import static junit.framework.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+public class ProfilerTest {
+
+	@Test
+	public void testConcurrentTasks() throws Exception {
+		final Profiler profiler = new Profiler();
+		final CountDownLatch started = new CountDownLatch(2);
+		final CountDownLatch ended = new CountDownLatch(1);
+		Thread t = new Thread() {
+
+			@Override
+			public void run() {
+				profiler.startTaskNotify("task");
+				started.countDown();
+				try {
+					ended.await();
+					Thread.sleep(50);
+				} catch (InterruptedException e) {
+					// ignore
+				}
+				profiler.endTaskNotify("task");
+			}
+		};
+		t.start();
+		// the second thread starts the same task later and ends it first,
+		// each thread must only count its own time
+		Thread.sleep(50);
+		profiler.startTaskNotify("task");
+		started.countDown();
+		started.await();
+		profiler.endTaskNotify("task");
+		long own = profiler.getTaskTime("task");
+		assertTrue(own < 50000000L);
+		ended.countDown();
+		t.join();
+		long total = profiler.getTaskTime("task");
+		assertTrue(total - own >= 100000000L);
+	}
+
+	@Test
+	public void testDisabled() throws Exception {
+		Profiler profiler = new Profiler();
+		profiler.setEnabled(false);
+		profiler.startTaskNotify("task");
+		profiler.endTaskNotify("task");
+		assertEquals(0, profiler.getTaskTime("task"));
+		// end without start is ignored
+		profiler.setEnabled(true);
+		profiler.endTaskNotify("task");
+		assertEquals(0, profiler.getTaskTime("task"));
+	}
+}
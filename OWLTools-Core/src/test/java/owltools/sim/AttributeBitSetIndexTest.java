@@ -0,0 +1,75 @@
+package owltools.sim;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+import org.semanticweb.elk.owlapi.ElkReasonerFactory;
+import org.semanticweb.owlapi.model.OWLNamedIndividual;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+
+import owltools.OWLToolsTestBasics;
+import owltools.graph.OWLGraphWrapper;
+import owltools.io.OWLPrettyPrinter;
+import owltools.io.ParserWrapper;
+import owltools.sim.SimpleOwlSim.ScoreAttributesPair;
+import owltools.sim.preprocessor.PhenoSimHQEPreProcessor;
+
+/**
+ * Checks that the bitset based similarity gives the same scores as the set based methods.
+ */
+public class AttributeBitSetIndexTest extends OWLToolsTestBasics {
+
+	@Test
+	public void testSameScores() throws Exception {
+		ParserWrapper pw = new ParserWrapper();
+		OWLOntology sourceOntol = pw.parseOWL(getResourceIRIString("q-in-e.omn"));
+		OWLGraphWrapper g = new OWLGraphWrapper(sourceOntol);
+		OWLReasoner reasoner = new ElkReasonerFactory().createReasoner(sourceOntol);
+		try {
+			PhenoSimHQEPreProcessor pproc = new PhenoSimHQEPreProcessor();
+			pproc.setInputOntology(sourceOntol);
+			pproc.setOutputOntology(sourceOntol);
+			pproc.setReasoner(reasoner);
+			pproc.setOWLPrettyPrinter(new OWLPrettyPrinter(g));
+			pproc.defaultLCSElementFrequencyThreshold = 0.7;
+			pproc.preprocess();
+			reasoner.flush();
+
+			SimpleOwlSim sos = new SimpleOwlSim(sourceOntol);
+			sos.setSimPreProcessor(pproc);
+			sos.createElementAttributeMapFromOntology();
+			Set<OWLNamedIndividual> elements = sos.getAllElements();
+			assertFalse(elements.isEmpty());
+
+			List<Double> expected = new ArrayList<Double>();
+			for (OWLNamedIndividual i : elements) {
+				for (OWLNamedIndividual j : elements) {
+					expected.add((double) sos.getElementJaccardSimilarity(i, j));
+					expected.add(sos.getSimilarityMaxIC(i, j).score);
+					expected.add(sos.getSimilarityBestMatchAverageAsym(i, j).score);
+				}
+			}
+
+			AttributeBitSetIndex index = sos.buildAttributeIndex();
+			assertTrue(index.getNumberOfNodes() > 0);
+			int k = 0;
+			for (OWLNamedIndividual i : elements) {
+				for (OWLNamedIndividual j : elements) {
+					assertEquals(expected.get(k++), (double) index.getElementJaccardSimilarity(i, j), 0.0);
+					ScoreAttributesPair maxic = sos.getSimilarityMaxIC(i, j);
+					assertEquals(expected.get(k++), maxic.score, 0.0);
+					assertFalse(maxic.attributeClassSet.isEmpty());
+					assertEquals(expected.get(k++), sos.getSimilarityBestMatchAverageAsym(i, j).score, 0.0);
+				}
+			}
+		}
+		finally {
+			reasoner.dispose();
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package owltools.sim;
+
+import static junit.framework.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+
+import org.junit.Test;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLObject;
+
+import owltools.OWLToolsTestBasics;
+import owltools.graph.OWLGraphWrapper;
+import owltools.io.ParserWrapper;
+
+public class InformationContentTableTest extends OWLToolsTestBasics {
+
+	@Test
+	public void testSameInformationContent() throws Exception {
+		OWLGraphWrapper g = getGraph();
+		SimEngine expected = new SimEngine(g);
+		SimEngine se = new SimEngine(g);
+		InformationContentTable table = se.computeInformationContentTable();
+		assertTrue(table.size() > 0);
+		assertEquals(expected.getCorpusSize(), se.getCorpusSize());
+
+		Set<OWLObject> objs = g.getAllOWLObjects();
+		for (OWLObject x : g.getAllOWLObjects()) {
+			objs.addAll(g.getAncestors(x));
+		}
+		for (OWLObject obj : objs) {
+			assertEquals(obj.toString(), expected.getFrequency(obj), se.getFrequency(obj));
+			assertEquals(obj.toString(), expected.getInformationContent(obj), se.getInformationContent(obj));
+		}
+	}
+
+	@Test
+	public void testSaveAndLoad() throws Exception {
+		OWLGraphWrapper g = getGraph();
+		File file = File.createTempFile("ic-table", ".txt");
+		file.delete();
+		file.deleteOnExit();
+
+		// computed and saved on first use
+		SimEngine se = new SimEngine(g);
+		se.setInformationContentTableFile(file.getAbsolutePath());
+		int corpusSize = se.getCorpusSize();
+		assertTrue(file.exists());
+
+		InformationContentTable loaded = InformationContentTable.load(file, new SimEngine(g));
+		assertEquals(corpusSize, loaded.getCorpusSize());
+		for (OWLClass c : g.getSourceOntology().getClassesInSignature()) {
+			assertEquals(c.toString(), se.getFrequency(c), loaded.getFrequency(c).intValue());
+		}
+	}
+
+	@Test(expected=IOException.class)
+	public void testStaleTable() throws Exception {
+		OWLGraphWrapper g = getGraph();
+		File file = File.createTempFile("ic-table", ".txt");
+		file.deleteOnExit();
+		new SimEngine(g).computeInformationContentTable().save(file);
+
+		OWLDataFactory df = g.getDataFactory();
+		OWLClass c = df.getOWLClass(IRI.create("http://example.org/new-class"));
+		g.getManager().addAxiom(g.getSourceOntology(), df.getOWLDeclarationAxiom(c));
+		InformationContentTable.load(file, new SimEngine(g));
+	}
+
+	private OWLGraphWrapper getGraph() throws Exception {
+		ParserWrapper pw = new ParserWrapper();
+		return new OWLGraphWrapper(pw.parseOWL(getResourceIRIString("q-in-e.omn")));
+	}
+}
@@ -2,7 +2,11 @@ package owltools.sim;
 
 import static org.junit.Assert.*;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.commons.math.MathException;
@@ -86,6 +90,70 @@ public class PhenoSimHQETest extends OWLToolsTestBasics {
 		}
 	}
 
+	@Test
+	public void testLowestCommonSubsumerTable() throws Exception {
+		ParserWrapper pw = new ParserWrapper();
+		sourceOntol = pw.parseOWL(getResourceIRIString("q-in-e.omn"));
+		g =  new OWLGraphWrapper(sourceOntol);
+		owlpp = new OWLPrettyPrinter(g);
+		OWLReasoner reasoner = new ElkReasonerFactory().createReasoner(sourceOntol);
+		try {
+			pproc = new PhenoSimHQEPreProcessor();
+			pproc.setInputOntology(sourceOntol);
+			pproc.setOutputOntology(sourceOntol);
+			pproc.setReasoner(reasoner);
+			pproc.setOWLPrettyPrinter(owlpp);
+			((PhenoSimHQEPreProcessor)pproc).defaultLCSElementFrequencyThreshold = 0.7;
+			pproc.preprocess();
+			reasoner.flush();
+
+			sos = new SimpleOwlSim(sourceOntol);
+			sos.setSimPreProcessor(pproc);
+			sos.createElementAttributeMapFromOntology();
+			Set<OWLClass> attributes = new HashSet<OWLClass>();
+			for (OWLNamedIndividual i : sourceOntol.getIndividualsInSignature()) {
+				attributes.addAll(sos.getAttributesForElement(i));
+			}
+			Map<OWLClassExpressionPair, Double> expected = new HashMap<OWLClassExpressionPair, Double>();
+			for (OWLClass a : attributes) {
+				for (OWLClass b : attributes) {
+					expected.put(new OWLClassExpressionPair(a, b), sos.getLowestCommonSubsumerIC(a, b).score);
+				}
+			}
+			Map<String, Double> expectedBMA = getBestMatchAverageScores();
+
+			File file = File.createTempFile("lcs", ".bin");
+			file.deleteOnExit();
+			sos.saveLowestCommonSubsumerTable(file.getAbsolutePath());
+			LCSTable table = LCSTable.load(file, sourceOntol);
+			assertTrue(table.size() > 0);
+
+			// same scores from the table
+			sos = new SimpleOwlSim(sourceOntol);
+			sos.setSimPreProcessor(pproc);
+			sos.createElementAttributeMapFromOntology();
+			sos.setLowestCommonSubsumerTable(table);
+			for (Map.Entry<OWLClassExpressionPair, Double> e : expected.entrySet()) {
+				OWLClassExpressionPair pair = e.getKey();
+				assertEquals(pair.c1+" "+pair.c2, e.getValue(), sos.getLowestCommonSubsumerIC(pair.c1, pair.c2).score);
+			}
+			assertEquals(expectedBMA, getBestMatchAverageScores());
+		}
+		finally {
+			reasoner.dispose();
+		}
+	}
+
+	private Map<String, Double> getBestMatchAverageScores() {
+		Map<String, Double> scores = new HashMap<String, Double>();
+		for (OWLNamedIndividual i : sourceOntol.getIndividualsInSignature()) {
+			for (OWLNamedIndividual j : sourceOntol.getIndividualsInSignature()) {
+				scores.put(i+" "+j, sos.getSimilarityBestMatchAverageAsym(i, j).score);
+			}
+		}
+		return scores;
+	}
+
 	private void showSim(OWLNamedIndividual i, OWLNamedIndividual j) {
 		
 		float s = sos.getElementJaccardSimilarity(i, j);
@@ -0,0 +1,85 @@
+package owltools.sim;
+
+import static junit.framework.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+import org.semanticweb.owlapi.model.OWLObject;
+
+import owltools.OWLToolsTestBasics;
+import owltools.graph.OWLGraphWrapper;
+import owltools.io.ParserWrapper;
+
+/**
+ * Checks the index based search against scores computed from the attribute closures.
+ */
+public class SimSearchIndexTest extends OWLToolsTestBasics {
+
+	@Test
+	public void testSearch() throws Exception {
+		ParserWrapper pw = new ParserWrapper();
+		OWLGraphWrapper g = new OWLGraphWrapper(pw.parseOWL(getResourceIRIString("q-in-e.omn")));
+		SimEngine se = new SimEngine(g);
+		Set<OWLObject> candidates = new HashSet<OWLObject>(g.getSourceOntology().getIndividualsInSignature());
+		assertTrue(candidates.size() > 2);
+		SimSearchIndex index = new SimSearchIndex(se, candidates);
+		assertEquals(candidates.size(), index.size());
+
+		double minIC = 0.0;
+		for (OWLObject q : candidates) {
+			List<SimSearchIndex.Hit> hits = index.search(q, minIC, 3);
+			assertTrue(hits.size() <= 3);
+			List<Double> expected = getExpectedScores(se, q, candidates, minIC);
+			for (int k = 0; k < hits.size(); k++) {
+				assertFalse(q.equals(hits.get(k).getCandidate()));
+				assertEquals(expected.get(k), hits.get(k).getScore(), 0.000001);
+			}
+			if (hits.size() < 3)
+				assertEquals(hits.size(), expected.size());
+		}
+
+		// incremental changes
+		OWLObject q = candidates.iterator().next();
+		List<SimSearchIndex.Hit> hits = index.search(q, minIC, 1);
+		if (!hits.isEmpty()) {
+			OWLObject best = hits.get(0).getCandidate();
+			assertTrue(index.removeCandidate(best));
+			assertFalse(index.containsCandidate(best));
+			for (SimSearchIndex.Hit hit : index.search(q, minIC, candidates.size())) {
+				assertFalse(best.equals(hit.getCandidate()));
+			}
+			index.addCandidate(best);
+			assertEquals(hits.get(0).getScore(), index.search(q, minIC, 1).get(0).getScore(), 0.000001);
+		}
+		assertEquals(candidates.size(), index.size());
+	}
+
+	private static List<Double> getExpectedScores(SimEngine se, OWLObject q, Set<OWLObject> candidates, double minIC) {
+		Set<OWLObject> qAtts = se.getAttributeClosureFor(q);
+		List<Double> scores = new ArrayList<Double>();
+		for (OWLObject c : candidates) {
+			if (c.equals(q))
+				continue;
+			Set<OWLObject> shared = se.getAttributeClosureFor(c);
+			shared.retainAll(qAtts);
+			double score = 0.0;
+			int n = 0;
+			for (OWLObject att : shared) {
+				Double ic = se.getInformationContent(att);
+				if (!se.isExcludedFromAnalysis(att) && ic != null && ic > minIC) {
+					score += ic;
+					n++;
+				}
+			}
+			if (n > 0)
+				scores.add(score);
+		}
+		Collections.sort(scores, Collections.reverseOrder());
+		return scores;
+	}
+}
@@ -0,0 +1,247 @@
+package owltools.sim;
+
+import static junit.framework.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Test;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLNamedIndividual;
+
+import owltools.sim.TiledAllByAllRunner.PairFilter;
+import owltools.sim.TiledAllByAllRunner.PairRenderer;
+
+public class TiledAllByAllRunnerTest {
+
+	private final List<File> tempDirs = new ArrayList<File>();
+
+	private static final PairFilter FILTER = new PairFilter() {
+
+		@Override
+		public boolean isComparable(OWLNamedIndividual i, OWLNamedIndividual j) {
+			return i.compareTo(j) > 0;
+		}
+	};
+
+	private static final PairRenderer RENDERER = new PairRenderer() {
+
+		@Override
+		public void render(OWLNamedIndividual i, OWLNamedIndividual j, PrintStream out) {
+			out.println(i+"\t"+j);
+		}
+	};
+
+	@Test
+	public void testOutputStream() throws Exception {
+		List<OWLNamedIndividual> elements = createElements(23);
+		TiledAllByAllRunner runner = new TiledAllByAllRunner(elements, FILTER, RENDERER);
+		runner.setTileSize(4);
+		runner.setNumThreads(3);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		runner.setOutputStream(new PrintStream(bytes));
+		assertEquals(36, runner.run());
+		List<String> actual = new ArrayList<String>(Arrays.asList(bytes.toString().split("\n")));
+		Collections.sort(actual);
+		assertEquals(getExpected(elements), actual);
+	}
+
+	@After
+	public void deleteTempDirs() {
+		for (File dir : tempDirs) {
+			FileUtils.deleteQuietly(dir);
+		}
+		tempDirs.clear();
+	}
+
+	@Test
+	public void testSymmetric() throws Exception {
+		List<OWLNamedIndividual> elements = createElements(17);
+		File dir = createTempDir();
+		// 6 by 6 tiles, only the 21 on and below the diagonal
+		TiledAllByAllRunner runner1 = createSymmetricRunner(elements, dir, 1, 2);
+		TiledAllByAllRunner runner2 = createSymmetricRunner(elements, dir, 2, 2);
+		List<Integer> tiles = new ArrayList<Integer>(runner1.getShardTiles());
+		tiles.addAll(runner2.getShardTiles());
+		assertEquals(21, tiles.size());
+		for (int t : tiles) {
+			assertTrue("tile above the diagonal: "+t, t / 6 >= t % 6);
+		}
+		assertEquals(11, runner1.run());
+		assertEquals(10, runner2.run());
+
+		List<String> actual = new ArrayList<String>();
+		for (int t : tiles) {
+			actual.addAll(readLines(runner1.getTileFile(t)));
+		}
+		Collections.sort(actual);
+		assertEquals(getExpected(elements), actual);
+		// no files for the skipped tiles
+		assertFalse(runner1.getTileFile(1).exists());
+	}
+
+	@Test
+	public void testShardsAndResume() throws Exception {
+		List<OWLNamedIndividual> elements = createElements(17);
+		File dir = createTempDir();
+		// shard 1 of 2, interrupted after three tiles
+		TiledAllByAllRunner runner = createRunner(elements, dir, 1, 2);
+		List<Integer> tiles = runner.getShardTiles();
+		assertEquals(18, tiles.size());
+		FileWriter w = new FileWriter(runner.getCheckpointFile());
+		w.write(runner.getCheckpointHeader()+"\n");
+		for (int k = 0; k < 3; k++) {
+			w.write(tiles.get(k)+";\n");
+			FileWriter tw = new FileWriter(runner.getTileFile(tiles.get(k)));
+			tw.close();
+		}
+		w.write(tiles.get(3)+"");
+		w.close();
+		// the incomplete tile is done again
+		assertEquals(15, runner.run());
+		assertEquals(0, runner.run());
+		assertEquals(0, createRunner(elements, dir, 1, 2).run());
+
+		TiledAllByAllRunner runner2 = createRunner(elements, dir, 2, 2);
+		assertEquals(18, runner2.run());
+
+		// the tiles written by the interrupted run were left empty
+		List<String> actual = new ArrayList<String>();
+		List<String> expected = getExpected(elements);
+		for (int t = 0; t < 36; t++) {
+			File f = runner.getTileFile(t);
+			assertTrue(f.toString(), f.exists());
+			if (t == tiles.get(0) || t == tiles.get(1) || t == tiles.get(2)) {
+				expected.removeAll(renderTile(elements, t, 3, 6));
+				continue;
+			}
+			actual.addAll(readLines(f));
+		}
+		Collections.sort(actual);
+		assertEquals(expected, actual);
+	}
+
+	@Test(expected=IOException.class)
+	public void testCheckpointMismatch() throws Exception {
+		List<OWLNamedIndividual> elements = createElements(10);
+		File dir = createTempDir();
+		createRunner(elements, dir, 1, 1).run();
+		TiledAllByAllRunner runner = createRunner(elements, dir, 1, 1);
+		runner.setTileSize(5);
+		runner.run();
+	}
+
+	@Test(expected=IOException.class)
+	public void testCheckpointOtherElements() throws Exception {
+		List<OWLNamedIndividual> elements = createElements(10);
+		File dir = createTempDir();
+		createRunner(elements, dir, 1, 1).run();
+		// same number of elements, one replaced
+		List<OWLNamedIndividual> other = new ArrayList<OWLNamedIndividual>(elements);
+		other.set(0, OWLManager.getOWLDataFactory().getOWLNamedIndividual(IRI.create("http://example.org/F_0")));
+		createRunner(other, dir, 1, 1).run();
+	}
+
+	@Test
+	public void testCheckpointElementOrder() throws Exception {
+		List<OWLNamedIndividual> elements = createElements(10);
+		List<OWLNamedIndividual> shuffled = new ArrayList<OWLNamedIndividual>(elements);
+		Collections.shuffle(shuffled);
+		assertEquals(createRunner(elements, null, 1, 1).getCheckpointHeader(),
+				createRunner(shuffled, null, 1, 1).getCheckpointHeader());
+	}
+
+	private static TiledAllByAllRunner createRunner(List<OWLNamedIndividual> elements, File dir,
+			int shard, int numShards) {
+		TiledAllByAllRunner runner = new TiledAllByAllRunner(elements, FILTER, RENDERER);
+		runner.setTileSize(3);
+		runner.setNumThreads(2);
+		runner.setShard(shard, numShards);
+		runner.setOutputDir(dir);
+		return runner;
+	}
+
+	// without a filter, the same pairs as FILTER
+	private static TiledAllByAllRunner createSymmetricRunner(List<OWLNamedIndividual> elements, File dir,
+			int shard, int numShards) {
+		TiledAllByAllRunner runner = new TiledAllByAllRunner(elements, null, RENDERER);
+		runner.setSymmetric(true);
+		runner.setTileSize(3);
+		runner.setNumThreads(2);
+		runner.setShard(shard, numShards);
+		runner.setOutputDir(dir);
+		return runner;
+	}
+
+	private static List<OWLNamedIndividual> createElements(int n) {
+		OWLDataFactory df = OWLManager.getOWLDataFactory();
+		List<OWLNamedIndividual> elements = new ArrayList<OWLNamedIndividual>();
+		for (int k = 0; k < n; k++) {
+			elements.add(df.getOWLNamedIndividual(IRI.create("http://example.org/E_"+k)));
+		}
+		// not in sorted order
+		Collections.shuffle(elements);
+		return elements;
+	}
+
+	private static List<String> getExpected(List<OWLNamedIndividual> elements) {
+		List<String> expected = new ArrayList<String>();
+		for (OWLNamedIndividual i : elements) {
+			for (OWLNamedIndividual j : elements) {
+				if (FILTER.isComparable(i, j))
+					expected.add(i+"\t"+j);
+			}
+		}
+		Collections.sort(expected);
+		return expected;
+	}
+
+	private static List<String> renderTile(List<OWLNamedIndividual> elements, int tile, int tileSize, int n) {
+		List<OWLNamedIndividual> sorted = new ArrayList<OWLNamedIndividual>(elements);
+		Collections.sort(sorted);
+		List<String> lines = new ArrayList<String>();
+		for (int ii = (tile / n) * tileSize; ii < Math.min((tile / n + 1) * tileSize, sorted.size()); ii++) {
+			for (int jj = (tile % n) * tileSize; jj < Math.min((tile % n + 1) * tileSize, sorted.size()); jj++) {
+				if (FILTER.isComparable(sorted.get(ii), sorted.get(jj)))
+					lines.add(sorted.get(ii)+"\t"+sorted.get(jj));
+			}
+		}
+		return lines;
+	}
+
+	private static List<String> readLines(File f) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new FileReader(f));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				lines.add(line);
+			}
+		}
+		finally {
+			reader.close();
+		}
+		return lines;
+	}
+
+	private File createTempDir() throws IOException {
+		File dir = File.createTempFile("allbyall", "");
+		dir.delete();
+		dir.mkdirs();
+		tempDirs.add(dir);
+		return dir;
+	}
+}
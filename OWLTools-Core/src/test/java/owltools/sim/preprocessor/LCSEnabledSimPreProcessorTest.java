@@ -0,0 +1,90 @@
+package owltools.sim.preprocessor;
+
+import static junit.framework.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+import org.semanticweb.elk.owlapi.ElkReasonerFactory;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.reasoner.Node;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+
+import owltools.OWLToolsTestBasics;
+import owltools.io.ParserWrapper;
+import owltools.sim.LCSTable;
+import owltools.sim.OWLClassExpressionPair;
+
+/**
+ * Checks the bitset based named LCSs against the reasoner based ones,
+ * and the LCS table file.
+ */
+public class LCSEnabledSimPreProcessorTest extends OWLToolsTestBasics {
+
+	@Test
+	public void testPrecomputeNamedLowestCommonSubsumers() throws Exception {
+		ParserWrapper pw = new ParserWrapper();
+		OWLOntology ont = pw.parseOWL(getResourceIRIString("q-in-e.omn"));
+		OWLReasoner reasoner = new ElkReasonerFactory().createReasoner(ont);
+		try {
+			NullSimPreProcessor pproc = new NullSimPreProcessor();
+			pproc.setInputOntology(ont);
+			pproc.setOutputOntology(ont);
+			pproc.setReasoner(reasoner);
+			pproc.setNumThreads(3);
+
+			Set<OWLClass> classes = ont.getClassesInSignature();
+			assertTrue(classes.size() > 2);
+			Map<OWLClassExpressionPair, Set<Node<OWLClass>>> expected = new HashMap<OWLClassExpressionPair, Set<Node<OWLClass>>>();
+			for (OWLClass a : classes) {
+				for (OWLClass b : classes) {
+					if (a.compareTo(b) > 0) {
+						expected.put(new OWLClassExpressionPair(a, b), pproc.getNamedLowestCommonSubsumers(a, b));
+					}
+				}
+			}
+
+			pproc.precomputeNamedLowestCommonSubsumers(classes);
+			for (Map.Entry<OWLClassExpressionPair, Set<Node<OWLClass>>> e : expected.entrySet()) {
+				OWLClassExpressionPair p = e.getKey();
+				assertEquals(e.getValue(), pproc.getNamedLowestCommonSubsumers(p.c1, p.c2));
+				assertEquals(e.getValue(), pproc.getNamedLowestCommonSubsumers(p.c2, p.c1));
+			}
+		}
+		finally {
+			reasoner.dispose();
+		}
+	}
+
+	@Test
+	public void testTableRoundTrip() throws Exception {
+		ParserWrapper pw = new ParserWrapper();
+		OWLOntology ont = pw.parseOWL(getResourceIRIString("q-in-e.omn"));
+		List<OWLClass> classes = new ArrayList<OWLClass>(ont.getClassesInSignature());
+		assertTrue(classes.size() > 2);
+		LCSTable table = new LCSTable();
+		for (int i = 1; i < classes.size(); i++) {
+			table.put(classes.get(i-1), classes.get(i), classes.get(0));
+		}
+		File file = File.createTempFile("lcs", ".bin");
+		file.deleteOnExit();
+		table.save(file);
+
+		LCSTable loaded = LCSTable.load(file, ont);
+		assertEquals(table.size(), loaded.size());
+		Set<OWLClass> lcs = new HashSet<OWLClass>();
+		for (int i = 1; i < classes.size(); i++) {
+			assertEquals(classes.get(0), loaded.get(classes.get(i-1), classes.get(i)));
+			// symmetric
+			lcs.add(loaded.get(classes.get(i), classes.get(i-1)));
+		}
+		assertEquals(1, lcs.size());
+	}
+}
@@ -0,0 +1,82 @@
+package owltools.util;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link FastBloomFilter}.
+ */
+public class FastBloomFilterTest {
+
+	@Test
+	public void testContains() {
+		FastBloomFilter<String> f = new FastBloomFilter<String>(0.01, 1000);
+		for (int i = 0; i < 1000; i++) {
+			f.add("in-"+i);
+		}
+		for (int i = 0; i < 1000; i++) {
+			assertTrue(f.contains("in-"+i));
+		}
+		int falsePositives = 0;
+		for (int i = 0; i < 10000; i++) {
+			if (f.contains("out-"+i))
+				falsePositives++;
+		}
+		// expected around 100
+		assertTrue("false positives: "+falsePositives, falsePositives < 300);
+		assertEquals(1000, f.estimateCardinality(), 50);
+	}
+
+	@Test
+	public void testEstimates() {
+		FastBloomFilter<String> a = new FastBloomFilter<String>(0.01, 2000);
+		FastBloomFilter<String> b = new FastBloomFilter<String>(0.01, 2000);
+		// a = 0..999, b = 500..1499
+		for (int i = 0; i < 1000; i++) {
+			a.add("e-"+i);
+			b.add("e-"+(i+500));
+		}
+		assertEquals(1500, a.estimateUnionCardinality(b), 75);
+		assertEquals(500, a.estimateIntersectionCardinality(b), 75);
+		assertEquals(1.0/3.0, a.estimateJaccardSimilarity(b), 0.05);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testIncompatible() {
+		new FastBloomFilter<String>(1024, 3).estimateUnionCardinality(new FastBloomFilter<String>(2048, 3));
+	}
+
+	@Test
+	public void testConcurrentAdd() throws Exception {
+		final FastBloomFilter<Integer> f = new FastBloomFilter<Integer>(0.01, 40000);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		for (int t = 0; t < 4; t++) {
+			final int offset = t * 10000;
+			executor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					for (int i = 0; i < 10000; i++) {
+						f.add(offset + i);
+					}
+				}
+			});
+		}
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+		assertEquals(40000, f.count());
+		List<Integer> missing = new ArrayList<Integer>();
+		for (int i = 0; i < 40000; i++) {
+			if (!f.contains(i))
+				missing.add(i);
+		}
+		assertTrue(missing.toString(), missing.isEmpty());
+	}
+}
@@ -1,7 +1,6 @@
 package owltools.ontologyrelease;
 
 import java.io.BufferedOutputStream;
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -30,10 +29,8 @@ import org.obolibrary.oboformat.parser.InvalidXrefMapException;
 import org.obolibrary.oboformat.parser.OBOFormatConstants.OboFormatTag;
 import org.obolibrary.oboformat.parser.OBOFormatDanglingReferenceException;
 import org.obolibrary.oboformat.parser.XrefExpander;
-import org.obolibrary.oboformat.writer.OBOFormatWriter;
 import org.obolibrary.owl.LabelFunctionalSyntaxOntologyStorer;
 import org.semanticweb.owlapi.model.AddAxiom;
-import org.semanticweb.owlapi.model.AddImport;
 import org.semanticweb.owlapi.model.AxiomType;
 import org.semanticweb.owlapi.model.IRI;
 import org.semanticweb.owlapi.model.OWLAxiom;
@@ -46,13 +43,11 @@ import org.semanticweb.owlapi.model.OWLObject;
 import org.semanticweb.owlapi.model.OWLOntology;
 import org.semanticweb.owlapi.model.OWLOntologyChange;
 import org.semanticweb.owlapi.model.OWLOntologyCreationException;
-import org.semanticweb.owlapi.model.OWLOntologyFormat;
 import org.semanticweb.owlapi.model.OWLOntologyManager;
 import org.semanticweb.owlapi.model.OWLOntologyStorageException;
 import org.semanticweb.owlapi.model.OWLSubClassOfAxiom;
 import org.semanticweb.owlapi.model.RemoveAxiom;
 import org.semanticweb.owlapi.model.RemoveImport;
-import org.semanticweb.owlapi.model.SetOntologyID;
 import org.semanticweb.owlapi.reasoner.NodeSet;
 import org.semanticweb.owlapi.reasoner.OWLReasoner;
 import org.semanticweb.owlapi.reasoner.OWLReasonerFactory;
@@ -77,7 +72,6 @@ import owltools.ontologyrelease.OortConfiguration.MacroStrategy;
 import owltools.ontologyverification.OntologyCheck;
 import owltools.ontologyverification.OntologyCheckHandler;
 import owltools.ontologyverification.OntologyCheckHandler.CheckSummary;
-import uk.ac.manchester.cs.owl.owlapi.OWLImportsDeclarationImpl;
 
 /**
  * This class is a command line utility which builds an ontology release. The
@@ -96,11 +90,14 @@ public class OboOntologyReleaseRunner extends ReleaseRunnerFileTools {
 	Mooncat mooncat;
 	OWLPrettyPrinter owlpp;
 	OortConfiguration oortConfig;
+	ReleaseOntologySaver saver;
+	ReleaseStages stages;
+	private boolean writeStage = true;
 
 	public OboOntologyReleaseRunner(OortConfiguration oortConfig, File base) throws IOException {
 		super(base, logger, oortConfig.isUseReleaseFolder(), oortConfig.isIgnoreLockFile());
 		this.oortConfig = oortConfig;
-		this.ontologyChecks = new OntologyCheckHandler(false, oortConfig.getOntologyChecks());
+		this.ontologyChecks = new OntologyCheckHandler(false, oortConfig.getOntologyChecks(), oortConfig.getThreads());
 	}
 
 	/**
@@ -320,6 +317,12 @@ public class OboOntologyReleaseRunner extends ReleaseRunnerFileTools {
 			else if (opts.nextEq("--threads")) {
 				oortConfig.setThreads(Integer.parseInt(opts.nextOpt()));
 			}
+			else if (opts.nextEq("--gzip")) {
+				oortConfig.setGzipOutput(true);
+			}
+			else if (opts.nextEq("--incremental")) {
+				oortConfig.setIncremental(true);
+			}
 			else if (opts.nextEq("--run-obo-basic-dag-check")) {
 				oortConfig.setRunOboBasicDagCheck(true);
 			}
@@ -371,6 +374,19 @@ public class OboOntologyReleaseRunner extends ReleaseRunnerFileTools {
 	public boolean createRelease(Vector<String> allPaths) throws IOException, 
 	OWLOntologyCreationException, FileNotFoundException, OWLOntologyStorageException,
 	OboOntologyReleaseRunnerCheckException, AnnotationCardinalityException
+	{
+		saver = new ReleaseOntologySaver(this, oortConfig);
+		try {
+			return buildRelease(allPaths);
+		}
+		finally {
+			saver.shutdown();
+		}
+	}
+
+	private boolean buildRelease(Vector<String> allPaths) throws IOException, 
+	OWLOntologyCreationException, FileNotFoundException, OWLOntologyStorageException,
+	OboOntologyReleaseRunnerCheckException, AnnotationCardinalityException
 	{
 		if (allPaths.isEmpty()) {
 			logger.error("No files to load found, please specify at least one ontology file.");
@@ -409,6 +425,16 @@ public class OboOntologyReleaseRunner extends ReleaseRunnerFileTools {
 		if (gafs != null) {
 			logger.info("Using the following gaf files: " +gafs);
 		}
+		stages = ReleaseStages.create(oortConfig, allPaths);
+		stages.setPrevious(readStageInfo());
+		// the version is only known after loading, until then assume the last one:
+		// with unchanged inputs, a new release would only differ in a generated version
+		stages.setVersion(stages.getPreviousVersion());
+		if (oortConfig.isIncremental() && stages.canReuseFrom(ReleaseStages.LOAD, this)) {
+			logger.info("Skipping release, as the inputs and configuration did not change since the last release.");
+			return false;
+		}
+		beginStage(ReleaseStages.LOAD);
 		parser = new ParserWrapper();
 		String catalogXML = oortConfig.getCatalogXML();
 		if (catalogXML != null) {
@@ -497,6 +523,8 @@ public class OboOntologyReleaseRunner extends ReleaseRunnerFileTools {
 			}
 			mooncat = new Mooncat(gafGraph);
 			owlpp = new OWLPrettyPrinter(gafGraph);
+			// the old wrapper is replaced, but the manager is still used
+			graph.dispose();
 		}
 		
 		if (oortConfig.getSourceOntologyPrefixes() != null) {
@@ -548,6 +576,7 @@ public class OboOntologyReleaseRunner extends ReleaseRunnerFileTools {
 		
 		version = buildVersionInfo(version);
 		logger.info("Version: "+version);
+		stages.setVersion(version);
 		OntologyVersionTools.setOboInOWLVersion(mooncat.getOntology(), version);
 		// the versionIRI for in the ontologyID is set during write out, 
 		// as they are specific to the file name
@@ -584,7 +613,7 @@ public class OboOntologyReleaseRunner extends ReleaseRunnerFileTools {
 		// ----------------------------------------
 		// Generate bridge ontologies from xref expansion
 		// ----------------------------------------
-		if (oortConfig.isExpandXrefs()) {
+		if (oortConfig.isExpandXrefs() && beginStage(ReleaseStages.XREF_BRIDGES)) {
 			logger.info("Creating Bridge Ontologies by expanding Xrefs");
 
 			// Note that this introduces a dependency on the oboformat-specific portion
@@ -618,12 +647,17 @@ public class OboOntologyReleaseRunner extends ReleaseRunnerFileTools {
 		// Asserted (non-classified)
 		// ----------------------------------------
 
-		if (oortConfig.isAsserted()) {
+		if (oortConfig.isAsserted() && beginStage(ReleaseStages.ASSERTED)) {
 			logger.info("Creating Asserted Ontology (copy of original)");
 			saveInAllFormats(ontologyId, "non-classified", gciOntology);
 			logger.info("Asserted Ontology Creation Completed");
 		}
 		
+		if (reuseRemaining(ReleaseStages.MERGED)) {
+			return finishRelease(version);
+		}
+		beginStage(ReleaseStages.MERGED);
+
 		// ----------------------------------------
 		// Create query from named query (non-classified)
 		// ----------------------------------------		
@@ -719,6 +753,11 @@ public class OboOntologyReleaseRunner extends ReleaseRunnerFileTools {
 			}
 		}
 
+		if (reuseRemaining(ReleaseStages.MAIN)) {
+			return finishRelease(version);
+		}
+		beginStage(ReleaseStages.MAIN);
+
 		if (oortConfig.isRemoveDanglingBeforeReasoning()) {
 			mooncat.removeDanglingAxioms();
 		}
@@ -826,7 +865,7 @@ public class OboOntologyReleaseRunner extends ReleaseRunnerFileTools {
 		// ----------------------------------------
 		// including: named subsets, profile subsets (e.g. EL), simple subsets
 
-		if (oortConfig.isWriteSubsets()) {
+		if (oortConfig.isWriteSubsets() && beginStage(ReleaseStages.SUBSETS)) {
 			// named subsets
 			logger.info("writing named subsets");
 			Set<String> subsets = mooncat.getGraph().getAllUsedSubsets();
@@ -844,7 +883,7 @@ public class OboOntologyReleaseRunner extends ReleaseRunnerFileTools {
 		}
 
 		// write EL version
-		if(oortConfig.isWriteELOntology()) {
+		if(oortConfig.isWriteELOntology() && beginStage(ReleaseStages.EL)) {
 			logger.info("Creating EL ontology");
 			OWLGraphWrapper elGraph = InferenceBuilder.enforceEL(mooncat.getGraph());
 			saveInAllFormats(ontologyId, "el", elGraph.getSourceOntology(), gciOntology);
@@ -856,6 +895,9 @@ public class OboOntologyReleaseRunner extends ReleaseRunnerFileTools {
 		// ----------------------------------------
 		
 		if (oortConfig.isRelaxed()) {
+			// the simple ontology depends on the removed axioms, 
+			// so only writing is skipped for an unchanged stage
+			beginStage(ReleaseStages.RELAXED);
 			
 			logger.info("Creating relaxed ontology");
 			
@@ -871,7 +913,7 @@ public class OboOntologyReleaseRunner extends ReleaseRunnerFileTools {
 		// Simple/Basic (no MIREOTs, no imports)
 		// ----------------------------------------
 		// this is the same as MAIN, with certain axiom REMOVED
-		if (oortConfig.isSimple()) {
+		if (oortConfig.isSimple() && beginStage(ReleaseStages.SIMPLE)) {
 
 			logger.info("Creating simple ontology");
 
@@ -955,10 +997,54 @@ public class OboOntologyReleaseRunner extends ReleaseRunnerFileTools {
 		// End of export file creation
 		// ----------------------------------------
 
+		return finishRelease(version);
+	}
+
+	/**
+	 * Start a stage of the release, see {@link ReleaseStages}.
+	 * 
+	 * @param stage
+	 * @return false, if the stage is unchanged and the files of the last release are reused
+	 * @throws IOException
+	 */
+	private boolean beginStage(String stage) throws IOException {
+		writeStage = stages.begin(stage, oortConfig.isIncremental(), this);
+		return writeStage;
+	}
+
+	/**
+	 * In incremental mode, check whether the stage and all stages after it are unchanged. 
+	 * If so, reuse their files from the last release.
+	 * 
+	 * @param stage
+	 * @return true, if the files of all remaining stages are reused
+	 * @throws IOException
+	 */
+	private boolean reuseRemaining(String stage) throws IOException {
+		if (oortConfig.isIncremental() && stages.canReuseFrom(stage, this)) {
+			logger.info("Stage "+stage+" and all following stages are unchanged, reusing their files from the last release.");
+			stages.reuseFrom(stage, this);
+			return true;
+		}
+		return false;
+	}
+
+	private boolean finishRelease(String version) throws IOException, OWLOntologyStorageException, OWLOntologyCreationException {
+		// wait for all files to be written
+		saver.finish();
+		writeStageInfo(stages.getProperties());
+
 		boolean success = commit(version);
 		return success;
 	}
 
+	@Override
+	void outputFileCreated(String fileName) {
+		if (stages != null) {
+			stages.recordOutput(fileName);
+		}
+	}
+
 	/**
 	 * Handle all the inference and optional justification steps for the main ontology.
 	 * Adds all findings to the reasoner report.
@@ -983,14 +1069,15 @@ public class OboOntologyReleaseRunner extends ReleaseRunnerFileTools {
 		final OWLDataFactory factory = manager.getOWLDataFactory();
 		final Set<OWLSubClassOfAxiom> removedSubClassOfAxioms = new HashSet<OWLSubClassOfAxiom>();
 		final Set<RemoveAxiom> removedSubClassOfAxiomChanges = new HashSet<RemoveAxiom>();
-//		int threads = oortConfig.getThreads();
+		int threads = oortConfig.getThreads();
 		final InferenceBuilder infBuilder;
-//		if (threads > 1) {
-//			infBuilder = new ThreadedInferenceBuilder(g, oortConfig.getReasonerName(), oortConfig.isEnforceEL(), threads);
-//		}
-//		else {
+		// only ELK supports concurrent queries on one reasoner instance
+		if (threads > 1 && InferenceBuilder.REASONER_ELK.equals(oortConfig.getReasonerName())) {
+			infBuilder = new ThreadedInferenceBuilder(g, oortConfig.getReasonerName(), oortConfig.isEnforceEL(), threads);
+		}
+		else {
 			infBuilder = new InferenceBuilder(g, oortConfig.getReasonerName(), oortConfig.isEnforceEL());
-//		}
+		}
 
 		// CONSISTENCY CHECK
 		// A consistent ontology is a primary for sensible reasoning results. 
@@ -1227,13 +1314,14 @@ public class OboOntologyReleaseRunner extends ReleaseRunnerFileTools {
 
 	private void saveOntologyInAllFormats(String ontologyId, String fileNameBase, OWLOntology ontologyToSave, OWLOntology gciOntology) throws OWLOntologyStorageException, IOException, OWLOntologyCreationException {
 
+		if (!writeStage) {
+			logger.info("Skip saving "+fileNameBase+", the files of the last release are reused");
+			return;
+		}
 		logger.info("Saving: "+fileNameBase);
 
 		final OWLOntologyManager manager = mooncat.getManager();
 
-		// if we add a new ontology id, remember the change, to restore the original 
-		// ontology id after writing into a file.
-		SetOntologyID reset = null;
 		Date date = null;
 
 		// check if there is an existing version
@@ -1254,82 +1342,7 @@ public class OboOntologyReleaseRunner extends ReleaseRunnerFileTools {
 			}
 		}
 
-		boolean writeOWL = !oortConfig.isSkipFormat("owl");
-		boolean writeOWX = !oortConfig.isSkipFormat("owx");
-		boolean writeOFN = oortConfig.isWriteLabelOWL();
-		
-		if (date != null && (writeOWL || writeOWX)) {
-			SetOntologyID change = OntologyVersionTools.setOntologyVersion(ontologyToSave, date, ontologyId, fileNameBase);
-			// create change axiom with original id
-			reset = new SetOntologyID(ontologyToSave, change.getOriginalOntologyID());
-		}
-
-		if (writeOWL) {
-			OutputStream os = getOutputSteam(fileNameBase +".owl");
-			write(manager, ontologyToSave, oortConfig.getDefaultFormat(), os);
-		}
-
-		
-		if (writeOWX) {
-			OutputStream osxml = getOutputSteam(fileNameBase +".owx");
-			write(manager, ontologyToSave, oortConfig.getOwlXMLFormat(), osxml);
-		}
-		
-		if (writeOFN) {
-			OutputStream os = getOutputSteam(fileNameBase +".ofn");
-			write(manager, ontologyToSave, oortConfig.getOwlOfnFormat(), os);
-		}
-
-		if (reset != null) {
-			// reset versionIRI
-			// the reset is required, because each owl file 
-			// has its corresponding file name in the version IRI.
-			manager.applyChange(reset);
-		}
-
-		if (gciOntology != null && (writeOWL || writeOWX || writeOFN)) {
-			OWLOntologyManager gciManager = gciOntology.getOWLOntologyManager();
-
-			// create specific import for the generated owl ontology
-			OWLImportsDeclaration importDeclaration = new OWLImportsDeclarationImpl(IRI.create(fileNameBase +".owl"));
-			AddImport addImport = new AddImport(gciOntology, importDeclaration);
-			RemoveImport removeImport = new RemoveImport(gciOntology, importDeclaration);
-
-			gciManager.applyChange(addImport);
-			try {
-				if (writeOWL) {
-					OutputStream gciOS = getOutputSteam(fileNameBase +"-aux.owl");
-					write(gciManager, gciOntology, oortConfig.getDefaultFormat(), gciOS);
-				}
-
-				if (writeOWX) {
-					OutputStream gciOSxml = getOutputSteam(fileNameBase +"-aux.owx");
-					write(gciManager, gciOntology, oortConfig.getOwlXMLFormat(), gciOSxml);
-				}
-
-				if (writeOFN) {
-					OutputStream gciOS = getOutputSteam(fileNameBase +"-aux.ofn");
-					write(gciManager, gciOntology, oortConfig.getOwlOfnFormat(), gciOS);
-				}
-			}
-			finally {
-				gciManager.applyChange(removeImport);
-			}
-		}
-
-		if (!oortConfig.isSkipFormat("obo")) {
-
-			Owl2Obo owl2obo = new Owl2Obo();
-			OBODoc doc = owl2obo.convert(ontologyToSave);
-
-			OBOFormatWriter writer = new OBOFormatWriter();
-
-			BufferedWriter bwriter = getWriter(fileNameBase +".obo");
-
-			writer.write(doc, bwriter);
-
-			bwriter.close();
-		}
+		saver.save(ontologyId, fileNameBase, ontologyToSave, gciOntology, date, manager);
 
 		if (!oortConfig.isSkipFormat("metadata")) {
 			if (oortConfig.isWriteMetadata()) {
@@ -1338,21 +1351,11 @@ public class OboOntologyReleaseRunner extends ReleaseRunnerFileTools {
 		}
 	}
 	
-	private static void write(OWLOntologyManager manager, OWLOntology ont, OWLOntologyFormat format, OutputStream out) throws OWLOntologyStorageException {
-		try {
-			manager.saveOntology(ont, format, out);
-		} finally {
-			try {
-				out.close();
-			} catch (IOException e) {
-				logger.warn("Could not close stream.", e);
-			} 
-		}
-		
-	}
-
 	private void saveReasonerReport(String ontologyId,
 			List<String> reasonerReportLines) {
+		if (!writeStage) {
+			return;
+		}
 		String fn = ontologyId + "-reasoner-report.txt";
 		OutputStream fos;
 		try {
@@ -94,6 +94,10 @@ public class OortConfiguration {
 
 	private int threads = 1;
 	
+	private boolean gzipOutput = false;
+	
+	private boolean incremental = false;
+	
 	private boolean runOboBasicDagCheck = false;
 	
 	private List<OntologyCheck> ontologyChecks = getDefaultOntologyChecks();
@@ -774,6 +778,35 @@ public class OortConfiguration {
 		this.threads = threads;
 	}
 
+	/**
+	 * @return true, if a gzip compressed copy of each ontology file is written
+	 */
+	public boolean isGzipOutput() {
+		return gzipOutput;
+	}
+
+	/**
+	 * @param gzipOutput if true, also write a gzip compressed copy of each ontology file, with a .gz suffix
+	 */
+	public void setGzipOutput(boolean gzipOutput) {
+		this.gzipOutput = gzipOutput;
+	}
+
+	/**
+	 * @return true, if unchanged stages reuse the files of the last release
+	 * @see ReleaseStages
+	 */
+	public boolean isIncremental() {
+		return incremental;
+	}
+
+	/**
+	 * @param incremental if true, unchanged stages reuse the files of the last release
+	 */
+	public void setIncremental(boolean incremental) {
+		this.incremental = incremental;
+	}
+
 	/**
 	 * @return the runOboBasicDagCheck
 	 */
@@ -901,6 +934,8 @@ public class OortConfiguration {
 		putValue(properties, "removeQueryOntologyReference", config.removeQueryOntologyReference);
 		putValue(properties, "ontologyChecks", config.ontologyChecks);
 		putValue(properties, "threads", config.threads);
+		putValue(properties, "gzipOutput", config.gzipOutput);
+		putValue(properties, "incremental", config.incremental);
 		putValue(properties, "runOboBasicDagCheck", config.runOboBasicDagCheck);
 		return properties;
 	}
@@ -1015,6 +1050,8 @@ public class OortConfiguration {
 		config.removeQueryOntologyReference = getValue(properties, "removeQueryOntologyReference", config.removeQueryOntologyReference);
 		config.ontologyChecks = getClassValues(properties, "ontologyChecks", getDefaultOntologyChecks());
 		config.threads = getValue(properties, "threads", config.threads);
+		config.gzipOutput = getValue(properties, "gzipOutput", config.gzipOutput);
+		config.incremental = getValue(properties, "incremental", config.incremental);
 		config.runOboBasicDagCheck = getValue(properties, "runOboBasicDagCheck", config.runOboBasicDagCheck);
 	}
 	
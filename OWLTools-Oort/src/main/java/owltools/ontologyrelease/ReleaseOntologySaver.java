@@ -0,0 +1,494 @@
+package owltools.ontologyrelease;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.TeeOutputStream;
+import org.apache.log4j.Logger;
+import org.obolibrary.obo2owl.Owl2Obo;
+import org.obolibrary.oboformat.model.OBODoc;
+import org.obolibrary.oboformat.writer.OBOFormatWriter;
+import org.obolibrary.owl.LabelFunctionalSyntaxOntologyStorer;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.AddImport;
+import org.semanticweb.owlapi.model.AddOntologyAnnotation;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotation;
+import org.semanticweb.owlapi.model.OWLImportsDeclaration;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyFormat;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.model.OWLOntologyStorageException;
+import org.semanticweb.owlapi.model.RemoveImport;
+import org.semanticweb.owlapi.model.SetOntologyID;
+import org.semanticweb.owlapi.vocab.PrefixOWLOntologyFormat;
+
+/**
+ * Writes the products of a release, each in all configured formats.
+ * <br>
+ * With more than one thread, the products are written on a thread pool. Each
+ * product is copied into a new manager when it is submitted, so the release
+ * runner can go on modifying the ontology for the next product. The output
+ * files are opened on the calling thread, so checks for overwriting a file
+ * fail early and in order. The queue of products is bounded: if it is full,
+ * the calling thread writes the product itself, which limits the number of
+ * copies in memory.
+ * <br>
+ * With a single thread, the products are written immediately, without a copy.
+ * <br>
+ * Optionally, a gzip compressed copy of each file is written next to it, with a .gz
+ * suffix. The uncompressed files are always written, as the version IRIs, aux imports
+ * and subset IRIs refer to them. Bytes written and time are summed per format, see
+ * {@link #getSummary()}.
+ */
+class ReleaseOntologySaver {
+
+	private static final Logger LOG = Logger.getLogger(ReleaseOntologySaver.class);
+
+	static final String OWL = ".owl";
+	static final String OWX = ".owx";
+	static final String OFN = ".ofn";
+	static final String AUX_OWL = "-aux.owl";
+	static final String AUX_OWX = "-aux.owx";
+	static final String AUX_OFN = "-aux.ofn";
+	static final String OBO = ".obo";
+
+	private static final String[] SUFFIXES = { OWL, OWX, OFN, AUX_OWL, AUX_OWX, AUX_OFN, OBO };
+
+	private final ReleaseRunnerFileTools files;
+	private final OortConfiguration config;
+	private final ThreadPoolExecutor executor;
+	private final List<Product> products = new ArrayList<Product>();
+	private final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+	private final ConcurrentMap<String, FormatStatistics> statistics = new ConcurrentHashMap<String, FormatStatistics>();
+
+	/**
+	 * @param files
+	 * @param config uses the number of threads, skipped formats and gzip setting
+	 */
+	ReleaseOntologySaver(ReleaseRunnerFileTools files, OortConfiguration config) {
+		this.files = files;
+		this.config = config;
+		int threads = config.getThreads();
+		if (threads > 1) {
+			LOG.info("Saving ontologies with "+threads+" threads");
+			executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+					new ArrayBlockingQueue<Runnable>(threads), new ThreadFactory() {
+
+						private final AtomicInteger count = new AtomicInteger();
+
+						@Override
+						public Thread newThread(Runnable r) {
+							Thread t = new Thread(r, "oort-save-"+count.incrementAndGet());
+							t.setDaemon(true);
+							return t;
+						}
+					}, new ThreadPoolExecutor.CallerRunsPolicy());
+		}
+		else {
+			executor = null;
+		}
+	}
+
+	/**
+	 * Write the ontology in all formats, which are not skipped.
+	 *
+	 * @param ontologyId
+	 * @param fileNameBase
+	 * @param ontology
+	 * @param gciOntology GCIs, written as aux file importing the ontology, or null
+	 * @param date version date for the version IRI of the OWL files, or null
+	 * @param manager used for writing the OWL files, if the ontology is not copied
+	 * @throws IOException
+	 * @throws OWLOntologyStorageException
+	 * @throws OWLOntologyCreationException
+	 */
+	void save(String ontologyId, String fileNameBase, OWLOntology ontology, OWLOntology gciOntology,
+			Date date, OWLOntologyManager manager)
+			throws IOException, OWLOntologyStorageException, OWLOntologyCreationException
+	{
+		// report failures of earlier products, before starting a new one
+		checkFailures();
+		if (executor != null) {
+			manager = OWLManager.createOWLOntologyManager();
+			if (config.isWriteLabelOWL()) {
+				manager.addOntologyStorer(new LabelFunctionalSyntaxOntologyStorer());
+			}
+			ontology = copy(ontology, manager);
+			if (gciOntology != null) {
+				gciOntology = copy(gciOntology, manager);
+			}
+		}
+		Product product = new Product(ontologyId, fileNameBase, ontology, gciOntology, date, manager);
+		try {
+			product.open();
+		} catch (IOException e) {
+			product.closeAll();
+			throw e;
+		}
+		if (executor == null) {
+			product.run();
+		}
+		else {
+			products.add(product);
+			futures.add(executor.submit(product));
+		}
+	}
+
+	/**
+	 * Wait for all products to be written and log the summary.
+	 *
+	 * @throws IOException
+	 * @throws OWLOntologyStorageException
+	 * @throws OWLOntologyCreationException
+	 */
+	void finish() throws IOException, OWLOntologyStorageException, OWLOntologyCreationException {
+		for (Future<Void> future : futures) {
+			get(future);
+		}
+		futures.clear();
+		products.clear();
+		LOG.info(getSummary());
+	}
+
+	/**
+	 * Stop all threads, the products which are not written yet are discarded.
+	 */
+	void shutdown() {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+		for (Product product : products) {
+			product.closeAll();
+		}
+		products.clear();
+		futures.clear();
+	}
+
+	/**
+	 * @return number of files, bytes written and time for each format
+	 */
+	String getSummary() {
+		StringBuilder sb = new StringBuilder("Saved ontologies:");
+		for (String suffix : SUFFIXES) {
+			FormatStatistics s = statistics.get(suffix);
+			if (s != null) {
+				sb.append("\n\t").append(suffix);
+				sb.append("\tfiles: ").append(s.files.get());
+				sb.append("\tbytes: ").append(s.bytes.get());
+				if (s.gzipBytes.get() > 0) {
+					sb.append("\tgzip bytes: ").append(s.gzipBytes.get());
+				}
+				sb.append("\ttime: ").append(s.millis.get()).append(" ms");
+			}
+		}
+		return sb.toString();
+	}
+
+	private void checkFailures() throws IOException, OWLOntologyStorageException, OWLOntologyCreationException {
+		for (Future<Void> future : futures) {
+			if (future.isDone()) {
+				get(future);
+			}
+		}
+	}
+
+	private static void get(Future<Void> future) throws IOException, OWLOntologyStorageException, OWLOntologyCreationException {
+		try {
+			future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while saving ontologies", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof OWLOntologyStorageException) {
+				throw (OWLOntologyStorageException) cause;
+			}
+			if (cause instanceof OWLOntologyCreationException) {
+				throw (OWLOntologyCreationException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	/**
+	 * Copy the axioms, annotations and import declarations of the ontology.
+	 * The imported ontologies are not loaded into the manager.
+	 *
+	 * @param ontology
+	 * @param manager
+	 * @return copy
+	 * @throws OWLOntologyCreationException
+	 */
+	static OWLOntology copy(OWLOntology ontology, OWLOntologyManager manager) throws OWLOntologyCreationException {
+		OWLOntology copy = manager.createOntology(ontology.getOntologyID());
+		manager.addAxioms(copy, ontology.getAxioms());
+		for (OWLAnnotation annotation : ontology.getAnnotations()) {
+			manager.applyChange(new AddOntologyAnnotation(copy, annotation));
+		}
+		for (OWLImportsDeclaration declaration : ontology.getImportsDeclarations()) {
+			manager.applyChange(new AddImport(copy, declaration));
+		}
+		return copy;
+	}
+
+	/**
+	 * The formats in the configuration are shared, create a copy for each write.
+	 *
+	 * @param format
+	 * @return new format with the same prefixes
+	 */
+	private static OWLOntologyFormat copy(OWLOntologyFormat format) {
+		try {
+			OWLOntologyFormat copy = format.getClass().newInstance();
+			if (format instanceof PrefixOWLOntologyFormat && copy instanceof PrefixOWLOntologyFormat) {
+				((PrefixOWLOntologyFormat) copy).copyPrefixesFrom((PrefixOWLOntologyFormat) format);
+			}
+			return copy;
+		} catch (InstantiationException e) {
+			return format;
+		} catch (IllegalAccessException e) {
+			return format;
+		}
+	}
+
+	private void record(String suffix, Output output, long start) {
+		FormatStatistics s = statistics.get(suffix);
+		if (s == null) {
+			statistics.putIfAbsent(suffix, new FormatStatistics());
+			s = statistics.get(suffix);
+		}
+		s.files.incrementAndGet();
+		s.bytes.addAndGet(output.counter.getByteCount());
+		if (output.gzipCounter != null) {
+			s.gzipBytes.addAndGet(output.gzipCounter.getByteCount());
+		}
+		s.millis.addAndGet(System.currentTimeMillis() - start);
+	}
+
+	private static class FormatStatistics {
+		final AtomicInteger files = new AtomicInteger();
+		final AtomicLong bytes = new AtomicLong();
+		final AtomicLong gzipBytes = new AtomicLong();
+		final AtomicLong millis = new AtomicLong();
+	}
+
+	/**
+	 * Output file and its optional gzip copy, counting the bytes written to disk.
+	 */
+	private static class Output {
+		final CountingOutputStream counter;
+		final CountingOutputStream gzipCounter;
+		final OutputStream stream;
+
+		/**
+		 * @param out
+		 * @param gzipOut stream for the compressed copy, or null
+		 * @throws IOException
+		 */
+		Output(OutputStream out, OutputStream gzipOut) throws IOException {
+			counter = new CountingOutputStream(out);
+			if (gzipOut != null) {
+				gzipCounter = new CountingOutputStream(gzipOut);
+				stream = new TeeOutputStream(counter, new GZIPOutputStream(gzipCounter));
+			}
+			else {
+				gzipCounter = null;
+				stream = counter;
+			}
+		}
+	}
+
+	/**
+	 * An ontology with the files to write it to.
+	 */
+	private class Product implements Callable<Void> {
+
+		private final String ontologyId;
+		private final String fileNameBase;
+		private final OWLOntology ontology;
+		private final OWLOntology gciOntology;
+		private final Date date;
+		private final OWLOntologyManager manager;
+		private final Map<String, Output> outputs = new ConcurrentHashMap<String, Output>();
+
+		Product(String ontologyId, String fileNameBase, OWLOntology ontology, OWLOntology gciOntology,
+				Date date, OWLOntologyManager manager)
+		{
+			this.ontologyId = ontologyId;
+			this.fileNameBase = fileNameBase;
+			this.ontology = ontology;
+			this.gciOntology = gciOntology;
+			this.date = date;
+			this.manager = manager;
+		}
+
+		void open() throws IOException {
+			boolean writeOWL = !config.isSkipFormat("owl");
+			boolean writeOWX = !config.isSkipFormat("owx");
+			boolean writeOFN = config.isWriteLabelOWL();
+			open(OWL, writeOWL);
+			open(OWX, writeOWX);
+			open(OFN, writeOFN);
+			if (gciOntology != null) {
+				open(AUX_OWL, writeOWL);
+				open(AUX_OWX, writeOWX);
+				open(AUX_OFN, writeOFN);
+			}
+			open(OBO, !config.isSkipFormat("obo"));
+		}
+
+		private void open(String suffix, boolean write) throws IOException {
+			if (write) {
+				String fileName = fileNameBase + suffix;
+				OutputStream out = files.getOutputSteam(fileName);
+				OutputStream gzipOut = null;
+				if (config.isGzipOutput()) {
+					try {
+						gzipOut = files.getOutputSteam(fileName + ".gz");
+					} catch (IOException e) {
+						IOUtils.closeQuietly(out);
+						throw e;
+					}
+				}
+				outputs.put(suffix, new Output(out, gzipOut));
+			}
+		}
+
+		void closeAll() {
+			for (Output output : outputs.values()) {
+				IOUtils.closeQuietly(output.stream);
+			}
+			outputs.clear();
+		}
+
+		@Override
+		public Void call() throws Exception {
+			run();
+			return null;
+		}
+
+		void run() throws IOException, OWLOntologyStorageException, OWLOntologyCreationException {
+			long start = System.currentTimeMillis();
+			try {
+				writeOWL();
+				writeAux();
+				writeOBO();
+			}
+			finally {
+				closeAll();
+			}
+			LOG.info("Saved "+fileNameBase+" in "+(System.currentTimeMillis() - start)+" ms");
+		}
+
+		private void writeOWL() throws IOException, OWLOntologyStorageException {
+			// if we add a new ontology id, remember the change, to restore the original
+			// ontology id after writing into a file.
+			SetOntologyID reset = null;
+			if (date != null && (outputs.containsKey(OWL) || outputs.containsKey(OWX))) {
+				SetOntologyID change = OntologyVersionTools.setOntologyVersion(ontology, date, ontologyId, fileNameBase);
+				// create change axiom with original id
+				reset = new SetOntologyID(ontology, change.getOriginalOntologyID());
+			}
+			try {
+				write(manager, ontology, config.getDefaultFormat(), OWL);
+				write(manager, ontology, config.getOwlXMLFormat(), OWX);
+				write(manager, ontology, config.getOwlOfnFormat(), OFN);
+			}
+			finally {
+				if (reset != null) {
+					// reset versionIRI
+					// the reset is required, because each owl file
+					// has its corresponding file name in the version IRI.
+					ontology.getOWLOntologyManager().applyChange(reset);
+				}
+			}
+		}
+
+		private void writeAux() throws IOException, OWLOntologyStorageException {
+			if (gciOntology == null || !(outputs.containsKey(AUX_OWL) || outputs.containsKey(AUX_OWX) || outputs.containsKey(AUX_OFN))) {
+				return;
+			}
+			OWLOntologyManager gciManager = gciOntology.getOWLOntologyManager();
+
+			// create specific import for the generated owl ontology
+			OWLImportsDeclaration importDeclaration = gciManager.getOWLDataFactory().getOWLImportsDeclaration(IRI.create(fileNameBase + OWL));
+			gciManager.applyChange(new AddImport(gciOntology, importDeclaration));
+			try {
+				write(gciManager, gciOntology, config.getDefaultFormat(), AUX_OWL);
+				write(gciManager, gciOntology, config.getOwlXMLFormat(), AUX_OWX);
+				write(gciManager, gciOntology, config.getOwlOfnFormat(), AUX_OFN);
+			}
+			finally {
+				gciManager.applyChange(new RemoveImport(gciOntology, importDeclaration));
+			}
+		}
+
+		private void writeOBO() throws IOException, OWLOntologyCreationException {
+			Output output = outputs.remove(OBO);
+			if (output == null) {
+				return;
+			}
+			long start = System.currentTimeMillis();
+			try {
+				Owl2Obo owl2obo = new Owl2Obo();
+				OBODoc doc = owl2obo.convert(ontology);
+				BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(output.stream, "UTF-8"));
+				new OBOFormatWriter().write(doc, writer);
+				writer.close();
+			}
+			finally {
+				IOUtils.closeQuietly(output.stream);
+			}
+			record(OBO, output, start);
+		}
+
+		private void write(OWLOntologyManager m, OWLOntology ont, OWLOntologyFormat format, String suffix)
+				throws IOException, OWLOntologyStorageException
+		{
+			Output output = outputs.remove(suffix);
+			if (output == null) {
+				return;
+			}
+			long start = System.currentTimeMillis();
+			try {
+				m.saveOntology(ont, copy(format), output.stream);
+				output.stream.close();
+			}
+			finally {
+				IOUtils.closeQuietly(output.stream);
+			}
+			record(suffix, output, start);
+		}
+	}
+}
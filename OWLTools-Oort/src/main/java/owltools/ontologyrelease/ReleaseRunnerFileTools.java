@@ -31,6 +31,7 @@ abstract class ReleaseRunnerFileTools {
 	private static final String STAGING_DIRECTORY_NAME = "staging";
 	private static final String STAGING_DIRECTORY_LOCK_FILE_NAME = ".lock";
 	private static final String VERSION_INFO_FILE_NAME = "VERSION-INFO";
+	private static final String STAGE_INFO_FILE_NAME = "STAGE-INFO";
 	
 	private final File base;
 	private final File staging;
@@ -100,9 +101,83 @@ abstract class ReleaseRunnerFileTools {
 		stagingFile.getParentFile().mkdirs();
 		
 		logger.info("saving to " + stagingFile.getAbsolutePath());
+		outputFileCreated(fileName);
 		return new FileOutputStream(stagingFile);
 	}
 	
+	/**
+	 * Hook method, called for each new file in the staging directory.
+	 * 
+	 * @param fileName name relative to the staging directory
+	 */
+	void outputFileCreated(String fileName) {
+		// do nothing
+	}
+	
+	/**
+	 * @param fileName
+	 * @return true, if the file exists in the base directory, from the last release
+	 */
+	boolean hasPreviousFile(String fileName) {
+		return new File(base, fileName).isFile();
+	}
+	
+	/**
+	 * Copy a file of the last release from the base directory into the staging directory.
+	 * 
+	 * @param fileName
+	 * @throws IOException
+	 */
+	void reusePreviousFile(String fileName) throws IOException {
+		// same checks as for a newly written file
+		checkNew(new File(base, fileName));
+		File stagingFile = checkNew(new File(staging, fileName));
+		logger.info("reusing " + fileName + " from last release");
+		FileUtils.copyFile(new File(base, fileName), stagingFile);
+	}
+	
+	/**
+	 * @return stage info of the last release, or null
+	 * @see ReleaseStages
+	 */
+	Properties readStageInfo() {
+		File stageFile = new File(base, STAGE_INFO_FILE_NAME);
+		if (!stageFile.exists() || !stageFile.isFile() || !stageFile.canRead()) {
+			return null;
+		}
+		FileInputStream inputStream = null;
+		try {
+			inputStream = new FileInputStream(stageFile);
+			Properties prop = new Properties();
+			prop.load(inputStream);
+			return prop;
+		} catch (IOException e) {
+			logger.info("Could not load old stage info from file: "+stageFile.getAbsolutePath(), e);
+		} finally {
+			IOUtils.closeQuietly(inputStream);
+		}
+		return null;
+	}
+	
+	/**
+	 * Write the stage info into the staging directory, next to the version info.
+	 * 
+	 * @param stageInfo
+	 * @throws IOException
+	 * @see ReleaseStages
+	 */
+	void writeStageInfo(Properties stageInfo) throws IOException {
+		File stageFile = new File(staging, STAGE_INFO_FILE_NAME);
+		FileOutputStream outputStream = null;
+		try {
+			outputStream = new FileOutputStream(stageFile);
+			stageInfo.store(outputStream, "Hashes and files of the release stages. Please do not edit this file.");
+		}
+		finally {
+			IOUtils.closeQuietly(outputStream);
+		}
+	}
+	
 	/**
 	 * Set the ontology version id for a particular release. 
 	 * If null, the current date is used.
@@ -215,7 +290,7 @@ abstract class ReleaseRunnerFileTools {
 	private boolean checkOldVersion(File oldVersionFolder) throws IOException {
 		// list files in staging and old-version, except lock and version
 		FileFilter filter = createIngoreFilter(STAGING_DIRECTORY_LOCK_FILE_NAME,
-				VERSION_INFO_FILE_NAME);
+				VERSION_INFO_FILE_NAME, STAGE_INFO_FILE_NAME);
 		File[] oldFiles = oldVersionFolder.listFiles(filter);
 		File[] stagingFiles = staging.listFiles(filter);
 		if (oldFiles.length == stagingFiles.length) {
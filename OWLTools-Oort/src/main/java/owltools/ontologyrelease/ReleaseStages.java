@@ -0,0 +1,494 @@
+package owltools.ontologyrelease;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+
+import owltools.ontologyverification.OntologyCheck;
+
+/**
+ * The stages of a release, with their inputs, outputs and dependencies.
+ * <br>
+ * Each stage has a hash over the content of its input files, the configuration
+ * values it uses and the hashes of the stages it depends on. The hashes and the
+ * files written by each stage are saved in the STAGE-INFO file, which is
+ * committed with the release, next to the VERSION-INFO file.
+ * <br>
+ * In incremental mode, a stage with the same hash as in the last release does
+ * not write its files again, instead they are copied from the last release.
+ * All products are derived from the loaded ontology, so a changed input file
+ * changes all stages. Changes of the configuration only affect the stages,
+ * which use the changed values, and their dependents. The version of the release
+ * is written into the header of each product, so it is part of the configuration
+ * of the load stage, see {@link #setVersion(String)}. The build of owltools
+ * is part of it too, so a new build does not reuse the files of an older one,
+ * see {@link #getBuild()}.
+ * <br>
+ * Only files given as input are hashed, not ontologies which are imported
+ * or loaded via a catalog. Inputs which are not local files, like URLs, have
+ * no hash, and the stages using them always run.
+ */
+class ReleaseStages {
+
+	private static final Logger LOG = Logger.getLogger(ReleaseStages.class);
+
+	/** Load the ontologies, bridge ontologies and GAFs, expand macros. */
+	static final String LOAD = "load";
+	/** Bridge ontologies from xref expansion. */
+	static final String XREF_BRIDGES = "xref-bridges";
+	/** The non-classified ontology. */
+	static final String ASSERTED = "asserted";
+	/** Query ontology and merge of external ontologies. */
+	static final String MERGED = "merged";
+	/** Reasoning and the main ontology. */
+	static final String MAIN = "main";
+	static final String SUBSETS = "subsets";
+	static final String EL = "el";
+	static final String RELAXED = "relaxed";
+	static final String SIMPLE = "simple";
+
+	private static final String VERSION = "version";
+	private static String build = null;
+	private static final String HASH_SUFFIX = ".hash";
+	private static final String OUTPUTS_SUFFIX = ".outputs";
+
+	static class Stage {
+
+		final String name;
+		final boolean enabled;
+		final List<Stage> dependencies = new ArrayList<Stage>();
+		final Map<String, String> config = new LinkedHashMap<String, String>();
+		final List<String> inputs = new ArrayList<String>();
+		final Set<String> outputs = new LinkedHashSet<String>();
+		String hash = null;
+		String previousHash = null;
+		List<String> previousOutputs = null;
+
+		Stage(String name, boolean enabled) {
+			this.name = name;
+			this.enabled = enabled;
+		}
+
+		Stage config(String key, Object value) {
+			if (value instanceof Collection<?>) {
+				// sort, as the order of sets is not fixed
+				Set<String> values = new TreeSet<String>();
+				for (Object o : (Collection<?>) value) {
+					values.add(String.valueOf(o));
+				}
+				value = values;
+			}
+			config.put(key, String.valueOf(value));
+			return this;
+		}
+
+		Stage input(String path) {
+			if (path != null) {
+				inputs.add(path);
+			}
+			return this;
+		}
+
+		Stage inputs(Collection<String> paths) {
+			if (paths != null) {
+				inputs.addAll(paths);
+			}
+			return this;
+		}
+	}
+
+	private final Map<String, Stage> stages = new LinkedHashMap<String, Stage>();
+	private Stage current = null;
+	private String version = null;
+	private String previousVersion = null;
+
+	/**
+	 * Add a stage, stages have to be added in the order they are executed.
+	 *
+	 * @param name
+	 * @param enabled false, if the stage is not part of the release
+	 * @param dependencies names of stages added before
+	 * @return stage
+	 */
+	Stage add(String name, boolean enabled, String...dependencies) {
+		Stage stage = new Stage(name, enabled);
+		for (String dependency : dependencies) {
+			Stage d = stages.get(dependency);
+			if (d == null) {
+				throw new IllegalArgumentException("Unknown dependency "+dependency+" for stage "+name);
+			}
+			stage.dependencies.add(d);
+		}
+		stages.put(name, stage);
+		return stage;
+	}
+
+	Stage getStage(String name) {
+		return stages.get(name);
+	}
+
+	/**
+	 * Create the stages for a release with the given configuration.
+	 *
+	 * @param config
+	 * @param paths ontology and gaf files
+	 * @return stages
+	 */
+	static ReleaseStages create(OortConfiguration config, List<String> paths) {
+		ReleaseStages s = new ReleaseStages();
+		List<String> checks = new ArrayList<String>();
+		for (OntologyCheck check : config.getOntologyChecks()) {
+			checks.add(OortConfiguration.getOntologyCheckShortName(check));
+		}
+		s.add(LOAD, true)
+			.config("build", getBuild())
+			.inputs(paths)
+			.input(config.isUseQueryOntology() ? config.getQueryOntology() : null)
+			.inputs(config.getBridgeOntologies())
+			.input(config.getCatalogXML())
+			// the order of the paths matters, the first is the main ontology
+			.config("paths", paths.toString())
+			.config("gafToOwl", config.isGafToOwl())
+			.config("addSupportFromImports", config.isAddSupportFromImports())
+			.config("addImportsFromSupports", config.isAddImportsFromSupports())
+			.config("autoDetectBridgingOntology", config.isAutoDetectBridgingOntology())
+			.config("sourceOntologyPrefixes", config.getSourceOntologyPrefixes())
+			.config("repairAnnotationCardinality", config.isRepairAnnotationCardinality())
+			.config("expandMacros", config.isExpandMacros())
+			.config("macroStrategy", config.getMacroStrategy())
+			.config("expandShortcutRelations", config.isExpandShortcutRelations())
+			.config("executeOntologyChecks", config.isExecuteOntologyChecks())
+			.config("ontologyChecks", checks.toString())
+			.config("forceRelease", config.isForceRelease())
+			// output settings, used by all stages
+			.config("skipFormatSet", config.getSkipFormatSet())
+			.config("writeLabelOWL", config.isWriteLabelOWL())
+			.config("writeMetadata", config.isWriteMetadata())
+			.config("gzipOutput", config.isGzipOutput());
+		s.add(XREF_BRIDGES, config.isExpandXrefs(), LOAD);
+		s.add(ASSERTED, config.isAsserted(), LOAD)
+			.config("translateDisjointsToEquivalents", config.isTranslateDisjointsToEquivalents());
+		s.add(MERGED, true, LOAD)
+			.config("translateDisjointsToEquivalents", config.isTranslateDisjointsToEquivalents())
+			.config("useQueryOntology", config.isUseQueryOntology())
+			.config("queryOntologyReference", config.getQueryOntologyReference())
+			.config("queryOntologyReferenceIsIRI", config.isQueryOntologyReferenceIsIRI())
+			.config("removeQueryOntologyReference", config.isRemoveQueryOntologyReference())
+			.config("recreateMireot", config.isRecreateMireot());
+		s.add(MAIN, true, MERGED)
+			.config("removeDanglingBeforeReasoning", config.isRemoveDanglingBeforeReasoning())
+			.config("reasonerName", config.getReasonerName())
+			.config("enforceEL", config.isEnforceEL())
+			.config("checkConsistency", config.isCheckConsistency())
+			.config("justifyAssertedSubclasses", config.isJustifyAssertedSubclasses())
+			.config("justifyAssertedSubclassesFrom", config.getJustifyAssertedSubclassesFrom())
+			.config("useIsInferred", config.isUseIsInferred())
+			.config("allowEquivalentNamedClassPairs", config.isAllowEquivalentNamedClassPairs())
+			.config("removeTrailingQualifiers", config.isRemoveTrailingQualifiers());
+		s.add(SUBSETS, config.isWriteSubsets(), MAIN);
+		s.add(EL, config.isWriteELOntology(), MAIN);
+		s.add(RELAXED, config.isRelaxed(), MAIN);
+		// simple removes the equivalence axioms itself, if there is no relaxed ontology
+		s.add(SIMPLE, config.isSimple(), MAIN)
+			.config("relaxed", config.isRelaxed())
+			.config("runOboBasicDagCheck", config.isRunOboBasicDagCheck());
+		return s;
+	}
+
+	/**
+	 * Compute the hashes of all stages.
+	 *
+	 * @throws IOException
+	 */
+	void computeHashes() throws IOException {
+		Map<String, String> fileHashes = new LinkedHashMap<String, String>();
+		for (Stage stage : stages.values()) {
+			stage.hash = computeHash(stage, fileHashes);
+			if (stage.hash == null) {
+				LOG.info("Stage "+stage.name+" has inputs without hash, it will always run");
+			}
+		}
+	}
+
+	private String computeHash(Stage stage, Map<String, String> fileHashes) throws IOException {
+		MessageDigest md = createDigest();
+		update(md, "stage:"+stage.name);
+		for (Stage dependency : stage.dependencies) {
+			if (dependency.hash == null) {
+				return null;
+			}
+			update(md, "dependency:"+dependency.name+"="+dependency.hash);
+		}
+		for (Entry<String, String> entry : stage.config.entrySet()) {
+			update(md, "config:"+entry.getKey()+"="+entry.getValue());
+		}
+		for (String input : stage.inputs) {
+			String fileHash = fileHashes.get(input);
+			if (fileHash == null) {
+				fileHash = hashFile(input);
+				if (fileHash == null) {
+					return null;
+				}
+				fileHashes.put(input, fileHash);
+			}
+			update(md, "input:"+input+"="+fileHash);
+		}
+		return toHex(md.digest());
+	}
+
+	/**
+	 * @param path
+	 * @return hash of the file content, or null if the path is not a local file
+	 * @throws IOException
+	 */
+	static String hashFile(String path) throws IOException {
+		File file = new File(path);
+		if (!file.isFile()) {
+			return null;
+		}
+		MessageDigest md = createDigest();
+		InputStream in = new FileInputStream(file);
+		try {
+			byte[] buffer = new byte[64 * 1024];
+			int len;
+			while ((len = in.read(buffer)) > 0) {
+				md.update(buffer, 0, len);
+			}
+		}
+		finally {
+			IOUtils.closeQuietly(in);
+		}
+		return toHex(md.digest());
+	}
+
+	/**
+	 * Identify the running build of owltools: the implementation version from
+	 * the manifest and, if the classes are loaded from a jar, the hash of the jar.
+	 * The version alone does not change between snapshot builds.
+	 *
+	 * @return build identifier
+	 */
+	static synchronized String getBuild() {
+		if (build == null) {
+			StringBuilder sb = new StringBuilder();
+			sb.append(ReleaseStages.class.getPackage().getImplementationVersion());
+			try {
+				CodeSource source = ReleaseStages.class.getProtectionDomain().getCodeSource();
+				if (source != null && source.getLocation() != null) {
+					String jarHash = hashFile(new File(source.getLocation().toURI()).getAbsolutePath());
+					if (jarHash != null) {
+						sb.append(" jar:").append(jarHash);
+					}
+				}
+			} catch (Exception e) {
+				LOG.warn("Could not hash the owltools jar, using only the version: "+sb, e);
+			}
+			build = sb.toString();
+		}
+		return build;
+	}
+
+	private static MessageDigest createDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform is required to support SHA-1
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static void update(MessageDigest md, String s) {
+		try {
+			md.update(s.getBytes("UTF-8"));
+			md.update((byte) '\n');
+		} catch (java.io.UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder sb = new StringBuilder();
+		for (byte b : bytes) {
+			sb.append(Integer.toHexString((b & 0xFF) | 0x100).substring(1, 3));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Set the version of the release and recompute the hashes. Files of a release
+	 * with another version are not reused, as they have the version in their header.
+	 *
+	 * @param version
+	 * @throws IOException
+	 */
+	void setVersion(String version) throws IOException {
+		this.version = version;
+		stages.get(LOAD).config(VERSION, version);
+		computeHashes();
+	}
+
+	/**
+	 * @return version of the last release, or null
+	 */
+	String getPreviousVersion() {
+		return previousVersion;
+	}
+
+	/**
+	 * Set the hashes and outputs of the last release.
+	 *
+	 * @param properties content of the STAGE-INFO of the last release, may be null
+	 */
+	void setPrevious(Properties properties) {
+		if (properties == null) {
+			return;
+		}
+		previousVersion = properties.getProperty(VERSION);
+		for (Stage stage : stages.values()) {
+			stage.previousHash = properties.getProperty(stage.name + HASH_SUFFIX);
+			String outputs = properties.getProperty(stage.name + OUTPUTS_SUFFIX);
+			if (outputs != null) {
+				List<String> values = new ArrayList<String>();
+				OortConfiguration.addValues(outputs, values);
+				stage.previousOutputs = values;
+			}
+		}
+	}
+
+	/**
+	 * @return hashes and outputs of this release, for the STAGE-INFO file
+	 */
+	Properties getProperties() {
+		Properties properties = new Properties();
+		if (version != null) {
+			properties.setProperty(VERSION, version);
+		}
+		for (Stage stage : stages.values()) {
+			if (stage.hash != null) {
+				properties.setProperty(stage.name + HASH_SUFFIX, stage.hash);
+			}
+			StringBuilder sb = new StringBuilder();
+			for (String output : stage.outputs) {
+				if (sb.length() > 0) {
+					sb.append(',');
+				}
+				sb.append(OortConfiguration.escape(output, ','));
+			}
+			properties.setProperty(stage.name + OUTPUTS_SUFFIX, sb.toString());
+		}
+		return properties;
+	}
+
+	/**
+	 * @param name
+	 * @return true, if the stage has the same hash as in the last release
+	 */
+	boolean isUnchanged(String name) {
+		Stage stage = stages.get(name);
+		return stage.hash != null && stage.hash.equals(stage.previousHash) && stage.previousOutputs != null;
+	}
+
+	/**
+	 * @param name
+	 * @param files
+	 * @return true, if the stage and all enabled stages after it are unchanged
+	 * and their files from the last release exist
+	 */
+	boolean canReuseFrom(String name, ReleaseRunnerFileTools files) {
+		boolean found = false;
+		for (Stage stage : stages.values()) {
+			found = found || stage.name.equals(name);
+			if (found && stage.enabled && !canReuse(stage, files)) {
+				return false;
+			}
+		}
+		return found;
+	}
+
+	private boolean canReuse(Stage stage, ReleaseRunnerFileTools files) {
+		if (!isUnchanged(stage.name)) {
+			return false;
+		}
+		for (String output : stage.previousOutputs) {
+			if (!files.hasPreviousFile(output)) {
+				LOG.info("Can not reuse stage "+stage.name+", the file "+output+" of the last release is missing");
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Start a stage, files created from now on are outputs of this stage.
+	 * If the stage is unchanged and reuse is true, copy the outputs of the last
+	 * release from the base directory.
+	 *
+	 * @param name
+	 * @param reuse
+	 * @param files
+	 * @return true, if the stage has to write its files
+	 * @throws IOException
+	 */
+	boolean begin(String name, boolean reuse, ReleaseRunnerFileTools files) throws IOException {
+		current = stages.get(name);
+		if (!reuse || !canReuse(current, files)) {
+			LOG.info("Running stage: "+name);
+			return true;
+		}
+		for (String output : current.previousOutputs) {
+			files.reusePreviousFile(output);
+			current.outputs.add(output);
+		}
+		LOG.info("Reusing "+current.previousOutputs.size()+" files of unchanged stage: "+name);
+		return false;
+	}
+
+	/**
+	 * Reuse the files of the stage and all enabled stages after it,
+	 * see {@link #canReuseFrom(String, ReleaseRunnerFileTools)}.
+	 *
+	 * @param name
+	 * @param files
+	 * @throws IOException
+	 */
+	void reuseFrom(String name, ReleaseRunnerFileTools files) throws IOException {
+		boolean found = false;
+		for (Stage stage : stages.values()) {
+			found = found || stage.name.equals(name);
+			if (found && stage.enabled) {
+				if (begin(stage.name, true, files)) {
+					throw new IOException("Can not reuse the files of stage "+stage.name);
+				}
+			}
+		}
+		current = null;
+	}
+
+	/**
+	 * Add the file to the outputs of the current stage.
+	 *
+	 * @param fileName
+	 */
+	void recordOutput(String fileName) {
+		if (current != null) {
+			current.outputs.add(fileName);
+		}
+	}
+}
@@ -1,11 +1,27 @@
 package owltools.ontologyrelease.reports;
 
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPOutputStream;
 
 import org.apache.commons.io.IOUtils;
 import org.semanticweb.owlapi.model.OWLClass;
@@ -15,20 +31,46 @@ import owltools.graph.OWLGraphWrapper;
 
 /**
  * Basic tool for generating ontology reports on a term basis. 
+ * <br>
+ * The classes of the ontology are sorted once. In parallel mode, each report
+ * runs in its own thread and receives the sorted classes in batches through a
+ * bounded queue, so the time for all reports is close to the time of the
+ * slowest report. Otherwise, the reports handle each class one after another.
+ * <br>
+ * In both modes, the first failure of a report stops the generation and is
+ * rethrown.
  */
 public class OntologyReportGenerator {
 	
+	static final int BATCH_SIZE = 256;
+	static final int QUEUE_CAPACITY = 16;
+	private static final int BUFFER_SIZE = 64 * 1024;
+	
 	private final List<OntologyReport> reports;
 	private final File reportFolder;
+	private final boolean parallel;
+	private final boolean gzip;
 
 	/**
 	 * @param reports
 	 * @param reportFolder
 	 */
 	public OntologyReportGenerator(List<OntologyReport> reports, File reportFolder) {
+		this(reports, reportFolder, false, false);
+	}
+	
+	/**
+	 * @param reports
+	 * @param reportFolder
+	 * @param parallel if true, run each report in its own thread
+	 * @param gzip if true, compress the report files and append '.gz' to the file names
+	 */
+	public OntologyReportGenerator(List<OntologyReport> reports, File reportFolder, boolean parallel, boolean gzip) {
 		super();
 		this.reports = reports;
 		this.reportFolder = reportFolder;
+		this.parallel = parallel;
+		this.gzip = gzip;
 	}
 	
 	private List<PrintWriter> createReportFileWriters() throws IOException {
@@ -42,8 +84,15 @@ public class OntologyReportGenerator {
 			else {
 				reportFile = new File(new File(reportFolder, subFolderName), report.getReportFileName());
 			}
+			if (gzip) {
+				reportFile = new File(reportFile.getParentFile(), reportFile.getName() + ".gz");
+			}
 			// TODO check file for overwrite?
-			PrintWriter writer = new PrintWriter(reportFile);
+			OutputStream out = new FileOutputStream(reportFile);
+			if (gzip) {
+				out = new GZIPOutputStream(out, BUFFER_SIZE);
+			}
+			PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(out), BUFFER_SIZE));
 			writers.add(writer);
 		}
 		return writers;
@@ -59,16 +108,28 @@ public class OntologyReportGenerator {
 		List<PrintWriter> writers = null;
 		try {
 			writers = createReportFileWriters();
-			for (int i = 0; i < reports.size(); i++) {
-				reports.get(i).start(writers.get(i), graph);
+			List<OWLClass> classes = getSortedOWLClasses(graph);
+			if (parallel && reports.size() > 1) {
+				generateParallel(graph, classes, writers);
 			}
-			for(OWLClass cls : getSortedOWLClasses(graph)) {
+			else {
+				for (int i = 0; i < reports.size(); i++) {
+					reports.get(i).start(writers.get(i), graph);
+				}
+				for(OWLClass cls : classes) {
+					for (int i = 0; i < reports.size(); i++) {
+						reports.get(i).handleTerm(writers.get(i), cls, graph);
+					}
+				}
 				for (int i = 0; i < reports.size(); i++) {
-					reports.get(i).handleTerm(writers.get(i), cls, graph);
+					reports.get(i).end(writers.get(i), graph);
 				}
 			}
-			for (int i = 0; i < reports.size(); i++) {
-				reports.get(i).end(writers.get(i), graph);
+			for (PrintWriter writer : writers) {
+				writer.flush();
+				if (writer.checkError()) {
+					throw new IOException("Could not write report");
+				}
 			}
 		}
 		finally {
@@ -80,6 +141,130 @@ public class OntologyReportGenerator {
 		}
 	}
 	
+	private void generateParallel(OWLGraphWrapper graph, List<OWLClass> classes, List<PrintWriter> writers) throws IOException {
+		ExecutorService executor = Executors.newFixedThreadPool(reports.size(), new ThreadFactory() {
+			
+			private final AtomicInteger count = new AtomicInteger();
+			
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "ontology-report-"+count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		try {
+			AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+			List<ReportConsumer> consumers = new ArrayList<ReportConsumer>(reports.size());
+			List<Future<Void>> futures = new ArrayList<Future<Void>>(reports.size());
+			for (int i = 0; i < reports.size(); i++) {
+				ReportConsumer consumer = new ReportConsumer(reports.get(i), writers.get(i), graph, failure);
+				consumers.add(consumer);
+				futures.add(executor.submit(consumer));
+			}
+			// feed all consumers with the same batches, an empty batch marks the end
+			try {
+				for (int start = 0; start < classes.size() && failure.get() == null; start += BATCH_SIZE) {
+					List<OWLClass> batch = classes.subList(start, Math.min(start + BATCH_SIZE, classes.size()));
+					for (ReportConsumer consumer : consumers) {
+						consumer.queue.put(batch);
+					}
+				}
+				List<OWLClass> end = Collections.emptyList();
+				for (ReportConsumer consumer : consumers) {
+					consumer.queue.put(end);
+				}
+				for (Future<Void> future : futures) {
+					future.get();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while generating reports");
+			} catch (ExecutionException e) {
+				rethrow(e.getCause());
+			}
+			if (failure.get() != null) {
+				rethrow(failure.get());
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	private static void rethrow(Throwable cause) throws IOException {
+		if (cause instanceof IOException) {
+			throw (IOException) cause;
+		}
+		if (cause instanceof RuntimeException) {
+			throw (RuntimeException) cause;
+		}
+		if (cause instanceof Error) {
+			throw (Error) cause;
+		}
+		throw new IOException(cause);
+	}
+	
+	/**
+	 * Runs one report with the classes from its queue. The first failure of
+	 * all reports is recorded, the producer stops feeding new batches after it.
+	 * After a failure, the remaining batches are still taken from the queue,
+	 * so the producer is not blocked.
+	 */
+	private static class ReportConsumer implements Callable<Void> {
+		
+		private final OntologyReport report;
+		private final PrintWriter writer;
+		private final OWLGraphWrapper graph;
+		private final AtomicReference<Throwable> failure;
+		private final BlockingQueue<List<OWLClass>> queue = new ArrayBlockingQueue<List<OWLClass>>(QUEUE_CAPACITY);
+		
+		ReportConsumer(OntologyReport report, PrintWriter writer, OWLGraphWrapper graph, AtomicReference<Throwable> failure) {
+			this.report = report;
+			this.writer = writer;
+			this.graph = graph;
+			this.failure = failure;
+		}
+		
+		@Override
+		public Void call() throws InterruptedException {
+			boolean failed = false;
+			try {
+				report.start(writer, graph);
+			} catch (Throwable e) {
+				failed = fail(e);
+			}
+			while (true) {
+				List<OWLClass> batch = queue.take();
+				if (batch.isEmpty()) {
+					break;
+				}
+				if (!failed) {
+					try {
+						for (OWLClass cls : batch) {
+							report.handleTerm(writer, cls, graph);
+						}
+					} catch (Throwable e) {
+						failed = fail(e);
+					}
+				}
+			}
+			if (!failed) {
+				try {
+					report.end(writer, graph);
+				} catch (Throwable e) {
+					fail(e);
+				}
+			}
+			return null;
+		}
+		
+		private boolean fail(Throwable e) {
+			failure.compareAndSet(null, e);
+			return true;
+		}
+	}
+	
 	private List<OWLClass> getSortedOWLClasses(OWLGraphWrapper graph) {
 		List<OWLClass> classes = new ArrayList<OWLClass>(graph.getSourceOntology().getClassesInSignature());
 		Collections.sort(classes);
@@ -0,0 +1,21 @@
+package owltools.ontologyverification;
+
+import java.util.Collection;
+
+import owltools.graph.OWLGraphWrapper;
+
+/**
+ * An {@link OntologyCheck}, which reads labels, synonyms and references from
+ * a shared {@link OntologyCheckIndex} instead of scanning the ontology itself.
+ */
+public interface IndexedOntologyCheck extends OntologyCheck {
+
+	/**
+	 * Run the check for the given ontology, using the precomputed index.
+	 *
+	 * @param graph ontology
+	 * @param index index of all entities in the ontology
+	 * @return list of warnings
+	 */
+	public Collection<CheckWarning> check(OWLGraphWrapper graph, OntologyCheckIndex index);
+}
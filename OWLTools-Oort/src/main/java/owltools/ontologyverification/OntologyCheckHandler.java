@@ -2,6 +2,8 @@ package owltools.ontologyverification;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -30,9 +32,20 @@ public class OntologyCheckHandler {
 	 * @param checks list of ontology checks
 	 */
 	public OntologyCheckHandler(boolean isWarningFatal, List<OntologyCheck> checks) {
+		this(isWarningFatal, checks, 1);
+	}
+	
+	/**
+	 * Create a new instance.
+	 * 
+	 * @param isWarningFatal if true all warnings are treated as errors.
+	 * @param checks list of ontology checks
+	 * @param threads maximum number of checks running at the same time
+	 */
+	public OntologyCheckHandler(boolean isWarningFatal, List<OntologyCheck> checks, int threads) {
 		super();
 		this.isWarningFatal = isWarningFatal;
-		runner = new OntologyCheckRunner(checks);
+		runner = new OntologyCheckRunner(checks, threads);
 	}
 	
 	public static class CheckSummary {
@@ -40,6 +53,10 @@ public class OntologyCheckHandler {
 		public final boolean success;
 		public final int errorCount;
 		public final String message;
+		/**
+		 * Time of each check in milliseconds.
+		 */
+		public final Map<OntologyCheck, Long> timings;
 		
 		/**
 		 * @param success
@@ -47,17 +64,28 @@ public class OntologyCheckHandler {
 		 * @param message
 		 */
 		protected CheckSummary(boolean success, int errorCount, String message) {
+			this(success, errorCount, message, Collections.<OntologyCheck, Long>emptyMap());
+		}
+		
+		/**
+		 * @param success
+		 * @param errorCount
+		 * @param message
+		 * @param timings
+		 */
+		protected CheckSummary(boolean success, int errorCount, String message, Map<OntologyCheck, Long> timings) {
 			this.success = success;
 			this.errorCount = errorCount;
 			this.message = message;
+			this.timings = timings;
 		}
 		
-		static CheckSummary success() {
-			return new CheckSummary(true, 0, null);
+		static CheckSummary success(Map<OntologyCheck, Long> timings) {
+			return new CheckSummary(true, 0, null, timings);
 		}
 		
-		static CheckSummary error(int count, String message) {
-			return new CheckSummary(false, count, message);
+		static CheckSummary error(int count, String message, Map<OntologyCheck, Long> timings) {
+			return new CheckSummary(false, count, message, timings);
 		}
 	}
 	
@@ -92,10 +120,11 @@ public class OntologyCheckHandler {
 	}
 	
 	CheckSummary run(OWLGraphWrapper owlGraphWrapper, TimePoint timePoint) {
-		Map<OntologyCheck, Collection<CheckWarning>> results = runner.verify(owlGraphWrapper, timePoint);
+		Map<OntologyCheck, Long> timings = new HashMap<OntologyCheck, Long>();
+		Map<OntologyCheck, Collection<CheckWarning>> results = runner.verify(owlGraphWrapper, timePoint, timings);
 		if (results == null || results.isEmpty()) {
 			// do nothing
-			return CheckSummary.success();
+			return CheckSummary.success(timings);
 		}
 		String ontologyId = owlGraphWrapper.getOntologyId();
 		int successCount = 0;
@@ -108,7 +137,7 @@ public class OntologyCheckHandler {
 			Collection<CheckWarning> allWarnings = results.get(check);
 			if (allWarnings == null || allWarnings.isEmpty()) {
 				successCount += 1;
-				report(sb, check, allWarnings, "Success");
+				report(sb, check, allWarnings, "Success", timings.get(check));
 			}
 			else {
 				List<CheckWarning> fatalOnly = new ArrayList<CheckWarning>();
@@ -124,10 +153,10 @@ public class OntologyCheckHandler {
 				warningCount += warningsOnly.size();
 				errorCount += fatalOnly.size();
 				if (!fatalOnly.isEmpty()) {
-					report(sb, check, fatalOnly, "Error");
+					report(sb, check, fatalOnly, "Error", timings.get(check));
 				}
 				if (!warningsOnly.isEmpty()) {
-					report(sb, check, warningsOnly, "Warning");
+					report(sb, check, warningsOnly, "Warning", timings.get(check));
 				}
 			}
 		}
@@ -143,9 +172,9 @@ public class OntologyCheckHandler {
 		}
 		log(sb, level);
 		if (hasErrors) {
-			return CheckSummary.error(errorCount, createExceptionMessage(ontologyId, errorCount, internalErrorCount));
+			return CheckSummary.error(errorCount, createExceptionMessage(ontologyId, errorCount, internalErrorCount), timings);
 		}
-		return CheckSummary.success();
+		return CheckSummary.success(timings);
 		
 	}
 
@@ -179,15 +208,19 @@ public class OntologyCheckHandler {
 	
 	protected void reportHeader(StringBuilder sb) {
 		sb.append('\n');
-		sb.append("Name \t Status \t Message");
+		sb.append("Name \t Status \t Time (ms) \t Message");
 	}
 	
-	protected void report(StringBuilder sb, OntologyCheck check, Collection<CheckWarning> warnings, String status) {
+	protected void report(StringBuilder sb, OntologyCheck check, Collection<CheckWarning> warnings, String status, Long time) {
 		sb.append('\n');
 		sb.append(check.getLabel());
 		sb.append('\t');
 		sb.append(status);
 		sb.append('\t');
+		if (time != null) {
+			sb.append(time);
+		}
+		sb.append('\t');
 		if (warnings != null && !warnings.isEmpty()) {
 			for (CheckWarning warning : warnings) {
 				sb.append("\n\t\t");
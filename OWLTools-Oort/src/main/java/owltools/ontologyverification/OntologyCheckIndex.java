@@ -0,0 +1,167 @@
+package owltools.ontologyverification;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.semanticweb.owlapi.model.OWLAnnotationAssertionAxiom;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDeclarationAxiom;
+import org.semanticweb.owlapi.model.OWLEntity;
+import org.semanticweb.owlapi.model.OWLEquivalentClassesAxiom;
+import org.semanticweb.owlapi.model.OWLObject;
+import org.semanticweb.owlapi.model.OWLOntology;
+
+import owltools.graph.OWLGraphWrapper;
+import owltools.graph.OWLGraphWrapper.ISynonym;
+
+/**
+ * Precomputed view of the entities of an ontology, shared by all
+ * {@link IndexedOntologyCheck}s of a {@link OntologyCheckRunner.TimePoint}.
+ * The ontology is scanned once, when the index is created. Afterwards the
+ * index is read-only and can be used by several checks at the same time.
+ */
+public class OntologyCheckIndex {
+
+	/**
+	 * Label, synonyms and references of one entity.
+	 */
+	public static class EntityInfo {
+
+		public final OWLEntity entity;
+		public final String label;
+		public final List<ISynonym> synonyms;
+		public final boolean obsolete;
+		public final boolean dangling;
+		public final List<OWLEquivalentClassesAxiom> equivalentClassesAxioms;
+
+		/**
+		 * @param entity
+		 * @param label
+		 * @param synonyms
+		 * @param obsolete
+		 * @param dangling
+		 * @param equivalentClassesAxioms
+		 */
+		EntityInfo(OWLEntity entity, String label, List<ISynonym> synonyms, boolean obsolete,
+				boolean dangling, List<OWLEquivalentClassesAxiom> equivalentClassesAxioms)
+		{
+			this.entity = entity;
+			this.label = label;
+			this.synonyms = synonyms;
+			this.obsolete = obsolete;
+			this.dangling = dangling;
+			this.equivalentClassesAxioms = equivalentClassesAxioms;
+		}
+	}
+
+	private final Collection<OWLObject> allOwlObjects;
+	private final List<EntityInfo> entities;
+	private final Map<OWLEntity, EntityInfo> index;
+
+	private OntologyCheckIndex(Collection<OWLObject> allOwlObjects, List<EntityInfo> entities) {
+		this.allOwlObjects = allOwlObjects;
+		this.entities = Collections.unmodifiableList(entities);
+		this.index = new HashMap<OWLEntity, EntityInfo>();
+		for (EntityInfo info : entities) {
+			index.put(info.entity, info);
+		}
+	}
+
+	/**
+	 * Scan all entities in allOwlObjects.
+	 *
+	 * @param graph
+	 * @param allOwlObjects
+	 * @return index
+	 */
+	public static OntologyCheckIndex create(OWLGraphWrapper graph, Collection<OWLObject> allOwlObjects) {
+		Set<OWLOntology> allOntologies = graph.getAllOntologies();
+		List<EntityInfo> entities = new ArrayList<EntityInfo>();
+		for (OWLObject owlObject : allOwlObjects) {
+			if (owlObject instanceof OWLEntity) {
+				entities.add(createInfo((OWLEntity) owlObject, graph, allOntologies));
+			}
+		}
+		return new OntologyCheckIndex(allOwlObjects, entities);
+	}
+
+	private static EntityInfo createInfo(OWLEntity entity, OWLGraphWrapper graph, Set<OWLOntology> allOntologies) {
+		List<OWLEquivalentClassesAxiom> equivalentClassesAxioms = Collections.emptyList();
+		if (entity instanceof OWLClass) {
+			OWLClass cls = (OWLClass) entity;
+			for (OWLOntology ontology : allOntologies) {
+				Set<OWLEquivalentClassesAxiom> axioms = ontology.getEquivalentClassesAxioms(cls);
+				if (axioms != null && !axioms.isEmpty()) {
+					if (equivalentClassesAxioms.isEmpty()) {
+						equivalentClassesAxioms = new ArrayList<OWLEquivalentClassesAxiom>();
+					}
+					equivalentClassesAxioms.addAll(axioms);
+				}
+			}
+		}
+		return new EntityInfo(entity, graph.getLabel(entity), graph.getOBOSynonyms(entity),
+				graph.isObsolete(entity), isDangling(entity, allOntologies), equivalentClassesAxioms);
+	}
+
+	/**
+	 * Test whether an entity is dangling. Here a dangling entity is one
+	 * without declaration or without annotation assertions.
+	 *
+	 * This currently limited to OBO style ontologies
+	 *
+	 * @param entity
+	 * @param ontologies
+	 * @return true if the entity is dangling
+	 */
+	public static boolean isDangling(OWLEntity entity, Collection<OWLOntology> ontologies) {
+		// check for declaration axioms
+		// this usually won't hit, as obo2owl always creates an declaration axiom
+		boolean hasDeclaration = false;
+		for (OWLOntology ontology : ontologies) {
+			Set<OWLDeclarationAxiom> axioms = ontology.getDeclarationAxioms(entity);
+			if (axioms != null && !axioms.isEmpty()) {
+				hasDeclaration = true;
+				break;
+			}
+		}
+		if (!hasDeclaration) {
+			return true;
+		}
+
+		// check that each entity has at least one annotation
+		for (OWLOntology ontology : ontologies) {
+			Set<OWLAnnotationAssertionAxiom> axioms = ontology.getAnnotationAssertionAxioms(entity.getIRI());
+			if (axioms != null && !axioms.isEmpty()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return all {@link OWLObject}s, as given to the runner
+	 */
+	public Collection<OWLObject> getAllOwlObjects() {
+		return allOwlObjects;
+	}
+
+	/**
+	 * @return all entities, in the order of {@link #getAllOwlObjects()}
+	 */
+	public List<EntityInfo> getEntities() {
+		return entities;
+	}
+
+	/**
+	 * @param entity
+	 * @return info or null, if the entity is not in the index
+	 */
+	public EntityInfo getInfo(OWLEntity entity) {
+		return index.get(entity);
+	}
+}
@@ -1,11 +1,21 @@
 package owltools.ontologyverification;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.log4j.Logger;
 import org.semanticweb.owlapi.model.OWLObject;
 
 import owltools.graph.OWLGraphWrapper;
@@ -15,9 +25,18 @@ import owltools.graph.OWLGraphWrapper;
  * via the {@link OntologyCheck} interface. The runner uses annotations to
  * identify the time point ({@link TimePoint}) when to run the ontology check
  * methods during the release process.
+ * <br>
+ * For each time point, the ontology is scanned once into a shared
+ * {@link OntologyCheckIndex}, if there is at least one
+ * {@link IndexedOntologyCheck}. With more than one thread, the indexed checks
+ * of a time point run concurrently. All other checks query the graph directly,
+ * which is not thread safe, so they run one after another on the calling
+ * thread before the indexed checks start.
  */
 public class OntologyCheckRunner {
 	
+	private static final Logger LOG = Logger.getLogger(OntologyCheckRunner.class);
+	
 	public static enum TimePoint {
 		AfterLoad,
 		AfterMireot,
@@ -25,14 +44,26 @@ public class OntologyCheckRunner {
 	}
 	
 	private final Map<TimePoint, Set<OntologyCheck>> allChecks;
+	private final int threads;
 	
 	/**
-	 * Create a new runner instance.
+	 * Create a new runner instance, running the checks one after another.
 	 * 
 	 * @param checks
 	 */
 	OntologyCheckRunner(Collection<OntologyCheck> checks) {
+		this(checks, 1);
+	}
+	
+	/**
+	 * Create a new runner instance.
+	 * 
+	 * @param checks
+	 * @param threads maximum number of checks running at the same time
+	 */
+	OntologyCheckRunner(Collection<OntologyCheck> checks, int threads) {
 		super();
+		this.threads = threads;
 		allChecks = new HashMap<TimePoint, Set<OntologyCheck>>();
 		// init map
 		for (TimePoint timePoint : TimePoint.values()) {
@@ -68,8 +99,24 @@ public class OntologyCheckRunner {
 	 * @return map of checks and warnings
 	 */
 	Map<OntologyCheck, Collection<CheckWarning>> verify (OWLGraphWrapper graph, TimePoint timePoint) {
+		return verify(graph, timePoint, null);
+	}
+	
+	/**
+	 * Run checks for an ontology and given {@link TimePoint}.
+	 * 
+	 * @param graph target ontology
+	 * @param timePoint 
+	 * @param timings map for the time of each check in milliseconds, may be null
+	 * @return map of checks and warnings
+	 */
+	Map<OntologyCheck, Collection<CheckWarning>> verify (OWLGraphWrapper graph, TimePoint timePoint, Map<OntologyCheck, Long> timings) {
+		Set<OntologyCheck> checks = allChecks.get(timePoint);
+		if (checks.isEmpty()) {
+			return new HashMap<OntologyCheck, Collection<CheckWarning>>();
+		}
 		Set<OWLObject> allOWLObjects = graph.getAllOWLObjects();
-		return verify(graph, allOWLObjects, timePoint);
+		return verify(graph, allOWLObjects, timePoint, timings);
 	}
 	
 	/**
@@ -81,7 +128,20 @@ public class OntologyCheckRunner {
 	 * @return map of checks and warnings
 	 */
 	Map<OntologyCheck, Collection<CheckWarning>> verify (OWLGraphWrapper graph, Set<OWLObject> allOWLObjects, TimePoint timePoint) {
-		return verify(allChecks.get(timePoint), graph, allOWLObjects);
+		return verify(graph, allOWLObjects, timePoint, null);
+	}
+	
+	/**
+	 * Run checks for an ontology and given {@link TimePoint}.
+	 * 
+	 * @param graph target ontology
+	 * @param allOWLObjects all {@link OWLObject} collection
+	 * @param timePoint
+	 * @param timings map for the time of each check in milliseconds, may be null
+	 * @return map of checks and warnings
+	 */
+	Map<OntologyCheck, Collection<CheckWarning>> verify (OWLGraphWrapper graph, Set<OWLObject> allOWLObjects, TimePoint timePoint, Map<OntologyCheck, Long> timings) {
+		return verify(allChecks.get(timePoint), graph, allOWLObjects, timings);
 	}
 	
 	/**
@@ -90,15 +150,123 @@ public class OntologyCheckRunner {
 	 * @param checks the checks to execute
 	 * @param owlGraphWrapper target ontology
 	 * @param allOWLObjects all owl objects in the graph wrapper
+	 * @param timings map for the time of each check in milliseconds, may be null
 	 * @return map of checks and warnings
 	 */
-	private Map<OntologyCheck, Collection<CheckWarning>> verify(Set<OntologyCheck> checks, OWLGraphWrapper owlGraphWrapper, Set<OWLObject> allOWLObjects) {
+	private Map<OntologyCheck, Collection<CheckWarning>> verify(Set<OntologyCheck> checks, OWLGraphWrapper owlGraphWrapper, Set<OWLObject> allOWLObjects, Map<OntologyCheck, Long> timings) {
 		Map<OntologyCheck, Collection<CheckWarning>> results = new HashMap<OntologyCheck, Collection<CheckWarning>>();
+		if (checks.isEmpty()) {
+			return results;
+		}
+		OntologyCheckIndex index = null;
+		for (OntologyCheck check : checks) {
+			if (check instanceof IndexedOntologyCheck) {
+				long start = System.currentTimeMillis();
+				index = OntologyCheckIndex.create(owlGraphWrapper, allOWLObjects);
+				LOG.info("Created index of "+index.getEntities().size()+" entities for ontology checks in "+(System.currentTimeMillis() - start)+" ms");
+				break;
+			}
+		}
+		List<CheckTask> tasks = new ArrayList<CheckTask>(checks.size());
+		List<CheckTask> indexedTasks = new ArrayList<CheckTask>(checks.size());
 		for(OntologyCheck check : checks) {
-			Collection<CheckWarning> warnings = check.check(owlGraphWrapper, allOWLObjects);
-			results.put(check, warnings);
+			CheckTask task = new CheckTask(check, owlGraphWrapper, allOWLObjects, index);
+			tasks.add(task);
+			if (task.isIndexed()) {
+				indexedTasks.add(task);
+			}
+			else {
+				task.call();
+			}
+		}
+		int poolSize = Math.min(threads, indexedTasks.size());
+		if (poolSize > 1) {
+			execute(indexedTasks, poolSize);
+		}
+		else {
+			for (CheckTask task : indexedTasks) {
+				task.call();
+			}
+		}
+		for (CheckTask task : tasks) {
+			results.put(task.check, task.warnings);
+			if (timings != null) {
+				timings.put(task.check, task.time);
+			}
 		}
 		return results;
 	}
 	
+	private void execute(List<CheckTask> tasks, int poolSize) {
+		ExecutorService executor = Executors.newFixedThreadPool(poolSize, new ThreadFactory() {
+			
+			private final AtomicInteger count = new AtomicInteger();
+			
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "ontology-check-"+count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		try {
+			List<Future<CheckTask>> futures = executor.invokeAll(tasks);
+			for (Future<CheckTask> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while running ontology checks", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new RuntimeException(cause);
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	/**
+	 * Runs one check and records its warnings and time.
+	 */
+	private static class CheckTask implements Callable<CheckTask> {
+		
+		private final OntologyCheck check;
+		private final OWLGraphWrapper graph;
+		private final Set<OWLObject> allOWLObjects;
+		private final OntologyCheckIndex index;
+		
+		private Collection<CheckWarning> warnings = null;
+		private long time = 0;
+		
+		CheckTask(OntologyCheck check, OWLGraphWrapper graph, Set<OWLObject> allOWLObjects, OntologyCheckIndex index) {
+			this.check = check;
+			this.graph = graph;
+			this.allOWLObjects = allOWLObjects;
+			this.index = index;
+		}
+		
+		boolean isIndexed() {
+			return index != null && check instanceof IndexedOntologyCheck;
+		}
+		
+		@Override
+		public CheckTask call() {
+			long start = System.currentTimeMillis();
+			if (isIndexed()) {
+				warnings = ((IndexedOntologyCheck) check).check(graph, index);
+			}
+			else {
+				warnings = check.check(graph, allOWLObjects);
+			}
+			time = System.currentTimeMillis() - start;
+			return this;
+		}
+	}
 }
@@ -7,10 +7,8 @@ import java.util.Set;
 
 import org.obolibrary.oboformat.parser.OBOFormatConstants.OboFormatTag;
 import org.semanticweb.owlapi.model.IRI;
-import org.semanticweb.owlapi.model.OWLAnnotationAssertionAxiom;
 import org.semanticweb.owlapi.model.OWLClass;
 import org.semanticweb.owlapi.model.OWLClassExpression;
-import org.semanticweb.owlapi.model.OWLDeclarationAxiom;
 import org.semanticweb.owlapi.model.OWLEquivalentClassesAxiom;
 import org.semanticweb.owlapi.model.OWLObject;
 import org.semanticweb.owlapi.model.OWLObjectIntersectionOf;
@@ -22,6 +20,9 @@ import owltools.graph.OWLGraphWrapper;
 import owltools.io.OWLPrettyPrinter;
 import owltools.mooncat.Mooncat;
 import owltools.ontologyverification.CheckWarning;
+import owltools.ontologyverification.IndexedOntologyCheck;
+import owltools.ontologyverification.OntologyCheckIndex;
+import owltools.ontologyverification.OntologyCheckIndex.EntityInfo;
 
 /**
  * Check for dangling references in equivalence axioms. A reference is assumed to be 
@@ -29,7 +30,7 @@ import owltools.ontologyverification.CheckWarning;
  * 
  * This currently limited to OBO style ontologies.
  */
-public class DanglingReferenceCheck extends AbstractCheck {
+public class DanglingReferenceCheck extends AbstractCheck implements IndexedOntologyCheck {
 
 	public static final String SHORT_HAND = "dangling-ref";
 	
@@ -39,67 +40,70 @@ public class DanglingReferenceCheck extends AbstractCheck {
 	
 	@Override
 	public Collection<CheckWarning> check(OWLGraphWrapper graph, Collection<OWLObject> allOwlObjects) {
+		return check(graph, OntologyCheckIndex.create(graph, allOwlObjects));
+	}
+
+	@Override
+	public Collection<CheckWarning> check(OWLGraphWrapper graph, OntologyCheckIndex index) {
 		OWLPrettyPrinter pp = new OWLPrettyPrinter(graph);
 		List<CheckWarning> out = new ArrayList<CheckWarning>();
-		for (OWLObject owlObject : allOwlObjects) {
-			if (owlObject instanceof OWLClass) {
-				OWLClass owlClass = (OWLClass) owlObject;
-				check(owlClass, graph, out, pp);
+		for (EntityInfo info : index.getEntities()) {
+			if (info.entity instanceof OWLClass) {
+				check(info, graph, index, out, pp);
 			}
 		}
 		return out;
 	}
 
-	protected void check(OWLClass owlClass, OWLGraphWrapper graph, List<CheckWarning> warnings, OWLPrettyPrinter pp) {
+	protected void check(EntityInfo info, OWLGraphWrapper graph, OntologyCheckIndex index, List<CheckWarning> warnings, OWLPrettyPrinter pp) {
+		final OWLClass owlClass = (OWLClass) info.entity;
 		final Set<OWLOntology> allOntologies = graph.getAllOntologies();
-		for(OWLOntology ontology : allOntologies){
-			Set<OWLEquivalentClassesAxiom> axioms = ontology.getEquivalentClassesAxioms(owlClass);
-			if (axioms != null && !axioms.isEmpty()) {
-				// check axioms 
-				for (OWLEquivalentClassesAxiom axiom : axioms) {
-					// get the relevant part of the equivalence axiom
-					Set<OWLClassExpression> ces = axiom.getClassExpressionsMinus(owlClass);
-					if (ces.size() == 1) {
-						OWLClassExpression ce = ces.iterator().next();
-						if(!ce.isAnonymous()) {
-							// OboFormatTag.TAG_EQUIVALENT_TO
-							handleEquivalentTo(warnings, allOntologies, axiom, ce.asOWLClass(), pp);
-						}
-						else if (ce instanceof OWLObjectIntersectionOf) {
-							// OboFormatTag.TAG_INTERSECTION_OF
-							handleIntersection(warnings, allOntologies, axiom, (OWLObjectIntersectionOf) ce, pp);
-						}
-						else if (ce instanceof OWLObjectUnionOf) {
-							// OboFormatTag.TAG_UNION_OF
-							handleUnionOf(warnings, allOntologies, axiom, (OWLObjectUnionOf) ce, pp);
-						}
-						else {
-							// not translatable to OBO
-							handleGeneric(warnings, allOntologies, axiom, ce, pp);
-						}
+		List<OWLEquivalentClassesAxiom> axioms = info.equivalentClassesAxioms;
+		if (axioms != null && !axioms.isEmpty()) {
+			// check axioms 
+			for (OWLEquivalentClassesAxiom axiom : axioms) {
+				// get the relevant part of the equivalence axiom
+				Set<OWLClassExpression> ces = axiom.getClassExpressionsMinus(owlClass);
+				if (ces.size() == 1) {
+					OWLClassExpression ce = ces.iterator().next();
+					if(!ce.isAnonymous()) {
+						// OboFormatTag.TAG_EQUIVALENT_TO
+						handleEquivalentTo(warnings, index, allOntologies, axiom, ce.asOWLClass(), pp);
+					}
+					else if (ce instanceof OWLObjectIntersectionOf) {
+						// OboFormatTag.TAG_INTERSECTION_OF
+						handleIntersection(warnings, index, allOntologies, axiom, (OWLObjectIntersectionOf) ce, pp);
+					}
+					else if (ce instanceof OWLObjectUnionOf) {
+						// OboFormatTag.TAG_UNION_OF
+						handleUnionOf(warnings, index, allOntologies, axiom, (OWLObjectUnionOf) ce, pp);
 					}
 					else {
 						// not translatable to OBO
-						for (OWLClassExpression ce : ces) {
-							handleGeneric(warnings, allOntologies, axiom, ce, pp);
-						}
+						handleGeneric(warnings, index, allOntologies, axiom, ce, pp);
+					}
+				}
+				else {
+					// not translatable to OBO
+					for (OWLClassExpression ce : ces) {
+						handleGeneric(warnings, index, allOntologies, axiom, ce, pp);
 					}
 				}
 			}
 		}
 	}
 
-	private void handleEquivalentTo(List<CheckWarning> warnings, Set<OWLOntology> allOntologies,
+	private void handleEquivalentTo(List<CheckWarning> warnings, OntologyCheckIndex index, Set<OWLOntology> allOntologies,
 			OWLEquivalentClassesAxiom axiom, OWLClass cls, OWLPrettyPrinter pp)
 	{
-		if (isDangling(cls, allOntologies)) {
+		if (isDangling(cls, index, allOntologies)) {
 			final IRI iri = cls.getIRI();
 			String message = "Dangling reference "+iri+" in EQUIVALENT_TO axiom: "+pp.render(axiom);
 			warnings.add(new CheckWarning(getID(), message , isFatal(), iri, OboFormatTag.TAG_EQUIVALENT_TO.getTag()));
 		}
 	}
 	
-	private void handleIntersection(List<CheckWarning> warnings, Set<OWLOntology> allOntologies,
+	private void handleIntersection(List<CheckWarning> warnings, OntologyCheckIndex index, Set<OWLOntology> allOntologies,
 			OWLEquivalentClassesAxiom axiom, OWLObjectIntersectionOf intersection, OWLPrettyPrinter pp) 
 	{
 		for(OWLClassExpression operand : intersection.getOperandsAsList()) {
@@ -116,9 +120,9 @@ public class DanglingReferenceCheck extends AbstractCheck {
 			}
 			else {
 				// not translatable to OBO
-				handleGeneric(warnings, allOntologies, axiom, operand, pp);
+				handleGeneric(warnings, index, allOntologies, axiom, operand, pp);
 			}
-			if (operandCls != null && isDangling(operandCls, allOntologies)) {
+			if (operandCls != null && isDangling(operandCls, index, allOntologies)) {
 				final IRI iri = operandCls.getIRI();
 				String message = "Dangling reference "+iri+" in INTERSECTION_OF axiom: "+pp.render(axiom);
 				warnings.add(new CheckWarning(getID(), message , isFatal(), iri, OboFormatTag.TAG_INTERSECTION_OF.getTag()));
@@ -126,14 +130,14 @@ public class DanglingReferenceCheck extends AbstractCheck {
 		}
 	}
 	
-	private void handleUnionOf(List<CheckWarning> warnings, Set<OWLOntology> allOntologies, 
+	private void handleUnionOf(List<CheckWarning> warnings, OntologyCheckIndex index, Set<OWLOntology> allOntologies, 
 			OWLEquivalentClassesAxiom axiom, OWLObjectUnionOf union, OWLPrettyPrinter pp) 
 	{
 		List<OWLClassExpression> operands = union.getOperandsAsList();
 		for(OWLClassExpression operand : operands) {
 			if (!operand.isAnonymous()) {
 				OWLClass operandCls = operand.asOWLClass();
-				if (isDangling(operandCls, allOntologies)) {
+				if (isDangling(operandCls, index, allOntologies)) {
 					final IRI iri = operandCls.getIRI();
 					String message = "Dangling reference "+iri+" in UNION_OF axiom: "+pp.render(axiom);
 					warnings.add(new CheckWarning(getID(), message , isFatal(), iri, OboFormatTag.TAG_UNION_OF.getTag()));
@@ -141,17 +145,17 @@ public class DanglingReferenceCheck extends AbstractCheck {
 			}
 			else {
 				// not translatable to OBO
-				handleGeneric(warnings, allOntologies, axiom, operand, pp);
+				handleGeneric(warnings, index, allOntologies, axiom, operand, pp);
 			}
 		}
 	}
 
-	private void handleGeneric(List<CheckWarning> warnings, Set<OWLOntology> allOntologies, 
+	private void handleGeneric(List<CheckWarning> warnings, OntologyCheckIndex index, Set<OWLOntology> allOntologies, 
 			OWLEquivalentClassesAxiom axiom, OWLClassExpression ce, OWLPrettyPrinter pp) 
 	{
 		Set<OWLClass> classes = ce.getClassesInSignature();
 		for (OWLClass cls : classes) {
-			if (isDangling(cls, allOntologies)) {
+			if (isDangling(cls, index, allOntologies)) {
 				final IRI iri = cls.getIRI();
 				String message = "Dangling reference "+iri+" in axiom: "+pp.render(axiom);
 				warnings.add(new CheckWarning(getID(), message , isFatal(), iri, null));
@@ -160,43 +164,22 @@ public class DanglingReferenceCheck extends AbstractCheck {
 	}
 
 	/**
-	 * Test an class is dangling.
-	 * 
-	 * Here a dangling entity is one that has no annotation assertions;
-	 * 
-	 * This currently limited to OBO style ontologies
+	 * Test an class is dangling, using the index if it contains the class.
 	 * 
 	 * @param cls
+	 * @param index
 	 * @param ontologies
 	 * @return true if the class is dangling
 	 * 
+	 * @see OntologyCheckIndex#isDangling(org.semanticweb.owlapi.model.OWLEntity, Collection)
 	 * @see Mooncat#isDangling(OWLOntology, org.semanticweb.owlapi.model.OWLEntity)
 	 */
-	private boolean isDangling(OWLClass cls, Collection<OWLOntology> ontologies) {
-		// check for declaration axioms
-		// this usually won't hit, as obo2owl always creates an declaration axiom
-		boolean hasDeclaration = false;
-		
-		for (OWLOntology ontology : ontologies) {
-			Set<OWLDeclarationAxiom> axioms = ontology.getDeclarationAxioms(cls);
-			if (axioms != null && !axioms.isEmpty()) {
-				hasDeclaration = true;
-				break;
-			}
-		}
-		
-		if (!hasDeclaration) {
-			return true;
-		}
-		
-		// check that each class has either at least one least one annotation
-		for (OWLOntology ontology : ontologies) {
-			Set<OWLAnnotationAssertionAxiom> axioms = ontology.getAnnotationAssertionAxioms(cls.getIRI());
-			if (axioms != null && !axioms.isEmpty()) {
-				return false;
-			}
+	private boolean isDangling(OWLClass cls, OntologyCheckIndex index, Collection<OWLOntology> ontologies) {
+		EntityInfo info = index.getInfo(cls);
+		if (info != null) {
+			return info.dangling;
 		}
-		return true;
+		return OntologyCheckIndex.isDangling(cls, ontologies);
 	}
 
 }
@@ -18,12 +18,15 @@ import org.semanticweb.owlapi.model.OWLObject;
 import owltools.graph.OWLGraphWrapper;
 import owltools.graph.OWLGraphWrapper.ISynonym;
 import owltools.ontologyverification.CheckWarning;
+import owltools.ontologyverification.IndexedOntologyCheck;
+import owltools.ontologyverification.OntologyCheckIndex;
+import owltools.ontologyverification.OntologyCheckIndex.EntityInfo;
 
 /**
  * Check for redundant names in labels and synonyms (scope EXACT).<br>
  * By default all obsoleted objects are ignored.
  */
-public class NameRedundancyCheck extends AbstractCheck {
+public class NameRedundancyCheck extends AbstractCheck implements IndexedOntologyCheck {
 
 	public static final String SHORT_HAND = "name-redundancy";
 	
@@ -49,6 +52,11 @@ public class NameRedundancyCheck extends AbstractCheck {
 
 	@Override
 	public Collection<CheckWarning> check(OWLGraphWrapper graph, Collection<OWLObject> allOwlObjects) {
+		return check(graph, OntologyCheckIndex.create(graph, allOwlObjects));
+	}
+
+	@Override
+	public Collection<CheckWarning> check(OWLGraphWrapper graph, OntologyCheckIndex index) {
 
             List<CheckWarning> out = new ArrayList<CheckWarning>();
             
@@ -59,17 +67,14 @@ public class NameRedundancyCheck extends AbstractCheck {
             // local; check for duplicate synonym labels for one term
 			Set<String> localSynoyms = new HashSet<String>();
 			
-            for (OWLObject owlObject : allOwlObjects) {
-            	if (owlObject instanceof OWLEntity == false) {
-					continue;
-				}
-            	if (ignoreObsolete && graph.isObsolete(owlObject)) {
+            for (EntityInfo info : index.getEntities()) {
+            	if (ignoreObsolete && info.obsolete) {
             		continue;
             	}
             	
-            	OWLEntity owlEntity = (OWLEntity) owlObject;
+            	OWLEntity owlEntity = info.entity;
             	final IRI iri = owlEntity.getIRI();
-				String label = graph.getLabel(owlObject);
+				String label = info.label;
 				
 				if (label == null) {
 					out.add(new CheckWarning("HAS_NAME_CHECK", "The term with IRI: "+iri.toQuotedString()+" has no label.", isFatal(), iri));
@@ -78,7 +83,7 @@ public class NameRedundancyCheck extends AbstractCheck {
 				
 				addValue(label, owlEntity, labels);
 				
-				List<ISynonym> oboSynonyms = graph.getOBOSynonyms(owlObject);
+				List<ISynonym> oboSynonyms = info.synonyms;
 				if (oboSynonyms != null && !oboSynonyms.isEmpty()) {
 					localSynoyms.clear();
 					for (ISynonym synonym : oboSynonyms) {
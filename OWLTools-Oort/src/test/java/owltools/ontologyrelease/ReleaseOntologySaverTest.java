@@ -0,0 +1,103 @@
+package owltools.ontologyrelease;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Date;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+import org.junit.Test;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+/**
+ * Tests for {@link ReleaseOntologySaver}.
+ */
+public class ReleaseOntologySaverTest {
+
+	@Test
+	public void testGzipCopies() throws Exception {
+		testGzipCopies(1);
+	}
+
+	@Test
+	public void testGzipCopiesThreads() throws Exception {
+		testGzipCopies(2);
+	}
+
+	private void testGzipCopies(int threads) throws Exception {
+		File base = File.createTempFile("ReleaseOntologySaverTest-", ".tmp");
+		base.delete();
+		base.mkdirs();
+		try {
+			ReleaseRunnerFileTools files = new ReleaseRunnerFileTools(base, Logger.getLogger(ReleaseOntologySaverTest.class), false, true) {
+
+				@Override
+				File checkNew(File file) throws IOException {
+					return file;
+				}
+			};
+			OortConfiguration config = new OortConfiguration();
+			config.setThreads(threads);
+			config.setGzipOutput(true);
+			config.addToSkipFormatSet("obo");
+
+			OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+			OWLDataFactory f = manager.getOWLDataFactory();
+			OWLOntology ontology = manager.createOntology(IRI.create("http://purl.obolibrary.org/obo/test.owl"));
+			OWLClass a = f.getOWLClass(IRI.create("http://purl.obolibrary.org/obo/TEST_0001"));
+			OWLClass b = f.getOWLClass(IRI.create("http://purl.obolibrary.org/obo/TEST_0002"));
+			manager.addAxiom(ontology, f.getOWLSubClassOfAxiom(a, b));
+			OWLOntology gciOntology = manager.createOntology(IRI.create("http://purl.obolibrary.org/obo/test-aux.owl"));
+			manager.addAxiom(gciOntology, f.getOWLSubClassOfAxiom(f.getOWLObjectIntersectionOf(a, b), b));
+
+			Date date = new Date();
+			ReleaseOntologySaver saver = new ReleaseOntologySaver(files, config);
+			try {
+				saver.save("test", "test", ontology, gciOntology, date, manager);
+				saver.finish();
+			}
+			finally {
+				saver.shutdown();
+			}
+
+			File staging = new File(base, "staging");
+			for (String suffix : new String[]{ ReleaseOntologySaver.OWL, ReleaseOntologySaver.OWX,
+					ReleaseOntologySaver.AUX_OWL, ReleaseOntologySaver.AUX_OWX }) {
+				File file = new File(staging, "test" + suffix);
+				File gzipFile = new File(staging, "test" + suffix + ".gz");
+				assertTrue(file.getName(), file.isFile());
+				assertTrue(gzipFile.getName(), gzipFile.isFile());
+				assertEquals(FileUtils.readFileToString(file, "UTF-8"), gunzip(gzipFile));
+			}
+			// the version IRI and the import of the aux file refer to the uncompressed file
+			String owl = FileUtils.readFileToString(new File(staging, "test.owl"), "UTF-8");
+			assertTrue(owl.contains(OntologyVersionTools.format(date)+"/test.owl\""));
+			String aux = FileUtils.readFileToString(new File(staging, "test-aux.owl"), "UTF-8");
+			assertTrue(aux.contains("\"test.owl\""));
+		}
+		finally {
+			FileUtils.deleteQuietly(base);
+		}
+	}
+
+	private static String gunzip(File file) throws IOException {
+		InputStream in = new GZIPInputStream(new FileInputStream(file));
+		try {
+			return IOUtils.toString(in, "UTF-8");
+		}
+		finally {
+			in.close();
+		}
+	}
+}
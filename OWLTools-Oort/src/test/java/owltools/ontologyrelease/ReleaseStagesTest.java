@@ -0,0 +1,227 @@
+package owltools.ontologyrelease;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Properties;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.log4j.Logger;
+import org.junit.Test;
+
+/**
+ * Tests for {@link ReleaseStages}.
+ */
+public class ReleaseStagesTest {
+
+	@Test
+	public void testHashes() throws Exception {
+		File folder = createFolder();
+		try {
+			File input = new File(folder, "test.obo");
+			FileUtils.writeStringToFile(input, "format-version: 1.2");
+
+			ReleaseStages first = createStages(input.getAbsolutePath(), "elk");
+			ReleaseStages same = createStages(input.getAbsolutePath(), "elk");
+			assertNotNull(hash(first, ReleaseStages.LOAD));
+			assertEquals(hash(first, ReleaseStages.LOAD), hash(same, ReleaseStages.LOAD));
+			assertEquals(hash(first, ReleaseStages.MAIN), hash(same, ReleaseStages.MAIN));
+			assertEquals(hash(first, ReleaseStages.SIMPLE), hash(same, ReleaseStages.SIMPLE));
+
+			// a changed configuration value changes the stage and its dependents
+			ReleaseStages config = createStages(input.getAbsolutePath(), "hermit");
+			assertEquals(hash(first, ReleaseStages.LOAD), hash(config, ReleaseStages.LOAD));
+			assertFalse(hash(first, ReleaseStages.MAIN).equals(hash(config, ReleaseStages.MAIN)));
+			assertFalse(hash(first, ReleaseStages.SIMPLE).equals(hash(config, ReleaseStages.SIMPLE)));
+
+			// a changed input changes all stages
+			FileUtils.writeStringToFile(input, "format-version: 1.4");
+			ReleaseStages changed = createStages(input.getAbsolutePath(), "elk");
+			assertFalse(hash(first, ReleaseStages.LOAD).equals(hash(changed, ReleaseStages.LOAD)));
+			assertFalse(hash(first, ReleaseStages.MAIN).equals(hash(changed, ReleaseStages.MAIN)));
+
+			// no hash for URLs
+			ReleaseStages url = createStages("http://purl.obolibrary.org/obo/go.owl", "elk");
+			assertNull(hash(url, ReleaseStages.LOAD));
+			assertNull(hash(url, ReleaseStages.SIMPLE));
+		}
+		finally {
+			FileUtils.deleteQuietly(folder);
+		}
+	}
+
+	@Test
+	public void testReuse() throws Exception {
+		File folder = createFolder();
+		try {
+			File input = new File(folder, "test.obo");
+			FileUtils.writeStringToFile(input, "format-version: 1.2");
+			File base = new File(folder, "base");
+			ReleaseRunnerFileTools files = new ReleaseRunnerFileTools(base, Logger.getLogger(ReleaseStagesTest.class), false, true) {
+
+				@Override
+				File checkNew(File file) throws IOException {
+					return file;
+				}
+			};
+
+			// first release: run all stages and record their files
+			ReleaseStages first = createStages(input.getAbsolutePath(), "elk");
+			assertTrue(first.begin(ReleaseStages.LOAD, true, files));
+			assertTrue(first.begin(ReleaseStages.MAIN, true, files));
+			first.recordOutput("test.owl");
+			assertTrue(first.begin(ReleaseStages.SIMPLE, true, files));
+			first.recordOutput("test-simple.owl");
+			Properties stageInfo = first.getProperties();
+			// as committed into the base directory
+			FileUtils.writeStringToFile(new File(base, "test.owl"), "main");
+			FileUtils.writeStringToFile(new File(base, "test-simple.owl"), "simple");
+
+			// nothing changed
+			ReleaseStages second = createStages(input.getAbsolutePath(), "elk");
+			second.setPrevious(stageInfo);
+			assertTrue(second.canReuseFrom(ReleaseStages.LOAD, files));
+			assertFalse(second.begin(ReleaseStages.MAIN, true, files));
+			assertEquals("main", FileUtils.readFileToString(new File(base, "staging/test.owl")));
+			// without reuse, the stage runs
+			assertTrue(second.begin(ReleaseStages.SIMPLE, false, files));
+
+			// changed configuration
+			ReleaseStages third = createStages(input.getAbsolutePath(), "hermit");
+			third.setPrevious(stageInfo);
+			assertFalse(third.canReuseFrom(ReleaseStages.LOAD, files));
+			assertFalse(third.canReuseFrom(ReleaseStages.SIMPLE, files));
+			assertTrue(third.begin(ReleaseStages.MAIN, true, files));
+
+			// missing file of the last release
+			FileUtils.forceDelete(new File(base, "test-simple.owl"));
+			ReleaseStages fourth = createStages(input.getAbsolutePath(), "elk");
+			fourth.setPrevious(stageInfo);
+			assertFalse(fourth.canReuseFrom(ReleaseStages.MAIN, files));
+			assertTrue(fourth.begin(ReleaseStages.SIMPLE, true, files));
+		}
+		finally {
+			FileUtils.deleteQuietly(folder);
+		}
+	}
+
+	@Test
+	public void testVersion() throws Exception {
+		File folder = createFolder();
+		try {
+			File input = new File(folder, "test.obo");
+			FileUtils.writeStringToFile(input, "format-version: 1.2");
+			File base = new File(folder, "base");
+			ReleaseRunnerFileTools files = new ReleaseRunnerFileTools(base, Logger.getLogger(ReleaseStagesTest.class), false, true) {
+
+				@Override
+				File checkNew(File file) throws IOException {
+					return file;
+				}
+			};
+
+			// release with a generated version
+			ReleaseStages first = createStages(input.getAbsolutePath(), "elk");
+			first.setVersion("2013-01-01");
+			assertTrue(first.begin(ReleaseStages.LOAD, true, files));
+			assertTrue(first.begin(ReleaseStages.MAIN, true, files));
+			first.recordOutput("test.owl");
+			assertTrue(first.begin(ReleaseStages.SIMPLE, true, files));
+			first.recordOutput("test-simple.owl");
+			Properties stageInfo = first.getProperties();
+			FileUtils.writeStringToFile(new File(base, "test.owl"), "main");
+			FileUtils.writeStringToFile(new File(base, "test-simple.owl"), "simple");
+
+			// same inputs on another day
+			ReleaseStages second = createStages(input.getAbsolutePath(), "elk");
+			second.setPrevious(stageInfo);
+			assertEquals("2013-01-01", second.getPreviousVersion());
+			// before loading, assume the version of the last release: nothing changed
+			second.setVersion(second.getPreviousVersion());
+			assertTrue(second.canReuseFrom(ReleaseStages.LOAD, files));
+			// the new version changes all stages
+			second.setVersion("2013-01-02");
+			assertFalse(hash(first, ReleaseStages.LOAD).equals(hash(second, ReleaseStages.LOAD)));
+			assertFalse(hash(first, ReleaseStages.MAIN).equals(hash(second, ReleaseStages.MAIN)));
+			assertFalse(hash(first, ReleaseStages.SIMPLE).equals(hash(second, ReleaseStages.SIMPLE)));
+			assertFalse(second.canReuseFrom(ReleaseStages.LOAD, files));
+			assertTrue(second.begin(ReleaseStages.MAIN, true, files));
+			assertTrue(second.begin(ReleaseStages.SIMPLE, true, files));
+			assertEquals("2013-01-02", second.getProperties().getProperty("version"));
+		}
+		finally {
+			FileUtils.deleteQuietly(folder);
+		}
+	}
+
+	@Test
+	public void testBuild() throws Exception {
+		String build = ReleaseStages.getBuild();
+		assertNotNull(build);
+		ReleaseStages stages = ReleaseStages.create(new OortConfiguration(), Arrays.asList("test.obo"));
+		assertEquals(build, stages.getStage(ReleaseStages.LOAD).config.get("build"));
+	}
+
+	@Test
+	public void testReuseOverwrite() throws Exception {
+		File folder = createFolder();
+		try {
+			File input = new File(folder, "test.obo");
+			FileUtils.writeStringToFile(input, "format-version: 1.2");
+			File base = new File(folder, "base");
+			ReleaseRunnerFileTools files = new ReleaseRunnerFileTools(base, Logger.getLogger(ReleaseStagesTest.class), false, true) {
+
+				@Override
+				File checkNew(File file) throws IOException {
+					if (file.exists()) {
+						throw new IOException("Trying to overwrite an existing file: "+file);
+					}
+					return file;
+				}
+			};
+			ReleaseStages first = createStages(input.getAbsolutePath(), "elk");
+			assertTrue(first.begin(ReleaseStages.LOAD, true, files));
+			assertTrue(first.begin(ReleaseStages.MAIN, true, files));
+			first.recordOutput("test.owl");
+			Properties stageInfo = first.getProperties();
+			FileUtils.writeStringToFile(new File(base, "test.owl"), "main");
+
+			// reusing the file would overwrite the one in the base directory
+			ReleaseStages second = createStages(input.getAbsolutePath(), "elk");
+			second.setPrevious(stageInfo);
+			assertTrue(second.canReuseFrom(ReleaseStages.MAIN, files));
+			try {
+				second.begin(ReleaseStages.MAIN, true, files);
+				fail("the overwrite check should fail");
+			} catch (IOException e) {
+				// expected
+			}
+			assertFalse(new File(base, "staging/test.owl").exists());
+		}
+		finally {
+			FileUtils.deleteQuietly(folder);
+		}
+	}
+
+	private static ReleaseStages createStages(String input, String reasonerName) throws IOException {
+		ReleaseStages stages = new ReleaseStages();
+		stages.add(ReleaseStages.LOAD, true).input(input);
+		stages.add(ReleaseStages.MAIN, true, ReleaseStages.LOAD).config("reasonerName", reasonerName);
+		stages.add(ReleaseStages.SIMPLE, true, ReleaseStages.MAIN);
+		stages.computeHashes();
+		return stages;
+	}
+
+	private static String hash(ReleaseStages stages, String name) {
+		return stages.getStage(name).hash;
+	}
+
+	private static File createFolder() throws IOException {
+		File folder = File.createTempFile("ReleaseStagesTest-", ".tmp");
+		folder.delete();
+		folder.mkdirs();
+		return folder;
+	}
+}
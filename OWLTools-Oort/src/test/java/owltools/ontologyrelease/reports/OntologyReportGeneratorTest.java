@@ -0,0 +1,191 @@
+package owltools.ontologyrelease.reports;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+import owltools.graph.OWLGraphWrapper;
+import owltools.ontologyrelease.reports.OntologyReportGenerator.AbstractReport;
+import owltools.ontologyrelease.reports.OntologyReportGenerator.OntologyReport;
+
+/**
+ * Tests for {@link OntologyReportGenerator}.
+ */
+public class OntologyReportGeneratorTest {
+
+	// more classes than fit into the queues at once
+	private static final int CLASS_COUNT = OntologyReportGenerator.BATCH_SIZE * (OntologyReportGenerator.QUEUE_CAPACITY + 4) + 7;
+
+	@Test
+	public void testParallelOutput() throws Exception {
+		OWLGraphWrapper graph = createGraph(CLASS_COUNT);
+		File folder = createFolder();
+		try {
+			File sequential = generate(graph, new File(folder, "sequential"), false, false);
+			File parallel = generate(graph, new File(folder, "parallel"), true, false);
+			File gzip = generate(graph, new File(folder, "gzip"), true, true);
+			for (String name : Arrays.asList("doc/first.txt", "second.txt", "doc/third.txt")) {
+				File file = new File(sequential, name);
+				assertTrue(name, file.isFile());
+				assertTrue(name, FileUtils.readFileToString(file).startsWith("!"+name));
+				assertTrue(name, FileUtils.contentEquals(file, new File(parallel, name)));
+				// compressed reports have the suffix '.gz'
+				assertFalse(name, new File(gzip, name).exists());
+				assertArrayEquals(name, FileUtils.readFileToByteArray(file), gunzip(new File(gzip, name+".gz")));
+			}
+		}
+		finally {
+			FileUtils.deleteQuietly(folder);
+		}
+	}
+
+	@Test(timeout = 60000)
+	public void testFailure() throws Exception {
+		OWLGraphWrapper graph = createGraph(CLASS_COUNT);
+		File folder = createFolder();
+		try {
+			// fails in the first batch, the second one in the last batch
+			FailingReport first = new FailingReport("first-failure.txt", 10);
+			FailingReport second = new FailingReport("second-failure.txt", CLASS_COUNT - 1);
+			List<OntologyReport> reports = new ArrayList<OntologyReport>();
+			reports.add(new TestReport("first.txt", null));
+			reports.add(second);
+			reports.add(new TestReport("second.txt", null));
+			reports.add(first);
+			for (boolean parallel : new boolean[]{ false, true }) {
+				OntologyReportGenerator generator = new OntologyReportGenerator(reports, folder, parallel, false);
+				try {
+					generator.generateReports(graph);
+					fail("the failed report should be rethrown");
+				} catch (IOException e) {
+					// the first failure stops the generation, the second report never fails
+					assertSame(first.error, e);
+				}
+			}
+		}
+		finally {
+			FileUtils.deleteQuietly(folder);
+		}
+	}
+
+	private static File generate(OWLGraphWrapper graph, File folder, boolean parallel, boolean gzip) throws IOException {
+		new File(folder, "doc").mkdirs();
+		List<OntologyReport> reports = new ArrayList<OntologyReport>();
+		reports.add(new TestReport("first.txt", "doc"));
+		reports.add(new TestReport("second.txt", null));
+		reports.add(new TestReport("third.txt", "doc"));
+		new OntologyReportGenerator(reports, folder, parallel, gzip).generateReports(graph);
+		return folder;
+	}
+
+	private static OWLGraphWrapper createGraph(int count) throws Exception {
+		OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+		OWLDataFactory f = manager.getOWLDataFactory();
+		OWLOntology ontology = manager.createOntology(IRI.create("http://purl.obolibrary.org/obo/test.owl"));
+		OWLClass top = f.getOWLClass(IRI.create("http://purl.obolibrary.org/obo/TEST_0000000"));
+		for (int i = 1; i < count; i++) {
+			OWLClass cls = f.getOWLClass(IRI.create("http://purl.obolibrary.org/obo/TEST_"+String.format("%07d", i)));
+			manager.addAxiom(ontology, f.getOWLSubClassOfAxiom(cls, top));
+		}
+		return new OWLGraphWrapper(ontology);
+	}
+
+	private static File createFolder() throws IOException {
+		File folder = File.createTempFile("OntologyReportGeneratorTest-", ".tmp");
+		folder.delete();
+		folder.mkdirs();
+		return folder;
+	}
+
+	private static byte[] gunzip(File file) throws IOException {
+		InputStream in = new GZIPInputStream(new FileInputStream(file));
+		try {
+			return IOUtils.toByteArray(in);
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Writes a header and one line per class.
+	 */
+	private static class TestReport extends AbstractReport {
+
+		private final String fileName;
+		private final String subFolderName;
+
+		TestReport(String fileName, String subFolderName) {
+			this.fileName = fileName;
+			this.subFolderName = subFolderName;
+		}
+
+		@Override
+		public String getReportSubFolderName() {
+			return subFolderName;
+		}
+
+		@Override
+		public String getReportFileName() {
+			return fileName;
+		}
+
+		@Override
+		protected String getFileHeader() {
+			return "!"+(subFolderName == null ? "" : subFolderName+"/")+fileName;
+		}
+
+		@Override
+		public void handleTerm(PrintWriter writer, OWLClass owlClass, OWLGraphWrapper graph) throws IOException {
+			writeTabs(writer, owlClass.getIRI().toString(), fileName);
+		}
+	}
+
+	/**
+	 * Fails after the given number of classes.
+	 */
+	private static class FailingReport extends TestReport {
+
+		private final IOException error;
+		private final int failAt;
+		private int count = 0;
+
+		FailingReport(String fileName, int failAt) {
+			super(fileName, null);
+			this.failAt = failAt;
+			this.error = new IOException("report failed: "+fileName);
+		}
+
+		@Override
+		public void start(PrintWriter writer, OWLGraphWrapper graph) throws IOException {
+			count = 0;
+			super.start(writer, graph);
+		}
+
+		@Override
+		public void handleTerm(PrintWriter writer, OWLClass owlClass, OWLGraphWrapper graph) throws IOException {
+			if (count++ == failAt) {
+				throw error;
+			}
+			super.handleTerm(writer, owlClass, graph);
+		}
+	}
+}
@@ -4,15 +4,23 @@ import static org.junit.Assert.*;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.junit.Test;
+import org.semanticweb.owlapi.model.IRI;
 import org.semanticweb.owlapi.model.OWLObject;
 
 import owltools.OWLToolsTestBasics;
 import owltools.graph.OWLGraphWrapper;
+import owltools.io.ParserWrapper;
 import owltools.ontologyverification.OntologyCheckRunner.TimePoint;
 import owltools.ontologyverification.impl.AbstractCheck;
+import owltools.ontologyverification.impl.CycleCheck;
+import owltools.ontologyverification.impl.DanglingReferenceCheck;
+import owltools.ontologyverification.impl.NameRedundancyCheck;
 
 /**
  * Tests for {@link OntologyCheckRunner}.
@@ -52,6 +60,45 @@ public class OntologyCheckRunnerTest extends OWLToolsTestBasics {
 		Map<OntologyCheck, Collection<CheckWarning>> results3 = runner.verify(null, null, TimePoint.AfterReasoning);
 		assertEquals(1, results3.size());
 	}
-
+	
+	@Test
+	public void testParallelChecks() throws Exception {
+		ParserWrapper parser = new ParserWrapper();
+		IRI iri = IRI.create(getResource("verification/dangling_references.obo").getAbsoluteFile()) ;
+		OWLGraphWrapper graph = parser.parseToOWLGraph(iri.toString());
+		
+		Collection<OntologyCheck> checks = new ArrayList<OntologyCheck>();
+		checks.add(new NameRedundancyCheck());
+		checks.add(new DanglingReferenceCheck());
+		checks.add(new CycleCheck());
+		
+		Map<OntologyCheck, Collection<CheckWarning>> sequential = new OntologyCheckRunner(checks, 1).verify(graph, TimePoint.AfterLoad);
+		Map<OntologyCheck, Long> timings = new HashMap<OntologyCheck, Long>();
+		Map<OntologyCheck, Collection<CheckWarning>> parallel = new OntologyCheckRunner(checks, 3).verify(graph, TimePoint.AfterLoad, timings);
+		
+		assertEquals(3, parallel.size());
+		assertEquals(checks.size(), timings.size());
+		for (OntologyCheck check : checks) {
+			assertEquals(render(sequential.get(check)), render(parallel.get(check)));
+			assertNotNull(timings.get(check));
+		}
+		// indexed check gives the same warnings as the direct check
+		assertEquals(1, parallel.get(new DanglingReferenceCheck()).size());
+		assertEquals(new NameRedundancyCheck().check(graph, graph.getAllOWLObjects()).size(), 
+				parallel.get(new NameRedundancyCheck()).size());
+	}
+	
+	/**
+	 * @param warnings
+	 * @return sorted messages and IRIs of the warnings
+	 */
+	private static List<String> render(Collection<CheckWarning> warnings) {
+		List<String> result = new ArrayList<String>();
+		for (CheckWarning warning : warnings) {
+			result.add(warning.getMessage()+" "+warning.getIris()+" "+warning.getField());
+		}
+		Collections.sort(result);
+		return result;
+	}
 
 }
@@ -97,6 +97,7 @@ import owltools.cli.tools.CLIMethod;
 import owltools.gfx.GraphicsConfig;
 import owltools.gfx.GraphicsConfig.RelationConfig;
 import owltools.gfx.OWLGraphLayoutRenderer;
+import owltools.graph.BoundedOWLGraphClosureCache.EvictionPolicy;
 import owltools.graph.OWLGraphEdge;
 import owltools.graph.OWLGraphWrapper;
 import owltools.graph.OWLQuantifiedProperty;
@@ -104,6 +105,9 @@ import owltools.graph.OWLQuantifiedProperty.Quantifier;
 import owltools.idmap.IDMapPairWriter;
 import owltools.idmap.IDMappingPIRParser;
 import owltools.idmap.UniProtIDMapParser;
+import owltools.io.BinaryGraphClosureFormat;
+import owltools.io.BinaryGraphClosureReader;
+import owltools.io.BinaryGraphClosureRenderer;
 import owltools.io.CatalogXmlIRIMapper;
 import owltools.io.ChadoGraphClosureRenderer;
 import owltools.io.CompactGraphClosureReader;
@@ -425,23 +429,32 @@ public class CommandRunner {
 				}
 			}
 			else if (opts.nextEq("--save-closure")) {
-				opts.info("[-c] FILENAME", "write out closure of graph.");
+				opts.info("[-c|-b] FILENAME", "write out closure of graph.");
 				GraphRenderer gcw;
 				if (opts.nextEq("-c")) {
 					opts.info("", "compact storage option.");
 					gcw = new CompactGraphClosureRenderer(opts.nextOpt());					
 				}
+				else if (opts.nextEq("-b")) {
+					opts.info("", "binary storage option, can be memory-mapped by --read-closure.");
+					gcw = new BinaryGraphClosureRenderer(opts.nextOpt());
+				}
 				else {
 					gcw = new GraphClosureRenderer(opts.nextOpt());
 				}
 				gcw.render(g);				
 			}
 			else if (opts.nextEq("--read-closure")) {
-				opts.info("FILENAME", "reads closure previously saved using --save-closure (compact format only)");
-				GraphReader gr = new CompactGraphClosureReader(g);
-				gr.read(opts.nextOpt());	
+				opts.info("FILENAME", "reads closure previously saved using --save-closure (compact or binary format only)");
+				String file = opts.nextOpt();
+				GraphReader gr;
+				if (BinaryGraphClosureFormat.isBinaryClosureFile(file))
+					gr = new BinaryGraphClosureReader(g);
+				else
+					gr = new CompactGraphClosureReader(g);
+				gr.read(file);
 				LOG.info("RESTORED CLOSURE CACHE");
-				LOG.info("size="+g.inferredEdgeBySource.size());
+				LOG.info("size="+g.getOutgoingClosureCache().size());
 			}
 			else if (opts.nextEq("--save-closure-for-chado")) {
 				opts.info("OUTPUTFILENAME",
@@ -2028,6 +2041,32 @@ public class CommandRunner {
 			else if (opts.nextEq("--no-cache")) {
 				g.getConfig().isCacheClosure = false;
 			}
+			else if (opts.nextEq("--precompute-closure")) {
+				opts.info("[-t NUM_THREADS]", "computes the closure of all objects in parallel and caches the results");
+				int numThreads = Runtime.getRuntime().availableProcessors();
+				if (opts.nextEq("-t")) {
+					numThreads = Integer.parseInt(opts.nextOpt());
+				}
+				// the report is logged by the precomputer
+				g.precomputeOutgoingEdgesClosures(numThreads);
+			}
+			else if (opts.nextEq("--closure-cache")) {
+				opts.info("[--max-edges N] [--lfu]", "bounds the closure caches to N edges each, evicting least recently (or least frequently) used entries");
+				while (opts.hasOpts()) {
+					if (opts.nextEq("--max-edges")) {
+						g.getConfig().closureCacheMaxWeight = Long.parseLong(opts.nextOpt());
+					}
+					else if (opts.nextEq("--lfu")) {
+						g.getConfig().closureCacheEvictionPolicy = EvictionPolicy.LFU;
+					}
+					else {
+						break;
+					}
+				}
+				g.getConfig().isCacheClosure = true;
+				g.setOutgoingClosureCache(null);
+				g.setIncomingClosureCache(null);
+			}
 			else if (opts.nextEq("--start-server")) {
 				int port = 9000;
 				while (opts.hasOpts()) {
@@ -330,13 +330,18 @@ public class GafCommandRunner extends CommandRunner {
 	
 	@CLIMethod("--gaf-run-checks")
 	public void runGAFChecks(Opts opts) throws Exception {
+		opts.info("[-t NUM_THREADS]", "runs the annotation rules on the current GAF document");
+		int numThreads = 1;
+		if (opts.hasOpts() && opts.nextEq("-t|--threads")) {
+			numThreads = Integer.parseInt(opts.nextOpt());
+		}
 		if (g != null && gafdoc != null && gafReportFile != null) {
 			if (eco == null) {
 				eco = EcoTools.loadECO(pw);
 			}
 			LOG.info("Start validating GAF");
 			AnnotationRulesFactory rulesFactory = new GoAnnotationRulesFactoryImpl(g, eco);
-			AnnotationRulesEngine ruleEngine = new AnnotationRulesEngine(rulesFactory );
+			AnnotationRulesEngine ruleEngine = new AnnotationRulesEngine(rulesFactory, numThreads);
 			AnnotationRulesEngineResult result = ruleEngine.validateAnnotations(gafdoc);
 			LOG.info("Finished validating GAF");
 			File reportFile = new File(gafReportFile);
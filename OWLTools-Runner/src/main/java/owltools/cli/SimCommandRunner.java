@@ -1,8 +1,10 @@
 package owltools.cli;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -42,6 +44,7 @@ import owltools.sim.SimpleOwlSim.EnrichmentConfig;
 import owltools.sim.SimpleOwlSim.EnrichmentResult;
 import owltools.sim.SimpleOwlSim.ScoreAttributesPair;
 import owltools.sim.SimSearch;
+import owltools.sim.TiledAllByAllRunner;
 import owltools.sim.Similarity;
 import owltools.sim.SimpleOwlSim.SimProperty;
 import owltools.sim.preprocessor.NullSimPreProcessor;
@@ -66,6 +69,11 @@ public class SimCommandRunner extends SolrCommandRunner {
 	//private double minimumMaxIC = 4.0;
 	//private double minimumSimJ = 0.25;
 	Properties simProperties = null;
+	private String informationContentTableFile = null;
+	// written by --phenosim, read by --sim-resume
+	private String analysisOntologyFile = "/tmp/phenosim-analysis-ontology.owl";
+	// LCSs written by --phenosim, read by --sim-resume
+	private String lcsTableFile = null;
 
 	private void initProperties() {
 		simProperties = new Properties();
@@ -87,6 +95,18 @@ public class SimCommandRunner extends SolrCommandRunner {
 	}
 
 
+	@CLIMethod("--sim-ic-table")
+	public void setSimICTable(Opts opts) {
+		opts.info("FILE", "use the information content table in FILE; it is computed and saved if missing or stale");
+		informationContentTableFile = opts.nextOpt();
+	}
+
+	private SimEngine createSimEngine() {
+		SimEngine se = new SimEngine(g);
+		se.setInformationContentTableFile(informationContentTableFile);
+		return se;
+	}
+
 	@CLIMethod("--sim-method")
 	public void setSimMethod(Opts opts) {
 		opts.info("metric", "sets deafult similarity metric. Type --all to show all TODO");
@@ -97,7 +117,7 @@ public class SimCommandRunner extends SolrCommandRunner {
 	public void simAll(Opts opts) throws SimilarityAlgorithmException {
 		opts.info("", "calculates similarity between all pairs");
 		Double minScore = null;
-		SimEngine se = new SimEngine(g);
+		SimEngine se = createSimEngine();
 		if (opts.hasOpts()) {
 			if (opts.nextEq("-m|--min")) {
 				minScore = Double.valueOf(opts.nextOpt());
@@ -133,7 +153,7 @@ public class SimCommandRunner extends SolrCommandRunner {
 		String subSimMethod = null;
 
 		boolean isAll = false;
-		SimEngine se = new SimEngine(g);
+		SimEngine se = createSimEngine();
 		while (opts.hasOpts()) {
 			System.out.println("sub-opts for --sim");
 			if (opts.nextEq("-m")) {
@@ -294,7 +314,7 @@ public class SimCommandRunner extends SolrCommandRunner {
 		System.out.println(a+ " // "+a.getClass());
 		System.out.println(b+ " // "+b.getClass());
 
-		SimEngine se = new SimEngine(g);
+		SimEngine se = createSimEngine();
 		OWLClassExpression lcs = se.getLeastCommonSubsumerSimpleClassExpression(a, b);
 
 		System.out.println("LCS:"+owlpp.render(lcs));
@@ -312,7 +332,7 @@ public class SimCommandRunner extends SolrCommandRunner {
 			simOnt = g.getManager().createOntology();
 		}
 
-		SimEngine se = new SimEngine(g);
+		SimEngine se = createSimEngine();
 
 		Set <OWLObject> objs1 = new HashSet<OWLObject>();
 		Set <OWLObject> objs2 = new HashSet<OWLObject>();
@@ -366,7 +386,7 @@ public class SimCommandRunner extends SolrCommandRunner {
 	@CLIMethod("--get-ic")
 	public void getIC(Opts opts) {
 		opts.info("LABEL [-p COMPARISON_PROPERTY_URI]", "calculate information content for class");
-		SimEngine se = new SimEngine(g);
+		SimEngine se = createSimEngine();
 		if (opts.nextEq("-p")) {
 			se.comparisonProperty =  g.getOWLObjectProperty(opts.nextOpt());
 		}
@@ -380,7 +400,7 @@ public class SimCommandRunner extends SolrCommandRunner {
 	@CLIMethod("--ancestors-with-ic")
 	public void getAncestorsWithIC(Opts opts) {
 		opts.info("LABEL [-p COMPARISON_PROPERTY_URI]", "list edges in graph closure to root nodes, with the IC of the target node");
-		SimEngine se = new SimEngine(g);
+		SimEngine se = createSimEngine();
 		if (opts.nextEq("-p")) {
 			se.comparisonProperty =  g.getOWLObjectProperty(opts.nextOpt());
 		}
@@ -398,7 +418,7 @@ public class SimCommandRunner extends SolrCommandRunner {
 	@CLIMethod("--all-class-ic")
 	public void allClassIC(Opts opts) throws Exception {
 		opts.info("", "show calculated Information Content for all classes");
-		SimEngine se = new SimEngine(g);
+		SimEngine se = createSimEngine();
 		Similarity sa = se.getSimilarityAlgorithm(similarityAlgorithmName);
 		//  no point in caching, as we only check descendants of each object once
 		g.getConfig().isCacheClosure = false;
@@ -414,27 +434,89 @@ public class SimCommandRunner extends SolrCommandRunner {
 	// -------------------------
 
 	/**
-	 * performs all by all individual comparison
+	 * performs all by all individual comparison.
+	 * The comparisons are split into tiles, see {@link TiledAllByAllRunner};
+	 * with an output directory, an interrupted run is resumed from its checkpoint.
 	 * @param opts 
+	 * @throws IOException 
 	 */
-	public void runOwlSim(Opts opts) {
+	public void runOwlSim(Opts opts) throws IOException {
 		sos.setSimProperties(simProperties);
 		owlpp = new OWLPrettyPrinter(g);
-		if (opts.nextEq("-q")) {
-			runOwlSimOnQuery(opts, opts.nextOpt());
-			return;
+		int numThreads = 1;
+		int tileSize = 100;
+		int shard = 1;
+		int numShards = 1;
+		File outputDir = null;
+		while (opts.hasOpts()) {
+			if (opts.nextEq("-q")) {
+				runOwlSimOnQuery(opts, opts.nextOpt());
+				return;
+			}
+			else if (opts.nextEq("-t|--threads")) {
+				numThreads = Integer.parseInt(opts.nextOpt());
+			}
+			else if (opts.nextEq("--tile-size")) {
+				tileSize = Integer.parseInt(opts.nextOpt());
+			}
+			else if (opts.nextEq("--shard")) {
+				// I/N, e.g. 2/4 for the second of four shards
+				String[] parts = opts.nextOpt().split("/");
+				shard = Integer.parseInt(parts[0]);
+				numShards = Integer.parseInt(parts[1]);
+			}
+			else if (opts.nextEq("-d|--output-dir")) {
+				outputDir = new File(opts.nextOpt());
+			}
+			else {
+				break;
+			}
 		}
+		// only needed for the all by all comparison
+		sos.buildAttributeIndex();
 		Set<OWLNamedIndividual> insts = pproc.getOutputOntology().getIndividualsInSignature();
-		LOG.info("All by all for "+insts.size()+" individuals");
 		for (OWLNamedIndividual i : insts) {
-			for (OWLNamedIndividual j : insts) {
-				// similarity is symmetrical
-				if (isComparable(i,j)) {
-					showSim(i,j);
-				}
+			if (numThreads > 1 && !sos.getAttributeIndex().containsElement(i)) {
+				// the set based methods are not thread safe
+				LOG.warn("Not in attribute index: "+i+", using a single thread");
+				numThreads = 1;
 			}
 		}
-		LOG.info("FINISHED All by all for "+insts.size()+" individuals");
+		final double minimumMaxIC = getPropertyAsDouble(SimProperty.minimumMaxIC);
+		final double minimumSimJ = getPropertyAsDouble(SimProperty.minimumSimJ);
+		final ThreadLocal<OWLPrettyPrinter> pp = new ThreadLocal<OWLPrettyPrinter>() {
+
+			@Override
+			protected OWLPrettyPrinter initialValue() {
+				return new OWLPrettyPrinter(g);
+			}
+		};
+		// without id spaces to compare, similarity is symmetrical: each pair is compared once
+		boolean symmetric = getProperty(SimProperty.compare) == null;
+		TiledAllByAllRunner.PairFilter filter = null;
+		if (!symmetric) {
+			filter = new TiledAllByAllRunner.PairFilter() {
+
+				@Override
+				public boolean isComparable(OWLNamedIndividual i, OWLNamedIndividual j) {
+					return SimCommandRunner.this.isComparable(i, j);
+				}
+			};
+		}
+		TiledAllByAllRunner runner = new TiledAllByAllRunner(insts, filter,
+				new TiledAllByAllRunner.PairRenderer() {
+
+					@Override
+					public void render(OWLNamedIndividual i, OWLNamedIndividual j, PrintStream out) {
+						showSim(i, j, minimumMaxIC, minimumSimJ, pp.get(), out);
+					}
+				});
+		runner.setSymmetric(symmetric);
+		runner.setNumThreads(numThreads);
+		runner.setTileSize(tileSize);
+		runner.setShard(shard, numShards);
+		runner.setOutputDir(outputDir);
+		runner.run();
 	}
 
 	private void runOwlSimOnQuery(Opts opts, String q) {
@@ -466,25 +548,31 @@ public class SimCommandRunner extends SolrCommandRunner {
 	}
 
 	private void showSim(OWLNamedIndividual i, OWLNamedIndividual j) {
+		showSim(i, j, getPropertyAsDouble(SimProperty.minimumMaxIC), getPropertyAsDouble(SimProperty.minimumSimJ),
+				owlpp, System.out);
+	}
+
+	private void showSim(OWLNamedIndividual i, OWLNamedIndividual j, double minimumMaxIC, double minimumSimJ,
+			OWLPrettyPrinter pp, PrintStream out) {
 		ScoreAttributesPair maxic = sos.getSimilarityMaxIC(i, j);
-		if ( maxic.score < getPropertyAsDouble(SimProperty.minimumMaxIC)) {
+		if ( maxic.score < minimumMaxIC) {
 			return;
 		}
 		float s = sos.getElementJaccardSimilarity(i, j);
-		if (s < getPropertyAsDouble(SimProperty.minimumSimJ)) {
+		if (s < minimumSimJ) {
 			return;
 		}
 		ScoreAttributesPair bma = sos.getSimilarityBestMatchAverageAsym(i, j);
 
-		System.out.println("SimJ\t"+renderPair(i,j)+"\t"+s);
+		out.println("SimJ\t"+renderPair(i,j,pp)+"\t"+s);
 
-		System.out.println("MaxIC\t"+renderPair(i,j)+"\t"+maxic.score+"\t"+show(maxic.attributeClassSet));
+		out.println("MaxIC\t"+renderPair(i,j,pp)+"\t"+maxic.score+"\t"+show(maxic.attributeClassSet,pp));
 
-		System.out.println("BMAasym\t"+renderPair(i,j)+"\t"+bma.score+"\t"+show(bma.attributeClassSet));	
+		out.println("BMAasym\t"+renderPair(i,j,pp)+"\t"+bma.score+"\t"+show(bma.attributeClassSet,pp));	
 	}
 
-	private String renderPair(OWLNamedIndividual i, OWLNamedIndividual j) {
-		return i+"\t"+owlpp.render(i)+"\t"+j+"\t"+owlpp.render(j);
+	private String renderPair(OWLNamedIndividual i, OWLNamedIndividual j, OWLPrettyPrinter pp) {
+		return i+"\t"+pp.render(i)+"\t"+j+"\t"+pp.render(j);
 	}
 
 
@@ -493,6 +581,12 @@ public class SimCommandRunner extends SolrCommandRunner {
 			if (opts.nextEq("-p|--properties")) {
 				loadProperties(opts.nextOpt());
 			}
+			else if (opts.nextEq("--analysis-ontology")) {
+				analysisOntologyFile = opts.nextOpt();
+			}
+			else if (opts.nextEq("--lcs-table")) {
+				lcsTableFile = opts.nextOpt();
+			}
 			else {
 				break;
 			}
@@ -532,8 +626,12 @@ public class SimCommandRunner extends SolrCommandRunner {
 			sos = new SimpleOwlSim(g.getSourceOntology());
 			sos.setSimPreProcessor(pproc);
 			sos.createElementAttributeMapFromOntology();
-			sos.saveOntology("/tmp/phenosim-analysis-ontology.owl");
+			sos.saveOntology(analysisOntologyFile);
 			runOwlSim(opts);
+			if (lcsTableFile != null) {
+				// the LCSs chosen while scoring, so that --sim-resume gives the same scores
+				sos.saveLowestCommonSubsumerTable(lcsTableFile);
+			}
 		}
 		catch (Exception e) {
 			e.printStackTrace();
@@ -553,7 +651,7 @@ public class SimCommandRunner extends SolrCommandRunner {
 	@CLIMethod("--sim-resume")
 	public void simResume(Opts opts) throws OWLOntologyCreationException, OWLOntologyStorageException, IOException {
 		loadProperties(opts);
-		OWLOntology ont = pw.parse("file:///tmp/phenosim-analysis-ontology.owl");
+		OWLOntology ont = pw.parse(new File(analysisOntologyFile).toURI().toString());
 		if (g == null) {
 			g =	new OWLGraphWrapper(ont);
 		}
@@ -569,6 +667,9 @@ public class SimCommandRunner extends SolrCommandRunner {
 			sos = new SimpleOwlSim(g.getSourceOntology());
 			sos.setSimPreProcessor(pproc);
 			sos.createElementAttributeMapFromOntology();
+			if (lcsTableFile != null && new File(lcsTableFile).exists()) {
+				sos.loadLowestCommonSubsumerTable(lcsTableFile);
+			}
 			runOwlSim(opts);
 		}
 		catch (Exception e) {
@@ -639,10 +740,10 @@ public class SimCommandRunner extends SolrCommandRunner {
 	}
 
 
-	private String show(Set<OWLClassExpression> cset) {
+	private String show(Set<OWLClassExpression> cset, OWLPrettyPrinter pp) {
 		StringBuffer sb = new StringBuffer();
 		for (OWLClassExpression c : cset) {
-			sb.append(owlpp.render(c) + "\t");
+			sb.append(pp.render(c) + "\t");
 		}
 		return sb.toString();
 	}
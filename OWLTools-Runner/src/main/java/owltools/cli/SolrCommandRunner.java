@@ -22,15 +22,19 @@ import com.google.gson.Gson;
 
 import owltools.cli.tools.CLIMethod;
 import owltools.flex.FlexCollection;
+import owltools.flex.FlexDocument;
 import owltools.gaf.GafDocument;
 import owltools.gaf.GafObjectsBuilder;
+import owltools.gaf.StreamingGafParser;
 import owltools.graph.OWLGraphWrapper;
 import owltools.graph.shunt.OWLShuntEdge;
 import owltools.graph.shunt.OWLShuntGraph;
 import owltools.graph.shunt.OWLShuntNode;
+import owltools.solrj.AbstractSolrLoader;
 import owltools.solrj.FlexSolrDocumentLoader;
 import owltools.solrj.GafSolrDocumentLoader;
 import owltools.solrj.OntologySolrLoader;
+import owltools.solrj.SolrClosureCache;
 import owltools.yaml.golrconfig.ConfigManager;
 import owltools.yaml.golrconfig.SolrSchemaXMLWriter;
 
@@ -44,6 +48,11 @@ public class SolrCommandRunner extends TaxonCommandRunner {
 	
 	private String globalSolrURL = null;
 	private ConfigManager aconf = null;
+	private int solrSenderThreads = -1;
+	private int solrBuilderThreads = -1;
+	private int solrParserThreads = -1;
+	private int solrBatchSize = -1;
+	private int solrCommitWithin = -1;
 
 	/**
 	 * Output (STDOUT) a XML segment to put into the Solr schema file after reading the YAML file.
@@ -124,6 +133,57 @@ public class SolrCommandRunner extends TaxonCommandRunner {
 		LOG.info("Globally use GOlr server at: " + globalSolrURL);
 	}
 	
+	/**
+	 * Set how documents are sent by the following Solr load options.
+	 * By default, documents are sent in batches by 2 background threads,
+	 * and committed once at the end.
+	 * <br>
+	 * Options:
+	 * <ul>
+	 * <li>--sender-threads N : number of sending threads, 0 to send from the loading thread</li>
+	 * <li>--builder-threads N : number of threads building GAF documents</li>
+	 * <li>--parser-threads N : number of threads parsing a GAF for --solr-load-gafs, 0 to parse on the loading thread</li>
+	 * <li>--batch-size N : maximum number of documents per add</li>
+	 * <li>--commit-within MS : let the server commit within MS milliseconds, instead of at the end</li>
+	 * </ul>
+	 * 
+	 * @param opts
+	 */
+	@CLIMethod("--solr-loader-options")
+	public void setSolrLoaderOptions(Opts opts) {
+		while (opts.hasOpts()) {
+			if (opts.nextEq("--sender-threads")) {
+				solrSenderThreads = Integer.parseInt(opts.nextOpt());
+			}
+			else if (opts.nextEq("--builder-threads")) {
+				solrBuilderThreads = Integer.parseInt(opts.nextOpt());
+			}
+			else if (opts.nextEq("--parser-threads")) {
+				solrParserThreads = Integer.parseInt(opts.nextOpt());
+			}
+			else if (opts.nextEq("--batch-size")) {
+				solrBatchSize = Integer.parseInt(opts.nextOpt());
+			}
+			else if (opts.nextEq("--commit-within")) {
+				solrCommitWithin = Integer.parseInt(opts.nextOpt());
+			}
+			else {
+				break;
+			}
+		}
+	}
+
+	private void configureLoader(AbstractSolrLoader loader) {
+		if (solrSenderThreads >= 0)
+			loader.setNumSenderThreads(solrSenderThreads);
+		if (solrBatchSize > 0)
+			loader.setBatchSize(solrBatchSize);
+		if (solrCommitWithin > 0)
+			loader.setCommitWithin(solrCommitWithin);
+		if (solrBuilderThreads > 0 && loader instanceof GafSolrDocumentLoader)
+			((GafSolrDocumentLoader) loader).setNumBuilderThreads(solrBuilderThreads);
+	}
+
 	/**
 	 * Manually purge the index to try again.
 	 * Since this cascade is currently ordered, can be used to purge before we load.
@@ -164,6 +224,7 @@ public class SolrCommandRunner extends TaxonCommandRunner {
 		// Actual ontology class loading.
 		try {
 			OntologySolrLoader loader = new OntologySolrLoader(url, g);
+			configureLoader(loader);
 			loader.load();
 		} catch (SolrServerException e) {
 			LOG.info("Ontology load at: " + url + " failed!");
@@ -189,6 +250,7 @@ public class SolrCommandRunner extends TaxonCommandRunner {
 		// Actual ontology class loading.
 		try {
 			FlexSolrDocumentLoader loader = new FlexSolrDocumentLoader(url, flex);
+			configureLoader(loader);
 			loader.load();
 		} catch (SolrServerException e) {
 			LOG.info("Ontology load at: " + url + " failed!");
@@ -229,9 +291,18 @@ public class SolrCommandRunner extends TaxonCommandRunner {
 
 		// TODO: Make it a little nicer?
 		
-		// And dump it.
+		// And dump it, one document at a time; same JSON as for the whole collection.
 		Gson gson = new Gson();
-		System.out.println(gson.toJson(flex));
+		boolean first = true;
+		System.out.print("{\"docs\":[");
+		for( FlexDocument doc : flex ){
+			if( ! first ){
+				System.out.print(",");
+			}
+			System.out.print(gson.toJson(doc));
+			first = false;
+		}
+		System.out.println("]}");
 	}
 		
 	/**
@@ -246,11 +317,20 @@ public class SolrCommandRunner extends TaxonCommandRunner {
 		String url = sortOutSolrURL(globalSolrURL);
 
 		List<String> files = opts.nextList();
+		// closures are shared by the GAFs of this load, the graph does not change in between
+		SolrClosureCache cache = new SolrClosureCache(g);
 		for (String file : files) {
 			LOG.info("Parsing GAF: " + file);
-			GafObjectsBuilder builder = new GafObjectsBuilder();
-			gafdoc = builder.buildDocument(file);
-			loadGAFDoc(url, gafdoc);
+			if (solrParserThreads == 0) {
+				GafObjectsBuilder builder = new GafObjectsBuilder();
+				gafdoc = builder.buildDocument(file);
+			}
+			else {
+				StreamingGafParser parser = solrParserThreads > 0 ?
+						new StreamingGafParser(solrParserThreads) : new StreamingGafParser();
+				gafdoc = parser.buildDocument(file);
+			}
+			loadGAFDoc(url, gafdoc, cache);
 		}
 	}
 	
@@ -272,7 +352,7 @@ public class SolrCommandRunner extends TaxonCommandRunner {
 		// Check to see if the global url has been set.
 		String url = sortOutSolrURL(globalSolrURL);
 		// Doc load.
-		loadGAFDoc(url, gafdoc);
+		loadGAFDoc(url, gafdoc, new SolrClosureCache(g));
 	}
 		
 	/**
@@ -374,12 +454,14 @@ public class SolrCommandRunner extends TaxonCommandRunner {
 	/*
 	 * Wrapper multiple places where there is direct GAF loading.
 	 */
-	private void loadGAFDoc(String url, GafDocument gafdoc) throws IOException{
+	private void loadGAFDoc(String url, GafDocument gafdoc, SolrClosureCache cache) throws IOException{
 
 		// Doc load.
 		GafSolrDocumentLoader loader = new GafSolrDocumentLoader(url);
 		loader.setGafDocument(gafdoc);
 		loader.setGraph(g);
+		loader.setClosureCache(cache);
+		configureLoader(loader);
 		try {
 			loader.load();
 		} catch (SolrServerException e) {
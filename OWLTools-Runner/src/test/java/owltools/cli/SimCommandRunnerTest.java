@@ -0,0 +1,97 @@
+package owltools.cli;
+
+import static junit.framework.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Test;
+
+import owltools.sim.LCSTable;
+import owltools.sim.SimpleOwlSim.SimProperty;
+
+/**
+ * Tests for {@link SimCommandRunner}.
+ */
+public class SimCommandRunnerTest extends AbstractCommandRunnerTest {
+
+	private File folder = null;
+
+	protected void init() {
+		runner = new SimCommandRunner();
+	}
+
+	@After
+	public void deleteFolder() {
+		FileUtils.deleteQuietly(folder);
+	}
+
+	/**
+	 * The LCS table written by --phenosim is used by --sim-resume, with the same scores.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testLowestCommonSubsumerTable() throws Exception {
+		folder = File.createTempFile("SimCommandRunnerTest-", ".tmp");
+		folder.delete();
+		folder.mkdirs();
+		File properties = new File(folder, "sim.properties");
+		writeProperties(properties);
+		File analysis = new File(folder, "analysis.owl");
+		File table = new File(folder, "lcs.bin");
+		File first = new File(folder, "phenosim");
+		File second = new File(folder, "resume");
+		String options = " -p "+properties+" --analysis-ontology "+analysis+" --lcs-table "+table;
+
+		init();
+		load("q-in-e.omn");
+		run("--phenosim"+options+" -d "+first);
+		assertTrue(table.isFile());
+		SimCommandRunner phenosim = (SimCommandRunner) runner;
+		assertTrue(LCSTable.load(table, phenosim.g.getSourceOntology()).size() > 0);
+
+		init();
+		run("--sim-resume"+options+" -d "+second);
+		SimCommandRunner resume = (SimCommandRunner) runner;
+		assertTrue(resume.sos.getAttributeIndex().getLowestCommonSubsumerTableHits() > 0);
+
+		List<String> expected = readTiles(first);
+		assertFalse(expected.isEmpty());
+		assertEquals(expected, readTiles(second));
+	}
+
+	private static void writeProperties(File file) throws IOException {
+		Properties properties = new Properties();
+		// all pairs in the output
+		properties.setProperty(SimProperty.minimumMaxIC.toString(), "0");
+		properties.setProperty(SimProperty.minimumSimJ.toString(), "0");
+		properties.setProperty("newIntersectionFrequencyThreshold", "0.7");
+		OutputStream out = new FileOutputStream(file);
+		try {
+			properties.store(out, null);
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	private static List<String> readTiles(File dir) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		for (File file : dir.listFiles()) {
+			if (!file.getName().startsWith("checkpoint")) {
+				lines.addAll(FileUtils.readLines(file));
+			}
+		}
+		Collections.sort(lines);
+		return lines;
+	}
+}
@@ -1,7 +1,5 @@
 package owltools.flex;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -11,17 +9,21 @@ import org.semanticweb.owlapi.model.OWLObject;
 
 import owltools.graph.OWLGraphWrapper;
 import owltools.yaml.golrconfig.ConfigManager;
-import owltools.yaml.golrconfig.GOlrField;
 
 /**
  * Pull defined sources into a middle state for output, loading into Solr, etc.
  * Essentially, a Solr document workalike.
+ * <br>
+ * When made from a graph, the documents are not stored: each iteration makes them
+ * one at a time, from the objects of the graph, so a collection can be streamed
+ * with constant memory. The config fields are compiled once, see {@link FlexFieldAccessor}.
  */
 public class FlexCollection implements Iterable<FlexDocument> {
 	
 	private static Logger LOG = Logger.getLogger(FlexCollection.class);
 	protected transient ConfigManager config = null;
 	protected transient OWLGraphWrapper graph = null;
+	protected transient List<FlexFieldAccessor> accessors = null;
 	
 	protected ArrayList<FlexDocument> docs = null;
 	
@@ -46,18 +48,14 @@ public class FlexCollection implements Iterable<FlexDocument> {
 		graph = in_graph;
 		config = aconf;
 
-		docs = new ArrayList<FlexDocument>();
 //		//GOlrConfig config = getConfig();
 //		LOG.info("Trying to load with config: " + config.id);
 
 		if( graph == null ){
 			LOG.info("ERROR? OWLGraphWrapper graph is not apparently defined...");
+			docs = new ArrayList<FlexDocument>();
 		}else{
-			for (OWLObject obj : graph.getAllOWLObjects()) {
-				docs.add(wring(obj, config));
-				//add(collect(obj, graph, config));
-			}	
-			//addAllAndCommit();
+			accessors = FlexFieldAccessor.compile(config);
 		}
 	}
 
@@ -91,110 +89,6 @@ public class FlexCollection implements Iterable<FlexDocument> {
 //		return method;
 //	}
 
-	/**
-	 * Get properly formatted output from the OWLGraphWrapper.
-	 * 
-	 * @see #getExtStringList
-	 * @param oobj
-	 * @param owlfunction
-	 * @return a (possibly null) string return value
-	 */
-	private String getExtString(OWLObject oobj, ArrayList <String> function_sexpr){
-
-		String retval = null;
-		
-		// TODO: Anybody got a better idea about this? Also see #getExtStringList.
-
-		// Let's tease out the thing that we're going to try and call.
-		// As it stands now, the list should behave essentially the same way as a list sexpr.
-		if( function_sexpr.size() == 0 ){
-			// Nil returns null.
-		}else if( function_sexpr.size() > 0 ){
-		
-			// Pull out the OWLGraphWrapper function.
-			String owlfunction = function_sexpr.get(0);
-
-			// Try to invoke said method, but with different numbers of args depending.
-			try {
-				if( function_sexpr.size() == 1 ){
-					java.lang.reflect.Method method = graph.getClass().getMethod(owlfunction, OWLObject.class);
-					retval = (method != null) ? (String) method.invoke(graph, oobj) : null;
-				}else if( function_sexpr.size() == 2 ){
-					java.lang.reflect.Method method = graph.getClass().getMethod(owlfunction, OWLObject.class, function_sexpr.get(1).getClass());
-					retval = (method != null) ? (String) method.invoke(graph, oobj, function_sexpr.get(1)) : null;
-				}else{
-					throw new Error("not currently able to handle more than one String argument");
-				}
-			} catch (SecurityException e) {
-				LOG.info("ERROR: apparently a security problem with: " + owlfunction);
-				e.printStackTrace();
-			} catch (NoSuchMethodException e) {
-				LOG.info("ERROR: couldn't find method: " + owlfunction);
-				e.printStackTrace();
-			} catch (IllegalArgumentException e) {
-				e.printStackTrace();
-			} catch (IllegalAccessException e) {
-				e.printStackTrace();
-			} catch (InvocationTargetException e) {
-				e.printStackTrace();				
-			}
-		}
-		
-		return retval;
-	}
-
-	/**
-	 * Get properly formatted output from the OWLGraphWrapper.
-	 * 
-	 * @see #getExtString
-	 * @param oobj
-	 * @param owlfunction
-	 * @return a (possibly empty) string list of returned values
-	 */
-	@SuppressWarnings("unchecked")
-	private List<String> getExtStringList(OWLObject oobj, ArrayList <String> function_sexpr){
-
-		List<String> retvals = new ArrayList<String>();
-
-		// TODO: Anybody got a better idea about this? Also see #getExtString.
-
-		// First, let's tease out the thing that we're going to try and call.
-		// As it stands now, the list should behave essentially the same way as a list sexpr.
-		if( function_sexpr.size() == 0 ){
-			// Nil returns null.
-		}else if( function_sexpr.size() > 0){
-		
-			String owlfunction = function_sexpr.get(0);
-
-			// Try to invoke said method.
-			try {
-				if( function_sexpr.size() == 1 ){
-					java.lang.reflect.Method method = graph.getClass().getMethod(owlfunction, OWLObject.class);
-					retvals = (method != null) ? (List<String>) method.invoke(graph, oobj) : new ArrayList<String>();
-				}else if( function_sexpr.size() == 2 ){
-					java.lang.reflect.Method method = graph.getClass().getMethod(owlfunction, OWLObject.class, function_sexpr.get(1).getClass());
-					retvals = (method != null) ? (List<String>) method.invoke(graph, oobj, function_sexpr.get(1)) : new ArrayList<String>();
-				}else{
-					throw new Error("not currently able to handle more than one String argument");
-				}
-			} catch (SecurityException e) {
-				LOG.info("ERROR: apparently a security problem with: " + owlfunction);
-				e.printStackTrace();
-			} catch (NoSuchMethodException e) {
-				LOG.info("ERROR: couldn't find method: " + owlfunction);
-				e.printStackTrace();
-			} catch (IllegalArgumentException e) {
-				e.printStackTrace();
-			} catch (IllegalAccessException e) {
-				e.printStackTrace();
-			} catch (InvocationTargetException e) {
-				e.printStackTrace();				
-			}
-		}
-		
-		return retvals;
-	}
-	
 //	/**
 //	 * Private helper to take care of the annoying busywork.
 //	 * 
@@ -239,33 +133,45 @@ public class FlexCollection implements Iterable<FlexDocument> {
 		cls_doc.add(new FlexLine("document_category", "ontology_class"));
 					
 		// Dynamic fields--have to get dynamic info to cram into the index.
-		for( GOlrField field : config.getFields() ){
-
-			String did = field.id;
-			ArrayList <String> prop_meth_and_args = field.property;
-			String card = field.cardinality;
-
-			// Select between the single and multi styles.
-			if( card.equals("single") ){
-				String val = getExtString(obj, prop_meth_and_args);
-				if( val != null ){
-					cls_doc.add(new FlexLine(did, val));
-				}
-			}else{
-				List<String> vals = getExtStringList(obj, prop_meth_and_args);
-				if( vals != null && ! vals.isEmpty() ){
-					for (String val : vals) {
-						cls_doc.add(new FlexLine(did, val));
-					}
-				}
-			}
+		List<FlexFieldAccessor> fields = accessors;
+		if( fields == null || config != this.config ){
+			fields = FlexFieldAccessor.compile(config);
+		}
+		for( FlexFieldAccessor field : fields ){
+			field.addLines(graph, obj, cls_doc);
 		}
 		
 		return cls_doc;
 	}
 
+	/**
+	 * For a collection made from a graph, each iterator makes a new document for every object of the graph.
+	 * Its remove() throws an UnsupportedOperationException, as the documents are not stored.
+	 * 
+	 * @return documents, made as they are needed if this collection was made from a graph
+	 */
 	@Override
 	public Iterator<FlexDocument> iterator() {
-		return docs.iterator();
+		if( accessors == null ){
+			return docs.iterator();
+		}
+		final Iterator<OWLObject> objs = graph.getAllOWLObjects().iterator();
+		return new Iterator<FlexDocument>() {
+
+			@Override
+			public boolean hasNext() {
+				return objs.hasNext();
+			}
+
+			@Override
+			public FlexDocument next() {
+				return wring(objs.next(), config);
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
 	}
 }
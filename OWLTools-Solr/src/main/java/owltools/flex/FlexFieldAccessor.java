@@ -0,0 +1,134 @@
+package owltools.flex;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.semanticweb.owlapi.model.OWLObject;
+
+import owltools.graph.OWLGraphWrapper;
+import owltools.yaml.golrconfig.ConfigManager;
+import owltools.yaml.golrconfig.GOlrField;
+
+/**
+ * Pulls the value(s) of one GOlr field for an OWLObject out of the OWLGraphWrapper.
+ * <br>
+ * The OWLGraphWrapper method named in the field property is looked up once, when
+ * the accessor is compiled, together with the optional String argument, so making
+ * a document does no method lookups. Problems with the config, like unknown methods
+ * or unexpected return types, are reported when compiling.
+ *
+ * @see #compile(ConfigManager)
+ */
+public class FlexFieldAccessor {
+
+	private static Logger LOG = Logger.getLogger(FlexFieldAccessor.class);
+
+	private final String field;
+	private final Method method;
+	private final String argument;
+	private final boolean isSingle;
+
+	private FlexFieldAccessor(String field, Method method, String argument, boolean isSingle) {
+		this.field = field;
+		this.method = method;
+		this.argument = argument;
+		this.isSingle = isSingle;
+	}
+
+	/**
+	 * Compiles the fields of the config, in order. Fields without a property
+	 * (fixed or not drawn from the ontology) and fields that can not be
+	 * resolved are left out; the latter are logged as errors.
+	 *
+	 * @param config
+	 * @return accessors
+	 */
+	public static List<FlexFieldAccessor> compile(ConfigManager config) {
+		List<FlexFieldAccessor> accessors = new ArrayList<FlexFieldAccessor>();
+		for (GOlrField f : config.getFields()) {
+			FlexFieldAccessor a = compile(f);
+			if (a != null)
+				accessors.add(a);
+		}
+		LOG.info("Compiled "+accessors.size()+" of "+config.getFields().size()+" fields");
+		return accessors;
+	}
+
+	/**
+	 * @param f
+	 * @return accessor, or null if the field has no property or can not be resolved
+	 */
+	public static FlexFieldAccessor compile(GOlrField f) {
+		List<String> sexpr = f.property;
+		if (sexpr == null || sexpr.isEmpty())
+			return null;
+		if (sexpr.size() > 2) {
+			LOG.error("Field "+f.id+": not currently able to handle more than one String argument: "+sexpr);
+			return null;
+		}
+		String owlfunction = sexpr.get(0);
+		String argument = sexpr.size() == 2 ? sexpr.get(1) : null;
+		boolean isSingle = "single".equals(f.cardinality);
+		Method method;
+		try {
+			if (argument == null)
+				method = OWLGraphWrapper.class.getMethod(owlfunction, OWLObject.class);
+			else
+				method = OWLGraphWrapper.class.getMethod(owlfunction, OWLObject.class, String.class);
+		} catch (NoSuchMethodException e) {
+			LOG.error("Field "+f.id+": couldn't find method: "+owlfunction);
+			return null;
+		} catch (SecurityException e) {
+			LOG.error("Field "+f.id+": apparently a security problem with: "+owlfunction);
+			return null;
+		}
+		Class<?> rt = method.getReturnType();
+		if (isSingle ? !String.class.equals(rt) : !Collection.class.isAssignableFrom(rt)) {
+			LOG.error("Field "+f.id+": method "+owlfunction+" returns "+rt.getName()+
+					", expected "+(isSingle ? "a String" : "a collection of Strings"));
+			return null;
+		}
+		return new FlexFieldAccessor(f.id, method, argument, isSingle);
+	}
+
+	public String getField() {
+		return field;
+	}
+
+	/**
+	 * Adds a line for each value of the field.
+	 *
+	 * @param graph
+	 * @param obj
+	 * @param doc
+	 */
+	public void addLines(OWLGraphWrapper graph, OWLObject obj, FlexDocument doc) {
+		Object result;
+		try {
+			if (argument == null)
+				result = method.invoke(graph, obj);
+			else
+				result = method.invoke(graph, obj, argument);
+		} catch (IllegalAccessException e) {
+			LOG.error("Field "+field+": can not call "+method.getName(), e);
+			return;
+		} catch (InvocationTargetException e) {
+			LOG.error("Field "+field+": "+method.getName()+" failed for "+obj, e.getCause());
+			return;
+		}
+		if (result == null)
+			return;
+		if (isSingle) {
+			doc.add(new FlexLine(field, (String) result));
+		}
+		else {
+			for (Object val : (Collection<?>) result) {
+				doc.add(new FlexLine(field, (String) val));
+			}
+		}
+	}
+}
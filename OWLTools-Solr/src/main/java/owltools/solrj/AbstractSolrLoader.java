@@ -16,6 +16,11 @@ import owltools.graph.OWLGraphWrapper;
 /**
  * root class for loading ontologies or ontology-related data into a solr server
  * using web services and the solrj library
+ * <br>
+ * By default, documents passed to {@link #add(SolrInputDocument)} are sent in the
+ * background by a {@link SolrDocumentSender}, in batches, and committed once at
+ * the end of the load. Set the number of sender threads to 0 to collect the
+ * documents and send them from the loading thread instead.
  * 
  * @author cjm
  *
@@ -28,6 +33,13 @@ public abstract class AbstractSolrLoader {
     
     private Collection<SolrInputDocument> docs = new ArrayList<SolrInputDocument>();
 
+	private int numSenderThreads = 2;
+	private int batchSize = SolrDocumentSender.DEFAULT_BATCH_SIZE;
+	private long maxBatchBytes = SolrDocumentSender.DEFAULT_MAX_BATCH_BYTES;
+	private int queueCapacity = SolrDocumentSender.DEFAULT_QUEUE_CAPACITY;
+	private int commitWithin = -1;
+	private SolrDocumentSender sender = null;
+
 	protected OWLGraphWrapper graph;
 
 	public OWLGraphWrapper getGraph() {
@@ -49,25 +61,156 @@ public abstract class AbstractSolrLoader {
 		this.server = new CommonsHttpSolrServer(url);
 	}
 
+	public int getNumSenderThreads() {
+		return numSenderThreads;
+	}
+
+	/**
+	 * @param numSenderThreads number of threads sending documents in the background,
+	 * or 0 to send all documents from the loading thread
+	 */
+	public void setNumSenderThreads(int numSenderThreads) {
+		this.numSenderThreads = numSenderThreads;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * @param batchSize maximum number of documents in one add request
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	public long getMaxBatchBytes() {
+		return maxBatchBytes;
+	}
+
+	/**
+	 * @param maxBatchBytes maximum estimated size of the documents in one add request
+	 */
+	public void setMaxBatchBytes(long maxBatchBytes) {
+		this.maxBatchBytes = maxBatchBytes;
+	}
+
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	/**
+	 * @param queueCapacity maximum number of documents waiting to be sent,
+	 * {@link #add(SolrInputDocument)} blocks when this is reached
+	 */
+	public void setQueueCapacity(int queueCapacity) {
+		this.queueCapacity = queueCapacity;
+	}
+
+	public int getCommitWithin() {
+		return commitWithin;
+	}
+
+	/**
+	 * @param commitWithin if positive, have the server commit added documents
+	 * within this many milliseconds, instead of committing at the end
+	 * @see SolrDocumentSender#setCommitWithin(int)
+	 */
+	public void setCommitWithin(int commitWithin) {
+		this.commitWithin = commitWithin;
+	}
+
+	/**
+	 * @return true if documents are sent by background sender threads
+	 */
+	protected boolean isAsync() {
+		return numSenderThreads > 0;
+	}
+
+	private synchronized SolrDocumentSender getSender() {
+		if (sender == null) {
+			sender = new SolrDocumentSender(server, numSenderThreads, batchSize, maxBatchBytes, queueCapacity);
+			sender.setCommitWithin(commitWithin);
+		}
+		return sender;
+	}
+
 	public abstract void load() throws SolrServerException, IOException;
 	
-	protected void add(SolrInputDocument doc) {
-		if (doc != null)
+	/**
+	 * Adds a document. In async mode, this can be called from several threads,
+	 * and blocks while the send queue is full.
+	 * 
+	 * @param doc
+	 * @throws IOException if sending documents in the background failed
+	 */
+	protected void add(SolrInputDocument doc) throws IOException {
+		if (doc == null)
+			return;
+		if (isAsync())
+			getSender().send(doc);
+		else
 			docs.add(doc);
 	}
-	protected void addAll(Collection<SolrInputDocument> dl) {
-		docs.addAll(dl);
+	protected void addAll(Collection<SolrInputDocument> dl) throws IOException {
+		for (SolrInputDocument doc : dl) {
+			add(doc);
+		}
 	}
 
+	/**
+	 * Sends all remaining documents and commits. The commit is left to the server,
+	 * if commitWithin is set and the documents were sent in the background.
+	 * 
+	 * @throws SolrServerException
+	 * @throws IOException
+	 */
 	protected void addAllAndCommit() throws SolrServerException, IOException {
+		SolrDocumentSender s;
+		synchronized (this) {
+			s = sender;
+			sender = null;
+		}
+		if (s != null) {
+			LOG.info("waiting for docs to be sent...");
+			s.finish(commitWithin <= 0);
+			return;
+		}
 		LOG.info("adding all docs...");
-		server.add(docs);
+		if (!docs.isEmpty())
+			server.add(docs);
+		docs.clear();
 		LOG.info("committing docs...");
 		server.commit();
 		LOG.info("docs committed");
 	}
 
+	/**
+	 * Stops sending documents in the background, dropping the ones not sent yet.
+	 * For cleaning up after a failed load.
+	 */
+	protected void abortAdd() {
+		SolrDocumentSender s;
+		synchronized (this) {
+			s = sender;
+			sender = null;
+		}
+		if (s != null)
+			s.abort();
+		docs.clear();
+	}
+
+	/**
+	 * Sends and commits the documents collected so far. Does nothing in async
+	 * mode, where documents are sent continuously and committed at the end,
+	 * see {@link #addAllAndCommit()}.
+	 * 
+	 * @throws SolrServerException
+	 * @throws IOException
+	 */
 	protected void incrementalAddAndCommit() throws SolrServerException, IOException {
+		if (isAsync())
+			return;
 		//LOG.info("adding some docs...");
 		server.add(docs);
 		//LOG.info("committing some docs...");
@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.net.MalformedURLException;
 
 import org.apache.log4j.Logger;
+import org.apache.solr.client.solrj.SolrServer;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.common.SolrInputDocument;
 
@@ -20,6 +21,11 @@ public class FlexSolrDocumentLoader extends AbstractSolrLoader {
 		super(url);
 		collection = c;
 	}
+
+	public FlexSolrDocumentLoader(SolrServer server, FlexCollection c) {
+		super(server);
+		collection = c;
+	}
 	
 	@Override
 	public void load() throws SolrServerException, IOException {
@@ -27,10 +33,18 @@ public class FlexSolrDocumentLoader extends AbstractSolrLoader {
 		//		//GOlrConfig config = getConfig();
 		//		LOG.info("Trying to load with config: " + config.id);
 
-		for( FlexDocument d : collection ){
-			add(collect(d));
-		}	
-		addAllAndCommit();
+		boolean success = false;
+		try {
+			for( FlexDocument d : collection ){
+				add(collect(d));
+			}	
+			addAllAndCommit();
+			success = true;
+		}
+		finally {
+			if (!success)
+				abortAdd();
+		}
 	}
 	
 	/**
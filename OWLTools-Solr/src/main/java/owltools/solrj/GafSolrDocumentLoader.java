@@ -1,15 +1,23 @@
 package owltools.solrj;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.MalformedURLException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.log4j.Logger;
+import org.apache.solr.client.solrj.SolrServer;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.common.SolrInputDocument;
 import org.semanticweb.owlapi.model.OWLClass;
@@ -34,12 +42,19 @@ public class GafSolrDocumentLoader extends AbstractSolrLoader {
 	GafDocument gafDocument;
 	int doc_limit_trigger = 1000; // the number of documents to add before pushing out to solr
 	int current_doc_number;
+	int numBuilderThreads = Runtime.getRuntime().availableProcessors();
+	SolrClosureCache closureCache = null;
 	
 	public GafSolrDocumentLoader(String url) throws MalformedURLException {
 		super(url);
 		current_doc_number = 0;
 	}
 
+	public GafSolrDocumentLoader(SolrServer server) {
+		super(server);
+		current_doc_number = 0;
+	}
+
 	public GafDocument getGafDocument() {
 		return gafDocument;
 	}
@@ -48,9 +63,48 @@ public class GafSolrDocumentLoader extends AbstractSolrLoader {
 		this.gafDocument = gafDocument;
 	}
 
+	/**
+	 * @return cache for class closures and labels, created for the graph if not set
+	 */
+	public SolrClosureCache getClosureCache() {
+		if (closureCache == null || closureCache.getGraph() != graph)
+			closureCache = new SolrClosureCache(graph);
+		return closureCache;
+	}
+
+	/**
+	 * Set a cache to share it between loaders, e.g. for several GAFs.
+	 * 
+	 * @param closureCache
+	 */
+	public void setClosureCache(SolrClosureCache closureCache) {
+		this.closureCache = closureCache;
+	}
+
+	public int getNumBuilderThreads() {
+		return numBuilderThreads;
+	}
+
+	/**
+	 * Number of threads building documents, when sending in the background.
+	 * The graph is frozen while the threads share it.
+	 * 
+	 * @param numBuilderThreads
+	 * @see AbstractSolrLoader#setNumSenderThreads(int)
+	 */
+	public void setNumBuilderThreads(int numBuilderThreads) {
+		this.numBuilderThreads = numBuilderThreads;
+	}
+
 	@Override
 	public void load() throws SolrServerException, IOException {
 		gafDocument.index();
+		// make the cache before the builder threads share it
+		getClosureCache();
+		if (isAsync()) {
+			loadAsync();
+			return;
+		}
 		for (Bioentity e : gafDocument.getBioentities()) {
 			add(e);
 			current_doc_number++;
@@ -63,9 +117,71 @@ public class GafSolrDocumentLoader extends AbstractSolrLoader {
 		incrementalAddAndCommit(); // pick up anything that we didn't catch
 		//LOG.info("Optimizing.");
 		//server.optimize();
+		LOG.info(getClosureCache().getReport());
 		LOG.info("Done.");
 	}
 
+	/*
+	 * Builds the documents for chunks of bioentities on a pool of threads, and hands them
+	 * to the background senders. Adding blocks while the send queue is full, which keeps
+	 * the builders from running ahead of the server. One commit at the end.
+	 */
+	private void loadAsync() throws SolrServerException, IOException {
+		final List<Bioentity> bioentities = new ArrayList<Bioentity>(gafDocument.getBioentities());
+		int numThreads = Math.max(1, numBuilderThreads);
+		boolean wasFrozen = graph.isFrozen();
+		if (numThreads > 1 && !wasFrozen)
+			graph.freeze();
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		boolean success = false;
+		try {
+			List<Future<Void>> futures = new ArrayList<Future<Void>>();
+			for (int start = 0; start < bioentities.size(); start += doc_limit_trigger) {
+				final List<Bioentity> chunk =
+					bioentities.subList(start, Math.min(start + doc_limit_trigger, bioentities.size()));
+				futures.add(executor.submit(new Callable<Void>() {
+
+					@Override
+					public Void call() throws Exception {
+						for (Bioentity e : chunk) {
+							add(e);
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> f : futures) {
+				f.get();
+				current_doc_number += doc_limit_trigger;
+				if (current_doc_number % (10 * doc_limit_trigger) == 0)
+					LOG.info("Processed " + current_doc_number + " bioentities");
+			}
+			current_doc_number = bioentities.size();
+			LOG.info("Processed all " + current_doc_number + " bioentities, waiting for commit.");
+			addAllAndCommit();
+			success = true;
+			LOG.info(getClosureCache().getReport());
+			LOG.info("Done.");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while building documents");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			throw new IOException("Building documents failed", cause);
+		}
+		finally {
+			executor.shutdownNow();
+			if (!success)
+				abortAdd();
+			if (numThreads > 1 && !wasFrozen)
+				graph.unfreeze();
+		}
+	}
+
 //	private OWLObjectProperty getPartOfProperty() {
 //		OWLObjectProperty p = graph.getOWLObjectPropertyByIdentifier("BFO:0000050");
 //		return p;
@@ -73,7 +189,7 @@ public class GafSolrDocumentLoader extends AbstractSolrLoader {
 
 	// Main wrapping for adding non-ontology documents to GOlr.
 	// Also see OntologySolrLoader.
-	private void add(Bioentity e) {
+	private void add(Bioentity e) throws IOException {
 
 		String eid = e.getId();
 		String esym = e.getSymbol();
@@ -81,7 +197,8 @@ public class GafSolrDocumentLoader extends AbstractSolrLoader {
 		//LOG.info("Adding: " + eid + " " + esym);
 		
 		// We'll need this for serializing later.
-		Gson gson = new Gson();
+		SolrClosureCache cache = getClosureCache();
+		Gson gson = cache.getGson();
 		
 		SolrInputDocument bioentity_doc = new SolrInputDocument();
 		
@@ -131,15 +248,15 @@ public class GafSolrDocumentLoader extends AbstractSolrLoader {
 			/// isa_partof_closure
 			///
 			
-			OWLObject cls = graph.getOWLObjectByIdentifier(clsId);
+			SolrClosureCache.Closure clsClosure = cache.getIsaPartofClosure(clsId);
 			// TODO: This may be a bug workaround, or it may be the way things are.
 			// getOWLObjectByIdentifier returns null on alt_ids, so skip them for now.
-			if(cls != null ){
+			if(clsClosure != null ){
 				//	System.err.println(clsId);
 			
 				// Add to annotation and bioentity isa_partof closures; label and id.
-				List<String> idClosure = graph.getIsaPartofIDClosure(cls);
-				List<String> labelClosure = graph.getIsaPartofLabelClosure(cls);
+				List<String> idClosure = clsClosure.getIds();
+				List<String> labelClosure = clsClosure.getLabels();
 				annotation_doc.addField("isa_partof_closure", idClosure);
 				annotation_doc.addField("isa_partof_closure_label", labelClosure);
 				for( String tlabel : labelClosure){
@@ -150,9 +267,9 @@ public class GafSolrDocumentLoader extends AbstractSolrLoader {
 				}
 	
 				// Compile closure maps to JSON.
-				Map<String, String> isa_partof_map = graph.getIsaPartofClosureMap(cls);
+				Map<String, String> isa_partof_map = clsClosure.getMap();
 				if( ! isa_partof_map.isEmpty() ){
-					String jsonized_isa_partof_map = gson.toJson(isa_partof_map);
+					String jsonized_isa_partof_map = clsClosure.getMapJson();
 					annotation_doc.addField("isa_partof_closure_map", jsonized_isa_partof_map);
 				}
 	
@@ -262,22 +379,18 @@ public class GafSolrDocumentLoader extends AbstractSolrLoader {
 			for (ExtensionExpression ee : a.getExtensionExpressions()) {
 				ee.getRelation();	// TODO
 				String eeid = ee.getCls();
-				OWLObject eObj = graph.getOWLObjectByIdentifier(eeid);
+				SolrClosureCache.Closure eClosure = cache.getExtensionClosure(eeid);
 				annotation_doc.addField("annotation_extension_class", eeid);	
 				addLabelField(annotation_doc, "annotation_extension_class_label", eeid);
 
-				if (eObj != null) {
-					for (OWLGraphEdge edge : graph.getOutgoingEdgesClosureReflexive(eObj)) {
-						OWLObject t = edge.getTarget();
-						if (!(t instanceof OWLClass))
-							continue;
-						String annExtID = graph.getIdentifier(t);
-						String annExtLabel = graph.getLabel(edge.getTarget());
-						annotation_doc.addField("annotation_extension_class_closure", annExtID);
-						annotation_doc.addField("annotation_extension_class_closure_label", annExtLabel);
-						ann_ext_map.put(annExtID, annExtLabel);
-						ann_ext_map.put(annExtLabel, annExtID);
+				if (eClosure != null) {
+					List<String> annExtIDs = eClosure.getIds();
+					List<String> annExtLabels = eClosure.getLabels();
+					for (int i = 0; i < annExtIDs.size(); i++) {
+						annotation_doc.addField("annotation_extension_class_closure", annExtIDs.get(i));
+						annotation_doc.addField("annotation_extension_class_closure_label", annExtLabels.get(i));
 					}
+					ann_ext_map.putAll(eClosure.getMap());
 				}
 			}
 
@@ -308,10 +421,7 @@ public class GafSolrDocumentLoader extends AbstractSolrLoader {
 
 
 	private void addLabelField(SolrInputDocument d, String field, String id) {
-		OWLObject obj = graph.getOWLObjectByIdentifier(id);
-		if (obj == null)
-			return;
-		String label = graph.getLabel(obj);
+		String label = getClosureCache().getLabel(id);
 		if (label != null)
 			d.addField(field, label);
 	}
@@ -30,10 +30,18 @@ public class OntologySolrLoader extends AbstractSolrLoader {
 		if( graph == null ){
 			LOG.info("ERROR? OWLGraphWrapper graph is not apparently defined...");
 		}else{
-			for (OWLObject obj : graph.getAllOWLObjects()) {
-				add(collect(obj, graph));
-			}	
-			addAllAndCommit();
+			boolean success = false;
+			try {
+				for (OWLObject obj : graph.getAllOWLObjects()) {
+					add(collect(obj, graph));
+				}	
+				addAllAndCommit();
+				success = true;
+			}
+			finally {
+				if (!success)
+					abortAdd();
+			}
 		}
 	}
 
@@ -0,0 +1,239 @@
+package owltools.solrj;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLObject;
+
+import owltools.graph.OWLGraphEdge;
+import owltools.graph.OWLGraphWrapper;
+
+import com.google.gson.Gson;
+
+/**
+ * Closures and labels of classes, as they go into GOlr documents, keyed by class id.
+ * <br>
+ * Loading a GAF looks up the same GO and extension classes for many annotations.
+ * This cache resolves each class once: the isa_partof closure ids, labels and JSON
+ * map, the class closure of annotation extensions, and labels. It can be shared
+ * by the loaders for several GAFs, as long as they use the same graph. It is safe
+ * for use by several threads; a class may be resolved more than once when threads
+ * ask for it at the same time.
+ * <br>
+ * Entries are never evicted. There is at most one isa_partof closure, one extension
+ * closure (all relations) and one label per class, so the size is bounded by the graph.
+ * The cache does not follow changes to the ontologies of the graph: use a new cache,
+ * or {@link #clear()}, after changing them.
+ * <br>
+ * Hits and misses are counted for {@link #getReport()}.
+ *
+ * @see GafSolrDocumentLoader#setClosureCache(SolrClosureCache)
+ */
+public class SolrClosureCache {
+
+	private static Logger LOG = Logger.getLogger(SolrClosureCache.class);
+
+	/**
+	 * Closure of a class: ids and labels in the same order, and
+	 * the map between them.
+	 */
+	public static class Closure {
+
+		private final List<String> ids;
+		private final List<String> labels;
+		private final Map<String, String> map;
+		private final String mapJson;
+
+		Closure(List<String> ids, List<String> labels, Map<String, String> map, String mapJson) {
+			this.ids = Collections.unmodifiableList(ids);
+			this.labels = Collections.unmodifiableList(labels);
+			this.map = Collections.unmodifiableMap(map);
+			this.mapJson = mapJson;
+		}
+
+		public List<String> getIds() {
+			return ids;
+		}
+
+		public List<String> getLabels() {
+			return labels;
+		}
+
+		public Map<String, String> getMap() {
+			return map;
+		}
+
+		/**
+		 * @return map as JSON, or null if the map is empty
+		 */
+		public String getMapJson() {
+			return mapJson;
+		}
+	}
+
+	// marks ids that are not in the graph
+	private static final Closure NONE = new Closure(new ArrayList<String>(), new ArrayList<String>(),
+			new LinkedHashMap<String, String>(), null);
+	private static final String NO_LABEL = new String("");
+
+	private final OWLGraphWrapper graph;
+	private final Gson gson = new Gson();
+
+	private final ConcurrentMap<String, Closure> isaPartofClosures = new ConcurrentHashMap<String, Closure>();
+	private final ConcurrentMap<String, Closure> extensionClosures = new ConcurrentHashMap<String, Closure>();
+	private final ConcurrentMap<String, String> labels = new ConcurrentHashMap<String, String>();
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * @param graph
+	 */
+	public SolrClosureCache(OWLGraphWrapper graph) {
+		this.graph = graph;
+	}
+
+	public OWLGraphWrapper getGraph() {
+		return graph;
+	}
+
+	/**
+	 * @return shared, thread-safe, Gson instance
+	 */
+	public Gson getGson() {
+		return gson;
+	}
+
+	/**
+	 * @param id
+	 * @return isa_partof closure of the class, see {@link OWLGraphWrapper#getIsaPartofClosureMap(OWLObject)},
+	 * or null if there is no object for the id
+	 */
+	public Closure getIsaPartofClosure(String id) {
+		Closure c = isaPartofClosures.get(id);
+		if (c == null) {
+			misses.incrementAndGet();
+			c = NONE;
+			OWLObject obj = graph.getOWLObjectByIdentifier(id);
+			if (obj != null) {
+				Map<String, String> map = graph.getIsaPartofClosureMap(obj);
+				c = new Closure(new ArrayList<String>(map.keySet()), new ArrayList<String>(map.values()), map,
+						map.isEmpty() ? null : gson.toJson(map));
+			}
+			isaPartofClosures.putIfAbsent(id, c);
+		}
+		else {
+			hits.incrementAndGet();
+		}
+		return c == NONE ? null : c;
+	}
+
+	/**
+	 * The map has id to label, and label to id, entries.
+	 *
+	 * @param id
+	 * @return ids and labels of the classes in the reflexive closure of the object for id,
+	 * or null if there is no object for the id
+	 */
+	public Closure getExtensionClosure(String id) {
+		Closure c = extensionClosures.get(id);
+		if (c == null) {
+			misses.incrementAndGet();
+			c = NONE;
+			OWLObject obj = graph.getOWLObjectByIdentifier(id);
+			if (obj != null) {
+				List<String> ids = new ArrayList<String>();
+				List<String> ls = new ArrayList<String>();
+				Map<String, String> map = new LinkedHashMap<String, String>();
+				for (OWLGraphEdge edge : graph.getOutgoingEdgesClosureReflexive(obj)) {
+					OWLObject t = edge.getTarget();
+					if (!(t instanceof OWLClass))
+						continue;
+					String tid = graph.getIdentifier(t);
+					String tlabel = graph.getLabel(t);
+					ids.add(tid);
+					ls.add(tlabel);
+					map.put(tid, tlabel);
+					map.put(tlabel, tid);
+				}
+				c = new Closure(ids, ls, map, null);
+			}
+			extensionClosures.putIfAbsent(id, c);
+		}
+		else {
+			hits.incrementAndGet();
+		}
+		return c == NONE ? null : c;
+	}
+
+	/**
+	 * @param id
+	 * @return label of the object for id, or null
+	 */
+	public String getLabel(String id) {
+		if (id == null)
+			return null;
+		String label = labels.get(id);
+		if (label == null) {
+			misses.incrementAndGet();
+			label = NO_LABEL;
+			OWLObject obj = graph.getOWLObjectByIdentifier(id);
+			if (obj != null) {
+				String l = graph.getLabel(obj);
+				if (l != null)
+					label = l;
+			}
+			labels.putIfAbsent(id, label);
+		}
+		else {
+			hits.incrementAndGet();
+		}
+		return label == NO_LABEL ? null : label;
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * @return hit rate between 0 and 1
+	 */
+	public double getHitRate() {
+		long h = hits.get();
+		long total = h + misses.get();
+		return total == 0 ? 0 : h / (double) total;
+	}
+
+	/**
+	 * @return summary of the cache size and hit rate
+	 */
+	public String getReport() {
+		return String.format("closure cache: isa_partof=%d extension=%d labels=%d hits=%d misses=%d hit rate=%.1f%%",
+				isaPartofClosures.size(), extensionClosures.size(), labels.size(),
+				hits.get(), misses.get(), 100 * getHitRate());
+	}
+
+	/**
+	 * Removes all entries and resets the counts.
+	 */
+	public void clear() {
+		isaPartofClosures.clear();
+		extensionClosures.clear();
+		labels.clear();
+		hits.set(0);
+		misses.set(0);
+		LOG.info("Cleared closure cache");
+	}
+}
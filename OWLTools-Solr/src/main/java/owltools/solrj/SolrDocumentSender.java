@@ -0,0 +1,340 @@
+package owltools.solrj;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.log4j.Logger;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.SolrInputField;
+
+/**
+ * Sends documents to a solr server in batches, from a pool of sender threads.
+ * <br>
+ * Documents are handed over through a bounded queue: {@link #send(SolrInputDocument)}
+ * blocks while the queue is full, so the producers can not get ahead of the server by
+ * more than the queue capacity. Each sender thread takes documents from the queue and
+ * adds them with one request per batch. A batch is sent when it has the maximum number
+ * of documents or the maximum estimated size in bytes, or when no more documents arrive
+ * for a short time.
+ * <br>
+ * No commits are made while sending, unless commitWithin is set, in which case the
+ * server commits on its own. {@link #finish(boolean)} waits until all documents are
+ * sent and then commits once.
+ * <br>
+ * If an add fails, only the failing sender thread stops. It drops the documents waiting
+ * in the queue, and the error is thrown from the next call to send or finish. The other
+ * sender threads keep running until {@link #finish(boolean)} or {@link #abort()}.
+ *
+ * @see AbstractSolrLoader#setNumSenderThreads(int)
+ */
+public class SolrDocumentSender {
+
+	private static Logger LOG = Logger.getLogger(SolrDocumentSender.class);
+
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+	public static final long DEFAULT_MAX_BATCH_BYTES = 8L * 1024 * 1024;
+	public static final int DEFAULT_QUEUE_CAPACITY = 10000;
+
+	// how long a sender waits for more documents before sending a partial batch
+	private static final long LINGER_MILLIS = 100;
+
+	// tells a sender thread to send what it has and stop
+	private static final SolrInputDocument END = new SolrInputDocument();
+
+	private final SolrServer server;
+	private final int numThreads;
+	private final int batchSize;
+	private final long maxBatchBytes;
+	private final BlockingQueue<SolrInputDocument> queue;
+	private int commitWithin = -1;
+
+	private volatile ExecutorService executor = null;
+	private final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+	private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+	private final AtomicLong numberOfDocuments = new AtomicLong();
+	private final AtomicInteger numberOfBatches = new AtomicInteger();
+	private long startTime = 0;
+
+	/**
+	 * @param server
+	 * @param numThreads number of sender threads
+	 * @param batchSize maximum number of documents per add
+	 * @param maxBatchBytes maximum estimated size of the documents per add
+	 * @param queueCapacity maximum number of documents waiting to be sent
+	 */
+	public SolrDocumentSender(SolrServer server, int numThreads, int batchSize, long maxBatchBytes, int queueCapacity) {
+		if (numThreads < 1 || batchSize < 1 || maxBatchBytes < 1 || queueCapacity < 1) {
+			throw new IllegalArgumentException("Invalid sender settings: threads="+numThreads+
+					" batchSize="+batchSize+" maxBatchBytes="+maxBatchBytes+" queueCapacity="+queueCapacity);
+		}
+		this.server = server;
+		this.numThreads = numThreads;
+		this.batchSize = batchSize;
+		this.maxBatchBytes = maxBatchBytes;
+		this.queue = new ArrayBlockingQueue<SolrInputDocument>(queueCapacity);
+	}
+
+	/**
+	 * @param server
+	 * @param numThreads number of sender threads
+	 */
+	public SolrDocumentSender(SolrServer server, int numThreads) {
+		this(server, numThreads, DEFAULT_BATCH_SIZE, DEFAULT_MAX_BATCH_BYTES, DEFAULT_QUEUE_CAPACITY);
+	}
+
+	/**
+	 * @return milliseconds within which the server should commit added documents, or -1
+	 */
+	public int getCommitWithin() {
+		return commitWithin;
+	}
+
+	/**
+	 * Set to a positive number to have the server commit documents within this time
+	 * while the load is running, instead of only at the end.
+	 *
+	 * @param commitWithin milliseconds
+	 */
+	public void setCommitWithin(int commitWithin) {
+		this.commitWithin = commitWithin;
+	}
+
+	/**
+	 * @return number of documents sent to the server so far
+	 */
+	public long getNumberOfDocuments() {
+		return numberOfDocuments.get();
+	}
+
+	/**
+	 * @return number of add requests made so far
+	 */
+	public int getNumberOfBatches() {
+		return numberOfBatches.get();
+	}
+
+	private synchronized void start() {
+		if (executor != null)
+			return;
+		startTime = System.currentTimeMillis();
+		executor = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "solr-sender-"+count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		for (int i = 0; i < numThreads; i++) {
+			futures.add(executor.submit(new Sender()));
+		}
+		LOG.info("Started "+numThreads+" solr sender threads, batchSize="+batchSize+
+				" maxBatchBytes="+maxBatchBytes+" commitWithin="+commitWithin);
+	}
+
+	/**
+	 * Queues a document, waiting while the queue is full.
+	 * Can be called from several threads.
+	 *
+	 * @param doc
+	 * @throws IOException if sending failed
+	 */
+	public void send(SolrInputDocument doc) throws IOException {
+		if (doc == null)
+			return;
+		if (executor == null)
+			start();
+		put(doc);
+		checkFailure();
+	}
+
+	/*
+	 * Waits while the queue is full. Returns false, without queuing the document, if a sender failed.
+	 */
+	private boolean put(SolrInputDocument doc) throws InterruptedIOException {
+		try {
+			while (!queue.offer(doc, 1, TimeUnit.SECONDS)) {
+				if (failure.get() != null)
+					return false;
+			}
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting to send a document");
+		}
+	}
+
+	private void checkFailure() throws IOException {
+		Throwable t = failure.get();
+		if (t == null)
+			return;
+		if (t instanceof IOException)
+			throw (IOException) t;
+		throw new IOException("Sending documents to solr failed", t);
+	}
+
+	/**
+	 * Waits until all queued documents have been sent, stops the sender threads
+	 * and optionally commits. There is no commit, if sending failed.
+	 *
+	 * @param commit
+	 * @throws SolrServerException if an add failed with it, or from the commit
+	 * @throws IOException
+	 */
+	public synchronized void finish(boolean commit) throws SolrServerException, IOException {
+		if (executor != null) {
+			try {
+				for (int i = 0; i < numThreads; i++) {
+					if (!put(END))
+						break;
+				}
+				for (Future<Void> f : futures) {
+					await(f);
+				}
+			}
+			finally {
+				executor.shutdownNow();
+				executor = null;
+				futures.clear();
+				queue.clear();
+			}
+			LOG.info("Sent "+numberOfDocuments.get()+" documents in "+numberOfBatches.get()+
+					" batches in "+(System.currentTimeMillis()-startTime)+"ms");
+		}
+		if (failure.get() instanceof SolrServerException)
+			throw (SolrServerException) failure.get();
+		checkFailure();
+		if (commit) {
+			LOG.info("committing docs...");
+			server.commit();
+			LOG.info("docs committed");
+		}
+	}
+
+	private void await(Future<Void> f) throws IOException {
+		try {
+			while (true) {
+				try {
+					f.get(1, TimeUnit.SECONDS);
+					return;
+				} catch (TimeoutException e) {
+					// a failed sender may have left the others waiting on the queue
+					if (failure.get() != null)
+						return;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for solr senders");
+		} catch (ExecutionException e) {
+			// recorded in failure
+		}
+	}
+
+	/**
+	 * Stops the sender threads and drops all documents that have not been sent yet.
+	 */
+	public synchronized void abort() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+			futures.clear();
+		}
+		queue.clear();
+	}
+
+	/**
+	 * @param doc
+	 * @return rough number of bytes of the field names and values of doc
+	 */
+	static long estimateSize(SolrInputDocument doc) {
+		long n = 0;
+		for (SolrInputField f : doc) {
+			n += f.getName().length();
+			for (Object v : f.getValues()) {
+				if (v != null)
+					n += v.toString().length();
+			}
+		}
+		return 2 * n;
+	}
+
+	private void add(List<SolrInputDocument> batch) throws SolrServerException, IOException {
+		if (commitWithin > 0) {
+			UpdateRequest req = new UpdateRequest();
+			req.add(batch);
+			req.setCommitWithin(commitWithin);
+			req.process(server);
+		}
+		else {
+			server.add(batch);
+		}
+		numberOfDocuments.addAndGet(batch.size());
+		int n = numberOfBatches.incrementAndGet();
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("Sent batch "+n+" with "+batch.size()+" documents");
+		}
+	}
+
+	private class Sender implements Callable<Void> {
+
+		@Override
+		public Void call() throws Exception {
+			List<SolrInputDocument> batch = new ArrayList<SolrInputDocument>();
+			long bytes = 0;
+			try {
+				while (true) {
+					SolrInputDocument doc;
+					if (batch.isEmpty())
+						doc = queue.take();
+					else
+						doc = queue.poll(LINGER_MILLIS, TimeUnit.MILLISECONDS);
+					if (doc != null && doc != END) {
+						batch.add(doc);
+						bytes += estimateSize(doc);
+						if (batch.size() < batchSize && bytes < maxBatchBytes)
+							continue;
+					}
+					if (!batch.isEmpty()) {
+						add(batch);
+						batch = new ArrayList<SolrInputDocument>();
+						bytes = 0;
+					}
+					if (doc == END)
+						return null;
+				}
+			} catch (InterruptedException e) {
+				// aborted
+				return null;
+			} catch (Exception e) {
+				failure.compareAndSet(null, e);
+				LOG.error("Sending documents to solr failed", e);
+				// free the producers
+				queue.clear();
+				throw e;
+			}
+		}
+	}
+}
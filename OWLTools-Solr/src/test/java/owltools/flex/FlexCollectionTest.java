@@ -0,0 +1,192 @@
+package owltools.flex;
+
+import static junit.framework.Assert.*;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.junit.Test;
+import org.semanticweb.owlapi.model.OWLObject;
+
+import owltools.graph.OWLGraphWrapper;
+import owltools.io.ParserWrapper;
+import owltools.yaml.golrconfig.ConfigManager;
+import owltools.yaml.golrconfig.GOlrField;
+
+/**
+ * Tests for {@link FlexCollection} and {@link FlexFieldAccessor}.
+ */
+public class FlexCollectionTest {
+
+	@Test
+	public void testSameDocuments() throws Exception {
+		OWLGraphWrapper graph = getGraph();
+		ConfigManager config = getConfig();
+		Map<String, String> expected = new HashMap<String, String>();
+		for (OWLObject obj : graph.getAllOWLObjects()) {
+			FlexDocument doc = wringEagerly(graph, obj, config);
+			expected.put(getId(doc), render(doc));
+		}
+		assertTrue(expected.size() > 5);
+
+		Map<String, String> docs = new HashMap<String, String>();
+		for (FlexDocument doc : new FlexCollection(config, graph)) {
+			assertNull(docs.put(getId(doc), render(doc)));
+		}
+		assertEquals(expected, docs);
+		// some fields with values
+		String heart = docs.get("FT:0000003");
+		assertTrue(heart, heart.contains("label=[heart]"));
+		assertTrue(heart, heart.contains("synonym=[cardium]"));
+		String obsolete = docs.get("FT:0000005");
+		assertTrue(obsolete, obsolete.contains("replaced_by=[FT:0000003]"));
+	}
+
+	@Test
+	public void testIterator() throws Exception {
+		OWLGraphWrapper graph = getGraph();
+		FlexCollection collection = new FlexCollection(getConfig(), graph);
+		int count = graph.getAllOWLObjects().size();
+
+		Iterator<FlexDocument> it = collection.iterator();
+		for (int i = 0; i < count; i++) {
+			// hasNext does not consume documents
+			assertTrue(it.hasNext());
+			assertTrue(it.hasNext());
+			assertNotNull(it.next());
+		}
+		assertFalse(it.hasNext());
+		try {
+			it.next();
+			fail("no more documents");
+		} catch (NoSuchElementException e) {
+			// expected
+		}
+
+		// each iteration makes all documents again
+		int n = 0;
+		for (Iterator<FlexDocument> it2 = collection.iterator(); it2.hasNext(); it2.next()) {
+			n++;
+		}
+		assertEquals(count, n);
+	}
+
+	@Test
+	public void testRemove() throws Exception {
+		OWLGraphWrapper graph = getGraph();
+		FlexCollection collection = new FlexCollection(getConfig(), graph);
+		int count = graph.getAllOWLObjects().size();
+		Iterator<FlexDocument> it = collection.iterator();
+		it.next();
+		try {
+			it.remove();
+			fail("documents are made from the graph and can not be removed");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+		// neither the iteration nor the graph are changed
+		int n = 1;
+		while (it.hasNext()) {
+			it.next();
+			n++;
+		}
+		assertEquals(count, n);
+		assertEquals(count, graph.getAllOWLObjects().size());
+	}
+
+	@Test
+	public void testAccessorReuse() throws Exception {
+		OWLGraphWrapper graph = getGraph();
+		ConfigManager config = getConfig();
+		FlexCollection collection = new FlexCollection(config, graph);
+		List<FlexFieldAccessor> accessors = collection.accessors;
+		assertNotNull(accessors);
+		// all fields of the config have a property and a matching method
+		assertEquals(config.getFields().size(), accessors.size());
+		for (FlexDocument doc : collection) {
+			assertNotNull(doc);
+		}
+		assertSame(accessors, collection.accessors);
+
+		// one accessor for several objects
+		FlexFieldAccessor label = null;
+		for (FlexFieldAccessor a : accessors) {
+			if ("label".equals(a.getField())) {
+				label = a;
+			}
+		}
+		assertNotNull(label);
+		FlexDocument doc = new FlexDocument();
+		for (String id : new String[]{ "FT:0000002", "FT:0000003", "FT:0000004" }) {
+			label.addLines(graph, graph.getOWLObjectByIdentifier(id), doc);
+		}
+		assertEquals("label=[organ];label=[heart];label=[cardiovascular system];", render(doc));
+	}
+
+	private static OWLGraphWrapper getGraph() throws Exception {
+		ParserWrapper pw = new ParserWrapper();
+		return new OWLGraphWrapper(pw.parse("src/test/resources/flex-test.obo"));
+	}
+
+	private static ConfigManager getConfig() throws Exception {
+		ConfigManager config = new ConfigManager();
+		config.add("src/main/resources/ont-config.yaml");
+		return config;
+	}
+
+	private static String getId(FlexDocument doc) {
+		for (FlexLine line : doc) {
+			if ("id".equals(line.field())) {
+				return line.values().get(0);
+			}
+		}
+		fail("no id");
+		return null;
+	}
+
+	private static String render(FlexDocument doc) {
+		StringBuilder sb = new StringBuilder();
+		for (FlexLine line : doc) {
+			sb.append(line.field()).append('=').append(line.values()).append(';');
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * The documents as made before the accessors: every field of every
+	 * object looks up its method.
+	 */
+	@SuppressWarnings("unchecked")
+	private static FlexDocument wringEagerly(OWLGraphWrapper graph, OWLObject obj, ConfigManager config) throws Exception {
+		FlexDocument doc = new FlexDocument();
+		doc.add(new FlexLine("document_category", "ontology_class"));
+		for (GOlrField field : config.getFields()) {
+			List<String> sexpr = field.property;
+			Object result;
+			if (sexpr.size() == 1) {
+				Method method = graph.getClass().getMethod(sexpr.get(0), OWLObject.class);
+				result = method.invoke(graph, obj);
+			}
+			else {
+				Method method = graph.getClass().getMethod(sexpr.get(0), OWLObject.class, String.class);
+				result = method.invoke(graph, obj, sexpr.get(1));
+			}
+			if (field.cardinality.equals("single")) {
+				if (result != null) {
+					doc.add(new FlexLine(field.id, (String) result));
+				}
+			}
+			else if (result != null) {
+				for (String val : (Collection<String>) result) {
+					doc.add(new FlexLine(field.id, val));
+				}
+			}
+		}
+		return doc;
+	}
+}
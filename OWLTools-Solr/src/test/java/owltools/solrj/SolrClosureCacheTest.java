@@ -0,0 +1,222 @@
+package owltools.solrj;
+
+import static junit.framework.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.response.UpdateResponse;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.NamedList;
+import org.junit.Test;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLObject;
+import org.semanticweb.owlapi.model.OWLOntology;
+
+import owltools.gaf.GafObjectsBuilder;
+import owltools.graph.OWLGraphEdge;
+import owltools.graph.OWLGraphWrapper;
+import owltools.io.ParserWrapper;
+
+/**
+ * Tests for {@link SolrClosureCache}, alone and shared by {@link GafSolrDocumentLoader}s.
+ */
+public class SolrClosureCacheTest {
+
+	@Test
+	public void testSharedBetweenLoads() throws Exception {
+		CountingGraph graph = getGraph();
+		SolrClosureCache cache = new SolrClosureCache(graph);
+		MockSolrServer server = new MockSolrServer();
+
+		load(graph, cache, server);
+		long misses = cache.getMisses();
+		long hits = cache.getHits();
+		assertTrue(misses > 0);
+		List<String> firstIds = server.getIds();
+		assertFalse(firstIds.isEmpty());
+
+		// the second GAF load only hits the cache
+		load(graph, cache, server);
+		assertEquals(misses, cache.getMisses());
+		assertTrue(cache.getHits() > hits);
+		assertEquals(2 * firstIds.size(), server.getIds().size());
+
+		// each closure is computed once for each object and relation set
+		assertEquals(3, graph.isaPartofCalls.size());
+		for (AtomicInteger n : graph.isaPartofCalls.values()) {
+			assertEquals(1, n.get());
+		}
+		assertEquals(2, graph.extensionCalls.size());
+		for (AtomicInteger n : graph.extensionCalls.values()) {
+			assertEquals(1, n.get());
+		}
+		// one entry per class, the unknown FT:0000999 included
+		assertTrue(cache.getReport(), cache.getReport().contains("isa_partof=4 extension=2 "));
+	}
+
+	@Test
+	public void testSameAsGraph() throws Exception {
+		OWLGraphWrapper graph = getGraph();
+		SolrClosureCache cache = new SolrClosureCache(graph);
+		for (String id : new String[]{ "FT:0000001", "FT:0000002", "FT:0000003", "FT:0000004" }) {
+			OWLObject obj = graph.getOWLObjectByIdentifier(id);
+
+			SolrClosureCache.Closure c = cache.getIsaPartofClosure(id);
+			Map<String, String> map = graph.getIsaPartofClosureMap(obj);
+			assertEquals(map, c.getMap());
+			// ids and labels in the same order
+			assertEquals(map.keySet(), new HashSet<String>(c.getIds()));
+			assertEquals(map.size(), c.getIds().size());
+			for (int i = 0; i < c.getIds().size(); i++) {
+				assertEquals(map.get(c.getIds().get(i)), c.getLabels().get(i));
+			}
+			assertEquals(map, cache.getGson().fromJson(c.getMapJson(), Map.class));
+			assertSame(c, cache.getIsaPartofClosure(id));
+
+			SolrClosureCache.Closure e = cache.getExtensionClosure(id);
+			Set<String> ids = new HashSet<String>();
+			Map<String, String> extensionMap = new LinkedHashMap<String, String>();
+			for (OWLGraphEdge edge : graph.getOutgoingEdgesClosureReflexive(obj)) {
+				if (edge.getTarget() instanceof OWLClass) {
+					String tid = graph.getIdentifier(edge.getTarget());
+					String tlabel = graph.getLabel(edge.getTarget());
+					ids.add(tid);
+					extensionMap.put(tid, tlabel);
+					extensionMap.put(tlabel, tid);
+				}
+			}
+			assertEquals(ids, new HashSet<String>(e.getIds()));
+			assertEquals(ids.size(), e.getIds().size());
+			assertEquals(extensionMap, e.getMap());
+			assertSame(e, cache.getExtensionClosure(id));
+
+			assertEquals(graph.getLabel(obj), cache.getLabel(id));
+		}
+		assertTrue(cache.getIsaPartofClosure("FT:0000003").getIds().contains("FT:0000004"));
+		assertNull(cache.getIsaPartofClosure("FT:0000999"));
+		assertNull(cache.getExtensionClosure("FT:0000999"));
+		assertNull(cache.getLabel("FT:0000999"));
+	}
+
+	@Test
+	public void testClear() throws Exception {
+		CountingGraph graph = getGraph();
+		SolrClosureCache cache = new SolrClosureCache(graph);
+		OWLObject heart = graph.getOWLObjectByIdentifier("FT:0000003");
+		SolrClosureCache.Closure c = cache.getIsaPartofClosure("FT:0000003");
+		cache.getIsaPartofClosure("FT:0000003");
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+
+		cache.clear();
+		assertEquals(0, cache.getHits());
+		assertEquals(0, cache.getMisses());
+		assertTrue(cache.getReport(), cache.getReport().contains("isa_partof=0 extension=0 labels=0 "));
+		// computed again
+		SolrClosureCache.Closure c2 = cache.getIsaPartofClosure("FT:0000003");
+		assertNotSame(c, c2);
+		assertEquals(c.getMap(), c2.getMap());
+		assertEquals(2, graph.isaPartofCalls.get(heart).get());
+	}
+
+	private static void load(OWLGraphWrapper graph, SolrClosureCache cache, SolrServer server) throws Exception {
+		GafSolrDocumentLoader loader = new GafSolrDocumentLoader(server);
+		loader.setGraph(graph);
+		loader.setGafDocument(new GafObjectsBuilder().buildDocument(new File("src/test/resources/closure-test.gaf")));
+		loader.setClosureCache(cache);
+		// on one thread, so that no class is resolved twice at the same time
+		loader.setNumSenderThreads(0);
+		loader.load();
+		assertSame(cache, loader.getClosureCache());
+	}
+
+	private static CountingGraph getGraph() throws Exception {
+		ParserWrapper pw = new ParserWrapper();
+		return new CountingGraph(pw.parse("src/test/resources/flex-test.obo"));
+	}
+
+	/**
+	 * Counts the closure computations for each object. The isa_partof closure is
+	 * made from the reflexive closure, which is not counted separately.
+	 */
+	private static class CountingGraph extends OWLGraphWrapper {
+
+		final ConcurrentMap<OWLObject, AtomicInteger> isaPartofCalls = new ConcurrentHashMap<OWLObject, AtomicInteger>();
+		final ConcurrentMap<OWLObject, AtomicInteger> extensionCalls = new ConcurrentHashMap<OWLObject, AtomicInteger>();
+		private final ThreadLocal<Boolean> inIsaPartof = new ThreadLocal<Boolean>();
+
+		CountingGraph(OWLOntology ontology) throws Exception {
+			super(ontology);
+		}
+
+		@Override
+		public Map<String, String> getIsaPartofClosureMap(OWLObject c) {
+			count(isaPartofCalls, c);
+			inIsaPartof.set(Boolean.TRUE);
+			try {
+				return super.getIsaPartofClosureMap(c);
+			}
+			finally {
+				inIsaPartof.remove();
+			}
+		}
+
+		@Override
+		public Set<OWLGraphEdge> getOutgoingEdgesClosureReflexive(OWLObject s) {
+			if (inIsaPartof.get() == null)
+				count(extensionCalls, s);
+			return super.getOutgoingEdgesClosureReflexive(s);
+		}
+
+		private static void count(ConcurrentMap<OWLObject, AtomicInteger> calls, OWLObject obj) {
+			calls.putIfAbsent(obj, new AtomicInteger());
+			calls.get(obj).incrementAndGet();
+		}
+	}
+
+	/**
+	 * Records the ids of the added documents.
+	 */
+	private static class MockSolrServer extends SolrServer {
+
+		private static final long serialVersionUID = 1L;
+
+		private final List<String> ids = new ArrayList<String>();
+
+		@Override
+		public synchronized UpdateResponse add(Collection<SolrInputDocument> docs) throws SolrServerException, IOException {
+			for (SolrInputDocument doc : docs) {
+				ids.add(doc.getFieldValue("id").toString());
+			}
+			return new UpdateResponse();
+		}
+
+		@Override
+		public UpdateResponse commit() throws SolrServerException, IOException {
+			return new UpdateResponse();
+		}
+
+		@Override
+		public NamedList<Object> request(SolrRequest request) throws SolrServerException, IOException {
+			throw new UnsupportedOperationException();
+		}
+
+		synchronized List<String> getIds() {
+			return new ArrayList<String>(ids);
+		}
+	}
+}
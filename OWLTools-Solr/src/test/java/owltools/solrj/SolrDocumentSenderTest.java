@@ -0,0 +1,281 @@
+package owltools.solrj;
+
+import static junit.framework.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.response.UpdateResponse;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.NamedList;
+import org.junit.Test;
+
+/**
+ * Tests for {@link SolrDocumentSender} and the background sending of
+ * {@link AbstractSolrLoader}, against a server that only records the requests.
+ */
+public class SolrDocumentSenderTest {
+
+	@Test
+	public void testBatchSize() throws Exception {
+		MockSolrServer server = new MockSolrServer();
+		SolrDocumentSender sender = new SolrDocumentSender(server, 1, 10, Long.MAX_VALUE, 100);
+		for (int i = 0; i < 25; i++) {
+			sender.send(createDocument(i, "x"));
+		}
+		sender.finish(true);
+
+		assertEquals(25, server.getIds().size());
+		assertTrue(server.getBatchSizes().size() >= 3);
+		for (int size : server.getBatchSizes()) {
+			assertTrue("batch size " + size, size <= 10);
+		}
+		assertEquals(25, sender.getNumberOfDocuments());
+		assertEquals(server.getBatchSizes().size(), sender.getNumberOfBatches());
+		assertEquals(1, server.commits.get());
+	}
+
+	@Test
+	public void testBatchBytes() throws Exception {
+		MockSolrServer server = new MockSolrServer();
+		StringBuilder value = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			value.append('v');
+		}
+		long docSize = SolrDocumentSender.estimateSize(createDocument(0, value.toString()));
+		// room for three documents
+		SolrDocumentSender sender = new SolrDocumentSender(server, 1, 1000, 3 * docSize, 100);
+		for (int i = 0; i < 10; i++) {
+			sender.send(createDocument(i, value.toString()));
+		}
+		sender.finish(true);
+
+		assertEquals(10, server.getIds().size());
+		assertTrue(server.getBatchSizes().size() >= 4);
+		for (int size : server.getBatchSizes()) {
+			assertTrue("batch size " + size, size <= 3);
+		}
+		assertEquals(1, server.commits.get());
+	}
+
+	@Test
+	public void testBackpressure() throws Exception {
+		final MockSolrServer server = new MockSolrServer();
+		server.block = new CountDownLatch(1);
+		final SolrDocumentSender sender = new SolrDocumentSender(server, 1, 1, Long.MAX_VALUE, 2);
+		final AtomicInteger queued = new AtomicInteger();
+		final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+		Thread producer = new Thread() {
+
+			@Override
+			public void run() {
+				try {
+					for (int i = 0; i < 10; i++) {
+						sender.send(createDocument(i, "x"));
+						queued.incrementAndGet();
+					}
+				} catch (Throwable t) {
+					errors.add(t);
+				}
+			}
+		};
+		producer.start();
+		assertTrue(server.adding.await(10, TimeUnit.SECONDS));
+		Thread.sleep(500);
+
+		// one document in the blocked add, two in the queue
+		assertEquals(3, queued.get());
+		assertTrue(producer.isAlive());
+
+		server.block.countDown();
+		producer.join(10000);
+		assertFalse(producer.isAlive());
+		assertTrue(errors.toString(), errors.isEmpty());
+		sender.finish(true);
+		assertEquals(10, server.getIds().size());
+		assertEquals(1, server.commits.get());
+	}
+
+	@Test
+	public void testLoaderCommitsOnce() throws Exception {
+		MockSolrServer server = new MockSolrServer();
+		TestLoader loader = new TestLoader(server, 4, 100);
+		loader.setNumSenderThreads(3);
+		loader.setBatchSize(7);
+		loader.load();
+
+		assertEquals(400, server.getIds().size());
+		assertTrue(server.getBatchSizes().size() >= 400 / 7);
+		assertEquals(1, server.commits.get());
+	}
+
+	@Test
+	public void testFailure() throws Exception {
+		MockSolrServer server = new MockSolrServer();
+		server.error = new SolrServerException("add failed");
+		server.failAt = 2;
+		SolrDocumentSender sender = new SolrDocumentSender(server, 3, 1, Long.MAX_VALUE, 5);
+		try {
+			for (int i = 0; i < 1000; i++) {
+				sender.send(createDocument(i, "x"));
+			}
+		} catch (IOException e) {
+			assertSame(server.error, e.getCause());
+		}
+		try {
+			sender.finish(true);
+			fail("the failed add should be rethrown");
+		} catch (SolrServerException e) {
+			assertSame(server.error, e);
+		}
+		assertEquals(0, server.commits.get());
+	}
+
+	@Test
+	public void testLoaderFailure() throws Exception {
+		MockSolrServer server = new MockSolrServer();
+		server.error = new SolrServerException("add failed");
+		server.failAt = 3;
+		TestLoader loader = new TestLoader(server, 2, 1000);
+		loader.setBatchSize(10);
+		loader.setQueueCapacity(20);
+		try {
+			loader.load();
+			fail("the failed add should be rethrown");
+		} catch (SolrServerException e) {
+			assertSame(server.error, e);
+		} catch (IOException e) {
+			assertSame(server.error, e.getCause());
+		}
+		assertEquals(0, server.commits.get());
+	}
+
+	private static SolrInputDocument createDocument(int id, String value) {
+		SolrInputDocument doc = new SolrInputDocument();
+		doc.addField("id", Integer.toString(id));
+		doc.addField("value", value);
+		return doc;
+	}
+
+	/**
+	 * Adds documents from several threads, and commits once at the end.
+	 */
+	private static class TestLoader extends AbstractSolrLoader {
+
+		private final int numThreads;
+		private final int docsPerThread;
+
+		TestLoader(SolrServer server, int numThreads, int docsPerThread) {
+			super(server);
+			this.numThreads = numThreads;
+			this.docsPerThread = docsPerThread;
+		}
+
+		@Override
+		public void load() throws SolrServerException, IOException {
+			final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+			List<Thread> threads = new ArrayList<Thread>();
+			for (int t = 0; t < numThreads; t++) {
+				final int offset = t * docsPerThread;
+				Thread thread = new Thread() {
+
+					@Override
+					public void run() {
+						try {
+							for (int i = 0; i < docsPerThread; i++) {
+								add(createDocument(offset + i, "x"));
+							}
+						} catch (Throwable e) {
+							errors.add(e);
+						}
+					}
+				};
+				threads.add(thread);
+				thread.start();
+			}
+			try {
+				for (Thread thread : threads) {
+					thread.join();
+				}
+			} catch (InterruptedException e) {
+				throw new IOException(e);
+			}
+			// rethrows the error of a failed sender
+			addAllAndCommit();
+			if (!errors.isEmpty()) {
+				throw new IOException(errors.get(0));
+			}
+		}
+	}
+
+	/**
+	 * Records the added documents and commits. Can block or fail an add.
+	 */
+	private static class MockSolrServer extends SolrServer {
+
+		private static final long serialVersionUID = 1L;
+
+		private final List<Integer> batchSizes = new ArrayList<Integer>();
+		private final Set<String> ids = new HashSet<String>();
+		final AtomicInteger commits = new AtomicInteger();
+		final CountDownLatch adding = new CountDownLatch(1);
+		// if not null, adds wait for it
+		volatile CountDownLatch block = null;
+		// if not null, thrown from add number failAt and after
+		volatile SolrServerException error = null;
+		volatile int failAt = 0;
+
+		@Override
+		public UpdateResponse add(Collection<SolrInputDocument> docs) throws SolrServerException, IOException {
+			adding.countDown();
+			CountDownLatch b = block;
+			if (b != null) {
+				try {
+					b.await();
+				} catch (InterruptedException e) {
+					throw new IOException(e);
+				}
+			}
+			synchronized (this) {
+				if (error != null && batchSizes.size() + 1 >= failAt) {
+					throw error;
+				}
+				batchSizes.add(docs.size());
+				for (SolrInputDocument doc : docs) {
+					ids.add(doc.getFieldValue("id").toString());
+				}
+			}
+			return new UpdateResponse();
+		}
+
+		@Override
+		public UpdateResponse commit() throws SolrServerException, IOException {
+			commits.incrementAndGet();
+			return new UpdateResponse();
+		}
+
+		@Override
+		public NamedList<Object> request(SolrRequest request) throws SolrServerException, IOException {
+			throw new UnsupportedOperationException();
+		}
+
+		synchronized List<Integer> getBatchSizes() {
+			return new ArrayList<Integer>(batchSizes);
+		}
+
+		synchronized Set<String> getIds() {
+			return new HashSet<String>(ids);
+		}
+	}
+}
@@ -4,8 +4,10 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
@@ -320,12 +322,12 @@ public class OWLHandler {
 
 	private Set<OWLClass> resolveClassList(Param p) {
 		String[] ids = getParams(p);
-		Set<OWLClass> objs = new HashSet<OWLClass>();
-		for (String id : ids) {
-			// TODO - unresolvable
-			objs.add(graph.getOWLClassByIdentifier(id));
+		List<String> unresolved = new ArrayList<String>();
+		Map<String, OWLClass> objs = graph.getIdentifierResolver().resolveClasses(Arrays.asList(ids), unresolved);
+		if (!unresolved.isEmpty()) {
+			LOG.warn("Could not resolve ids: "+unresolved);
 		}
-		return objs;
+		return new HashSet<OWLClass>(objs.values());
 	}
 
 	public void info(String msg) throws IOException {